@@ -79,6 +79,12 @@ public class Conversions {
     @Override
     public BigDecimal fromBytes(ByteBuffer value, Schema schema, LogicalType type) {
       int scale = ((LogicalTypes.Decimal) type).getScale();
+      if (value.remaining() <= 8) {
+        // avoid the copy and the BigInteger when the unscaled value is a long
+        BigDecimal result = BigDecimal.valueOf(getUnscaledLong(value), scale);
+        value.position(value.limit());
+        return result;
+      }
       // always copy the bytes out because BigInteger has no offset/length ctor
       byte[] bytes = new byte[value.remaining()];
       value.get(bytes);
@@ -92,13 +98,20 @@ public class Conversions {
         throw new AvroTypeException("Cannot encode decimal with scale " +
             value.scale() + " as scale " + scale);
       }
+      if (value.precision() <= MAX_LONG_PRECISION) {
+        return toUnscaledBytes(value.movePointRight(scale).longValue());
+      }
       return ByteBuffer.wrap(value.unscaledValue().toByteArray());
     }
 
     @Override
     public BigDecimal fromFixed(GenericFixed value, Schema schema, LogicalType type) {
       int scale = ((LogicalTypes.Decimal) type).getScale();
-      return new BigDecimal(new BigInteger(value.bytes()), scale);
+      byte[] bytes = value.bytes();
+      if (bytes.length <= 8) {
+        return BigDecimal.valueOf(getUnscaledLong(bytes, 0, bytes.length), scale);
+      }
+      return new BigDecimal(new BigInteger(bytes), scale);
     }
 
     @Override
@@ -109,9 +122,17 @@ public class Conversions {
             value.scale() + " as scale " + scale);
       }
 
+      byte[] bytes = new byte[schema.getFixedSize()];
+      if (value.precision() <= MAX_LONG_PRECISION) {
+        long unscaled = value.movePointRight(scale).longValue();
+        if (fitsIn(unscaled, bytes.length)) {
+          putUnscaledLong(unscaled, bytes, 0, bytes.length);
+          return new GenericData.Fixed(schema, bytes);
+        }
+      }
+
       byte fillByte = (byte) (value.signum() < 0 ? 0xFF : 0x00);
       byte[] unscaled = value.unscaledValue().toByteArray();
-      byte[] bytes = new byte[schema.getFixedSize()];
       int offset = bytes.length - unscaled.length;
 
       for (int i = 0; i < bytes.length; i += 1) {
@@ -124,6 +145,84 @@ public class Conversions {
 
       return new GenericData.Fixed(schema, bytes);
     }
+
+    /** Decimals with at most this many digits have a long unscaled value. */
+    public static final int MAX_LONG_PRECISION = 18;
+
+    /**
+     * Returns the unscaled value of a decimal stored as big-endian two's
+     * complement bytes, without copying the bytes or changing the buffer's
+     * position.
+     * @throws AvroTypeException if the value does not fit in a long
+     */
+    public static long getUnscaledLong(ByteBuffer value) {
+      int start = value.position();
+      int length = value.remaining();
+      if (value.hasArray()) {
+        return getUnscaledLong(value.array(), value.arrayOffset() + start,
+            length);
+      }
+      checkLongSize(length);
+      long unscaled = length > 0 ? value.get(start) : 0; // sign-extends
+      for (int i = 1; i < length; i += 1) {
+        unscaled = (unscaled << 8) | (value.get(start + i) & 0xFF);
+      }
+      return unscaled;
+    }
+
+    /**
+     * Returns the unscaled value of a fixed decimal, without copying its
+     * bytes.
+     * @throws AvroTypeException if the value does not fit in a long
+     */
+    public static long getUnscaledLong(GenericFixed value) {
+      byte[] bytes = value.bytes();
+      return getUnscaledLong(bytes, 0, bytes.length);
+    }
+
+    /** Returns the minimal big-endian two's complement encoding of an
+     * unscaled decimal value, as written by {@link #toBytes}. */
+    public static ByteBuffer toUnscaledBytes(long unscaled) {
+      int length = 1;
+      while (!fitsIn(unscaled, length)) {
+        length += 1;
+      }
+      byte[] bytes = new byte[length];
+      putUnscaledLong(unscaled, bytes, 0, length);
+      return ByteBuffer.wrap(bytes);
+    }
+
+    private static long getUnscaledLong(byte[] bytes, int start, int length) {
+      checkLongSize(length);
+      long unscaled = length > 0 ? bytes[start] : 0; // sign-extends
+      for (int i = 1; i < length; i += 1) {
+        unscaled = (unscaled << 8) | (bytes[start + i] & 0xFF);
+      }
+      return unscaled;
+    }
+
+    private static void checkLongSize(int length) {
+      if (length > 8) {
+        throw new AvroTypeException(
+            "Cannot read decimal of " + length + " bytes as a long");
+      }
+    }
+
+    private static boolean fitsIn(long unscaled, int length) {
+      if (length >= 8) {
+        return true;
+      }
+      long shifted = unscaled >> (8 * length - 1);
+      return shifted == 0 || shifted == -1;
+    }
+
+    private static void putUnscaledLong(long unscaled, byte[] bytes,
+                                        int start, int length) {
+      for (int i = length - 1; i >= 0; i -= 1) {
+        bytes[start + i] = (byte) unscaled;
+        unscaled >>= 8; // sign-extends for padding beyond 8 bytes
+      }
+    }
   }
 
   /**
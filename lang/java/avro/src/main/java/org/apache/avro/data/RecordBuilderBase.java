@@ -19,6 +19,9 @@ package org.apache.avro.data;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.Conversion;
@@ -28,16 +31,23 @@ import org.apache.avro.Schema;
 import org.apache.avro.Schema.Field;
 import org.apache.avro.Schema.Type;
 import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericEnumSymbol;
 import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.util.Utf8;
+
+import com.google.common.collect.MapMaker;
 
 /** Abstract base class for RecordBuilder implementations.  Not thread-safe. */
 public abstract class RecordBuilderBase<T extends IndexedRecord>
   implements RecordBuilder<T> {
   private static final Field[] EMPTY_FIELDS = new Field[0];
+  private static final ConcurrentMap<GenericData,ConcurrentMap<Schema,Defaults>>
+    DEFAULTS = new MapMaker().weakKeys().makeMap();
   private final Schema schema;
   private final Field[] fields;
   private final boolean[] fieldSetFlags;
   private final GenericData data;
+  private final Defaults defaults;
 
   protected final Schema schema() { return schema; }
   protected final Field[] fields() { return fields; }
@@ -53,6 +63,7 @@ public abstract class RecordBuilderBase<T extends IndexedRecord>
     this.data = data;
     fields = (Field[]) schema.getFields().toArray(EMPTY_FIELDS);
     fieldSetFlags = new boolean[fields.length];
+    defaults = getDefaults(schema, data);
   }
 
   /**
@@ -67,6 +78,7 @@ public abstract class RecordBuilderBase<T extends IndexedRecord>
     fieldSetFlags = new boolean[other.fieldSetFlags.length];
     System.arraycopy(
         other.fieldSetFlags, 0, fieldSetFlags, 0, fieldSetFlags.length);
+    defaults = getDefaults(schema, data);
   }
 
   /**
@@ -133,9 +145,21 @@ public abstract class RecordBuilderBase<T extends IndexedRecord>
    * or null if none is specified in the schema.
    * @throws IOException
    */
-  @SuppressWarnings({ "rawtypes", "unchecked" })
   protected Object defaultValue(Field field) throws IOException {
-    return data.deepCopy(field.schema(), data.getDefaultValue(field));
+    int pos = field.pos();
+    Object value;
+    if (pos >= fields.length || fields[pos] != field) {
+      value = Defaults.template(field, data);     // not of this schema
+    } else {
+      value = defaults.values.get(pos);
+      if (value == Defaults.UNKNOWN) {
+        value = Defaults.template(field, data);
+        defaults.values.set(pos, value);
+      }
+    }
+    if (value instanceof MutableDefault)
+      return ((MutableDefault) value).copy(field.schema(), data);
+    return value;
   }
 
   /**
@@ -152,7 +176,7 @@ public abstract class RecordBuilderBase<T extends IndexedRecord>
   protected Object defaultValue(Field field, Conversion<?> conversion) throws IOException {
     Schema schema = field.schema();
     LogicalType logicalType = schema.getLogicalType();
-    Object rawDefaultValue = data.deepCopy(schema, data.getDefaultValue(field));
+    Object rawDefaultValue = defaultValue(field);
     if (conversion == null || logicalType == null) {
       return rawDefaultValue;
     } else {
@@ -161,6 +185,76 @@ public abstract class RecordBuilderBase<T extends IndexedRecord>
     }
   }
 
+  static Defaults getDefaults(Schema schema, GenericData data) {
+    ConcurrentMap<Schema,Defaults> bySchema = DEFAULTS.get(data);
+    if (bySchema == null) {
+      bySchema = new MapMaker().weakKeys().makeMap();
+      ConcurrentMap<Schema,Defaults> old = DEFAULTS.putIfAbsent(data, bySchema);
+      if (old != null)
+        bySchema = old;
+    }
+    Defaults defaults = bySchema.get(schema);
+    if (defaults == null) {
+      defaults = new Defaults(schema.getFields().size());
+      Defaults old = bySchema.putIfAbsent(schema, defaults);
+      if (old != null)
+        defaults = old;
+    }
+    return defaults;
+  }
+
+  /** Default values of a schema's fields, shared by all builders for the
+   * schema and data model.  Each entry is filled in the first time it is
+   * needed.  Immutable values are stored as-is and returned without copying,
+   * others are wrapped in a {@link MutableDefault} and copied each time
+   * they're applied to a record. */
+  static class Defaults {
+    static final Object UNKNOWN = new Object();
+
+    final AtomicReferenceArray<Object> values;
+
+    Defaults(int size) {
+      this.values = new AtomicReferenceArray<Object>(size);
+      for (int i = 0; i < size; i++)
+        values.set(i, UNKNOWN);
+    }
+
+    static Object template(Field field, GenericData data) {
+      Object value = data.getDefaultValue(field);
+      if (value == null
+          || value instanceof String
+          || value instanceof Boolean
+          || value instanceof Integer
+          || value instanceof Long
+          || value instanceof Float
+          || value instanceof Double
+          || value instanceof Enum
+          || value instanceof GenericEnumSymbol)
+        return value;
+      return new MutableDefault(value);
+    }
+  }
+
+  /** A default value that each record must have its own copy of.  Strings
+   * and empty arrays and maps, the most common such defaults, are copied
+   * without walking their schema. */
+  private static class MutableDefault {
+    final Object value;
+    MutableDefault(Object value) { this.value = value; }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    Object copy(Schema schema, GenericData data) {
+      if (value instanceof Utf8)
+        return new Utf8((Utf8) value);
+      if (value instanceof GenericData.Array
+          && ((GenericData.Array) value).isEmpty())
+        return new GenericData.Array(0, ((GenericData.Array) value).getSchema());
+      if (value.getClass() == HashMap.class && ((HashMap) value).isEmpty())
+        return new HashMap();
+      return data.deepCopy(schema, value);
+    }
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
@@ -22,8 +22,8 @@ import org.apache.avro.Conversion;
 import org.apache.avro.LogicalType;
 import org.apache.avro.Schema;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeConstants;
 import org.joda.time.DateTimeZone;
-import org.joda.time.Days;
 import org.joda.time.LocalDate;
 import org.joda.time.LocalTime;
 
@@ -48,7 +48,10 @@ public class TimeConversions {
 
     @Override
     public Integer toInt(LocalDate date, Schema schema, LogicalType type) {
-      return Days.daysBetween(EPOCH_DATE, date).getDays();
+      // local millis are UTC-based, so this is an exact multiple of a day
+      long millis = date.getChronology().getDateTimeMillis(
+          date.getYear(), date.getMonthOfYear(), date.getDayOfMonth(), 0);
+      return (int) (millis / DateTimeConstants.MILLIS_PER_DAY);
     }
   }
 
@@ -70,7 +73,7 @@ public class TimeConversions {
 
     @Override
     public Integer toInt(LocalTime time, Schema schema, LogicalType type) {
-      return time.millisOfDay().get();
+      return time.getMillisOfDay();
     }
   }
 
@@ -94,7 +97,7 @@ public class TimeConversions {
   public static class LossyTimeMicrosConversion extends TimeMicrosConversion {
     @Override
     public Long toLong(LocalTime time, Schema schema, LogicalType type) {
-      return 1000 * (long) time.millisOfDay().get();
+      return 1000 * (long) time.getMillisOfDay();
     }
   }
 
@@ -61,6 +61,12 @@ public class BZip2Codec extends Codec {
 
   @Override
   public ByteBuffer decompress(ByteBuffer compressedData) throws IOException {
+    return decompress(compressedData, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public ByteBuffer decompress(ByteBuffer compressedData, int maxLength)
+    throws IOException {
     ByteArrayInputStream bais = new ByteArrayInputStream(compressedData.array());
     BZip2CompressorInputStream inputStream = new BZip2CompressorInputStream(bais);
     try {
@@ -72,6 +78,7 @@ public class BZip2Codec extends Codec {
 
       while ( (readCount = inputStream.read(buffer, compressedData.position(), buffer.length))> 0) {
         baos.write(buffer, 0, readCount);
+        checkLength(baos.size(), maxLength);
       }
 
       ByteBuffer result = ByteBuffer.wrap(baos.toByteArray());
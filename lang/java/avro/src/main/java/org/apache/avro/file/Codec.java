@@ -30,6 +30,21 @@ public abstract class Codec {
   public abstract ByteBuffer compress(ByteBuffer uncompressedData) throws IOException;
   /** Decompress the data  */
   public abstract ByteBuffer decompress(ByteBuffer compressedData) throws IOException;
+  /** Decompress the data, failing if it decompresses to more than
+   * <code>maxLength</code> bytes, as when it is from an untrusted source.  By
+   * default this decompresses it all before checking its length; codecs
+   * should override this to stop early. */
+  public ByteBuffer decompress(ByteBuffer compressedData, int maxLength)
+    throws IOException {
+    ByteBuffer data = decompress(compressedData);
+    checkLength(data.remaining(), maxLength);
+    return data;
+  }
+
+  static void checkLength(long length, int maxLength) throws IOException {
+    if (length > maxLength)
+      throw new IOException("Decompressed length exceeds " + maxLength);
+  }
   /**
    * Codecs must implement an equals() method.  Two codecs, A and B are equal
    * if: the result of A and B decompressing content compressed by A is the same
@@ -68,6 +68,12 @@ public abstract class CodecFactory {
   /** Creates internal Codec. */
   protected abstract Codec createInstance();
 
+  /** Creates a new codec.  Codecs are not thread-safe, so each thread or
+   * stream should use its own. */
+  public Codec createCodec() {
+    return createInstance();
+  }
+
   /** Mapping of string names (stored as metas) and codecs.
    * Note that currently options (like compression level)
    * are not recoverable. */
@@ -0,0 +1,256 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.file;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.EncoderFactory;
+
+/**
+ * Appends to a {@link DataFileWriter} from any number of threads, with
+ * group commit of durability requests.
+ *
+ * <p>Each calling thread encodes datums into its own buffer, so that only
+ * copying the encoded bytes into the current block is serialized.  Each
+ * append returns a {@link Future} that completes once the datum has been
+ * written and, when the file is {@link Syncable}, synced to disk.  A single
+ * background thread performs commits: each flushes every datum appended so
+ * far and then syncs, while further appends continue and are covered by the
+ * following commit.  Each commit ends the current block.
+ *
+ * <p>The {@link DatumWriter} passed must be safe for use by multiple
+ * threads, such as a {@link org.apache.avro.generic.GenericDatumWriter} or a
+ * {@link org.apache.avro.generic.ThreadSafeDatumWriter}.
+ */
+public class ConcurrentDataFileWriter<D> implements Closeable, Flushable {
+  private final DataFileWriter<D> writer;
+  private final DatumWriter<D> dout;
+  private final Syncable syncable;
+  private final Thread committer;
+  private final ThreadLocal<Encoding> encodings = new ThreadLocal<Encoding>() {
+    @Override protected Encoding initialValue() { return new Encoding(); }
+  };
+
+  private final Object lock = new Object();      // guards writer & appended
+  private long appended;                         // # datums appended
+  private boolean waiting;                       // committer is idle
+  private boolean closed;
+
+  private final Object commits = new Object();   // guards committed & failure
+  private long committed;                        // # datums made durable
+  private Throwable failure;
+
+  /** Construct given a writer that has been created or opened for appending,
+   * and a thread-safe datum writer for its schema.  The data file writer
+   * must not be used directly once passed to this class. */
+  public ConcurrentDataFileWriter(DataFileWriter<D> writer,
+                                  DatumWriter<D> dout) {
+    this.writer = writer;
+    this.dout = dout;
+    this.syncable = writer.getSyncable();
+    this.committer = new Thread(new Runnable() {
+      @Override public void run() { commitLoop(); }
+    }, "avro-group-commit");
+    committer.setDaemon(true);
+    committer.start();
+  }
+
+  /** Append a datum.
+   * @return a future that completes once the datum is durable
+   * @throws DataFileWriter.AppendWriteException if the datum cannot be
+   *   encoded, in which case the file is unaltered */
+  public Future<Void> append(D datum) throws IOException {
+    Encoding encoding = encodings.get();
+    encoding.out.reset();
+    try {
+      dout.write(datum, encoding.encoder);
+      encoding.encoder.flush();
+    } catch (IOException e) {
+      throw new DataFileWriter.AppendWriteException(e);
+    } catch (RuntimeException e) {
+      throw new DataFileWriter.AppendWriteException(e);
+    }
+    long seq;
+    synchronized (lock) {
+      checkOpen();
+      writer.appendEncoded(encoding.out.getByteArrayAsByteBuffer());
+      seq = ++appended;
+      if (waiting)
+        lock.notify();
+    }
+    return new Commit(seq);
+  }
+
+  /** Return a future that completes once every datum appended so far is
+   * durable. */
+  public Future<Void> commit() {
+    synchronized (lock) {
+      return new Commit(appended);
+    }
+  }
+
+  /** Wait until every datum appended so far is durable. */
+  @Override
+  public void flush() throws IOException {
+    await(commit());
+  }
+
+  /** Make every datum appended durable, then close the file. */
+  @Override
+  public void close() throws IOException {
+    synchronized (lock) {
+      if (closed)
+        return;
+      closed = true;
+      lock.notify();
+    }
+    try {
+      committer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    writer.close();
+    synchronized (commits) {
+      if (failure != null)
+        throw new IOException(failure);
+    }
+  }
+
+  private void checkOpen() throws IOException {
+    if (closed)
+      throw new AvroRuntimeException("Writer is closed");
+    synchronized (commits) {
+      if (failure != null)
+        throw new IOException("Previous commit failed", failure);
+    }
+  }
+
+  private void commitLoop() {
+    try {
+      while (true) {
+        long target;
+        synchronized (lock) {
+          while (appended == committed() && !closed) {
+            waiting = true;
+            try {
+              lock.wait();
+            } finally {
+              waiting = false;
+            }
+          }
+          if (appended == committed())           // closed & all committed
+            return;
+          writer.flush();
+          target = appended;
+        }
+        if (syncable != null)
+          syncable.sync();                       // appends may proceed
+        synchronized (commits) {
+          committed = target;
+          commits.notifyAll();
+        }
+      }
+    } catch (Throwable t) {
+      synchronized (commits) {
+        failure = t;
+        commits.notifyAll();
+      }
+    }
+  }
+
+  private long committed() {
+    synchronized (commits) {
+      return committed;
+    }
+  }
+
+  private static void await(Future<Void> future) throws IOException {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /** Completes once the datum with a given sequence number is durable. */
+  private class Commit implements Future<Void> {
+    private final long seq;
+
+    Commit(long seq) { this.seq = seq; }
+
+    @Override public boolean cancel(boolean mayInterrupt) { return false; }
+    @Override public boolean isCancelled() { return false; }
+
+    @Override public boolean isDone() {
+      synchronized (commits) {
+        return committed >= seq || failure != null;
+      }
+    }
+
+    @Override public Void get()
+      throws InterruptedException, ExecutionException {
+      synchronized (commits) {
+        while (committed < seq && failure == null)
+          commits.wait();
+        return result();
+      }
+    }
+
+    @Override public Void get(long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+      long deadline = System.nanoTime() + unit.toNanos(timeout);
+      synchronized (commits) {
+        while (committed < seq && failure == null) {
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0)
+            throw new TimeoutException();
+          TimeUnit.NANOSECONDS.timedWait(commits, remaining);
+        }
+        return result();
+      }
+    }
+
+    private Void result() throws ExecutionException {
+      if (committed < seq)
+        throw new ExecutionException(failure);
+      return null;
+    }
+  }
+
+  /** A thread's encoding buffer. */
+  private static class Encoding {
+    final DataFileWriter.NonCopyingByteArrayOutputStream out =
+      new DataFileWriter.NonCopyingByteArrayOutputStream(256);
+    final BinaryEncoder encoder =
+      EncoderFactory.get().directBinaryEncoder(out, null);
+  }
+}
@@ -38,6 +38,7 @@ import org.apache.avro.io.BinaryEncoder;
 import org.apache.avro.io.DecoderFactory;
 import org.apache.avro.io.BinaryDecoder;
 import org.apache.avro.io.DatumReader;
+import org.apache.avro.util.Instrumentation;
 
 /** Streaming access to files written by {@link DataFileWriter}.  Use {@link
  * DataFileReader} for file-based input.
@@ -196,7 +197,17 @@ public class DataFileStream<D> implements Iterator<D>, Iterable<D>, Closeable {
         }
         if (hasNextBlock()) {
           block = nextRawBlock(block);
-          block.decompressUsing(codec);
+          Instrumentation metrics = Instrumentation.get();
+          if (metrics == null) {
+            block.decompressUsing(codec);
+          } else {
+            int size = block.getBlockSize();
+            long start = System.nanoTime();
+            block.decompressUsing(codec);
+            metrics.blockRead(codec.getName(), block.getNumEntries(),
+                              block.getBlockSize(), size,
+                              System.nanoTime() - start);
+          }
           blockBuffer = block.getAsByteBuffer();
           datumIn = DecoderFactory.get().binaryDecoder(
               blockBuffer.array(), blockBuffer.arrayOffset() +
@@ -248,6 +259,30 @@ public class DataFileStream<D> implements Iterator<D>, Iterable<D>, Closeable {
     return blockBuffer;
   }
 
+  /** Expert: Decode all entries of the next block into columns, without
+   * creating an object per entry.
+   * @param reuse a batch to reuse, or null.  It must have been created
+   * for this file's schema.
+   * @throws NoSuchElementException if no more blocks remain in the file.
+   * @throws IllegalStateException if some of the current block has already
+   * been read.
+   * @see RecordBatch */
+  public RecordBatch nextBatch(RecordBatch reuse) throws IOException {
+    if (!hasNext())
+      throw new NoSuchElementException();
+    if (blockRemaining != blockCount)
+      throw new IllegalStateException("Not at block start.");
+    if (reuse == null) {
+      reuse = new RecordBatch(getSchema());
+    } else if (!reuse.getSchema().equals(getSchema())) {
+      throw new IllegalArgumentException("Batch schema does not match file");
+    }
+    reuse.read(datumIn, (int) blockRemaining);
+    blockRemaining = 0;
+    blockFinished();
+    return reuse;
+  }
+
   /** Expert: Return the count of items in the current block. */
   public long getBlockCount() { return blockCount; }
 
@@ -30,6 +30,7 @@ import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -40,6 +41,7 @@ import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.io.BinaryEncoder;
 import org.apache.avro.io.DatumWriter;
 import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.util.Instrumentation;
 
 /** Stores in a file a sequence of data conforming to a schema.  The schema is
  * stored in the file with the data.  Each datum in a file is of the same
@@ -73,11 +75,17 @@ public class DataFileWriter<D> implements Closeable, Flushable {
 
   private boolean flushOnEveryBlock = true;
 
+  private List<Long> blockIndex;                // start of each block written
+
   /** Construct a writer, not yet open. */
   public DataFileWriter(DatumWriter<D> dout) {
     this.dout = dout;
   }
 
+  /** Construct a writer, not yet open, without a datum writer.  Datums may
+   * then only be added with {@link #appendEncoded(ByteBuffer)}. */
+  DataFileWriter() {}
+
   private void assertOpen() {
     if (!isOpen) throw new AvroRuntimeException("not open");
   }
@@ -225,9 +233,13 @@ public class DataFileWriter<D> implements Closeable, Flushable {
     this.out = new BufferedFileOutputStream(outs);
     EncoderFactory efactory = new EncoderFactory();
     this.vout = efactory.binaryEncoder(out, null);
-    dout.setSchema(schema);
-    buffer = new NonCopyingByteArrayOutputStream(
-        Math.min((int)(syncInterval * 1.25), Integer.MAX_VALUE/2 -1));
+    if (dout != null)
+      dout.setSchema(schema);
+    if (buffer == null)
+      buffer = new NonCopyingByteArrayOutputStream(
+          Math.min((int)(syncInterval * 1.25), Integer.MAX_VALUE/2 -1));
+    else
+      buffer.reset();
     this.bufOut = efactory.binaryEncoder(buffer, null);
     if (this.codec == null) {
       this.codec = CodecFactory.nullCodec().createInstance();
@@ -391,7 +403,18 @@ public class DataFileWriter<D> implements Closeable, Flushable {
       ByteBuffer uncompressed = buffer.getByteArrayAsByteBuffer();
       DataBlock block = new DataBlock(uncompressed, blockCount);
       block.setFlushOnWrite(flushOnEveryBlock);
-      block.compressUsing(codec);
+      Instrumentation metrics = Instrumentation.get();
+      if (metrics == null) {
+        block.compressUsing(codec);
+      } else {
+        int size = uncompressed.remaining();
+        long start = System.nanoTime();
+        block.compressUsing(codec);
+        metrics.blockWritten(codec.getName(), blockCount, size,
+                             block.getBlockSize(), System.nanoTime() - start);
+      }
+      if (blockIndex != null)
+        blockIndex.add(out.tell() + vout.bytesBuffered());
       block.writeBlockTo(vout, sync);
       buffer.reset();
       blockCount = 0;
@@ -438,6 +461,40 @@ public class DataFileWriter<D> implements Closeable, Flushable {
     }
   }
 
+  /** Record the position of each block subsequently written in a list. */
+  void setBlockIndex(List<Long> blockIndex) {
+    this.blockIndex = blockIndex;
+  }
+
+  /** Use a codec instance from an earlier writer, once it is closed. */
+  void setCodec(Codec codec) {
+    assertNotOpen();
+    this.codec = codec;
+    setMetaInternal(DataFileConstants.CODEC, codec.getName());
+  }
+
+  Codec getCodec() { return codec; }
+
+  /** Use the block buffer of an earlier writer, once it is closed. */
+  void setBlockBuffer(NonCopyingByteArrayOutputStream buffer) {
+    assertNotOpen();
+    this.buffer = buffer;
+  }
+
+  NonCopyingByteArrayOutputStream getBlockBuffer() { return buffer; }
+
+  /** Return the size of the file, including buffered data not yet part of a
+   * block. */
+  long getApproximateSize() {
+    return out.tell() + vout.bytesBuffered() + bufferInUse();
+  }
+
+  /** Return the stream this writes to if it is {@link Syncable}, or null. */
+  Syncable getSyncable() {
+    return underlyingStream instanceof Syncable
+      ? (Syncable) underlyingStream : null;
+  }
+
   /** Flush and close the file. */
   @Override
   public void close() throws IOException {
@@ -468,7 +525,7 @@ public class DataFileWriter<D> implements Closeable, Flushable {
     public long tell() { return position+count; }
   }
 
-  private static class NonCopyingByteArrayOutputStream extends ByteArrayOutputStream {
+  static class NonCopyingByteArrayOutputStream extends ByteArrayOutputStream {
     NonCopyingByteArrayOutputStream(int initialSize) {
       super(initialSize);
     }
@@ -78,8 +78,16 @@ class DeflateCodec extends Codec {
 
   @Override
   public ByteBuffer decompress(ByteBuffer data) throws IOException {
+    return decompress(data, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public ByteBuffer decompress(ByteBuffer data, int maxLength)
+    throws IOException {
     ByteArrayOutputStream baos = getOutputBuffer(data.remaining());
-    InflaterOutputStream ios = new InflaterOutputStream(baos, getInflater());
+    OutputStream out = maxLength == Integer.MAX_VALUE
+      ? baos : new LengthLimitedOutputStream(baos, maxLength);
+    InflaterOutputStream ios = new InflaterOutputStream(out, getInflater());
     writeAndClose(data, ios);
     ByteBuffer result = ByteBuffer.wrap(baos.toByteArray());
     return result;
@@ -0,0 +1,193 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.file;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DecoderFactory;
+
+/**
+ * Reads a data file while it is still being written, for example by a
+ * {@link DataFileWriter} that calls {@link DataFileWriter#sync()} or
+ * {@link DataFileWriter#flush()}.
+ *
+ * <p>Unlike {@link DataFileReader}, reaching the end of the file is not the
+ * end of the data: {@link #hasNext()} returns true once another complete
+ * block has been written, and {@link #await(long, TimeUnit)} waits, polling
+ * the file's length, until one has.  A block is only read once it and its
+ * trailing synchronization marker are entirely present, so partially
+ * written blocks are never seen.
+ *
+ * <p>The header is read once, when the reader is opened.  A reader may be
+ * reopened at the position returned by {@link #previousSync()} to resume
+ * where an earlier reader stopped.
+ */
+public class FollowingDataFileReader<D>
+  implements Iterator<D>, Iterable<D>, Closeable {
+
+  private static final int MAX_BLOCK_HEADER = 20; // two longs
+  private static final long DEFAULT_POLL_MILLIS = 100;
+
+  private final DataFileReader<D> reader;
+  private final RandomAccessFile file;
+  private final byte[] header = new byte[MAX_BLOCK_HEADER];
+  private BinaryDecoder headerIn;
+  private long pollMillis = DEFAULT_POLL_MILLIS;
+
+  private long blockStart;                       // start of the next block
+  private long blockEnd;                         // end of the current block
+  private long remaining;                        // entries left in block
+
+  /** Open a file and follow it from its first block. */
+  public FollowingDataFileReader(File file, DatumReader<D> reader)
+    throws IOException {
+    this(file, reader, -1);
+  }
+
+  /** Open a file and follow it from a position returned by {@link
+   * #previousSync()} or {@link DataFileWriter#sync()}. */
+  public FollowingDataFileReader(File file, DatumReader<D> reader,
+                                 long position) throws IOException {
+    this.reader = new DataFileReader<D>(file, reader);
+    this.file = new RandomAccessFile(file, "r");
+    this.blockStart = position < 0 ? this.reader.previousSync() : position;
+  }
+
+  /** Set how often {@link #await(long, TimeUnit)} checks for new data. */
+  public void setPollInterval(long interval, TimeUnit unit) {
+    this.pollMillis = Math.max(1, unit.toMillis(interval));
+  }
+
+  /** Return the schema of the file. */
+  public Schema getSchema() { return reader.getSchema(); }
+
+  /** Return the position of the block being read, or of the next block once
+   * the current one has been read entirely.  A reader opened at this
+   * position re-reads any entries already read from a partially read
+   * block. */
+  public long previousSync() { return blockStart; }
+
+  /** Return true if an entry can be read without waiting. */
+  @Override
+  public boolean hasNext() {
+    try {
+      return remaining > 0 || nextBlock();
+    } catch (IOException e) {
+      throw new AvroRuntimeException(e);
+    }
+  }
+
+  /** Wait until an entry can be read.
+   * @return true if an entry can be read, or false if the timeout elapsed */
+  public boolean await(long timeout, TimeUnit unit) throws IOException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (!(remaining > 0 || nextBlock())) {
+      long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+      if (left <= 0)
+        return false;
+      try {
+        Thread.sleep(Math.min(left, pollMillis));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+    }
+    return true;
+  }
+
+  /** Read the next entry.
+   * @throws NoSuchElementException if no complete entry is available */
+  @Override
+  public D next() {
+    try {
+      return next(null);
+    } catch (IOException e) {
+      throw new AvroRuntimeException(e);
+    }
+  }
+
+  /** Read the next entry, reusing an object if possible.
+   * @throws NoSuchElementException if no complete entry is available */
+  public D next(D reuse) throws IOException {
+    if (!(remaining > 0 || nextBlock()))
+      throw new NoSuchElementException();
+    D result = reader.next(reuse);
+    if (--remaining == 0)
+      blockStart = blockEnd;
+    return result;
+  }
+
+  /** If a complete block follows the current one, position the reader at
+   * it. */
+  private boolean nextBlock() throws IOException {
+    long length = file.length();
+    if (length <= blockStart)
+      return false;
+    file.seek(blockStart);
+    int n = (int) Math.min(MAX_BLOCK_HEADER, length - blockStart);
+    file.readFully(header, 0, n);
+    headerIn = DecoderFactory.get().binaryDecoder(header, 0, n, headerIn);
+    long count;
+    long size;
+    try {
+      count = headerIn.readLong();
+      size = headerIn.readLong();
+    } catch (EOFException e) {                    // header incomplete
+      return false;
+    }
+    int headerSize = n - headerIn.inputStream().available();
+    long end = blockStart + headerSize + size + DataFileConstants.SYNC_SIZE;
+    if (end > length)
+      return false;
+    reader.seek(blockStart);
+    if (count == 0 || !reader.hasNext()) {        // empty block
+      blockStart = end;
+      return nextBlock();
+    }
+    remaining = count;
+    blockEnd = end;
+    return true;
+  }
+
+  @Override
+  public void remove() { throw new UnsupportedOperationException(); }
+
+  @Override
+  public Iterator<D> iterator() { return this; }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      reader.close();
+    } finally {
+      file.close();
+    }
+  }
+}
@@ -0,0 +1,53 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.file;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/** Fails once more than a certain number of decompressed bytes are
+ * written. */
+class LengthLimitedOutputStream extends FilterOutputStream {
+
+  private final int maxLength;
+  /** Bytes written. */
+  private long length;
+
+  LengthLimitedOutputStream(OutputStream out, int maxLength) {
+    super(out);
+    this.maxLength = maxLength;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    check(1);
+    out.write(b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    check(len);
+    out.write(b, off, len);
+  }
+
+  private void check(int len) throws IOException {
+    length += len;
+    Codec.checkLength(length, maxLength);
+  }
+}
@@ -0,0 +1,236 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A {@link SeekableInput} that reads ahead of its caller in the background,
+ * for example to pass to {@link DataFileReader#DataFileReader(SeekableInput,
+ * org.apache.avro.io.DatumReader)} for large sequential scans.
+ *
+ * <p>Input is fetched in fixed-size chunks, keeping as many chunks in flight
+ * as fit in a memory budget.  Local files are read with positional reads
+ * from several threads, so that multiple requests are outstanding at once.
+ * Other inputs, such as those reading from a distributed file system, are
+ * read sequentially by a single background thread.  Seeking outside of the
+ * chunks already requested discards them and restarts reading ahead at the
+ * new position.
+ *
+ * <p>The length of the input is read once, when this is opened.  Instances
+ * are not thread-safe.
+ */
+public class ReadAheadInput implements SeekableInput {
+  /** The default size of each chunk read. */
+  public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+  /** The default number of bytes to read ahead. */
+  public static final int DEFAULT_BUDGET = 16 * DEFAULT_CHUNK_SIZE;
+
+  private static final int MAX_FILE_THREADS = 4;
+
+  /** A range of the input being read, or that has been read. */
+  private static class Chunk {
+    final long position;
+    final byte[] buffer;
+    final Future<Integer> length;
+    Chunk(long position, byte[] buffer, Future<Integer> length) {
+      this.position = position;
+      this.buffer = buffer;
+      this.length = length;
+    }
+  }
+
+  private final SeekableInput in;
+  private final FileChannel channel;
+  private final long length;
+  private final int chunkSize;
+  private final int maxChunks;
+  private final ExecutorService executor;
+  private final ArrayDeque<Chunk> chunks = new ArrayDeque<Chunk>();
+  private final List<byte[]> free = new ArrayList<byte[]>();
+  private long position;                         // of the next read
+  private long fetched;                          // end of requested chunks
+
+  /** Read ahead in a local file with the default chunk size and budget. */
+  public ReadAheadInput(File file) throws IOException {
+    this(new SeekableFileInput(file), DEFAULT_CHUNK_SIZE, DEFAULT_BUDGET);
+  }
+
+  /** Read ahead in an input with the default chunk size and budget. */
+  public ReadAheadInput(SeekableInput in) throws IOException {
+    this(in, DEFAULT_CHUNK_SIZE, DEFAULT_BUDGET);
+  }
+
+  /** Read ahead in an input.
+   * @param in the input, which must not be used directly once passed here
+   * @param chunkSize the number of bytes to request at once
+   * @param budget the number of bytes to buffer ahead of the caller */
+  public ReadAheadInput(SeekableInput in, int chunkSize, int budget)
+    throws IOException {
+    if (chunkSize <= 0)
+      throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+    this.in = in;
+    this.channel = in instanceof SeekableFileInput
+      ? ((SeekableFileInput) in).getChannel() : null;
+    this.length = in.length();
+    this.position = in.tell();
+    this.fetched = position;
+    this.chunkSize = chunkSize;
+    this.maxChunks = Math.max(1, budget / chunkSize);
+    int threads = channel != null ? Math.min(maxChunks, MAX_FILE_THREADS) : 1;
+    this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      @Override public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "avro-read-ahead");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  @Override
+  public void seek(long p) throws IOException {
+    position = p;
+  }
+
+  @Override
+  public long tell() throws IOException { return position; }
+
+  @Override
+  public long length() throws IOException { return length; }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0)
+      return 0;
+    if (position >= length)
+      return -1;
+    Chunk chunk = current();
+    int available = await(chunk) - (int) (position - chunk.position);
+    if (available <= 0)
+      return -1;                                 // input was truncated
+    int n = Math.min(len, available);
+    System.arraycopy(chunk.buffer, (int) (position - chunk.position),
+                     b, off, n);
+    position += n;
+    fill();
+    return n;
+  }
+
+  /** Return the chunk holding the current position, requesting it if
+   * required. */
+  private Chunk current() throws IOException {
+    while (!chunks.isEmpty()) {
+      Chunk head = chunks.peekFirst();
+      if (position < head.position)
+        break;
+      if (position < head.position + chunkSize) {
+        if (position < head.position + await(head))
+          return head;
+        break;                                   // short read, re-request
+      }
+      Chunk passed = chunks.removeFirst();
+      if (passed.length.isDone())
+        free.add(passed.buffer);                 // recycle if not in use
+    }
+    if (chunks.isEmpty() || chunks.peekFirst().position != position)
+      discard();
+    fill();
+    return chunks.peekFirst();
+  }
+
+  /** Drop all requested chunks and read ahead from the current position. */
+  private void discard() {
+    for (Chunk chunk : chunks)
+      chunk.length.cancel(false);
+    chunks.clear();                              // buffers may be in use
+    fetched = position;
+  }
+
+  /** Request chunks until the budget is used or the input is exhausted. */
+  private void fill() {
+    while (chunks.size() < maxChunks && fetched < length) {
+      final long start = fetched;
+      final byte[] buffer = free.isEmpty()
+        ? new byte[chunkSize] : free.remove(free.size() - 1);
+      Future<Integer> read = executor.submit(new Callable<Integer>() {
+        @Override public Integer call() throws IOException {
+          return channel != null
+            ? readChannel(start, buffer) : readInput(start, buffer);
+        }
+      });
+      chunks.addLast(new Chunk(start, buffer, read));
+      fetched += chunkSize;
+    }
+  }
+
+  private int readChannel(long start, byte[] buffer) throws IOException {
+    ByteBuffer dst = ByteBuffer.wrap(buffer);
+    while (dst.hasRemaining()) {
+      int n = channel.read(dst, start + dst.position());
+      if (n < 0)
+        break;
+    }
+    return dst.position();
+  }
+
+  private int readInput(long start, byte[] buffer) throws IOException {
+    in.seek(start);
+    int total = 0;
+    while (total < buffer.length) {
+      int n = in.read(buffer, total, buffer.length - total);
+      if (n < 0)
+        break;
+      total += n;
+    }
+    return total;
+  }
+
+  private static int await(Chunk chunk) throws IOException {
+    try {
+      return chunk.length.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException)
+        throw (IOException) cause;
+      throw new IOException(cause);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    executor.shutdownNow();
+    chunks.clear();
+    in.close();
+  }
+}
@@ -0,0 +1,382 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.file;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.Schema.Type;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.io.Decoder;
+
+/** Column-oriented storage for a batch of records, decoded directly from
+ * binary data without creating an object per record.  Each primitive,
+ * string, bytes, enum or fixed value reachable from the record schema
+ * through nested records gets its own column, named with the dot-separated
+ * path of field names that leads to it.  Values in unions of null and one
+ * other type are nullable.  Arrays, maps and other unions are skipped.
+ *
+ * <p>Columns are reused from batch to batch, and only grow when a batch has
+ * more records than any before it.  Values are in the layout of the schema
+ * the data was written with; no schema resolution is performed.
+ * @see DataFileStream#nextBatch(RecordBatch)
+ */
+public class RecordBatch {
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final Schema schema;
+  private final Node root;
+  private final Map<String,Column> columns =
+    new LinkedHashMap<String,Column>();
+  private int size;
+
+  /** Create a batch for records of the given schema. */
+  public RecordBatch(Schema schema) {
+    if (schema.getType() != Type.RECORD)
+      throw new AvroRuntimeException("Not a record schema: " + schema);
+    this.schema = schema;
+    this.root = build(schema, null, false);
+  }
+
+  /** The schema of records in this batch. */
+  public Schema getSchema() { return schema; }
+
+  /** The number of records in this batch. */
+  public int size() { return size; }
+
+  /** All columns, in schema order. */
+  public List<Column> getColumns() {
+    return Collections.unmodifiableList(new ArrayList<Column>(columns.values()));
+  }
+
+  /** Return the column with a dot-separated path, or null if there is no
+   * such column. */
+  public Column getColumn(String path) { return columns.get(path); }
+
+  /** Replace the contents of this batch with records read from binary
+   * data, such as a block returned by {@link DataFileStream#nextBlock()}. */
+  public void read(Decoder in, int count) throws IOException {
+    for (Column column : columns.values())
+      column.reset(count);
+    size = 0;
+    for (int row = 0; row < count; row++) {
+      root.read(in, row);
+      size++;
+    }
+  }
+
+  private Node build(Schema s, String path, boolean nullable) {
+    switch (s.getType()) {
+    case RECORD:
+      List<Field> fields = s.getFields();
+      Node[] children = new Node[fields.size()];
+      for (int i = 0; i < children.length; i++) {
+        Field f = fields.get(i);
+        String child = path == null ? f.name() : path + "." + f.name();
+        children[i] = build(f.schema(), child, nullable);
+      }
+      return new RecordNode(children);
+    case UNION:
+      List<Schema> branches = s.getTypes();
+      if (branches.size() == 2) {
+        int nullIndex = branches.get(0).getType() == Type.NULL ? 0
+          : branches.get(1).getType() == Type.NULL ? 1 : -1;
+        if (nullIndex >= 0)
+          return new NullableNode(nullIndex,
+              build(branches.get(1 - nullIndex), path, true));
+      }
+      return new SkipNode(s);
+    case NULL:
+      return new SkipNode(s);
+    case ARRAY: case MAP:
+      return new SkipNode(s);
+    case INT: case LONG: case ENUM:
+      return add(new LongColumn(path, s, nullable));
+    case FLOAT: case DOUBLE:
+      return add(new DoubleColumn(path, s, nullable));
+    case BOOLEAN:
+      return add(new BooleanColumn(path, s, nullable));
+    case STRING: case BYTES: case FIXED:
+      return add(new BytesColumn(path, s, nullable));
+    default:
+      throw new AvroRuntimeException("Unexpected schema: " + s);
+    }
+  }
+
+  private Column add(Column column) {
+    columns.put(column.getName(), column);
+    return column;
+  }
+
+  /** Decodes a value of one schema into columns. */
+  abstract static class Node {
+    abstract void read(Decoder in, int row) throws IOException;
+    abstract void setNull(int row);
+  }
+
+  private static class RecordNode extends Node {
+    private final Node[] children;
+    RecordNode(Node[] children) { this.children = children; }
+    @Override void read(Decoder in, int row) throws IOException {
+      for (Node child : children)
+        child.read(in, row);
+    }
+    @Override void setNull(int row) {
+      for (Node child : children)
+        child.setNull(row);
+    }
+  }
+
+  private static class NullableNode extends Node {
+    private final int nullIndex;
+    private final Node value;
+    NullableNode(int nullIndex, Node value) {
+      this.nullIndex = nullIndex;
+      this.value = value;
+    }
+    @Override void read(Decoder in, int row) throws IOException {
+      if (in.readIndex() == nullIndex)
+        value.setNull(row);
+      else
+        value.read(in, row);
+    }
+    @Override void setNull(int row) { value.setNull(row); }
+  }
+
+  private static class SkipNode extends Node {
+    private final Schema schema;
+    SkipNode(Schema schema) { this.schema = schema; }
+    @Override void read(Decoder in, int row) throws IOException {
+      GenericDatumReader.skip(schema, in);
+    }
+    @Override void setNull(int row) {}
+  }
+
+  /** Values of one leaf field for every record in a batch.  Arrays returned
+   * by subclasses may be longer than the batch. */
+  public abstract static class Column extends Node {
+    private final String name;
+    private final Schema schema;
+    private final boolean nullable;
+    private long[] nulls;
+
+    Column(String name, Schema schema, boolean nullable) {
+      this.name = name;
+      this.schema = schema;
+      this.nullable = nullable;
+    }
+
+    /** The dot-separated path of this column's field. */
+    public String getName() { return name; }
+
+    /** The schema of non-null values in this column. */
+    public Schema getSchema() { return schema; }
+
+    /** True if values in this column may be null. */
+    public boolean isNullable() { return nullable; }
+
+    /** True if the value for a record is null. */
+    public boolean isNull(int row) {
+      return nullable && (nulls[row >>> 6] & (1L << row)) != 0;
+    }
+
+    void reset(int rows) {
+      if (nullable) {
+        int words = (rows + 63) >>> 6;
+        if (nulls == null || nulls.length < words)
+          nulls = new long[words];
+        else
+          Arrays.fill(nulls, 0, words, 0L);
+      }
+    }
+
+    @Override void setNull(int row) {
+      nulls[row >>> 6] |= 1L << row;
+    }
+  }
+
+  /** Column of int, long and enum values.  Enum values are symbol
+   * ordinals. */
+  public static class LongColumn extends Column {
+    private final Type type;
+    private long[] values = new long[0];
+
+    LongColumn(String name, Schema schema, boolean nullable) {
+      super(name, schema, nullable);
+      this.type = schema.getType();
+    }
+
+    /** The value for a record. */
+    public long get(int row) { return values[row]; }
+
+    /** The backing array of values, indexed by record. */
+    public long[] getValues() { return values; }
+
+    @Override void reset(int rows) {
+      super.reset(rows);
+      if (values.length < rows)
+        values = new long[rows];
+    }
+
+    @Override void read(Decoder in, int row) throws IOException {
+      switch (type) {
+      case INT:  values[row] = in.readInt();  break;
+      case LONG: values[row] = in.readLong(); break;
+      default:   values[row] = in.readEnum(); break;
+      }
+    }
+
+    @Override void setNull(int row) {
+      super.setNull(row);
+      values[row] = 0;
+    }
+  }
+
+  /** Column of float and double values. */
+  public static class DoubleColumn extends Column {
+    private final boolean isFloat;
+    private double[] values = new double[0];
+
+    DoubleColumn(String name, Schema schema, boolean nullable) {
+      super(name, schema, nullable);
+      this.isFloat = schema.getType() == Type.FLOAT;
+    }
+
+    /** The value for a record. */
+    public double get(int row) { return values[row]; }
+
+    /** The backing array of values, indexed by record. */
+    public double[] getValues() { return values; }
+
+    @Override void reset(int rows) {
+      super.reset(rows);
+      if (values.length < rows)
+        values = new double[rows];
+    }
+
+    @Override void read(Decoder in, int row) throws IOException {
+      values[row] = isFloat ? in.readFloat() : in.readDouble();
+    }
+
+    @Override void setNull(int row) {
+      super.setNull(row);
+      values[row] = 0;
+    }
+  }
+
+  /** Column of boolean values. */
+  public static class BooleanColumn extends Column {
+    private boolean[] values = new boolean[0];
+
+    BooleanColumn(String name, Schema schema, boolean nullable) {
+      super(name, schema, nullable);
+    }
+
+    /** The value for a record. */
+    public boolean get(int row) { return values[row]; }
+
+    /** The backing array of values, indexed by record. */
+    public boolean[] getValues() { return values; }
+
+    @Override void reset(int rows) {
+      super.reset(rows);
+      if (values.length < rows)
+        values = new boolean[rows];
+    }
+
+    @Override void read(Decoder in, int row) throws IOException {
+      values[row] = in.readBoolean();
+    }
+
+    @Override void setNull(int row) {
+      super.setNull(row);
+      values[row] = false;
+    }
+  }
+
+  /** Column of string, bytes and fixed values, stored end to end in a
+   * single array.  The value for record <i>i</i> starts at
+   * <code>getOffsets()[i]</code> and ends before
+   * <code>getOffsets()[i+1]</code>.  Strings are UTF-8 encoded. */
+  public static class BytesColumn extends Column {
+    private final int fixedSize;
+    private byte[] data = new byte[0];
+    private int[] offsets = new int[1];
+
+    BytesColumn(String name, Schema schema, boolean nullable) {
+      super(name, schema, nullable);
+      this.fixedSize = schema.getType() == Type.FIXED
+        ? schema.getFixedSize() : -1;
+    }
+
+    /** The backing array of values. */
+    public byte[] getData() { return data; }
+
+    /** Start offsets of values in {@link #getData()}, indexed by record,
+     * followed by the end of the last value. */
+    public int[] getOffsets() { return offsets; }
+
+    /** The length in bytes of the value for a record. */
+    public int getLength(int row) { return offsets[row + 1] - offsets[row]; }
+
+    /** The value for a record, as a newly allocated string. */
+    public String getString(int row) {
+      return new String(data, offsets[row], getLength(row), UTF8);
+    }
+
+    @Override void reset(int rows) {
+      super.reset(rows);
+      if (offsets.length < rows + 1)
+        offsets = new int[rows + 1];
+      offsets[0] = 0;
+    }
+
+    @Override void read(Decoder in, int row) throws IOException {
+      int start = offsets[row];
+      int length = fixedSize >= 0 ? fixedSize : readLength(in);
+      if (data.length - start < length) {
+        byte[] grown = new byte[Math.max(data.length * 2, start + length)];
+        System.arraycopy(data, 0, grown, 0, start);
+        data = grown;
+      }
+      in.readFixed(data, start, length);
+      offsets[row + 1] = start + length;
+    }
+
+    private static int readLength(Decoder in) throws IOException {
+      long length = in.readLong();   // strings and bytes share this encoding
+      if (length < 0 || length > Integer.MAX_VALUE)
+        throw new AvroRuntimeException("Malformed data. Length is: " + length);
+      return (int) length;
+    }
+
+    @Override void setNull(int row) {
+      super.setNull(row);
+      offsets[row + 1] = offsets[row];
+    }
+  }
+}
@@ -0,0 +1,387 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.file;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileWriter.NonCopyingByteArrayOutputStream;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.EncoderFactory;
+
+/**
+ * Writes a sequence of data files, starting a new file when the current one
+ * reaches a configured size, record count or age.
+ *
+ * <p>The next file is created, and its header written, in the background
+ * while the current file is filled, and finished files are closed in the
+ * background, so that {@link #append(Object)} does not wait on either.  Each
+ * finished file is reported to the {@link Listener}, if any, once it has
+ * been closed.  Datums are encoded with a single encoder and buffer that are
+ * reused for every file, and the block buffer and codec of each closed file
+ * are reused by a later one.
+ *
+ * <p>Age is checked when datums are appended; callers that need files to be
+ * finished while idle may call {@link #roll()}.  Instances are not
+ * thread-safe.
+ */
+public class RollingDataFileWriter<D> implements Closeable, Flushable {
+
+  /** Names the files written. */
+  public interface FileNamer {
+    /** Return the file to write for a sequence number, starting at zero. */
+    File getFile(long sequence);
+  }
+
+  /** Notified when files are finished. */
+  public interface Listener {
+    /** Called, from a background thread, once a file has been closed. */
+    void rolled(RolledFile file);
+  }
+
+  /** Describes a finished file. */
+  public static class RolledFile {
+    private final File file;
+    private final long sequence;
+    private final long records;
+    private final List<Long> blocks;
+
+    RolledFile(File file, long sequence, long records, List<Long> blocks) {
+      this.file = file;
+      this.sequence = sequence;
+      this.records = records;
+      this.blocks = Collections.unmodifiableList(blocks);
+    }
+
+    /** Return the file written. */
+    public File getFile() { return file; }
+    /** Return the sequence number of the file. */
+    public long getSequence() { return sequence; }
+    /** Return the number of records in the file. */
+    public long getRecordCount() { return records; }
+    /** Return the position of each block in the file, as may be passed to
+     * {@link DataFileReader#seek(long)}. */
+    public List<Long> getBlockPositions() { return blocks; }
+  }
+
+  /** An open file. */
+  private class Output {
+    final File file;
+    final long sequence;
+    final List<Long> blocks = new ArrayList<Long>();
+    final DataFileWriter<D> writer;
+    long records;
+    long opened;
+
+    Output(long sequence) throws IOException {
+      this.sequence = sequence;
+      this.file = namer.getFile(sequence);
+      this.writer = new DataFileWriter<D>();       // given encoded datums
+      Codec reused = codecs.poll();
+      if (reused != null)
+        writer.setCodec(reused);
+      else if (codec != null)
+        writer.setCodec(codec);
+      NonCopyingByteArrayOutputStream blockBuffer = blockBuffers.poll();
+      if (blockBuffer != null)
+        writer.setBlockBuffer(blockBuffer);
+      writer.setSyncInterval(syncInterval);
+      for (Map.Entry<String, byte[]> m : meta.entrySet())
+        writer.setMeta(m.getKey(), m.getValue());
+      writer.setBlockIndex(blocks);
+      writer.create(schema, file);
+    }
+
+    /** Close the file and leave its codec and block buffer for later
+     * files. */
+    void close() throws IOException {
+      writer.close();
+      codecs.offer(writer.getCodec());
+      blockBuffers.offer(writer.getBlockBuffer());
+    }
+  }
+
+  private final Schema schema;
+  private final DatumWriter<D> dout;
+  private final FileNamer namer;
+  private final Map<String, byte[]> meta = new LinkedHashMap<String, byte[]>();
+  private CodecFactory codec;
+  private int syncInterval = DataFileConstants.DEFAULT_SYNC_INTERVAL;
+  private long maxBytes = Long.MAX_VALUE;
+  private long maxRecords = Long.MAX_VALUE;
+  private long maxMillis = Long.MAX_VALUE;
+  private Listener listener;
+
+  private final NonCopyingByteArrayOutputStream buffer =
+    new NonCopyingByteArrayOutputStream(256);
+  private final BinaryEncoder encoder =
+    EncoderFactory.get().directBinaryEncoder(buffer, null);
+  private ExecutorService preparer;               // creates next files
+  private ExecutorService closer;                 // closes finished files
+  private Output current;
+  private Future<Output> next;
+  private final List<Future<?>> closing = new ArrayList<Future<?>>();
+  private final Queue<Codec> codecs = new ConcurrentLinkedQueue<Codec>();
+  private final Queue<NonCopyingByteArrayOutputStream> blockBuffers =
+    new ConcurrentLinkedQueue<NonCopyingByteArrayOutputStream>();
+  private long nextSequence;
+  private boolean closed;
+
+  /** Construct a writer, not yet open.  No file is created until the first
+   * datum is appended. */
+  public RollingDataFileWriter(Schema schema, DatumWriter<D> dout,
+                               FileNamer namer) {
+    this.schema = schema;
+    this.dout = dout;
+    this.namer = namer;
+    dout.setSchema(schema);
+  }
+
+  private void assertNotOpen() {
+    if (preparer != null) throw new AvroRuntimeException("already open");
+  }
+
+  /** Configures the codec for each file. */
+  public RollingDataFileWriter<D> setCodec(CodecFactory codec) {
+    assertNotOpen();
+    this.codec = codec;
+    return this;
+  }
+
+  /** Set the synchronization interval for each file, in bytes.
+   * @see DataFileWriter#setSyncInterval(int) */
+  public RollingDataFileWriter<D> setSyncInterval(int syncInterval) {
+    assertNotOpen();
+    this.syncInterval = syncInterval;
+    return this;
+  }
+
+  /** Set a metadata property for each file. */
+  public RollingDataFileWriter<D> setMeta(String key, byte[] value) {
+    assertNotOpen();
+    meta.put(key, value);
+    return this;
+  }
+
+  /** Finish a file once it is approximately this many bytes long. */
+  public RollingDataFileWriter<D> setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+    return this;
+  }
+
+  /** Finish a file once it holds this many records. */
+  public RollingDataFileWriter<D> setMaxRecords(long maxRecords) {
+    this.maxRecords = maxRecords;
+    return this;
+  }
+
+  /** Finish a file once it has been open for this long. */
+  public RollingDataFileWriter<D> setMaxAge(long age, TimeUnit unit) {
+    this.maxMillis = unit.toMillis(age);
+    return this;
+  }
+
+  /** Set the listener notified as files are finished. */
+  public RollingDataFileWriter<D> setListener(Listener listener) {
+    this.listener = listener;
+    return this;
+  }
+
+  /** Append a datum to the current file, finishing it if it has reached a
+   * configured limit.
+   * @see DataFileWriter.AppendWriteException */
+  public void append(D datum) throws IOException {
+    if (closed)
+      throw new AvroRuntimeException("closed");
+    checkClosing();
+    if (preparer == null)
+      open();
+    else if (current == null)                     // last roll failed
+      advance();
+    buffer.reset();
+    try {
+      dout.write(datum, encoder);
+    } catch (IOException e) {
+      throw new DataFileWriter.AppendWriteException(e);
+    } catch (RuntimeException e) {
+      throw new DataFileWriter.AppendWriteException(e);
+    }
+    Output out = current;
+    out.writer.appendEncoded(buffer.getByteArrayAsByteBuffer());
+    out.records++;
+    if (out.records >= maxRecords
+        || out.writer.getApproximateSize() >= maxBytes
+        || System.currentTimeMillis() - out.opened >= maxMillis)
+      roll();
+  }
+
+  /** Finish the current file, if it holds any records.  Datums appended
+   * subsequently are written to the next file. */
+  public void roll() throws IOException {
+    if (current == null || current.records == 0)
+      return;
+    Output out = current;
+    current = null;                               // now owned by the closer
+    finish(out);
+    advance();
+  }
+
+  /** Make the file prepared in advance current, and start preparing the
+   * one after.  If it could not be prepared, it is prepared again, to be
+   * retried by the next append. */
+  private void advance() throws IOException {
+    try {
+      current = await(next);
+    } catch (IOException e) {
+      next = prepare(nextSequence);
+      throw e;
+    }
+    current.opened = System.currentTimeMillis();
+    next = prepare(++nextSequence);
+  }
+
+  /** Flush the current file. */
+  @Override
+  public void flush() throws IOException {
+    if (current != null)
+      current.writer.flush();
+  }
+
+  /** Finish the current file and wait for all files to be closed.  The file
+   * prepared in advance, if any, is deleted. */
+  @Override
+  public void close() throws IOException {
+    if (closed)
+      return;
+    closed = true;
+    if (preparer == null)
+      return;
+    if (current != null) {                        // null if last roll failed
+      if (current.records > 0) {
+        finish(current);
+      } else {
+        discard(current);
+      }
+      current = null;
+    }
+    final Future<Output> unused = next;
+    closing.add(closer.submit(new Callable<Void>() {
+      @Override public Void call() throws Exception {
+        discard(unused.get());
+        return null;
+      }
+    }));
+    preparer.shutdown();
+    closer.shutdown();
+    for (Future<?> f : closing)
+      await(f);
+    closing.clear();
+  }
+
+  private void open() throws IOException {
+    current = new Output(0);
+    current.opened = System.currentTimeMillis();
+    preparer = newExecutor("avro-rolling-writer-open");
+    closer = newExecutor("avro-rolling-writer-close");
+    nextSequence = 1;
+    next = prepare(nextSequence);
+  }
+
+  /** Files are prepared and closed by separate threads, so that preparing
+   * the next file never waits behind closing the last. */
+  private static ExecutorService newExecutor(final String name) {
+    return Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, name);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  private Future<Output> prepare(final long sequence) {
+    return preparer.submit(new Callable<Output>() {
+      @Override public Output call() throws IOException {
+        return new Output(sequence);
+      }
+    });
+  }
+
+  private void finish(final Output out) {
+    closing.add(closer.submit(new Callable<Void>() {
+      @Override public Void call() throws IOException {
+        out.close();
+        if (listener != null)
+          listener.rolled(new RolledFile(out.file, out.sequence, out.records,
+                                         out.blocks));
+        return null;
+      }
+    }));
+  }
+
+  private void discard(Output out) throws IOException {
+    out.close();
+    if (!out.file.delete())
+      throw new IOException("Could not delete " + out.file);
+  }
+
+  /** Rethrow any failure to close a finished file. */
+  private void checkClosing() throws IOException {
+    for (int i = closing.size() - 1; i >= 0; i--) {
+      Future<?> f = closing.get(i);
+      if (f.isDone()) {
+        closing.remove(i);
+        await(f);
+      }
+    }
+  }
+
+  private static <T> T await(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException)
+        throw (IOException) cause;
+      throw new IOException(cause);
+    }
+  }
+}
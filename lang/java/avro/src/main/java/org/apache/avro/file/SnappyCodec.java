@@ -55,8 +55,16 @@ class SnappyCodec extends Codec {
 
   @Override
   public ByteBuffer decompress(ByteBuffer in) throws IOException {
-    ByteBuffer out = ByteBuffer.allocate
-      (Snappy.uncompressedLength(in.array(),in.position(),in.remaining()-4));
+    return decompress(in, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public ByteBuffer decompress(ByteBuffer in, int maxLength)
+    throws IOException {
+    int length =
+      Snappy.uncompressedLength(in.array(),in.position(),in.remaining()-4);
+    checkLength(length, maxLength);               // before allocating
+    ByteBuffer out = ByteBuffer.allocate(length);
     int size = Snappy.uncompress(in.array(),in.position(),in.remaining()-4,
                                  out.array(), 0);
     out.limit(size);
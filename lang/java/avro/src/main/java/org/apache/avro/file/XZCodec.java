@@ -66,14 +66,22 @@ public class XZCodec extends Codec {
 
   @Override
   public ByteBuffer decompress(ByteBuffer data) throws IOException {
+    return decompress(data, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public ByteBuffer decompress(ByteBuffer data, int maxLength)
+    throws IOException {
     ByteArrayOutputStream baos = getOutputBuffer(data.remaining());
+    OutputStream out = maxLength == Integer.MAX_VALUE
+      ? baos : new LengthLimitedOutputStream(baos, maxLength);
     InputStream bytesIn = new ByteArrayInputStream(
       data.array(),
       data.arrayOffset() + data.position(),
       data.remaining());
     InputStream ios = new XZCompressorInputStream(bytesIn);
     try {
-      IOUtils.copy(ios, baos);
+      IOUtils.copy(ios, out);
     } finally {
       ios.close();
     }
@@ -119,6 +119,7 @@ public class GenericData {
       conversions.put(conversion.getLogicalTypeName(), conversion);
       conversionsByClass.put(type, conversions);
     }
+    unionCache.clear();                           // conversions affect unions
   }
 
   /**
@@ -174,7 +175,9 @@ public class GenericData {
    */
   public static class Record implements GenericRecord, Comparable<Record> {
     private final Schema schema;
-    private final Object[] values;
+    private Object[] values;
+    /** False when {@link #values} may also be used by another record. */
+    private boolean ownsValues = true;
     public Record(Schema schema) {
       if (schema == null || !Type.RECORD.equals(schema.getType()))
         throw new AvroRuntimeException("Not a record schema: "+schema);
@@ -194,21 +197,82 @@ public class GenericData {
         System.arraycopy(other.values, 0, values, 0, other.values.length);
       }
     }
+    private Record(Record other, GenericData data) {
+      schema = other.schema;
+      Object[] copies = null;
+      for (int i = 0; i < other.values.length; i++) {
+        Object value = other.values[i];
+        Object copy =
+          shareOrCopy(schema.getFields().get(i).schema(), value, data);
+        if (copy != value) {
+          if (copies == null)
+            copies = other.values.clone();
+          copies[i] = copy;
+        }
+      }
+      if (copies != null) {
+        values = copies;
+      } else {                                    // share until written
+        values = other.values;
+        other.ownsValues = false;
+        ownsValues = false;
+      }
+    }
+
+    /** Returns a copy of a record made with {@link GenericData#get()}.
+     * @see #copyOnWrite(Record, GenericData) */
+    public static Record copyOnWrite(Record other) {
+      return copyOnWrite(other, INSTANCE);
+    }
+
+    /** Returns a copy of a record that shares what it can with the original.
+     * Nested records and {@link Array}s are copied in the same way, and
+     * their field or element arrays are shared until either copy is
+     * modified.  Immutable values, such as strings, numbers, enum symbols
+     * and values converted by one of the data model's logical type
+     * conversions, are always shared, as are {@link Utf8} values and
+     * read-only bytes, which must then not be modified in place.  Maps and
+     * fixed values are deep-copied with the data model when the copy is
+     * made, since changes to them cannot be detected.  Neither record is
+     * modified by reading it, so both may be read concurrently.
+     * <p>This is a factory method rather than a constructor because {@link
+     * #Record(Record, boolean)} already makes shallow or deep copies. */
+    public static Record copyOnWrite(Record other, GenericData data) {
+      return new Record(other, data);
+    }
+
     @Override public Schema getSchema() { return schema; }
     @Override public void put(String key, Object value) {
       Schema.Field field = schema.getField(key);
       if (field == null)
         throw new AvroRuntimeException("Not a valid schema field: "+key);
 
-      values[field.pos()] = value;
+      put(field.pos(), value);
+    }
+    @Override public void put(int i, Object v) {
+      if (!ownsValues) {
+        values = values.clone();
+        ownsValues = true;
+      }
+      values[i] = v;
     }
-    @Override public void put(int i, Object v) { values[i] = v; }
     @Override public Object get(String key) {
       Field field = schema.getField(key);
       if (field == null) return null;
-      return values[field.pos()];
+      return get(field.pos());
     }
     @Override public Object get(int i) { return values[i]; }
+    private static boolean isImmutable(Object value) {
+      return value == null
+        || value instanceof String
+        || value instanceof Boolean
+        || value instanceof Integer
+        || value instanceof Long
+        || value instanceof Float
+        || value instanceof Double
+        || value instanceof GenericEnumSymbol
+        || value instanceof Enum;
+    }
     @Override public boolean equals(Object o) {
       if (o == this) return true;                 // identical object
       if (!(o instanceof Record)) return false;   // not a record
@@ -236,6 +300,8 @@ public class GenericData {
     private final Schema schema;
     private int size;
     private Object[] elements = EMPTY;
+    /** False when {@link #elements} may also be used by another array. */
+    private boolean ownsElements = true;
     public Array(int capacity, Schema schema) {
       if (schema == null || !Type.ARRAY.equals(schema.getType()))
         throw new AvroRuntimeException("Not an array schema: "+schema);
@@ -252,6 +318,35 @@ public class GenericData {
         addAll(c);
       }
     }
+    private Array(Array<T> other, GenericData data) {
+      schema = other.schema;
+      size = other.size;
+      Schema elementType = schema.getElementType();
+      Object[] copies = null;
+      for (int i = 0; i < size; i++) {
+        Object value = other.elements[i];
+        Object copy = shareOrCopy(elementType, value, data);
+        if (copy != value) {
+          if (copies == null)
+            copies = Arrays.copyOf(other.elements, size);
+          copies[i] = copy;
+        }
+      }
+      if (copies != null) {
+        elements = copies;
+      } else {                                    // share until modified
+        elements = other.elements;
+        other.ownsElements = false;
+        ownsElements = false;
+      }
+    }
+    /** Copies {@link #elements} if they may be shared with another array. */
+    private void own() {
+      if (!ownsElements) {
+        elements = elements.clone();
+        ownsElements = true;
+      }
+    }
     @Override
     public Schema getSchema() { return schema; }
     @Override public int size() { return size; }
@@ -273,6 +368,7 @@ public class GenericData {
       return (T)elements[i];
     }
     @Override public boolean add(T o) {
+      own();
       if (size == elements.length) {
         Object[] newElements = new Object[(size * 3)/2 + 1];
         System.arraycopy(elements, 0, newElements, 0, size);
@@ -285,6 +381,7 @@ public class GenericData {
       if (location > size || location < 0) {
         throw new IndexOutOfBoundsException("Index " + location + " out of bounds.");
       }
+      own();
       if (size == elements.length) {
         Object[] newElements = new Object[(size * 3)/2 + 1];
         System.arraycopy(elements, 0, newElements, 0, size);
@@ -297,6 +394,7 @@ public class GenericData {
     @Override public T set(int i, T o) {
       if (i >= size)
         throw new IndexOutOfBoundsException("Index " + i + " out of bounds.");
+      own();
       T response = (T)elements[i];
       elements[i] = o;
       return response;
@@ -304,6 +402,7 @@ public class GenericData {
     @Override public T remove(int i) {
       if (i >= size)
         throw new IndexOutOfBoundsException("Index " + i + " out of bounds.");
+      own();
       T result = (T)elements[i];
       --size;
       System.arraycopy(elements, i+1, elements, i, (size-i));
@@ -312,6 +411,8 @@ public class GenericData {
     }
     @Override
     public T peek() {
+      if (!ownsElements)                          // don't reuse shared values
+        return null;
       return (size < elements.length) ? (T)elements[size] : null;
     }
     @Override
@@ -320,6 +421,7 @@ public class GenericData {
     }
     @Override
     public void reverse() {
+      own();
       int left = 0;
       int right = elements.length - 1;
 
@@ -681,9 +783,74 @@ public class GenericData {
     return getField(record, name, pos);
   }
 
+  /** Branch indexes of a union, cached by {@link #resolveUnion}. */
+  private static class UnionBranches {
+    /** Index of the null branch, or -1 if the union has none. */
+    private final int nullIndex;
+    /** Index resolved for each datum class seen so far.  Classes are held
+     * weakly, so that caching does not pin their class loaders. */
+    private final Map<Class<?>, Integer> byClass =
+      new MapMaker().weakKeys().makeMap();
+
+    private UnionBranches(Schema union) {
+      Integer i = union.getIndexNamed(Type.NULL.getName());
+      this.nullIndex = (i == null) ? -1 : i;
+    }
+  }
+
+  private final Map<Schema, UnionBranches> unionCache
+    = new MapMaker().weakKeys().makeMap();
+
+  private UnionBranches getUnionBranches(Schema union) {
+    UnionBranches branches = unionCache.get(union);
+    if (branches == null) {
+      branches = new UnionBranches(union);
+      unionCache.put(union, branches);
+    }
+    return branches;
+  }
+
+  /** Returns the branch cached for a datum class in a union, or null. */
+  Integer getCachedBranch(Schema union, Class<?> c) {
+    UnionBranches branches = unionCache.get(union);
+    return branches == null ? null : branches.byClass.get(c);
+  }
+
   /** Return the index for a datum within a union.  Implemented with {@link
-   * Schema#getIndexNamed(String)} and {@link #getSchemaName(Object)}.*/
+   * Schema#getIndexNamed(String)} and {@link #getSchemaName(Object)}.  The
+   * index is cached per union by datum class when {@link
+   * #isClassResolvable(Object)} permits, so that repeated writes of the same
+   * class cost a single lookup. */
   public int resolveUnion(Schema union, Object datum) {
+    UnionBranches branches = getUnionBranches(union);
+    if (datum == null) {                          // [null, T] fast path
+      if (branches.nullIndex >= 0)
+        return branches.nullIndex;
+      throw new UnresolvedUnionException(union, datum);
+    }
+    Class<?> c = datum.getClass();
+    Integer cached = branches.byClass.get(c);
+    if (cached != null)
+      return cached;
+    int i = resolveUnionUncached(union, datum);
+    if (isClassResolvable(datum))
+      branches.byClass.put(c, i);
+    return i;
+  }
+
+  /** Returns true if the union branch of a datum is determined by its class
+   * alone, permitting {@link #resolveUnion(Schema,Object)} to cache it.  For
+   * GenericData itself, true except for {@link GenericContainer} instances,
+   * whose schema is carried by each instance.  Always false in subclasses,
+   * whose {@link #getSchemaName(Object)} may depend on a datum's value;
+   * those that name data by class alone may override this to enable the
+   * cache. */
+  protected boolean isClassResolvable(Object datum) {
+    return getClass() == GenericData.class
+      && !(datum instanceof GenericContainer);
+  }
+
+  private int resolveUnionUncached(Schema union, Object datum) {
     // if there is a logical type that works, use it first
     // this allows logical type concrete classes to overlap with supported ones
     // for example, a conversion could return a map
@@ -1016,30 +1183,70 @@ public class GenericData {
 
   private static final Schema STRINGS = Schema.create(Type.STRING);
 
+  /** Returns a value for a copy-on-write copy: the value itself when it may
+   * be shared, a copy-on-write copy of a record or array, and otherwise a
+   * deep copy that shares strings and read-only bytes. */
+  @SuppressWarnings("unchecked")
+  private static Object shareOrCopy(Schema schema, Object value,
+                                    GenericData data) {
+    if (Record.isImmutable(value))
+      return value;
+    if (value instanceof Record)
+      return new Record((Record) value, data);
+    if (value instanceof Array)
+      return new Array<Object>((Array<Object>) value, data);
+    return data.deepCopy(schema, value, true);
+  }
+
   /**
    * Makes a deep copy of a value given its schema.
    * @param schema the schema of the value to deep copy.
    * @param value the value to deep copy.
    * @return a deep copy of the given value.
    */
-  @SuppressWarnings({ "rawtypes", "unchecked" })
   public <T> T deepCopy(Schema schema, T value) {
+    return deepCopy(schema, value, false);
+  }
+
+  /**
+   * Makes a deep copy of a value given its schema, optionally sharing
+   * strings and bytes instead of copying them.  When sharing, {@link Utf8}
+   * values and read-only {@link ByteBuffer}s are not copied, so the caller
+   * must not modify them in either the copy or the original.  Records,
+   * arrays, maps and fixed values are always copied.  Values converted by
+   * one of this model's logical type conversions are treated as immutable
+   * and never copied.
+   * @param schema the schema of the value to deep copy.
+   * @param value the value to deep copy.
+   * @param share whether to share strings and read-only bytes.
+   * @return a deep copy of the given value.
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  public <T> T deepCopy(Schema schema, T value, boolean share) {
     if (value == null) {
       return null;
     }
+    LogicalType logicalType = schema.getLogicalType();
+    if (logicalType != null
+        && getConversionByClass(value.getClass(), logicalType) != null) {
+      return value;                               // converted: immutable
+    }
     switch (schema.getType()) {
       case ARRAY:
         List<Object> arrayValue = (List) value;
         List<Object> arrayCopy = new GenericData.Array<Object>(
             arrayValue.size(), schema);
         for (Object obj : arrayValue) {
-          arrayCopy.add(deepCopy(schema.getElementType(), obj));
+          arrayCopy.add(deepCopy(schema.getElementType(), obj, share));
         }
         return (T)arrayCopy;
       case BOOLEAN:
         return value; // immutable
       case BYTES:
         ByteBuffer byteBufferValue = (ByteBuffer) value;
+        if (share && byteBufferValue.isReadOnly()) {
+          return value;
+        }
         int start = byteBufferValue.position();
         int length = byteBufferValue.limit() - start;
         byte[] bytesCopy = new byte[length];
@@ -1063,8 +1270,8 @@ public class GenericData {
         Map<CharSequence, Object> mapCopy =
           new HashMap<CharSequence, Object>(mapValue.size());
         for (Map.Entry<CharSequence, Object> entry : mapValue.entrySet()) {
-          mapCopy.put((CharSequence)(deepCopy(STRINGS, entry.getKey())),
-              deepCopy(schema.getValueType(), entry.getValue()));
+          mapCopy.put((CharSequence)(deepCopy(STRINGS, entry.getKey(), share)),
+              deepCopy(schema.getValueType(), entry.getValue(), share));
         }
         return (T)mapCopy;
       case NULL:
@@ -1077,13 +1284,14 @@ public class GenericData {
           int pos = f.pos();
           String name = f.name();
           Object newValue = deepCopy(f.schema(),
-                                     getField(value, name, pos, oldState));
+                                     getField(value, name, pos, oldState),
+                                     share);
           setField(newRecord, name, pos, newValue, newState);
         }
         return (T)newRecord;
       case STRING:
         // Strings are immutable
-        if (value instanceof String) {
+        if (value instanceof String || (share && value instanceof Utf8)) {
           return (T)value;
         }
 
@@ -1097,7 +1305,7 @@ public class GenericData {
         return (T)new Utf8(value.toString());
       case UNION:
         return deepCopy(
-            schema.getTypes().get(resolveUnion(schema, value)), value);
+            schema.getTypes().get(resolveUnion(schema, value)), value, share);
       default:
         throw new AvroRuntimeException(
             "Deep copy failed for schema \"" + schema + "\" and value \"" +
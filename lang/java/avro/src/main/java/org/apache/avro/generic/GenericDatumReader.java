@@ -19,9 +19,9 @@ package org.apache.avro.generic;
 
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
 import java.nio.ByteBuffer;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
@@ -36,9 +36,12 @@ import org.apache.avro.io.DatumReader;
 import org.apache.avro.io.Decoder;
 import org.apache.avro.io.DecoderFactory;
 import org.apache.avro.io.ResolvingDecoder;
+import org.apache.avro.util.Instrumentation;
 import org.apache.avro.util.Utf8;
 import org.apache.avro.util.WeakIdentityHashMap;
 
+import com.google.common.collect.MapMaker;
+
 /** {@link DatumReader} for generic Java objects. */
 public class GenericDatumReader<D> implements DatumReader<D> {
   private final GenericData data;
@@ -114,7 +117,10 @@ public class GenericDatumReader<D> implements DatumReader<D> {
     throws IOException {
     Thread currThread = Thread.currentThread();
     ResolvingDecoder resolver;
+    Instrumentation metrics = Instrumentation.get();
     if (currThread == creator && creatorResolver != null) {
+      if (metrics != null)
+        metrics.resolverCacheHit(actual, expected);
       return creatorResolver;
     }
 
@@ -125,9 +131,14 @@ public class GenericDatumReader<D> implements DatumReader<D> {
     }
     resolver = cache.get(expected);
     if (resolver == null) {
+      long start = metrics == null ? 0 : System.nanoTime();
       resolver = DecoderFactory.get().resolvingDecoder(
           Schema.applyAliases(actual, expected), expected, null);
       cache.put(expected, resolver);
+      if (metrics != null)
+        metrics.resolverCacheMiss(actual, expected, System.nanoTime() - start);
+    } else if (metrics != null) {
+      metrics.resolverCacheHit(actual, expected);
     }
 
     if (currThread == creator){
@@ -140,10 +151,15 @@ public class GenericDatumReader<D> implements DatumReader<D> {
   @Override
   @SuppressWarnings("unchecked")
   public D read(D reuse, Decoder in) throws IOException {
+    Instrumentation metrics = Instrumentation.get();
+    long start = metrics == null ? -1 : Instrumentation.position(in);
     ResolvingDecoder resolver = getResolver(actual, expected);
     resolver.configure(in);
     D result = (D) read(reuse, expected, resolver);
     resolver.drain();
+    if (metrics != null)
+      metrics.datumRead(expected, Instrumentation.distance
+                        (start, Instrumentation.position(in)));
     return result;
   }
 
@@ -444,8 +460,8 @@ public class GenericDatumReader<D> implements DatumReader<D> {
     }
   }
 
-  private Map<Schema,Class> stringClassCache =
-    new IdentityHashMap<Schema,Class>();
+  private final Map<Schema,Class> stringClassCache =
+    new MapMaker().weakKeys().makeMap();
 
   private Class getStringClass(Schema s) {
     Class c = stringClassCache.get(s);
@@ -457,7 +473,7 @@ public class GenericDatumReader<D> implements DatumReader<D> {
   }
 
   private final Map<Class,Constructor> stringCtorCache =
-    new HashMap<Class,Constructor>();
+    new ConcurrentHashMap<Class,Constructor>();
 
   @SuppressWarnings("unchecked")
   protected Object newInstanceFromString(Class c, String s) {
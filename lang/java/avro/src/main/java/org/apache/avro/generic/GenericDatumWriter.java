@@ -33,6 +33,7 @@ import org.apache.avro.Schema;
 import org.apache.avro.Schema.Field;
 import org.apache.avro.io.DatumWriter;
 import org.apache.avro.io.Encoder;
+import org.apache.avro.util.Instrumentation;
 
 /** {@link DatumWriter} for generic Java objects. */
 public class GenericDatumWriter<D> implements DatumWriter<D> {
@@ -59,7 +60,15 @@ public class GenericDatumWriter<D> implements DatumWriter<D> {
   public void setSchema(Schema root) { this.root = root; }
 
   public void write(D datum, Encoder out) throws IOException {
+    Instrumentation metrics = Instrumentation.get();
+    if (metrics == null) {
+      write(root, datum, out);
+      return;
+    }
+    long start = Instrumentation.position(out);
     write(root, datum, out);
+    metrics.datumWritten(root, Instrumentation.distance
+                         (start, Instrumentation.position(out)));
   }
 
   /** Called to write data.*/
@@ -0,0 +1,321 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.generic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.List;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+
+/**
+ * Stores records of a single schema outside of the Java heap.
+ *
+ * <p>Records are kept in Avro binary encoding in a {@link ByteBuffer} that
+ * is normally direct or memory-mapped, with the offset of each field kept
+ * in a separate direct index.  Records are read through {@link View}, a
+ * flyweight {@link IndexedRecord} that decodes fields on demand, so the
+ * number of objects retained on the heap does not grow with the number of
+ * records stored.
+ *
+ * <p>The arena is a ring: when a new record does not fit, the oldest records
+ * are evicted to make room, and the {@link EvictionListener}, if any, is
+ * notified so that callers can drop their references to them.  Records are
+ * identified by a sequence number assigned by {@link #add(IndexedRecord)}.
+ *
+ * <p>Instances are not thread-safe.
+ */
+public class RecordArena {
+
+  /** Notified when records are evicted from an arena. */
+  public interface EvictionListener {
+    /** Called after the record with the given id has been evicted. */
+    void evicted(long id);
+  }
+
+  private final Schema schema;
+  private final int fieldCount;
+  private final ByteBuffer data;
+  private final IntBuffer index;
+  private final int maxRecords;
+  private final GenericDatumReader<Object>[] readers;
+  private final GenericDatumWriter<Object>[] writers;
+  private final Buffer buffer = new Buffer();
+  private final BinaryEncoder encoder;
+  private final int[] offsets;
+
+  private EvictionListener listener;
+  private long firstId;
+  private long nextId;
+  private int writePos;
+
+  /** Construct an arena backed by newly allocated direct memory.
+   * @param schema the schema of the records to store
+   * @param capacity the number of bytes of record data to hold
+   * @param maxRecords the number of records to hold */
+  public RecordArena(Schema schema, int capacity, int maxRecords) {
+    this(schema, ByteBuffer.allocateDirect(capacity), maxRecords,
+         GenericData.get());
+  }
+
+  /** Construct an arena that stores record data in the given buffer, for
+   * example a {@link java.nio.MappedByteBuffer}.  Data is stored between the
+   * buffer's position and limit.
+   * @param schema the schema of the records to store
+   * @param data the buffer holding the records
+   * @param maxRecords the number of records to hold
+   * @param model the data model used to read and write field values */
+  @SuppressWarnings("unchecked")
+  public RecordArena(Schema schema, ByteBuffer data, int maxRecords,
+                     GenericData model) {
+    if (schema.getType() != Schema.Type.RECORD)
+      throw new AvroRuntimeException("Not a record: " + schema);
+    if (maxRecords <= 0)
+      throw new IllegalArgumentException("maxRecords must be positive");
+    this.schema = schema;
+    this.data = data.slice();
+    List<Schema.Field> fields = schema.getFields();
+    this.fieldCount = fields.size();
+    long indexSize = (long) maxRecords * (fieldCount + 1) * 4;
+    if (indexSize > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("Index too large: " + indexSize);
+    this.index = ByteBuffer.allocateDirect((int) indexSize).asIntBuffer();
+    this.maxRecords = maxRecords;
+    this.readers = new GenericDatumReader[fieldCount];
+    this.writers = new GenericDatumWriter[fieldCount];
+    for (int i = 0; i < fieldCount; i++) {
+      Schema s = fields.get(i).schema();
+      readers[i] = new GenericDatumReader<Object>(s, s, model);
+      writers[i] = new GenericDatumWriter<Object>(s, model);
+    }
+    this.encoder = EncoderFactory.get().directBinaryEncoder(buffer, null);
+    this.offsets = new int[fieldCount + 1];
+  }
+
+  /** Return the schema of records in this arena. */
+  public Schema getSchema() { return schema; }
+
+  /** Return the number of bytes of record data this arena can hold. */
+  public int getCapacity() { return data.capacity(); }
+
+  /** Return the number of records currently held. */
+  public int size() { return (int) (nextId - firstId); }
+
+  /** Return the id of the oldest record held. */
+  public long getFirstId() { return firstId; }
+
+  /** Return the id that will be assigned to the next record added. */
+  public long getNextId() { return nextId; }
+
+  /** Return true if the record with the given id is still held. */
+  public boolean contains(long id) { return id >= firstId && id < nextId; }
+
+  /** Set the listener notified when records are evicted. */
+  public void setEvictionListener(EvictionListener listener) {
+    this.listener = listener;
+  }
+
+  /** Add a record, evicting the oldest records if required to make room.
+   * @return the id of the added record */
+  public long add(IndexedRecord record) throws IOException {
+    buffer.reset();
+    offsets[0] = 0;
+    for (int i = 0; i < fieldCount; i++) {
+      writers[i].write(record.get(i), encoder);
+      offsets[i + 1] = buffer.size();
+    }
+    int length = buffer.size();
+    if (length > data.capacity())
+      throw new AvroRuntimeException("Record of " + length
+                                     + " bytes exceeds arena capacity");
+
+    int pos = writePos;
+    if (pos + length > data.capacity()) {          // wrap to start
+      while (size() > 0 && start(firstId) > start(nextId - 1))
+        evictOldest();                             // evict wrapped tail
+      pos = 0;
+    }
+    while (size() > 0
+           && (size() == maxRecords || overlaps(firstId, pos, length)))
+      evictOldest();
+
+    ByteBuffer out = data.duplicate();
+    out.position(pos);
+    out.put(buffer.buffer(), 0, length);
+    int base = slot(nextId);
+    for (int i = 0; i <= fieldCount; i++)
+      index.put(base + i, pos + offsets[i]);
+    writePos = pos + length;
+    return nextId++;
+  }
+
+  /** Add all remaining records from a data file stream.  Records are read
+   * into a single reused instance before being added.
+   * @return the number of records added */
+  public <D> long load(DataFileStream<D> in) throws IOException {
+    long count = 0;
+    D record = null;
+    while (in.hasNext()) {
+      record = in.next(record);
+      add((IndexedRecord) record);
+      count++;
+    }
+    return count;
+  }
+
+  /** Evict the oldest record, if any.
+   * @return true if a record was evicted */
+  public boolean evictOldest() {
+    if (size() == 0)
+      return false;
+    long id = firstId++;
+    if (size() == 0)
+      writePos = 0;
+    if (listener != null)
+      listener.evicted(id);
+    return true;
+  }
+
+  /** Evict all records. */
+  public void clear() {
+    while (evictOldest()) {}
+  }
+
+  /** Return a view of the record with the given id. */
+  public View get(long id) {
+    return get(id, null);
+  }
+
+  /** Return a view of the record with the given id, reusing a view from a
+   * previous call if possible. */
+  public View get(long id, View reuse) {
+    if (!contains(id))
+      throw new AvroRuntimeException("No record with id " + id);
+    if (reuse == null || reuse.arena != this)
+      reuse = new View(this);
+    reuse.id = id;
+    return reuse;
+  }
+
+  private int slot(long id) {
+    return (int) (id % maxRecords) * (fieldCount + 1);
+  }
+
+  private int start(long id) { return index.get(slot(id)); }
+
+  private boolean overlaps(long id, int pos, int length) {
+    int base = slot(id);
+    return index.get(base) < pos + length
+      && index.get(base + fieldCount) > pos;
+  }
+
+  /** A read-only {@link IndexedRecord} whose field values are decoded from
+   * an arena when requested.  Views remain valid only while their record is
+   * held by the arena. */
+  public static class View implements IndexedRecord {
+    private final RecordArena arena;
+    private final ByteBuffer in;
+    private final InputStream input;
+    private BinaryDecoder decoder;
+    private long id;
+
+    private View(RecordArena arena) {
+      this.arena = arena;
+      this.in = arena.data.duplicate();
+      this.input = new Input(in);
+    }
+
+    /** Return the id of the record this views. */
+    public long getId() { return id; }
+
+    @Override public Schema getSchema() { return arena.schema; }
+
+    @Override
+    public Object get(int i) {
+      if (!arena.contains(id))
+        throw new AvroRuntimeException("Record " + id + " has been evicted");
+      int base = arena.slot(id);
+      in.limit(arena.index.get(base + i + 1));
+      in.position(arena.index.get(base + i));
+      decoder = DecoderFactory.get().directBinaryDecoder(input, decoder);
+      try {
+        return arena.readers[i].read(null, decoder);
+      } catch (IOException e) {
+        throw new AvroRuntimeException(e);
+      }
+    }
+
+    /** Return the value of a field given its name. */
+    public Object get(String name) {
+      Schema.Field field = arena.schema.getField(name);
+      if (field == null)
+        throw new AvroRuntimeException("Not a valid schema field: " + name);
+      return get(field.pos());
+    }
+
+    @Override
+    public void put(int i, Object v) {
+      throw new UnsupportedOperationException("Arena records are read-only");
+    }
+
+    @Override public boolean equals(Object o) {
+      if (o == this) return true;
+      if (!(o instanceof IndexedRecord)) return false;
+      IndexedRecord that = (IndexedRecord) o;
+      if (!arena.schema.equals(that.getSchema())) return false;
+      return GenericData.get().compare(this, that, arena.schema, true) == 0;
+    }
+    @Override public int hashCode() {
+      return GenericData.get().hashCode(this, arena.schema);
+    }
+    @Override public String toString() {
+      return GenericData.get().toString(this);
+    }
+  }
+
+  /** Reads the bytes between a buffer's position and limit. */
+  private static class Input extends InputStream {
+    private final ByteBuffer buf;
+    Input(ByteBuffer buf) { this.buf = buf; }
+    @Override public int read() {
+      return buf.hasRemaining() ? buf.get() & 0xff : -1;
+    }
+    @Override public int read(byte[] b, int off, int len) {
+      if (len == 0) return 0;
+      if (!buf.hasRemaining()) return -1;
+      len = Math.min(len, buf.remaining());
+      buf.get(b, off, len);
+      return len;
+    }
+    @Override public int available() { return buf.remaining(); }
+  }
+
+  /** Exposes the internal array of a {@link ByteArrayOutputStream}. */
+  private static class Buffer extends ByteArrayOutputStream {
+    byte[] buffer() { return buf; }
+  }
+}
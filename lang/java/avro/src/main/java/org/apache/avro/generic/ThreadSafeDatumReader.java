@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.generic;
+
+import java.io.IOException;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.ResolvingDecoder;
+import org.apache.avro.util.Instrumentation;
+
+/** A {@link DatumReader} whose writer's and reader's schemas are fixed when
+ * it is constructed, so that a single instance may be shared by any number
+ * of threads.  Schema resolution is performed once, by the constructor.
+ * Each call to {@link #read(Object,Decoder)} uses a new, inexpensive
+ * {@link ResolvingDecoder}, so no state is shared between calls.
+ *
+ * <p>Reading is delegated to a {@link GenericDatumReader}, which may be a
+ * subclass such as {@link org.apache.avro.specific.SpecificDatumReader}.
+ * That reader must not be modified after it is passed to this class.
+ */
+public class ThreadSafeDatumReader<D> implements DatumReader<D> {
+  private final GenericDatumReader<D> reader;
+  private final Schema actual;
+  private final Schema expected;
+  private final Object resolver;
+
+  /** Construct where the writer's and reader's schemas are the same. */
+  public ThreadSafeDatumReader(Schema schema, GenericData data) {
+    this(schema, schema, data);
+  }
+
+  /** Construct given writer's and reader's schema, using the {@link
+   * DatumReader} created by a {@link GenericData}. */
+  @SuppressWarnings("unchecked")
+  public ThreadSafeDatumReader(Schema writer, Schema reader, GenericData data) {
+    this((GenericDatumReader<D>) data.createDatumReader(writer, reader));
+  }
+
+  /** Construct using the schemas of a {@link GenericDatumReader}. */
+  public ThreadSafeDatumReader(GenericDatumReader<D> reader) {
+    this.reader = reader;
+    this.actual = reader.getSchema();
+    this.expected = reader.getExpected() != null
+      ? reader.getExpected() : actual;
+    if (actual == null)
+      throw new AvroRuntimeException("Writer's schema is not set");
+    try {
+      this.resolver =
+        ResolvingDecoder.resolve(Schema.applyAliases(actual, expected), expected);
+    } catch (IOException e) {
+      throw new AvroRuntimeException(e);
+    }
+  }
+
+  /** Return the writer's schema. */
+  public Schema getSchema() { return actual; }
+
+  /** Return the reader's schema. */
+  public Schema getExpected() { return expected; }
+
+  /** Schemas may not be changed.  For convenience, setting the schema this
+   * reader was constructed with is permitted and has no effect.
+   * @throws UnsupportedOperationException for any other schema */
+  @Override
+  public void setSchema(Schema schema) {
+    if (schema != actual && !actual.equals(schema))
+      throw new UnsupportedOperationException(
+          "Cannot change the schema of a ThreadSafeDatumReader");
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public D read(D reuse, Decoder in) throws IOException {
+    Instrumentation metrics = Instrumentation.get();
+    long start = metrics == null ? -1 : Instrumentation.position(in);
+    ResolvingDecoder resolving =
+      DecoderFactory.get().resolvingDecoder(resolver, in);
+    D result = (D) reader.read(reuse, expected, resolving);
+    resolving.drain();
+    if (metrics != null)
+      metrics.datumRead(expected, Instrumentation.distance
+                        (start, Instrumentation.position(in)));
+    return result;
+  }
+}
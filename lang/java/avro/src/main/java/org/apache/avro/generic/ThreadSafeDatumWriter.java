@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.generic;
+
+import java.io.IOException;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.util.Instrumentation;
+
+/** A {@link DatumWriter} whose schema is fixed when it is constructed, so
+ * that a single instance may be shared by any number of threads.
+ *
+ * <p>Writing is delegated to a {@link GenericDatumWriter}, which may be a
+ * subclass such as {@link org.apache.avro.specific.SpecificDatumWriter}.
+ * That writer must not be modified after it is passed to this class.
+ */
+public class ThreadSafeDatumWriter<D> implements DatumWriter<D> {
+  private final GenericDatumWriter<D> writer;
+  private final Schema root;
+
+  /** Construct using the {@link DatumWriter} created by a {@link
+   * GenericData}. */
+  @SuppressWarnings("unchecked")
+  public ThreadSafeDatumWriter(Schema root, GenericData data) {
+    this((GenericDatumWriter<D>) data.createDatumWriter(root), root);
+  }
+
+  /** Construct given a {@link GenericDatumWriter} and the schema to write
+   * with it. */
+  public ThreadSafeDatumWriter(GenericDatumWriter<D> writer, Schema root) {
+    this.writer = writer;
+    this.root = root;
+  }
+
+  /** Return the schema that data is written with. */
+  public Schema getSchema() { return root; }
+
+  /** Schemas may not be changed.  For convenience, setting the schema this
+   * writer was constructed with is permitted and has no effect.
+   * @throws UnsupportedOperationException for any other schema */
+  @Override
+  public void setSchema(Schema schema) {
+    if (schema != root && !root.equals(schema))
+      throw new UnsupportedOperationException(
+          "Cannot change the schema of a ThreadSafeDatumWriter");
+  }
+
+  @Override
+  public void write(D datum, Encoder out) throws IOException {
+    Instrumentation metrics = Instrumentation.get();
+    if (metrics == null) {
+      writer.write(root, datum, out);
+      return;
+    }
+    long start = Instrumentation.position(out);
+    writer.write(root, datum, out);
+    metrics.datumWritten(root, Instrumentation.distance
+                         (start, Instrumentation.position(out)));
+  }
+}
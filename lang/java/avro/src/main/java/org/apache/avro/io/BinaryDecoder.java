@@ -474,6 +474,15 @@ public class BinaryDecoder extends Decoder {
     }
   }
 
+  /**
+   * Returns the number of bytes this decoder has consumed from its input
+   * since it was created or last configured, or -1 if it does not count
+   * them.
+   */
+  public long bytesRead() {
+    return source.delivered - (limit - pos);
+  }
+
   /**
    * Returns an {@link java.io.InputStream} that is aware of any buffering that
    * may occur in this BinaryDecoder. Readers that need to interleave decoding
@@ -602,6 +611,9 @@ public class BinaryDecoder extends Decoder {
     // has a reference to it via inputStream(), bytes are not
     // lost
     protected BufferAccessor ba;
+    /** Bytes taken from the underlying input, whether into the decoder's
+     * buffer or directly. */
+    long delivered;
 
     protected ByteSource() {
     }
@@ -764,6 +776,7 @@ public class BinaryDecoder extends Decoder {
         long n = in.skip(length);
         if (n > 0) {
           length -= n;
+          delivered += n;
           continue;
         }
         // The inputStream contract is evil.
@@ -793,6 +806,7 @@ public class BinaryDecoder extends Decoder {
           long n = in.skip(length);
           if (n > 0) {
             leftToSkip -= n;
+            delivered += n;
             continue;
           }
           // The inputStream contract is evil.
@@ -828,6 +842,7 @@ public class BinaryDecoder extends Decoder {
         }
         len -= read;
         off += read;
+        delivered += read;
       }
     }
 
@@ -843,6 +858,7 @@ public class BinaryDecoder extends Decoder {
           }
           leftToCopy -= read;
           off += read;
+          delivered += read;
         }
       } catch (EOFException eof) {
         isEof = true;
@@ -853,7 +869,10 @@ public class BinaryDecoder extends Decoder {
     @Override
     public int read() throws IOException {
       if (ba.getLim() - ba.getPos() == 0) {
-        return in.read();
+        int result = in.read();
+        if (result >= 0)
+          delivered++;
+        return result;
       } else {
         int position = ba.getPos();
         int result = ba.getBuf()[position] & 0xff;
@@ -904,6 +923,7 @@ public class BinaryDecoder extends Decoder {
     @Override
     protected void attach(int bufferSize, BinaryDecoder decoder) {
       // buffer size is not used here, the byte[] source is the buffer.
+      delivered = this.max - this.position;
       decoder.buf = this.data;
       decoder.pos = this.position;
       decoder.minPos = this.position;
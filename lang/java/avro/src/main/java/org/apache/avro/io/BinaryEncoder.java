@@ -123,5 +123,12 @@ public abstract class BinaryEncoder extends Encoder {
    */
   public abstract int bytesBuffered();
 
+  /**
+   * Returns the number of bytes written to this encoder since it was created
+   * or last configured, including any still buffered, or -1 if this encoder
+   * does not count them.  Returns -1 by default.
+   */
+  public long bytesWritten() { return -1; }
+
 }
 
@@ -386,6 +386,13 @@ public class BlockingBinaryEncoder extends BufferedBinaryEncoder {
     return pos + super.bytesBuffered();
   }
 
+  /** Exact only when no array or map is being written, since the headers
+   * of blocks not yet complete are not counted. */
+  @Override
+  public long bytesWritten() {
+    return pos + super.bytesWritten();
+  }
+
   private void endBlockedValue() throws IOException {
     for (; ;) {
       assert check();
@@ -48,6 +48,7 @@ import org.apache.avro.AvroRuntimeException;
 public class BufferedBinaryEncoder extends BinaryEncoder {
   private byte[] buf;
   private int pos;
+  private long flushed;
   private ByteSink sink;
   private int bulkLimit;
 
@@ -69,6 +70,7 @@ public class BufferedBinaryEncoder extends BinaryEncoder {
     }
     this.sink = new OutputStreamSink(out);
     pos = 0;
+    flushed = 0;
     if (null == buf || buf.length != bufferSize) {
       buf = new byte[bufferSize];
     }
@@ -91,6 +93,7 @@ public class BufferedBinaryEncoder extends BinaryEncoder {
   private void flushBuffer() throws IOException {
     if (pos > 0) {
       sink.innerWrite(buf, 0, pos);
+      flushed += pos;
       pos = 0;
     }
   }
@@ -148,6 +151,7 @@ public class BufferedBinaryEncoder extends BinaryEncoder {
       //too big, write direct
       flushBuffer();
       sink.innerWrite(bytes, start, len);
+      flushed += len;
       return;
     }
     ensureBounds(len);
@@ -159,6 +163,7 @@ public class BufferedBinaryEncoder extends BinaryEncoder {
   public void writeFixed(ByteBuffer bytes) throws IOException {
     if (!bytes.hasArray() && bytes.remaining() > bulkLimit) {
       flushBuffer();
+      flushed += bytes.remaining();
       sink.innerWrite(bytes);                     // bypass the buffer
     } else {
       super.writeFixed(bytes);
@@ -182,6 +187,11 @@ public class BufferedBinaryEncoder extends BinaryEncoder {
     return pos;
   }
 
+  @Override
+  public long bytesWritten() {
+    return flushed + pos;
+  }
+
   /**
    * ByteSink abstracts the destination of written data from the core workings
    * of BinaryEncoder.
@@ -307,6 +307,24 @@ public class DecoderFactory {
     return new ResolvingDecoder(writer, reader, wrapped);
   }
 
+  /**
+   * Creates a {@link ResolvingDecoder} wrapping the Decoder provided, using a
+   * resolver previously returned by {@link ResolvingDecoder#resolve(Schema,
+   * Schema)}.  Since resolvers are immutable and expensive to build, one may
+   * be shared by many decoders.
+   *
+   * @param resolver
+   *          The resolver to use.
+   * @param wrapped
+   *          The Decoder to wrap.
+   * @return A ResolvingDecoder using <i>resolver</i> to read from <i>in</i>
+   * @throws IOException
+   */
+  public ResolvingDecoder resolvingDecoder(Object resolver, Decoder wrapped)
+      throws IOException {
+    return new ResolvingDecoder(resolver, wrapped);
+  }
+
   private static class DefaultDecoderFactory extends DecoderFactory {
     @Override
     public DecoderFactory configureDecoderBufferSize(int bufferSize) {
@@ -201,4 +201,10 @@ class DirectBinaryDecoder extends BinaryDecoder {
   public boolean isEnd() throws IOException {
     throw new UnsupportedOperationException();
   }
+
+  /** Reads are not counted, so always returns -1. */
+  @Override
+  public long bytesRead() {
+    return -1;
+  }
 }
@@ -39,6 +39,7 @@ import java.io.OutputStream;
  */
 public class DirectBinaryEncoder extends BinaryEncoder {
   private OutputStream out;
+  private long written;
   // the buffer is used for writing floats, doubles, and large longs.
   private final byte[] buf = new byte[12];
 
@@ -52,6 +53,7 @@ public class DirectBinaryEncoder extends BinaryEncoder {
   DirectBinaryEncoder configure(OutputStream out) {
     if (null == out) throw new NullPointerException("OutputStream cannot be null!");
     this.out = out;
+    this.written = 0;
     return this;
   }
 
@@ -63,6 +65,7 @@ public class DirectBinaryEncoder extends BinaryEncoder {
   @Override
   public void writeBoolean(boolean b) throws IOException {
     out.write(b ? 1 : 0);
+    written++;
   }
 
   /* buffering is slower for ints that encode to just 1 or
@@ -73,14 +76,17 @@ public class DirectBinaryEncoder extends BinaryEncoder {
     int val = (n << 1) ^ (n >> 31);
     if ((val & ~0x7F) == 0) {
       out.write(val);
+      written++;
       return;
     } else if ((val & ~0x3FFF) == 0) {
       out.write(0x80 | val);
       out.write(val >>> 7);
+      written += 2;
       return;
     }
     int len = BinaryData.encodeInt(n, buf, 0);
     out.write(buf, 0, len);
+    written += len;
   }
 
   /* buffering is slower for writeLong when the number is small enough to
@@ -93,19 +99,23 @@ public class DirectBinaryEncoder extends BinaryEncoder {
       int i = (int) val;
       while ((i & ~0x7F) != 0) {
         out.write((byte)((0x80 | i) & 0xFF));
+        written++;
         i >>>= 7;
       }
       out.write((byte)i);
+      written++;
       return;
     }
     int len = BinaryData.encodeLong(n, buf, 0);
     out.write(buf, 0, len);
+    written += len;
   }
 
   @Override
   public void writeFloat(float f) throws IOException {
     int len = BinaryData.encodeFloat(f, buf, 0);
     out.write(buf, 0, len);
+    written += len;
   }
 
   @Override
@@ -113,16 +123,19 @@ public class DirectBinaryEncoder extends BinaryEncoder {
     byte[] buf = new byte[8];
     int len = BinaryData.encodeDouble(d, buf, 0);
     out.write(buf, 0, len);
+    written += len;
   }
 
   @Override
   public void writeFixed(byte[] bytes, int start, int len) throws IOException {
     out.write(bytes, start, len);
+    written += len;
   }
 
   @Override
   protected void writeZero() throws IOException {
     out.write(0);
+    written++;
   }
 
   @Override
@@ -130,4 +143,9 @@ public class DirectBinaryEncoder extends BinaryEncoder {
     return 0;
   }
 
+  @Override
+  public long bytesWritten() {
+    return written;
+  }
+
 }
@@ -35,6 +35,23 @@ class FieldAccessReflect extends FieldAccess {
       } catch (Exception e) {
         throw new AvroRuntimeException("Could not instantiate custom Encoding");
       }
+    Class<?> c = field.getType();
+    if (c == int.class)
+      return new ReflectionBasedIntAccessor(field);
+    else if (c == long.class)
+      return new ReflectionBasedLongAccessor(field);
+    else if (c == byte.class)
+      return new ReflectionBasedByteAccessor(field);
+    else if (c == float.class)
+      return new ReflectionBasedFloatAccessor(field);
+    else if (c == double.class)
+      return new ReflectionBasedDoubleAccessor(field);
+    else if (c == char.class)
+      return new ReflectionBasedCharAccessor(field);
+    else if (c == boolean.class)
+      return new ReflectionBasedBooleanAccessor(field);
+    else if (c == short.class)
+      return new ReflectionBasedShortAccessor(field);
     return new ReflectionBasedAccessor(field);
   }
 
@@ -118,4 +135,195 @@ class FieldAccessReflect extends FieldAccess {
       return true;
     }
   }
+
+  /** Base for primitive fields, which are read and written without boxing
+   * through the typed {@link Field} accessors. */
+  private abstract class ReflectionBasedPrimitiveAccessor
+    extends ReflectionBasedAccessor {
+
+    ReflectionBasedPrimitiveAccessor(Field field) {
+      super(field);
+    }
+
+    @Override
+    protected void read(Object object, Decoder in) throws IOException {
+      try {
+        readPrimitive(object, in);
+      } catch (IllegalAccessException e) {
+        throw new AvroRuntimeException(e);
+      }
+    }
+
+    @Override
+    protected void write(Object object, Encoder out) throws IOException {
+      try {
+        writePrimitive(object, out);
+      } catch (IllegalAccessException e) {
+        throw new AvroRuntimeException(e);
+      }
+    }
+
+    protected abstract void readPrimitive(Object object, Decoder in)
+      throws IOException, IllegalAccessException;
+
+    protected abstract void writePrimitive(Object object, Encoder out)
+      throws IOException, IllegalAccessException;
+
+    @Override
+    protected boolean supportsIO() {
+      return true;
+    }
+  }
+
+  private final class ReflectionBasedIntAccessor
+    extends ReflectionBasedPrimitiveAccessor {
+    ReflectionBasedIntAccessor(Field field) {
+      super(field);
+    }
+
+    @Override
+    protected void readPrimitive(Object object, Decoder in)
+      throws IOException, IllegalAccessException {
+      field.setInt(object, in.readInt());
+    }
+
+    @Override
+    protected void writePrimitive(Object object, Encoder out)
+      throws IOException, IllegalAccessException {
+      out.writeInt(field.getInt(object));
+    }
+  }
+
+  private final class ReflectionBasedLongAccessor
+    extends ReflectionBasedPrimitiveAccessor {
+    ReflectionBasedLongAccessor(Field field) {
+      super(field);
+    }
+
+    @Override
+    protected void readPrimitive(Object object, Decoder in)
+      throws IOException, IllegalAccessException {
+      field.setLong(object, in.readLong());
+    }
+
+    @Override
+    protected void writePrimitive(Object object, Encoder out)
+      throws IOException, IllegalAccessException {
+      out.writeLong(field.getLong(object));
+    }
+  }
+
+  private final class ReflectionBasedByteAccessor
+    extends ReflectionBasedPrimitiveAccessor {
+    ReflectionBasedByteAccessor(Field field) {
+      super(field);
+    }
+
+    @Override
+    protected void readPrimitive(Object object, Decoder in)
+      throws IOException, IllegalAccessException {
+      field.setByte(object, (byte) in.readInt());
+    }
+
+    @Override
+    protected void writePrimitive(Object object, Encoder out)
+      throws IOException, IllegalAccessException {
+      out.writeInt(field.getByte(object));
+    }
+  }
+
+  private final class ReflectionBasedFloatAccessor
+    extends ReflectionBasedPrimitiveAccessor {
+    ReflectionBasedFloatAccessor(Field field) {
+      super(field);
+    }
+
+    @Override
+    protected void readPrimitive(Object object, Decoder in)
+      throws IOException, IllegalAccessException {
+      field.setFloat(object, in.readFloat());
+    }
+
+    @Override
+    protected void writePrimitive(Object object, Encoder out)
+      throws IOException, IllegalAccessException {
+      out.writeFloat(field.getFloat(object));
+    }
+  }
+
+  private final class ReflectionBasedDoubleAccessor
+    extends ReflectionBasedPrimitiveAccessor {
+    ReflectionBasedDoubleAccessor(Field field) {
+      super(field);
+    }
+
+    @Override
+    protected void readPrimitive(Object object, Decoder in)
+      throws IOException, IllegalAccessException {
+      field.setDouble(object, in.readDouble());
+    }
+
+    @Override
+    protected void writePrimitive(Object object, Encoder out)
+      throws IOException, IllegalAccessException {
+      out.writeDouble(field.getDouble(object));
+    }
+  }
+
+  private final class ReflectionBasedCharAccessor
+    extends ReflectionBasedPrimitiveAccessor {
+    ReflectionBasedCharAccessor(Field field) {
+      super(field);
+    }
+
+    @Override
+    protected void readPrimitive(Object object, Decoder in)
+      throws IOException, IllegalAccessException {
+      field.setChar(object, (char) in.readInt());
+    }
+
+    @Override
+    protected void writePrimitive(Object object, Encoder out)
+      throws IOException, IllegalAccessException {
+      out.writeInt(field.getChar(object));
+    }
+  }
+
+  private final class ReflectionBasedBooleanAccessor
+    extends ReflectionBasedPrimitiveAccessor {
+    ReflectionBasedBooleanAccessor(Field field) {
+      super(field);
+    }
+
+    @Override
+    protected void readPrimitive(Object object, Decoder in)
+      throws IOException, IllegalAccessException {
+      field.setBoolean(object, in.readBoolean());
+    }
+
+    @Override
+    protected void writePrimitive(Object object, Encoder out)
+      throws IOException, IllegalAccessException {
+      out.writeBoolean(field.getBoolean(object));
+    }
+  }
+
+  private final class ReflectionBasedShortAccessor
+    extends ReflectionBasedPrimitiveAccessor {
+    ReflectionBasedShortAccessor(Field field) {
+      super(field);
+    }
+
+    @Override
+    protected void readPrimitive(Object object, Decoder in)
+      throws IOException, IllegalAccessException {
+      field.setShort(object, (short) in.readInt());
+    }
+
+    @Override
+    protected void writePrimitive(Object object, Encoder out)
+      throws IOException, IllegalAccessException {
+      out.writeInt(field.getShort(object));
+    }
+  }
 }
@@ -179,6 +179,14 @@ public class ReflectData extends SpecificData {
     return getSchema(datum.getClass()).getType() == Schema.Type.RECORD;
   }
 
+  /** Maps are never resolved by class, as whether one is written as a map or
+   * as an array depends on its keys. */
+  @Override
+  protected boolean isClassResolvable(Object datum) {
+    return (getClass() == ReflectData.class || getClass() == AllowNull.class)
+      && !(datum instanceof Map) && isSchemaPerClass(datum);
+  }
+
   /**
    * Returns true also for non-string-keyed maps, which are written as an array
    * of key/value pair records.
@@ -253,9 +261,10 @@ public class ReflectData extends SpecificData {
 
     /**
      * Return the field accessors as an array, indexed by the field
-     * index of the given schema.
+     * index of the given schema.  Not synchronized: racing threads may each
+     * create an identical array, and the last one cached wins.
      */
-    private synchronized FieldAccessor[] getAccessorsFor(Schema schema) {
+    private FieldAccessor[] getAccessorsFor(Schema schema) {
       FieldAccessor[] result = bySchema.get(schema);
       if (result == null) {
         result = createAccessorsFor(schema);
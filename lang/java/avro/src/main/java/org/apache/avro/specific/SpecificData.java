@@ -25,6 +25,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.LinkedHashMap;
 import java.nio.ByteBuffer;
 import java.lang.reflect.Constructor;
@@ -38,6 +39,7 @@ import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.AvroTypeException;
 import org.apache.avro.Schema.Type;
 import org.apache.avro.util.ClassUtils;
+import org.apache.avro.generic.GenericContainer;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.io.DatumReader;
 import org.apache.avro.io.DatumWriter;
@@ -53,8 +55,8 @@ public class SpecificData extends GenericData {
 
   private static final Class<?>[] NO_ARG = new Class[]{};
   private static final Class<?>[] SCHEMA_ARG = new Class[]{Schema.class};
-  private static final Map<Class,Constructor> CTOR_CACHE =
-    new ConcurrentHashMap<Class,Constructor>();
+  private static final ConcurrentMap<Class,InstanceFactory> FACTORIES =
+    new ConcurrentHashMap<Class,InstanceFactory>();
 
   public static final String CLASS_PROP = "java-class";
   public static final String KEY_CLASS_PROP = "java-key-class";
@@ -293,6 +295,22 @@ public class SpecificData extends GenericData {
     return super.getSchemaName(datum);
   }
 
+  /** True for SpecificData itself when {@link #isSchemaPerClass(Object)}
+   * is, and false in subclasses unless they override this. */
+  @Override
+  protected boolean isClassResolvable(Object datum) {
+    return getClass() == SpecificData.class && isSchemaPerClass(datum);
+  }
+
+  /** Returns true if a datum's schema is determined by its class: generated
+   * records and fixeds carry a single schema per class, while other generic
+   * containers carry one per instance. */
+  protected static boolean isSchemaPerClass(Object datum) {
+    return datum instanceof SpecificRecord
+      || datum instanceof SpecificFixed
+      || !(datum instanceof GenericContainer);
+  }
+
   /** True iff a class should be serialized with toString(). */
   protected boolean isStringable(Class<?> c) {
     return stringableClasses.contains(c);
@@ -325,25 +343,61 @@ public class SpecificData extends GenericData {
     }
   }
 
-  /** Create an instance of a class.  If the class implements {@link
+  /** Creates instances of a class without reflection.  Generated classes
+   * register one with {@link #registerFactory(Class,InstanceFactory)}. */
+  public interface InstanceFactory<T> {
+    /** Return a new instance for the given schema. */
+    T newInstance(Schema schema);
+  }
+
+  /** Register the factory used by {@link #newInstance(Class,Schema)} to
+   * create instances of a class.  Called by generated classes when they are
+   * initialized. */
+  public static <T> void registerFactory(Class<T> c,
+                                         InstanceFactory<? extends T> factory) {
+    FACTORIES.put(c, factory);
+  }
+
+  /** Create an instance of a class.  If a factory was registered for the
+   * class, use it.  Otherwise, if the class implements {@link
    * SchemaConstructable}, call a constructor with a {@link
-   * org.apache.avro.Schema} parameter, otherwise use a no-arg constructor. */
-  @SuppressWarnings("unchecked")
+   * org.apache.avro.Schema} parameter, or else use a no-arg constructor. */
   public static Object newInstance(Class c, Schema s) {
-    boolean useSchema = SchemaConstructable.class.isAssignableFrom(c);
-    Object result;
-    try {
-      Constructor meth = (Constructor)CTOR_CACHE.get(c);
-      if (meth == null) {
-        meth = c.getDeclaredConstructor(useSchema ? SCHEMA_ARG : NO_ARG);
-        meth.setAccessible(true);
-        CTOR_CACHE.put(c, meth);
+    InstanceFactory factory = FACTORIES.get(c);
+    if (factory == null) {
+      // keep any factory registered meanwhile by the class's initializer
+      InstanceFactory created = new ConstructorFactory(c);
+      factory = FACTORIES.putIfAbsent(c, created);
+      if (factory == null)
+        factory = created;
+    }
+    return factory.newInstance(s);
+  }
+
+  /** Creates instances by calling a constructor reflectively. */
+  private static class ConstructorFactory implements InstanceFactory<Object> {
+    private final Constructor ctor;
+    private final boolean useSchema;
+
+    @SuppressWarnings("unchecked")
+    ConstructorFactory(Class c) {
+      this.useSchema = SchemaConstructable.class.isAssignableFrom(c);
+      try {
+        this.ctor = c.getDeclaredConstructor(useSchema ? SCHEMA_ARG : NO_ARG);
+        ctor.setAccessible(true);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public Object newInstance(Schema s) {
+      try {
+        return ctor.newInstance(useSchema ? new Object[]{s} : (Object[])null);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
       }
-      result = meth.newInstance(useSchema ? new Object[]{s} : (Object[])null);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
     }
-    return result;
   }
 
   @Override
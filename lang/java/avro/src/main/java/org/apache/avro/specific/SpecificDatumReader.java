@@ -24,6 +24,9 @@ import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.io.ResolvingDecoder;
 import org.apache.avro.util.ClassUtils;
 import java.io.IOException;
+import java.util.Map;
+
+import com.google.common.collect.MapMaker;
 
 /** {@link org.apache.avro.io.DatumReader DatumReader} for generated Java classes. */
 public class SpecificDatumReader<T> extends GenericDatumReader<T> {
@@ -101,6 +104,67 @@ public class SpecificDatumReader<T> extends GenericDatumReader<T> {
     }
   }
 
+  /** Result of comparing a writer's schema with a reader's schema.  Fields
+   * are final so that instances can be shared between threads. */
+  private static class SchemaCheck {
+    final Schema writer;
+    final Schema reader;
+    final boolean same;
+    SchemaCheck(Schema writer, Schema reader) {
+      this.writer = writer;
+      this.reader = reader;
+      this.same = writer == reader || (writer != null && writer.equals(reader));
+    }
+  }
+
+  private SchemaCheck schemaCheck;
+
+  /** Returns true if the writer's schema is the same as the reader's, so
+   * records may be read with {@link SpecificRecordBase#customDecode}. */
+  private boolean isSameSchemas() {
+    Schema writer = getSchema();
+    Schema reader = getExpected();
+    SchemaCheck check = schemaCheck;
+    if (check == null || check.writer != writer || check.reader != reader) {
+      check = new SchemaCheck(writer, reader);
+      schemaCheck = check;
+    }
+    return check.same;
+  }
+
+  /** Maps each record schema read to the class schema it matched. */
+  private final Map<Schema, Schema> customCodable =
+    new MapMaker().weakKeys().makeMap();
+
+  /** Returns true if a record schema is its class's schema, so that {@link
+   * SpecificRecordBase#customDecode} reads the fields it was written with. */
+  private boolean isClassSchema(Schema schema, SpecificRecordBase record) {
+    Schema classSchema = record.getSchema();
+    if (schema == classSchema || customCodable.get(schema) == classSchema)
+      return true;
+    if (!schema.equals(classSchema))
+      return false;
+    customCodable.put(schema, classSchema);
+    return true;
+  }
+
+  @Override
+  protected Object readRecord(Object old, Schema expected, ResolvingDecoder in)
+    throws IOException {
+    SpecificData data = getSpecificData();
+    if (isSameSchemas()) {
+      Object r = data.newRecord(old, expected);
+      if (r instanceof SpecificRecordBase
+          && ((SpecificRecordBase) r).hasCustomCoders()
+          && isClassSchema(expected, (SpecificRecordBase) r)) {
+        ((SpecificRecordBase) r).customDecode(in);
+        return r;
+      }
+      old = r;
+    }
+    return super.readRecord(old, expected, in);
+  }
+
   @Override
   protected void readField(Object r, Schema.Field f, Object oldDatum,
                            ResolvingDecoder in, Object state)
@@ -18,6 +18,7 @@
 package org.apache.avro.specific;
 
 import java.io.IOException;
+import java.util.Map;
 
 import org.apache.avro.Conversion;
 import org.apache.avro.LogicalType;
@@ -25,6 +26,8 @@ import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.io.Encoder;
 
+import com.google.common.collect.MapMaker;
+
 /** {@link org.apache.avro.io.DatumWriter DatumWriter} for generated Java classes. */
 public class SpecificDatumWriter<T> extends GenericDatumWriter<T> {
   public SpecificDatumWriter() {
@@ -52,6 +55,33 @@ public class SpecificDatumWriter<T> extends GenericDatumWriter<T> {
     return (SpecificData) getData();
   }
 
+  /** Maps each record schema written to the class schema it matched. */
+  private final Map<Schema, Schema> customCodable =
+    new MapMaker().weakKeys().makeMap();
+
+  @Override
+  protected void writeRecord(Schema schema, Object datum, Encoder out)
+    throws IOException {
+    if (datum instanceof SpecificRecordBase) {
+      SpecificRecordBase record = (SpecificRecordBase) datum;
+      if (record.hasCustomCoders() && isClassSchema(schema, record)) {
+        record.customEncode(out);
+        return;
+      }
+    }
+    super.writeRecord(schema, datum, out);
+  }
+
+  private boolean isClassSchema(Schema schema, SpecificRecordBase record) {
+    Schema classSchema = record.getSchema();
+    if (schema == classSchema || customCodable.get(schema) == classSchema)
+      return true;
+    if (!schema.equals(classSchema))
+      return false;
+    customCodable.put(schema, classSchema);
+    return true;
+  }
+
   @Override
   protected void writeEnum(Schema schema, Object datum, Encoder out)
     throws IOException {
@@ -25,6 +25,8 @@ import java.io.IOException;
 import org.apache.avro.Conversion;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.ResolvingDecoder;
 
 /** Base class for generated record classes. */
 public abstract class SpecificRecordBase
@@ -77,6 +79,24 @@ public abstract class SpecificRecordBase
     return SpecificData.get().toString(this);
   }
 
+  /** Returns true if this class implements {@link #customEncode(Encoder)}
+   * and {@link #customDecode(ResolvingDecoder)}, as generated by the
+   * compiler when custom coders are enabled. */
+  protected boolean hasCustomCoders() { return false; }
+
+  /** Writes this record directly, without walking its schema.  Called by
+   * {@link SpecificDatumWriter} only if {@link #hasCustomCoders()}. */
+  public void customEncode(Encoder out) throws IOException {
+    throw new UnsupportedOperationException();
+  }
+
+  /** Reads this record directly, without walking its schema.  Called by
+   * {@link SpecificDatumReader} only if {@link #hasCustomCoders()} and the
+   * writer's schema is the same as the reader's. */
+  public void customDecode(ResolvingDecoder in) throws IOException {
+    throw new UnsupportedOperationException();
+  }
+
   @Override
   public void writeExternal(ObjectOutput out)
     throws IOException {
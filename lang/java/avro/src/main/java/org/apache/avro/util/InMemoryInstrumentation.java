@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.avro.Schema;
+
+/** {@link Instrumentation} that accumulates totals in memory, for tests and
+ * for periodic publication elsewhere. */
+public class InMemoryInstrumentation extends Instrumentation {
+  private final AtomicLong blocksWritten = new AtomicLong();
+  private final AtomicLong recordsWritten = new AtomicLong();
+  private final AtomicLong bytesWritten = new AtomicLong();
+  private final AtomicLong compressedBytesWritten = new AtomicLong();
+  private final AtomicLong compressNanos = new AtomicLong();
+  private final AtomicLong blocksRead = new AtomicLong();
+  private final AtomicLong recordsRead = new AtomicLong();
+  private final AtomicLong bytesRead = new AtomicLong();
+  private final AtomicLong compressedBytesRead = new AtomicLong();
+  private final AtomicLong decompressNanos = new AtomicLong();
+  private final AtomicLong datumsWritten = new AtomicLong();
+  private final AtomicLong datumsRead = new AtomicLong();
+  private final AtomicLong datumBytesWritten = new AtomicLong();
+  private final AtomicLong datumBytesRead = new AtomicLong();
+  private final AtomicLong resolverHits = new AtomicLong();
+  private final AtomicLong resolverMisses = new AtomicLong();
+  private final AtomicLong resolveNanos = new AtomicLong();
+
+  @Override
+  public void blockWritten(String codec, long records, long bytes,
+                           long compressedBytes, long codecNanos) {
+    blocksWritten.incrementAndGet();
+    recordsWritten.addAndGet(records);
+    bytesWritten.addAndGet(bytes);
+    compressedBytesWritten.addAndGet(compressedBytes);
+    compressNanos.addAndGet(codecNanos);
+  }
+
+  @Override
+  public void blockRead(String codec, long records, long bytes,
+                        long compressedBytes, long codecNanos) {
+    blocksRead.incrementAndGet();
+    recordsRead.addAndGet(records);
+    bytesRead.addAndGet(bytes);
+    compressedBytesRead.addAndGet(compressedBytes);
+    decompressNanos.addAndGet(codecNanos);
+  }
+
+  @Override
+  public void datumWritten(Schema schema, long bytes) {
+    datumsWritten.incrementAndGet();
+    if (bytes > 0)
+      datumBytesWritten.addAndGet(bytes);
+  }
+
+  @Override
+  public void datumRead(Schema schema, long bytes) {
+    datumsRead.incrementAndGet();
+    if (bytes > 0)
+      datumBytesRead.addAndGet(bytes);
+  }
+
+  @Override
+  public void resolverCacheHit(Schema writer, Schema reader) {
+    resolverHits.incrementAndGet();
+  }
+
+  @Override
+  public void resolverCacheMiss(Schema writer, Schema reader,
+                                long resolveNanos) {
+    resolverMisses.incrementAndGet();
+    this.resolveNanos.addAndGet(resolveNanos);
+  }
+
+  /** Number of data file blocks written. */
+  public long getBlocksWritten() { return blocksWritten.get(); }
+  /** Number of records in data file blocks written. */
+  public long getRecordsWritten() { return recordsWritten.get(); }
+  /** Uncompressed size of data file blocks written. */
+  public long getBytesWritten() { return bytesWritten.get(); }
+  /** Compressed size of data file blocks written. */
+  public long getCompressedBytesWritten() {
+    return compressedBytesWritten.get();
+  }
+  /** Time spent compressing data file blocks, in nanoseconds. */
+  public long getCompressNanos() { return compressNanos.get(); }
+
+  /** Number of data file blocks read. */
+  public long getBlocksRead() { return blocksRead.get(); }
+  /** Number of records in data file blocks read. */
+  public long getRecordsRead() { return recordsRead.get(); }
+  /** Uncompressed size of data file blocks read. */
+  public long getBytesRead() { return bytesRead.get(); }
+  /** Compressed size of data file blocks read. */
+  public long getCompressedBytesRead() { return compressedBytesRead.get(); }
+  /** Time spent decompressing data file blocks, in nanoseconds. */
+  public long getDecompressNanos() { return decompressNanos.get(); }
+
+  /** Ratio of compressed to uncompressed size of blocks written, or 1.0 if
+   * nothing has been written. */
+  public double getWriteCompressionRatio() {
+    long bytes = bytesWritten.get();
+    return bytes == 0 ? 1.0 : (double) compressedBytesWritten.get() / bytes;
+  }
+
+  /** Number of datums written by datum writers. */
+  public long getDatumsWritten() { return datumsWritten.get(); }
+  /** Number of datums read by datum readers. */
+  public long getDatumsRead() { return datumsRead.get(); }
+  /** Bytes written by datum writers, over those whose encoders count them. */
+  public long getDatumBytesWritten() { return datumBytesWritten.get(); }
+  /** Bytes read by datum readers, over those whose decoders count them. */
+  public long getDatumBytesRead() { return datumBytesRead.get(); }
+
+  /** Number of schema resolutions satisfied from a cache. */
+  public long getResolverCacheHits() { return resolverHits.get(); }
+  /** Number of schema resolutions that were computed. */
+  public long getResolverCacheMisses() { return resolverMisses.get(); }
+  /** Time spent resolving schemas, in nanoseconds. */
+  public long getResolveNanos() { return resolveNanos.get(); }
+
+  /** Reset all totals to zero. */
+  public void reset() {
+    for (AtomicLong counter : new AtomicLong[] {
+        blocksWritten, recordsWritten, bytesWritten, compressedBytesWritten,
+        compressNanos, blocksRead, recordsRead, bytesRead,
+        compressedBytesRead, decompressNanos, datumsWritten, datumsRead,
+        datumBytesWritten, datumBytesRead, resolverHits, resolverMisses,
+        resolveNanos })
+      counter.set(0);
+  }
+}
@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.util;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.Encoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Receives measurements from data files, datum readers and writers.
+ *
+ * <p>No instrumentation is installed by default, in which case {@link #get()}
+ * returns null and callers skip all measurement, including timing.  An
+ * implementation may be installed with {@link #set(Instrumentation)} or by
+ * naming its class in the {@value #CLASS_PROP} system property, and may
+ * publish what it receives to JMX or any other metrics registry.  Methods
+ * may be called concurrently from many threads and should return quickly.
+ *
+ * <p>All methods do nothing by default, so that implementations need only
+ * override those they are interested in.
+ *
+ * @see InMemoryInstrumentation
+ */
+public abstract class Instrumentation {
+
+  /** System property naming an implementation to install at startup. */
+  public static final String CLASS_PROP = "org.apache.avro.instrumentation";
+
+  private static final Logger LOG =
+    LoggerFactory.getLogger(Instrumentation.class);
+
+  private static volatile Instrumentation instance;
+
+  static {
+    String name = System.getProperty(CLASS_PROP);
+    if (name != null)
+      instance = load(name);
+  }
+
+  /** Instantiates the named implementation.  Logs a warning and returns
+   * null if it cannot, so that a bad {@value #CLASS_PROP} setting disables
+   * instrumentation rather than preventing Avro from loading. */
+  static Instrumentation load(String name) {
+    try {
+      return (Instrumentation) ClassUtils.forName(name).newInstance();
+    } catch (Exception e) {
+      LOG.warn("Cannot install instrumentation " + name
+               + ", continuing without", e);
+    } catch (LinkageError e) {
+      LOG.warn("Cannot install instrumentation " + name
+               + ", continuing without", e);
+    }
+    return null;
+  }
+
+  /** Return the installed instrumentation, or null if none is installed. */
+  public static Instrumentation get() { return instance; }
+
+  /** Install instrumentation, replacing any previously installed.  Pass
+   * null to disable instrumentation. */
+  public static void set(Instrumentation instrumentation) {
+    instance = instrumentation;
+  }
+
+  /** Called after a block has been compressed and written to a data file.
+   * @param codec the name of the codec used
+   * @param records the number of records in the block
+   * @param bytes the size of the block before compression
+   * @param compressedBytes the size of the block after compression
+   * @param codecNanos the time spent compressing the block */
+  public void blockWritten(String codec, long records, long bytes,
+                           long compressedBytes, long codecNanos) {}
+
+  /** Called after a block has been read from a data file and decompressed.
+   * @param codec the name of the codec used
+   * @param records the number of records in the block
+   * @param bytes the size of the block after decompression
+   * @param compressedBytes the size of the block as stored
+   * @param codecNanos the time spent decompressing the block */
+  public void blockRead(String codec, long records, long bytes,
+                        long compressedBytes, long codecNanos) {}
+
+  /** Called after a datum has been written by a datum writer.
+   * @param schema the schema the datum was written with
+   * @param bytes the size of the datum as written, or -1 if the encoder
+   * does not count the bytes it writes */
+  public void datumWritten(Schema schema, long bytes) {}
+
+  /** Called after a datum has been read by a datum reader.
+   * @param schema the schema the datum was read with
+   * @param bytes the size of the datum as read, or -1 if the decoder does
+   * not count the bytes it reads */
+  public void datumRead(Schema schema, long bytes) {}
+
+  /** Returns the number of bytes written so far by an encoder, or -1 if it
+   * is not a {@link BinaryEncoder} or does not count them.  Callers
+   * subtract two such positions to find the size of what they wrote. */
+  public static long position(Encoder out) {
+    return out instanceof BinaryEncoder
+      ? ((BinaryEncoder) out).bytesWritten() : -1;
+  }
+
+  /** Returns the number of bytes read so far by a decoder, or -1 if it is
+   * not a {@link BinaryDecoder} or does not count them. */
+  public static long position(Decoder in) {
+    return in instanceof BinaryDecoder ? ((BinaryDecoder) in).bytesRead() : -1;
+  }
+
+  /** Returns the number of bytes between two positions, or -1 if either is
+   * unknown. */
+  public static long distance(long start, long end) {
+    return start < 0 || end < 0 ? -1 : end - start;
+  }
+
+  /** Called when a datum reader finds a cached resolver for a pair of
+   * schemas. */
+  public void resolverCacheHit(Schema writer, Schema reader) {}
+
+  /** Called when a datum reader must resolve a pair of schemas.
+   * @param resolveNanos the time spent resolving the schemas */
+  public void resolverCacheMiss(Schema writer, Schema reader,
+                                long resolveNanos) {}
+}
@@ -24,6 +24,8 @@ import java.util.Set;
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Field;
 import org.apache.avro.Schema.Type;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.specific.SpecificData;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -61,6 +63,19 @@ public class RecordBuilderBaseTest {
     }
   }
 
+  @Test
+  public void testDefaultsPerDataModel() {
+    Schema schema = Schema.createRecord("R", null, null, false);
+    schema.setFields(Arrays.asList(
+        new Field("f", Schema.create(Type.INT), null, 1)));
+    RecordBuilderBase.Defaults generic =
+        RecordBuilderBase.getDefaults(schema, GenericData.get());
+    Assert.assertNotSame(generic,
+        RecordBuilderBase.getDefaults(schema, SpecificData.get()));
+    Assert.assertSame(generic,
+        RecordBuilderBase.getDefaults(schema, GenericData.get()));
+  }
+
   @Test
   public void testIsValidValueWithNullField() {
     // Verify that null is a valid value for null fields:
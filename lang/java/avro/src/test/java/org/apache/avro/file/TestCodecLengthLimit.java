@@ -0,0 +1,48 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestCodecLengthLimit {
+  private static final int LENGTH = 100 * 1024;
+  private static final String[] CODECS =
+    { "null", "deflate", "snappy", "xz", "bzip2" };
+
+  @Test
+  public void testLimit() throws IOException {
+    for (String name : CODECS) {
+      Codec codec = CodecFactory.fromString(name).createInstance();
+      ByteBuffer compressed = codec.compress(ByteBuffer.wrap(new byte[LENGTH]));
+      Assert.assertEquals(name, LENGTH,
+          codec.decompress(compressed.duplicate(), LENGTH).remaining());
+      try {
+        codec.decompress(compressed.duplicate(), LENGTH - 1);
+        Assert.fail(name + " exceeded its limit");
+      } catch (IOException e) {
+        Assert.assertTrue(name, e.getMessage().contains("exceeds"));
+      }
+      Assert.assertEquals(name, LENGTH,             // codec is reusable
+          codec.decompress(compressed.duplicate()).remaining());
+    }
+  }
+}
@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestConcurrentDataFileWriter {
+  private static final Schema SCHEMA = Schema.create(Schema.Type.LONG);
+  private static final int THREADS = 8;
+  private static final int COUNT = 2000;
+
+  /** Counts syncs and fails once asked to. */
+  private static class SyncCountingStream extends ByteArrayOutputStream
+    implements Syncable {
+    final AtomicInteger syncs = new AtomicInteger();
+    volatile boolean fail;
+    @Override public void sync() throws IOException {
+      if (fail)
+        throw new IOException("Sync failed");
+      syncs.incrementAndGet();
+    }
+  }
+
+  @Test
+  public void testConcurrentAppends() throws Exception {
+    SyncCountingStream out = new SyncCountingStream();
+    final ConcurrentDataFileWriter<Object> writer =
+      new ConcurrentDataFileWriter<Object>(
+          new DataFileWriter<Object>(new GenericDatumWriter<Object>(SCHEMA))
+            .create(SCHEMA, out),
+          new GenericDatumWriter<Object>(SCHEMA));
+
+    final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    final List<Throwable> errors = new ArrayList<Throwable>();
+    Thread[] threads = new Thread[THREADS];
+    for (int t = 0; t < THREADS; t++) {
+      final long base = (long) t * COUNT;
+      threads[t] = new Thread() {
+        @Override public void run() {
+          try {
+            List<Future<Void>> mine = new ArrayList<Future<Void>>();
+            for (long i = 0; i < COUNT; i++)
+              mine.add(writer.append(base + i));
+            synchronized (futures) { futures.addAll(mine); }
+          } catch (Throwable e) {
+            synchronized (errors) { errors.add(e); }
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads)
+      thread.join();
+    Assert.assertTrue(errors.toString(), errors.isEmpty());
+
+    for (Future<Void> future : futures)
+      future.get();
+    int syncs = out.syncs.get();
+    Assert.assertTrue(syncs >= 1);
+    Assert.assertTrue("Syncs should be grouped", syncs < THREADS * COUNT);
+    writer.close();
+
+    DataFileStream<Object> in = new DataFileStream<Object>(
+        new ByteArrayInputStream(out.toByteArray()),
+        new GenericDatumReader<Object>());
+    Set<Object> seen = new HashSet<Object>();
+    for (Object datum : in)
+      Assert.assertTrue(seen.add(datum));
+    in.close();
+    Assert.assertEquals(THREADS * COUNT, seen.size());
+  }
+
+  @Test
+  public void testFlush() throws Exception {
+    SyncCountingStream out = new SyncCountingStream();
+    ConcurrentDataFileWriter<Object> writer =
+      new ConcurrentDataFileWriter<Object>(
+          new DataFileWriter<Object>(new GenericDatumWriter<Object>(SCHEMA))
+            .create(SCHEMA, out),
+          new GenericDatumWriter<Object>(SCHEMA));
+    Future<Void> appended = writer.append(1L);
+    writer.flush();
+    Assert.assertTrue(appended.isDone());
+    Assert.assertTrue(out.syncs.get() >= 1);
+    Assert.assertTrue(writer.commit().isDone());
+    writer.close();
+  }
+
+  @Test
+  public void testSyncFailure() throws Exception {
+    SyncCountingStream out = new SyncCountingStream();
+    out.fail = true;
+    ConcurrentDataFileWriter<Object> writer =
+      new ConcurrentDataFileWriter<Object>(
+          new DataFileWriter<Object>(new GenericDatumWriter<Object>(SCHEMA))
+            .create(SCHEMA, out),
+          new GenericDatumWriter<Object>(SCHEMA));
+    Future<Void> appended = writer.append(1L);
+    try {
+      appended.get();
+      Assert.fail("Commit should fail");
+    } catch (ExecutionException e) {
+      Assert.assertEquals("Sync failed", e.getCause().getMessage());
+    }
+    try {
+      writer.append(2L);
+      Assert.fail("Append should fail after a failed commit");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+}
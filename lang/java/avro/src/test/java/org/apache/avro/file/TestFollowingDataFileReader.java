@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.file;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.AvroTestUtil;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestFollowingDataFileReader {
+  private static final Schema SCHEMA = Schema.create(Schema.Type.LONG);
+
+  @Test
+  public void testFollow() throws Exception {
+    File file = AvroTestUtil.tempFile(getClass(), "follow.avro");
+    DataFileWriter<Object> writer =
+      new DataFileWriter<Object>(new GenericDatumWriter<Object>(SCHEMA))
+      .create(SCHEMA, file);
+    FollowingDataFileReader<Object> reader =
+      new FollowingDataFileReader<Object>(file,
+                                          new GenericDatumReader<Object>());
+    Assert.assertFalse(reader.hasNext());
+    Assert.assertFalse(reader.await(10, TimeUnit.MILLISECONDS));
+
+    long next = 0;
+    for (int round = 0; round < 5; round++) {
+      for (int i = 0; i < 10; i++)
+        writer.append((long) (round * 10 + i));
+      Assert.assertFalse("Unflushed data visible", reader.hasNext());
+      writer.flush();
+      Assert.assertTrue(reader.await(1, TimeUnit.SECONDS));
+      while (reader.hasNext())
+        Assert.assertEquals(next++, reader.next());
+    }
+    Assert.assertEquals(50, next);
+    long position = reader.previousSync();
+    reader.close();
+
+    // resume where the previous reader stopped
+    for (long i = 50; i < 60; i++)
+      writer.append(i);
+    writer.close();
+    reader = new FollowingDataFileReader<Object>(file,
+        new GenericDatumReader<Object>(), position);
+    for (Object datum : reader)
+      Assert.assertEquals(next++, datum);
+    reader.close();
+    Assert.assertEquals(60, next);
+  }
+
+  @Test
+  public void testPartialBlock() throws Exception {
+    File complete = AvroTestUtil.tempFile(getClass(), "complete.avro");
+    DataFileWriter<Object> writer =
+      new DataFileWriter<Object>(new GenericDatumWriter<Object>(SCHEMA))
+      .create(SCHEMA, complete);
+    writer.append(1L);
+    writer.sync();
+    writer.append(2L);
+    writer.close();
+
+    // copy the file a byte at a time; the second entry only appears once
+    // its whole block has been copied
+    byte[] bytes = new byte[(int) complete.length()];
+    RandomAccessFile in = new RandomAccessFile(complete, "r");
+    in.readFully(bytes);
+    in.close();
+    File partial = AvroTestUtil.tempFile(getClass(), "partial.avro");
+    FileOutputStream out = new FileOutputStream(partial);
+    DataFileReader<Object> header = new DataFileReader<Object>(
+        complete, new GenericDatumReader<Object>());
+    int headerLength = (int) header.previousSync();
+    header.close();
+    out.write(bytes, 0, headerLength);
+    out.flush();
+
+    FollowingDataFileReader<Object> reader =
+      new FollowingDataFileReader<Object>(partial,
+                                          new GenericDatumReader<Object>());
+    int seen = 0;
+    for (int i = headerLength; i < bytes.length; i++) {
+      out.write(bytes[i]);
+      out.flush();
+      if (reader.hasNext()) {
+        Assert.assertEquals((long) ++seen, reader.next());
+        Assert.assertFalse(reader.hasNext());
+      }
+    }
+    out.close();
+    reader.close();
+    Assert.assertEquals(2, seen);
+  }
+}
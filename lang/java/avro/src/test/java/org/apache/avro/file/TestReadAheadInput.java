@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.avro.AvroTestUtil;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestReadAheadInput {
+  private static final Schema SCHEMA = Schema.create(Schema.Type.LONG);
+  private static final int COUNT = 100000;
+  private static File file;
+
+  @BeforeClass
+  public static void writeFile() throws IOException {
+    file = AvroTestUtil.tempFile(TestReadAheadInput.class, "read-ahead.avro");
+    DataFileWriter<Object> writer =
+      new DataFileWriter<Object>(new GenericDatumWriter<Object>(SCHEMA))
+      .setSyncInterval(1000)
+      .create(SCHEMA, file);
+    for (long i = 0; i < COUNT; i++)
+      writer.append(i);
+    writer.close();
+  }
+
+  private static void checkScan(SeekableInput in) throws IOException {
+    DataFileReader<Object> reader =
+      new DataFileReader<Object>(in, new GenericDatumReader<Object>());
+    long expected = 0;
+    Object datum = null;
+    while (reader.hasNext()) {
+      datum = reader.next(datum);
+      Assert.assertEquals(expected++, datum);
+    }
+    Assert.assertEquals(COUNT, expected);
+
+    // seeking to arbitrary positions restarts reading ahead
+    Random random = new Random(1);
+    for (int i = 0; i < 20; i++) {
+      long position = (long) (random.nextDouble() * file.length());
+      reader.sync(position);
+      if (reader.hasNext()) {
+        long first = (Long) reader.next();
+        Assert.assertTrue(first >= 0 && first < COUNT);
+        if (reader.hasNext())
+          Assert.assertEquals(first + 1, reader.next());
+      }
+    }
+    reader.close();
+  }
+
+  @Test
+  public void testLocalFile() throws IOException {
+    checkScan(new ReadAheadInput(new SeekableFileInput(file), 1000, 8000));
+  }
+
+  @Test
+  public void testOtherInput() throws IOException {
+    byte[] data = new byte[(int) file.length()];
+    SeekableFileInput in = new SeekableFileInput(file);
+    in.read(data, 0, data.length);
+    in.close();
+    checkScan(new ReadAheadInput(new SeekableByteArrayInput(data), 777, 5000));
+  }
+
+  @Test
+  public void testDefaults() throws IOException {
+    checkScan(new ReadAheadInput(file));
+  }
+}
@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestRecordBatch {
+  private static final Schema SCHEMA = new Schema.Parser().parse(
+      "{\"type\":\"record\",\"name\":\"Row\",\"fields\":["
+      + "{\"name\":\"i\",\"type\":\"int\"},"
+      + "{\"name\":\"l\",\"type\":\"long\"},"
+      + "{\"name\":\"d\",\"type\":\"double\"},"
+      + "{\"name\":\"b\",\"type\":\"boolean\"},"
+      + "{\"name\":\"s\",\"type\":[\"null\",\"string\"]},"
+      + "{\"name\":\"a\",\"type\":{\"type\":\"array\",\"items\":\"int\"}},"
+      + "{\"name\":\"e\",\"type\":{\"type\":\"enum\",\"name\":\"E\","
+      + "\"symbols\":[\"X\",\"Y\"]}},"
+      + "{\"name\":\"y\",\"type\":\"bytes\"},"
+      + "{\"name\":\"f\",\"type\":{\"type\":\"fixed\",\"name\":\"F\",\"size\":2}},"
+      + "{\"name\":\"r\",\"type\":[{\"type\":\"record\",\"name\":\"Inner\","
+      + "\"fields\":[{\"name\":\"x\",\"type\":\"float\"}]},\"null\"]}]}");
+
+  private static final int COUNT = 1000;
+
+  private static GenericRecord row(int n) {
+    GenericRecord r = new GenericData.Record(SCHEMA);
+    r.put("i", n);
+    r.put("l", n * 1000000000L);
+    r.put("d", n / 4.0);
+    r.put("b", n % 2 == 0);
+    r.put("s", n % 3 == 0 ? null : "s" + n);
+    r.put("a", Arrays.asList(n, n));
+    r.put("e", new GenericData.EnumSymbol(
+        SCHEMA.getField("e").schema(), n % 2 == 0 ? "X" : "Y"));
+    r.put("y", ByteBuffer.wrap(new byte[n % 5]));
+    r.put("f", new GenericData.Fixed(
+        SCHEMA.getField("f").schema(), new byte[] {(byte) n, 1}));
+    if (n % 4 != 0) {
+      GenericRecord inner = new GenericData.Record(
+          SCHEMA.getField("r").schema().getTypes().get(0));
+      inner.put("x", (float) n);
+      r.put("r", inner);
+    }
+    return r;
+  }
+
+  @Test
+  public void testBatches() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    DataFileWriter<GenericRecord> writer = new DataFileWriter<GenericRecord>(
+        new GenericDatumWriter<GenericRecord>(SCHEMA));
+    writer.setSyncInterval(1024);
+    writer.create(SCHEMA, out);
+    for (int n = 0; n < COUNT; n++)
+      writer.append(row(n));
+    writer.close();
+
+    DataFileStream<GenericRecord> in = new DataFileStream<GenericRecord>(
+        new ByteArrayInputStream(out.toByteArray()),
+        new GenericDatumReader<GenericRecord>());
+    RecordBatch batch = null;
+    int n = 0;
+    int batches = 0;
+    while (in.hasNext()) {
+      batch = in.nextBatch(batch);
+      batches++;
+      RecordBatch.LongColumn i = (RecordBatch.LongColumn) batch.getColumn("i");
+      RecordBatch.LongColumn l = (RecordBatch.LongColumn) batch.getColumn("l");
+      RecordBatch.DoubleColumn d =
+        (RecordBatch.DoubleColumn) batch.getColumn("d");
+      RecordBatch.BooleanColumn b =
+        (RecordBatch.BooleanColumn) batch.getColumn("b");
+      RecordBatch.BytesColumn s = (RecordBatch.BytesColumn) batch.getColumn("s");
+      RecordBatch.LongColumn e = (RecordBatch.LongColumn) batch.getColumn("e");
+      RecordBatch.BytesColumn y = (RecordBatch.BytesColumn) batch.getColumn("y");
+      RecordBatch.BytesColumn f = (RecordBatch.BytesColumn) batch.getColumn("f");
+      RecordBatch.DoubleColumn x =
+        (RecordBatch.DoubleColumn) batch.getColumn("r.x");
+      Assert.assertNull(batch.getColumn("a"));
+      Assert.assertFalse(i.isNullable());
+      Assert.assertTrue(s.isNullable());
+      Assert.assertTrue(x.isNullable());
+      for (int row = 0; row < batch.size(); row++, n++) {
+        Assert.assertEquals(n, i.get(row));
+        Assert.assertEquals(n * 1000000000L, l.get(row));
+        Assert.assertEquals(n / 4.0, d.get(row), 0);
+        Assert.assertEquals(n % 2 == 0, b.get(row));
+        Assert.assertEquals(n % 3 == 0, s.isNull(row));
+        if (n % 3 != 0)
+          Assert.assertEquals("s" + n, s.getString(row));
+        Assert.assertEquals(n % 2, e.get(row));
+        Assert.assertEquals(n % 5, y.getLength(row));
+        Assert.assertEquals(2, f.getLength(row));
+        Assert.assertEquals((byte) n, f.getData()[f.getOffsets()[row]]);
+        Assert.assertEquals(n % 4 == 0, x.isNull(row));
+        if (n % 4 != 0)
+          Assert.assertEquals(n, x.get(row), 0);
+      }
+    }
+    in.close();
+    Assert.assertEquals(COUNT, n);
+    Assert.assertTrue("Should span several blocks", batches > 1);
+  }
+}
@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.avro.AvroTestUtil;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestRollingDataFileWriter {
+  private static final Schema SCHEMA = Schema.create(Schema.Type.LONG);
+
+  private static class Collector implements RollingDataFileWriter.Listener {
+    final List<RollingDataFileWriter.RolledFile> files =
+      new ArrayList<RollingDataFileWriter.RolledFile>();
+    @Override public synchronized void rolled(
+        RollingDataFileWriter.RolledFile file) {
+      files.add(file);
+    }
+    synchronized List<RollingDataFileWriter.RolledFile> sorted() {
+      Collections.sort(files,
+          new Comparator<RollingDataFileWriter.RolledFile>() {
+            @Override public int compare(RollingDataFileWriter.RolledFile a,
+                                         RollingDataFileWriter.RolledFile b) {
+              return Long.valueOf(a.getSequence()).compareTo(b.getSequence());
+            }
+          });
+      return files;
+    }
+  }
+
+  private static RollingDataFileWriter.FileNamer namer(final File dir) {
+    return new RollingDataFileWriter.FileNamer() {
+      @Override public File getFile(long sequence) {
+        return new File(dir, "part-" + sequence + ".avro");
+      }
+    };
+  }
+
+  @Test
+  public void testRollByRecords() throws Exception {
+    File dir = AvroTestUtil.tempDirectory(getClass(), "records");
+    Collector collector = new Collector();
+    RollingDataFileWriter<Object> writer = new RollingDataFileWriter<Object>(
+        SCHEMA, new GenericDatumWriter<Object>(), namer(dir))
+      .setCodec(CodecFactory.deflateCodec(1))
+      .setSyncInterval(64)
+      .setMaxRecords(100)
+      .setListener(collector);
+    for (long i = 0; i < 550; i++)
+      writer.append(i);
+    writer.close();
+
+    List<RollingDataFileWriter.RolledFile> files = collector.sorted();
+    Assert.assertEquals(6, files.size());
+    Assert.assertEquals(6, dir.listFiles().length);   // prepared file deleted
+    long expected = 0;
+    for (RollingDataFileWriter.RolledFile rolled : files) {
+      Assert.assertEquals(rolled.getSequence() == 5 ? 50 : 100,
+                          rolled.getRecordCount());
+      Assert.assertTrue(rolled.getBlockPositions().size() > 1);
+      DataFileReader<Object> in = new DataFileReader<Object>(
+          rolled.getFile(), new GenericDatumReader<Object>());
+      Assert.assertEquals("deflate", in.getMetaString("avro.codec"));
+      for (Object datum : in)
+        Assert.assertEquals(expected++, datum);
+      // every block position can be seeked to
+      long previous = -1;
+      for (long position : rolled.getBlockPositions()) {
+        in.seek(position);
+        long first = (Long) in.next();
+        Assert.assertTrue(first > previous);
+        previous = first;
+      }
+      in.close();
+    }
+    Assert.assertEquals(550, expected);
+  }
+
+  @Test
+  public void testRollByBytes() throws Exception {
+    File dir = AvroTestUtil.tempDirectory(getClass(), "bytes");
+    Collector collector = new Collector();
+    RollingDataFileWriter<Object> writer = new RollingDataFileWriter<Object>(
+        SCHEMA, new GenericDatumWriter<Object>(), namer(dir))
+      .setMaxBytes(1024)
+      .setListener(collector);
+    for (long i = 0; i < 2000; i++)
+      writer.append(i);
+    writer.roll();
+    writer.close();
+
+    long total = 0;
+    for (RollingDataFileWriter.RolledFile rolled : collector.sorted()) {
+      Assert.assertTrue(rolled.getFile().length() < 1024 + 64);
+      total += rolled.getRecordCount();
+    }
+    Assert.assertTrue(collector.files.size() > 1);
+    Assert.assertEquals(2000, total);
+  }
+
+  @Test(timeout = 10000)
+  public void testRollWhileClosing() throws Exception {
+    File dir = AvroTestUtil.tempDirectory(getClass(), "closing");
+    final CountDownLatch release = new CountDownLatch(1);
+    final Collector collector = new Collector();
+    RollingDataFileWriter<Object> writer = new RollingDataFileWriter<Object>(
+        SCHEMA, new GenericDatumWriter<Object>(), namer(dir))
+      .setMaxRecords(1)
+      .setListener(new RollingDataFileWriter.Listener() {
+          @Override public void rolled(RollingDataFileWriter.RolledFile file) {
+            try {
+              release.await();                    // hold up closing
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            collector.rolled(file);
+          }
+        });
+    for (long i = 0; i < 5; i++)                  // rolls despite closes
+      writer.append(i);
+    Assert.assertEquals(0, collector.files.size());
+    release.countDown();
+    writer.close();
+    Assert.assertEquals(5, collector.sorted().size());
+  }
+
+  @Test
+  public void testRollFailure() throws Exception {
+    final File dir = AvroTestUtil.tempDirectory(getClass(), "failure");
+    final boolean[] failed = new boolean[1];
+    Collector collector = new Collector();
+    RollingDataFileWriter<Object> writer = new RollingDataFileWriter<Object>(
+        SCHEMA, new GenericDatumWriter<Object>(),
+        new RollingDataFileWriter.FileNamer() {
+          @Override public File getFile(long sequence) {
+            if (sequence == 1 && !failed[0]) {
+              failed[0] = true;
+              throw new IllegalStateException("no file");
+            }
+            return new File(dir, "part-" + sequence + ".avro");
+          }
+        })
+      .setMaxRecords(2)
+      .setListener(collector);
+    writer.append(0L);
+    try {
+      writer.append(1L);                          // rolls
+      Assert.fail("Expected IOException");
+    } catch (IOException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    for (long i = 2; i < 5; i++)                  // next file prepared again
+      writer.append(i);
+    writer.close();
+
+    List<RollingDataFileWriter.RolledFile> files = collector.sorted();
+    Assert.assertEquals(3, files.size());
+    long expected = 0;
+    for (RollingDataFileWriter.RolledFile rolled : files) {
+      DataFileReader<Object> in = new DataFileReader<Object>(
+          rolled.getFile(), new GenericDatumReader<Object>());
+      for (Object datum : in)
+        Assert.assertEquals(expected++, datum);
+      in.close();
+    }
+    Assert.assertEquals(5, expected);
+  }
+}
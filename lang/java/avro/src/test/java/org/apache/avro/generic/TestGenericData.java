@@ -19,6 +19,7 @@ package org.apache.avro.generic;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
@@ -32,12 +33,19 @@ import java.util.Arrays;
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Field;
 import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Conversion;
+import org.apache.avro.Conversions;
+import org.apache.avro.LogicalTypes;
 import org.apache.avro.Schema.Type;
 import org.apache.avro.SchemaBuilder;
+import org.apache.avro.UnresolvedUnionException;
 import org.apache.avro.io.BinaryData;
 import org.apache.avro.io.BinaryEncoder;
 import org.apache.avro.io.EncoderFactory;
 import org.apache.avro.generic.GenericData.Record;
+import org.apache.avro.reflect.ReflectData;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.TestRecordWithoutLogicalTypes;
 import org.apache.avro.util.Utf8;
 import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonParseException;
@@ -420,6 +428,157 @@ public class TestGenericData {
     assertEquals(buffer, buffer_copy);
   }
 
+  private static final Schema COPY_SCHEMA = new Schema.Parser().parse(
+      "{\"type\":\"record\",\"name\":\"Outer\",\"fields\":["
+      + "{\"name\":\"n\",\"type\":\"int\"},"
+      + "{\"name\":\"s\",\"type\":\"string\"},"
+      + "{\"name\":\"a\",\"type\":{\"type\":\"array\",\"items\":\"string\"}},"
+      + "{\"name\":\"inner\",\"type\":{\"type\":\"record\",\"name\":\"Inner\","
+      + "\"fields\":[{\"name\":\"x\",\"type\":\"int\"}]}}]}");
+
+  private static Record copyTestRecord() {
+    Record inner = new Record(COPY_SCHEMA.getField("inner").schema());
+    inner.put("x", 1);
+    Record record = new Record(COPY_SCHEMA);
+    record.put("n", 2);
+    record.put("s", new Utf8("str"));
+    record.put("a", new GenericData.Array<Utf8>(
+        COPY_SCHEMA.getField("a").schema(), Arrays.asList(new Utf8("e"))));
+    record.put("inner", inner);
+    return record;
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testCopyOnWrite() {
+    Record original = copyTestRecord();
+    Record copy = Record.copyOnWrite(original);
+    assertEquals(original, copy);
+
+    assertSame(original.get("s"), copy.get("s"));
+    copy.put("n", 3);
+    copy.put("s", new Utf8("changed"));
+    ((List<Utf8>) copy.get("a")).add(new Utf8("f"));
+    ((Record) copy.get("inner")).put("x", 4);
+    assertEquals(copyTestRecord(), original);
+
+    ((Record) original.get("inner")).put("x", 5);
+    assertEquals(4, ((Record) copy.get("inner")).get("x"));
+    assertEquals(new Utf8("changed"), copy.get("s"));
+    assertEquals(2, ((List<?>) copy.get("a")).size());
+    assertEquals(1, ((List<?>) original.get("a")).size());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testCopyOnWriteArray() {
+    Record original = copyTestRecord();
+    Record copy = Record.copyOnWrite(original);
+    List<Utf8> originalArray = (List<Utf8>) original.get("a");
+    List<Utf8> copyArray = (List<Utf8>) copy.get("a");
+    assertSame(originalArray.get(0), copyArray.get(0));
+
+    originalArray.set(0, new Utf8("g"));
+    assertEquals(new Utf8("e"), copyArray.get(0));
+    copyArray.remove(0);
+    assertEquals(0, copyArray.size());
+    assertEquals(new Utf8("g"), originalArray.get(0));
+
+    // arrays of records copy each record in the same way
+    Schema records = Schema.createArray(COPY_SCHEMA);
+    GenericData.Array<Record> array = new GenericData.Array<Record>(
+        records, Arrays.asList(original));
+    Record outer = new Record(SchemaBuilder.record("Records").fields()
+        .name("r").type(records).noDefault().endRecord());
+    outer.put("r", array);
+    Record outerCopy = Record.copyOnWrite(outer);
+    Record element = ((List<Record>) outerCopy.get("r")).get(0);
+    assertNotSame(original, element);
+    element.put("n", 7);
+    assertEquals(2, original.get("n"));
+  }
+
+  @Test
+  public void testCopyOnWriteWrite() throws IOException {
+    Record original = copyTestRecord();
+    Record copy = Record.copyOnWrite(original);
+    copy.put("n", 3);
+
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    ByteArrayOutputStream actual = new ByteArrayOutputStream();
+    GenericDatumWriter<Record> writer =
+        new GenericDatumWriter<Record>(COPY_SCHEMA);
+    original.put("n", 3);
+    BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(expected, null);
+    writer.write(original, encoder);
+    encoder.flush();
+    encoder = EncoderFactory.get().binaryEncoder(actual, encoder);
+    writer.write(copy, encoder);
+    encoder.flush();
+    assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+  }
+
+  @Test
+  public void testCopyOnWriteRead() {
+    Record original = copyTestRecord();
+    Record copy = Record.copyOnWrite(original);
+    assertEquals(original, copy);
+    assertEquals(copy, original);
+    assertEquals(original.hashCode(), copy.hashCode());
+    assertEquals(original.toString(), copy.toString());
+    assertEquals(0, copy.compareTo(original));
+
+    // reading does not copy: values are the same each time
+    assertSame(copy.get("a"), copy.get("a"));
+    assertSame(copy.get("inner"), copy.get("inner"));
+    assertSame(original.get("a"), original.get("a"));
+    assertNotSame(original.get("a"), copy.get("a"));
+  }
+
+  @Test
+  public void testCopyOnWriteLogicalTypes() {
+    Schema decimal = LogicalTypes.decimal(9, 2)
+        .addToSchema(Schema.create(Type.BYTES));
+    Schema schema = SchemaBuilder.record("Money").fields()
+        .name("d").type(decimal).noDefault()
+        .name("a").type().array().items(decimal).noDefault()
+        .endRecord();
+    GenericData data = new GenericData();
+    data.addLogicalTypeConversion(new Conversions.DecimalConversion());
+
+    BigDecimal amount = new BigDecimal("12.34");
+    Record original = new Record(schema);
+    original.put("d", amount);
+    original.put("a", new GenericData.Array<BigDecimal>(
+        schema.getField("a").schema(), Arrays.asList(amount)));
+    Record copy = Record.copyOnWrite(original, data);
+    assertSame(amount, copy.get("d"));
+    assertNotSame(original.get("a"), copy.get("a"));
+    assertSame(amount, ((List<?>) copy.get("a")).get(0));
+  }
+
+  @Test
+  public void testDeepCopyShared() {
+    Record original = copyTestRecord();
+    original.put("s", new Utf8("str"));
+    Record copy = GenericData.get().deepCopy(COPY_SCHEMA, original, true);
+    assertEquals(original, copy);
+    assertSame(original.get("s"), copy.get("s"));
+    assertNotSame(original.get("a"), copy.get("a"));
+    assertSame(((List<?>) original.get("a")).get(0),
+        ((List<?>) copy.get("a")).get(0));
+    assertNotSame(original.get("inner"), copy.get("inner"));
+
+    Record unshared = GenericData.get().deepCopy(COPY_SCHEMA, original);
+    assertNotSame(original.get("s"), unshared.get("s"));
+
+    Schema bytesSchema = Schema.create(Type.BYTES);
+    ByteBuffer readOnly = ByteBuffer.wrap(new byte[] {1, 2}).asReadOnlyBuffer();
+    assertSame(readOnly, GenericData.get().deepCopy(bytesSchema, readOnly, true));
+    ByteBuffer writable = ByteBuffer.wrap(new byte[] {1, 2});
+    assertNotSame(writable, GenericData.get().deepCopy(bytesSchema, writable, true));
+  }
+
   @Test
   public void testValidateNullableEnum() {
     List<Schema> unionTypes = new ArrayList<Schema>();
@@ -492,4 +651,89 @@ public class TestGenericData {
     record.put("myString", "myValue");
     assertTrue(GenericData.get().validate(unionSchema, record));
   }
+
+  @Test
+  public void testResolveUnionCached() {
+    Schema type1Schema = SchemaBuilder.record("Type1")
+        .fields().requiredString("myString").endRecord();
+    Schema type2Schema = SchemaBuilder.record("Type2")
+        .fields().requiredString("myString").endRecord();
+    Schema unionSchema = SchemaBuilder.unionOf()
+        .nullType().and().type(type1Schema).and().type(type2Schema)
+        .and().stringType().endUnion();
+
+    GenericData data = new GenericData();
+    for (int i = 0; i < 2; i++) {             // second pass hits the cache
+      assertEquals(0, data.resolveUnion(unionSchema, null));
+      assertEquals(1, data.resolveUnion(unionSchema,
+                                        new GenericData.Record(type1Schema)));
+      assertEquals(2, data.resolveUnion(unionSchema,
+                                        new GenericData.Record(type2Schema)));
+      assertEquals(3, data.resolveUnion(unionSchema, "a"));
+      assertEquals(3, data.resolveUnion(unionSchema, new Utf8("a")));
+    }
+  }
+
+  @Test
+  public void testResolveUnionCachedSpecific() {
+    Schema recordSchema = TestRecordWithoutLogicalTypes.getClassSchema();
+    Schema unionSchema = SchemaBuilder.unionOf()
+        .nullType().and().type(recordSchema).and().stringType().endUnion();
+
+    GenericData data = new SpecificData();
+    TestRecordWithoutLogicalTypes record = new TestRecordWithoutLogicalTypes();
+    assertNull(data.getCachedBranch(unionSchema, record.getClass()));
+    assertEquals(1, data.resolveUnion(unionSchema, record));
+    assertEquals(Integer.valueOf(1),
+                 data.getCachedBranch(unionSchema, record.getClass()));
+    assertEquals(1, data.resolveUnion(unionSchema, record));
+  }
+
+  @Test
+  public void testResolveUnionCacheClearedByConversion() {
+    Schema decimalSchema =
+      LogicalTypes.decimal(9, 2).addToSchema(Schema.create(Type.BYTES));
+    Schema unionSchema = SchemaBuilder.unionOf()
+        .stringType().and().type(decimalSchema).endUnion();
+
+    GenericData data = new GenericData();
+    assertEquals(0, data.resolveUnion(unionSchema, "1.5"));
+    assertEquals(Integer.valueOf(0),
+                 data.getCachedBranch(unionSchema, String.class));
+
+    data.addLogicalTypeConversion(new Conversion<String>() {
+        @Override public Class<String> getConvertedType() {
+          return String.class;
+        }
+        @Override public String getLogicalTypeName() { return "decimal"; }
+      });
+    assertNull(data.getCachedBranch(unionSchema, String.class));
+    assertEquals(1, data.resolveUnion(unionSchema, "1.5"));
+  }
+
+  @Test
+  public void testResolveUnionNotCachedInSubclass() {
+    Schema unionSchema = SchemaBuilder.unionOf()
+        .nullType().and().stringType().endUnion();
+    GenericData data = new GenericData() {};
+    assertEquals(1, data.resolveUnion(unionSchema, "a"));
+    assertNull(data.getCachedBranch(unionSchema, String.class));
+  }
+
+  @Test
+  public void testResolveUnionReflectMapNotCached() {
+    Schema unionSchema = SchemaBuilder.unionOf()
+        .nullType().and().map().values().intType().endUnion();
+    GenericData data = new ReflectData();
+    assertEquals(1, data.resolveUnion(unionSchema,
+                                      new java.util.HashMap<String,Integer>()));
+    assertNull(data.getCachedBranch(unionSchema, java.util.HashMap.class));
+  }
+
+  @Test(expected=UnresolvedUnionException.class)
+  public void testResolveUnionNoNullBranch() {
+    Schema unionSchema = SchemaBuilder.unionOf()
+        .intType().and().stringType().endUnion();
+    new GenericData().resolveUnion(unionSchema, null);
+  }
 }
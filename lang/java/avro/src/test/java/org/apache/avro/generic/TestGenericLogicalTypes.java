@@ -21,6 +21,7 @@ package org.apache.avro.generic;
 import java.io.File;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -193,6 +194,39 @@ public class TestGenericLogicalTypes {
         expected, read(GenericData.get().createDatumReader(bytesSchema), test));
   }
 
+  @Test
+  public void testDecimalUnscaledLong() {
+    LogicalType decimal = LogicalTypes.decimal(18, 2);
+    LogicalType wide = LogicalTypes.decimal(30, 2);
+    Schema bytesSchema = Schema.create(Schema.Type.BYTES);
+    Schema fixed8 = Schema.createFixed("fixed8", null, null, 8);
+    Schema fixed12 = Schema.createFixed("fixed12", null, null, 12);
+    Conversions.DecimalConversion conversion =
+        new Conversions.DecimalConversion();
+
+    String[] values = { "0.00", "0.01", "-0.01", "1.27", "1.28", "-1.28",
+        "-1.29", "327.67", "-327.69", "9999999999999999.99",
+        "-9999999999999999.99", "92233720368547758.07" };
+    for (String value : values) {
+      BigDecimal d = new BigDecimal(value);
+      byte[] expected = d.unscaledValue().toByteArray();
+      ByteBuffer bytes = conversion.toBytes(d, bytesSchema, decimal);
+      Assert.assertEquals("Should match BigInteger encoding of " + value,
+          ByteBuffer.wrap(expected), bytes);
+      if (expected.length <= 8) {
+        Assert.assertEquals(d.unscaledValue().longValue(),
+            Conversions.DecimalConversion.getUnscaledLong(bytes));
+      }
+      Assert.assertEquals(d, conversion.fromBytes(bytes, bytesSchema, decimal));
+
+      for (Schema fixedSchema : Arrays.asList(fixed8, fixed12)) {
+        GenericFixed fixed = conversion.toFixed(d, fixedSchema, wide);
+        Assert.assertEquals(new BigInteger(fixed.bytes()), d.unscaledValue());
+        Assert.assertEquals(d, conversion.fromFixed(fixed, fixedSchema, wide));
+      }
+    }
+  }
+
   private <D> List<D> read(DatumReader<D> reader, File file) throws IOException {
     List<D> data = new ArrayList<D>();
     FileReader<D> fileReader = null;
@@ -20,6 +20,7 @@ package org.apache.avro.generic;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.Schema;
@@ -95,6 +96,43 @@ public class TestGenericRecordBuilder {
     }
   }
 
+  @Test
+  public void testDefaultsNotShared() {
+    Schema schema = new Schema.Parser().parse(
+        "{\"type\":\"record\",\"name\":\"Defaults\",\"fields\":["
+        + "{\"name\":\"i\",\"type\":\"int\",\"default\":5},"
+        + "{\"name\":\"s\",\"type\":\"string\",\"default\":\"x\"},"
+        + "{\"name\":\"a\",\"type\":{\"type\":\"array\",\"items\":\"int\"},"
+        + "\"default\":[1,2]},"
+        + "{\"name\":\"e\",\"type\":{\"type\":\"array\",\"items\":\"int\"},"
+        + "\"default\":[]},"
+        + "{\"name\":\"m\",\"type\":{\"type\":\"map\",\"values\":\"int\"},"
+        + "\"default\":{}}]}");
+    Record r1 = new GenericRecordBuilder(schema).build();
+    Record r2 = new GenericRecordBuilder(schema).build();
+    Assert.assertEquals(5, r1.get("i"));
+    Assert.assertEquals(r1, r2);
+    Assert.assertNotSame(r1.get("s"), r2.get("s"));
+    Assert.assertNotSame(r1.get("a"), r2.get("a"));
+    @SuppressWarnings("unchecked")
+    List<Integer> a1 = (List<Integer>) r1.get("a");
+    a1.add(3);
+    Assert.assertEquals(Arrays.asList(1, 2), r2.get("a"));
+    Assert.assertEquals(Arrays.asList(1, 2),
+        new GenericRecordBuilder(schema).build().get("a"));
+
+    @SuppressWarnings("unchecked")
+    List<Integer> e1 = (List<Integer>) r1.get("e");
+    e1.add(1);
+    Assert.assertEquals(Arrays.asList(), r2.get("e"));
+    Assert.assertEquals(schema.getField("e").schema(),
+        ((GenericArray<?>) r2.get("e")).getSchema());
+    @SuppressWarnings("unchecked")
+    Map<String, Integer> m1 = (Map<String, Integer>) r1.get("m");
+    m1.put("k", 1);
+    Assert.assertTrue(((Map<?, ?>) r2.get("m")).isEmpty());
+  }
+
   /** Creates a test record schema */
   private static Schema recordSchema() {
     List<Field> fields = new ArrayList<Field>();
@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.generic;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.util.Utf8;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestRecordArena {
+  private static final Schema SCHEMA = new Schema.Parser().parse(
+      "{\"type\":\"record\",\"name\":\"R\",\"fields\":["
+      + "{\"name\":\"id\",\"type\":\"long\"},"
+      + "{\"name\":\"name\",\"type\":[\"null\",\"string\"]},"
+      + "{\"name\":\"tags\",\"type\":{\"type\":\"array\",\"items\":\"int\"}}]}");
+
+  private static GenericRecord record(long n) {
+    GenericRecord r = new GenericData.Record(SCHEMA);
+    r.put("id", n);
+    r.put("name", n % 2 == 0 ? null : new Utf8("name" + n));
+    r.put("tags", new GenericData.Array<Integer>(
+        SCHEMA.getField("tags").schema(), Arrays.asList((int) n, 1)));
+    return r;
+  }
+
+  private static void assertRecord(long n, IndexedRecord view) {
+    Assert.assertEquals(0,
+        GenericData.get().compare(record(n), view, SCHEMA));
+    Assert.assertEquals(view, record(n));
+  }
+
+  @Test
+  public void testAddAndGet() throws Exception {
+    RecordArena arena = new RecordArena(SCHEMA, 4096, 100);
+    for (int n = 0; n < 10; n++)
+      Assert.assertEquals(n, arena.add(record(n)));
+    Assert.assertEquals(10, arena.size());
+    RecordArena.View view = null;
+    for (int n = 0; n < 10; n++) {
+      view = arena.get(n, view);
+      Assert.assertEquals(n, view.getId());
+      Assert.assertEquals((long) n, view.get("id"));
+      Assert.assertEquals(n % 2 == 0 ? null : new Utf8("name" + n),
+                          view.get(1));
+      assertRecord(n, view);
+      Assert.assertEquals(record(n).hashCode(), view.hashCode());
+    }
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testReadOnly() throws Exception {
+    RecordArena arena = new RecordArena(SCHEMA, 1024, 10);
+    arena.get(arena.add(record(1))).put(0, 2L);
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    final List<Long> evicted = new ArrayList<Long>();
+    RecordArena arena = new RecordArena(SCHEMA, 256, 1000);
+    arena.setEvictionListener(new RecordArena.EvictionListener() {
+      @Override public void evicted(long id) { evicted.add(id); }
+    });
+    for (int n = 0; n < 200; n++) {
+      arena.add(record(n));
+      for (long id = arena.getFirstId(); id < arena.getNextId(); id++)
+        assertRecord(id, arena.get(id));
+    }
+    Assert.assertTrue(arena.size() < 200);
+    Assert.assertEquals(arena.getFirstId(), evicted.size());
+    for (int i = 0; i < evicted.size(); i++)
+      Assert.assertEquals((long) i, (long) evicted.get(i));
+
+    RecordArena.View view = arena.get(arena.getFirstId());
+    arena.evictOldest();
+    try {
+      view.get(0);
+      Assert.fail("Should not read an evicted record");
+    } catch (AvroRuntimeException e) {
+      // expected
+    }
+    arena.clear();
+    Assert.assertEquals(0, arena.size());
+    Assert.assertEquals(200, evicted.size());
+  }
+
+  @Test
+  public void testMaxRecords() throws Exception {
+    RecordArena arena = new RecordArena(SCHEMA, 4096, 3);
+    for (int n = 0; n < 10; n++)
+      arena.add(record(n));
+    Assert.assertEquals(3, arena.size());
+    Assert.assertEquals(7, arena.getFirstId());
+    assertRecord(9, arena.get(9));
+  }
+
+  @Test
+  public void testLoad() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    DataFileWriter<GenericRecord> writer = new DataFileWriter<GenericRecord>(
+        new GenericDatumWriter<GenericRecord>(SCHEMA)).create(SCHEMA, out);
+    for (int n = 0; n < 50; n++)
+      writer.append(record(n));
+    writer.close();
+
+    RecordArena arena = new RecordArena(SCHEMA, 8192, 100);
+    DataFileStream<GenericRecord> in = new DataFileStream<GenericRecord>(
+        new ByteArrayInputStream(out.toByteArray()),
+        new GenericDatumReader<GenericRecord>());
+    Assert.assertEquals(50, arena.load(in));
+    in.close();
+    for (int n = 0; n < 50; n++)
+      assertRecord(n, arena.get(n));
+  }
+}
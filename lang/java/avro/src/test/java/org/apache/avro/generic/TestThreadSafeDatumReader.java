@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.generic;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.junit.Test;
+
+public class TestThreadSafeDatumReader {
+  private static final Schema WRITER = new Schema.Parser().parse(
+      "{\"type\":\"record\",\"name\":\"R\",\"fields\":["
+      + "{\"name\":\"n\",\"type\":\"int\"},"
+      + "{\"name\":\"s\",\"type\":\"string\"}]}");
+  private static final Schema READER = new Schema.Parser().parse(
+      "{\"type\":\"record\",\"name\":\"R\",\"fields\":["
+      + "{\"name\":\"s\",\"type\":\"string\"},"
+      + "{\"name\":\"n\",\"type\":\"long\"},"
+      + "{\"name\":\"d\",\"type\":\"string\",\"default\":\"x\"}]}");
+
+  @Test
+  public void testSharedAcrossThreads() throws Exception {
+    final ThreadSafeDatumWriter<GenericRecord> writer =
+      new ThreadSafeDatumWriter<GenericRecord>(WRITER, GenericData.get());
+    final ThreadSafeDatumReader<GenericRecord> reader =
+      new ThreadSafeDatumReader<GenericRecord>(WRITER, READER,
+          GenericData.get());
+
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Void>> results = new ArrayList<Future<Void>>();
+      for (int t = 0; t < 8; t++) {
+        final int thread = t;
+        results.add(pool.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            BinaryEncoder encoder = null;
+            for (int i = 0; i < 500; i++) {
+              GenericRecord written = new GenericData.Record(WRITER);
+              written.put("n", i);
+              written.put("s", "thread-" + thread);
+              ByteArrayOutputStream out = new ByteArrayOutputStream();
+              encoder = EncoderFactory.get().binaryEncoder(out, encoder);
+              writer.write(written, encoder);
+              encoder.flush();
+
+              GenericRecord read = reader.read(null,
+                  DecoderFactory.get().binaryDecoder(out.toByteArray(), null));
+              assertEquals((long) i, read.get("n"));
+              assertEquals("thread-" + thread, read.get("s").toString());
+              assertEquals("x", read.get("d").toString());
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> result : results) {
+        result.get();
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testSetSameSchema() {
+    ThreadSafeDatumReader<Object> reader =
+      new ThreadSafeDatumReader<Object>(WRITER, GenericData.get());
+    reader.setSchema(new Schema.Parser().parse(WRITER.toString()));
+    assertEquals(WRITER, reader.getSchema());
+    new ThreadSafeDatumWriter<Object>(WRITER, GenericData.get())
+      .setSchema(WRITER);
+  }
+
+  @Test(expected=UnsupportedOperationException.class)
+  public void testSetOtherSchema() {
+    new ThreadSafeDatumReader<Object>(WRITER, GenericData.get())
+      .setSchema(READER);
+  }
+}
@@ -727,6 +727,8 @@ public class TestReflect {
       ReflectionUtil.resetFieldAccess();
       testMultipleAnnotations();
       testRecordWithNullIO();
+      testRecordIO();
+      testR5();
     } finally {
       if (saved == null)
         System.clearProperty("avro.disable.unsafe");
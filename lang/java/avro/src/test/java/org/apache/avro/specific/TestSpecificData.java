@@ -18,6 +18,7 @@
 
 package org.apache.avro.specific;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -26,6 +27,7 @@ import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 
@@ -37,9 +39,13 @@ import org.apache.avro.Schema;
 import org.apache.avro.Schema.Field;
 import org.apache.avro.Schema.Type;
 import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.DecoderFactory;
 import org.apache.avro.io.Encoder;
 import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.io.ResolvingDecoder;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -169,4 +175,118 @@ public class TestSpecificData {
       // Expected error
     }
   }
+
+  public static class CustomCodedRecord extends TestRecord {
+    private int encodes;
+    private int decodes;
+
+    @Override protected boolean hasCustomCoders() { return true; }
+
+    @Override public void customEncode(Encoder out) throws IOException {
+      encodes++;
+      out.writeInt((Integer) get(0));
+      out.writeString((String) get(1));
+    }
+
+    @Override public void customDecode(ResolvingDecoder in) throws IOException {
+      decodes++;
+      in.readFieldOrder();
+      put(0, in.readInt());
+      put(1, in.readString());
+    }
+  }
+
+  @Test public void testCustomCoders() throws Exception {
+    CustomCodedRecord before = new CustomCodedRecord();
+    before.put("x", 1);
+    before.put("y", "str");
+    Schema schema = before.getSchema();
+
+    ByteArrayOutputStream custom = new ByteArrayOutputStream();
+    Encoder encoder = EncoderFactory.get().directBinaryEncoder(custom, null);
+    new SpecificDatumWriter<Object>(schema).write(before, encoder);
+    assertEquals(1, before.encodes);
+
+    ByteArrayOutputStream generic = new ByteArrayOutputStream();
+    encoder = EncoderFactory.get().directBinaryEncoder(generic, null);
+    new GenericDatumWriter<Object>(schema).write(before, encoder);
+    assertArrayEquals(generic.toByteArray(), custom.toByteArray());
+
+    CustomCodedRecord after = new CustomCodedRecord();
+    Decoder decoder =
+      DecoderFactory.get().binaryDecoder(custom.toByteArray(), null);
+    new SpecificDatumReader<Object>(schema).read(after, decoder);
+    assertEquals(1, after.decodes);
+    assertEquals(before, after);
+  }
+
+  @Test public void testCustomCodersSkippedWhenResolving() throws Exception {
+    CustomCodedRecord before = new CustomCodedRecord();
+    before.put("x", 1);
+    before.put("y", "str");
+    Schema reader = before.getSchema();
+    Schema writer = Schema.createRecord("TestRecord", null, null, false);
+    List<Field> fields = new ArrayList<Field>();
+    for (Field f : reader.getFields())
+      fields.add(new Field(f.name(), f.schema(), null, null));
+    fields.add(new Field("z", Schema.create(Type.LONG), null, null));
+    writer.setFields(fields);
+
+    GenericData.Record written = new GenericData.Record(writer);
+    written.put("x", 1);
+    written.put("y", "str");
+    written.put("z", 2L);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    Encoder encoder = EncoderFactory.get().directBinaryEncoder(bytes, null);
+    new GenericDatumWriter<Object>(writer).write(written, encoder);
+
+    CustomCodedRecord after = new CustomCodedRecord();
+    Decoder decoder =
+      DecoderFactory.get().binaryDecoder(bytes.toByteArray(), null);
+    new SpecificDatumReader<Object>(writer, reader).read(after, decoder);
+    assertEquals(0, after.decodes);
+    assertEquals(before, after);
+  }
+
+  @Test public void testCustomCodersSkippedForOtherSchema() throws Exception {
+    Schema schema = Schema.createRecord("TestRecord", null, null, false);
+    List<Field> fields = new ArrayList<Field>();
+    fields.add(new Field("x", Schema.create(Type.INT), null, null));
+    schema.setFields(fields);
+
+    GenericData.Record written = new GenericData.Record(schema);
+    written.put("x", 1);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    Encoder encoder = EncoderFactory.get().directBinaryEncoder(bytes, null);
+    new GenericDatumWriter<Object>(schema).write(written, encoder);
+
+    SpecificData data = new SpecificData() {
+      @Override public Class getClass(Schema s) {
+        return CustomCodedRecord.class;
+      }
+    };
+    CustomCodedRecord after = new CustomCodedRecord();
+    Decoder decoder =
+      DecoderFactory.get().binaryDecoder(bytes.toByteArray(), null);
+    new SpecificDatumReader<Object>(schema, schema, data).read(after, decoder);
+    assertEquals(0, after.decodes);
+    assertEquals(1, after.get(0));
+  }
+
+  public static class FactoryRecord extends TestRecord {}
+
+  @Test public void testRegisteredFactory() {
+    final Schema[] created = new Schema[1];
+    SpecificData.registerFactory(FactoryRecord.class,
+      new SpecificData.InstanceFactory<FactoryRecord>() {
+        public FactoryRecord newInstance(Schema schema) {
+          created[0] = schema;
+          return new FactoryRecord();
+        }
+      });
+    Schema schema = new FactoryRecord().getSchema();
+    Object r = SpecificData.newInstance(FactoryRecord.class, schema);
+    assertTrue(r instanceof FactoryRecord);
+    assertEquals(schema, created[0]);
+  }
 }
@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.ThreadSafeDatumReader;
+import org.apache.avro.generic.ThreadSafeDatumWriter;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestInstrumentation {
+  private static final int COUNT = 1000;
+
+  private InMemoryInstrumentation metrics;
+
+  @Before
+  public void install() {
+    metrics = new InMemoryInstrumentation();
+    Instrumentation.set(metrics);
+  }
+
+  @After
+  public void uninstall() {
+    Instrumentation.set(null);
+  }
+
+  @Test
+  public void testDataFile() throws Exception {
+    Schema schema = Schema.create(Schema.Type.STRING);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    DataFileWriter<Object> writer =
+      new DataFileWriter<Object>(new GenericDatumWriter<Object>(schema));
+    writer.setCodec(CodecFactory.deflateCodec(1));
+    writer.setSyncInterval(1024);
+    writer.create(schema, out);
+    for (int i = 0; i < COUNT; i++)
+      writer.append("aaaaaaaaaaaaaaaaaaaa" + i);
+    writer.close();
+
+    Assert.assertEquals(COUNT, metrics.getDatumsWritten());
+    Assert.assertEquals(metrics.getBytesWritten(),
+                        metrics.getDatumBytesWritten());
+    Assert.assertEquals(COUNT, metrics.getRecordsWritten());
+    Assert.assertTrue(metrics.getBlocksWritten() > 1);
+    Assert.assertTrue(metrics.getWriteCompressionRatio() < 1.0);
+
+    DataFileStream<Object> in = new DataFileStream<Object>(
+        new ByteArrayInputStream(out.toByteArray()),
+        new GenericDatumReader<Object>());
+    Object datum = null;
+    while (in.hasNext())
+      datum = in.next(datum);
+    in.close();
+
+    Assert.assertEquals(COUNT, metrics.getDatumsRead());
+    Assert.assertEquals(metrics.getDatumBytesWritten(),
+                        metrics.getDatumBytesRead());
+    Assert.assertEquals(COUNT, metrics.getRecordsRead());
+    Assert.assertEquals(metrics.getBlocksWritten(), metrics.getBlocksRead());
+    Assert.assertEquals(metrics.getBytesWritten(), metrics.getBytesRead());
+    Assert.assertEquals(metrics.getCompressedBytesWritten(),
+                        metrics.getCompressedBytesRead());
+    Assert.assertEquals(1, metrics.getResolverCacheMisses());
+    Assert.assertEquals(COUNT - 1, metrics.getResolverCacheHits());
+
+    metrics.reset();
+    Assert.assertEquals(0, metrics.getDatumsRead());
+    Assert.assertEquals(0, metrics.getDatumBytesRead());
+  }
+
+  @Test
+  public void testDatumBytes() throws Exception {
+    Schema schema = Schema.create(Schema.Type.STRING);
+    GenericDatumWriter<Object> writer = new GenericDatumWriter<Object>(schema);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEncoder buffered = EncoderFactory.get().binaryEncoder(out, null);
+    writer.write("abc", buffered);
+    writer.write(new Utf8("defgh"), buffered);
+    buffered.flush();
+    Assert.assertEquals(10, metrics.getDatumBytesWritten());
+    BinaryEncoder direct = EncoderFactory.get().directBinaryEncoder(out, null);
+    writer.write("ij", direct);
+    Assert.assertEquals(13, metrics.getDatumBytesWritten());
+    BinaryEncoder blocking = EncoderFactory.get()
+      .blockingBinaryEncoder(out, null);
+    writer.write("k", blocking);
+    blocking.flush();
+    Assert.assertEquals(15, metrics.getDatumBytesWritten());
+
+    byte[] bytes = out.toByteArray();
+    GenericDatumReader<Object> reader = new GenericDatumReader<Object>(schema);
+    BinaryDecoder in = DecoderFactory.get().binaryDecoder(bytes, null);
+    for (int i = 0; i < 4; i++)
+      reader.read(null, in);
+    Assert.assertEquals(15, metrics.getDatumBytesRead());
+    in = DecoderFactory.get()
+      .binaryDecoder(new ByteArrayInputStream(bytes), null);
+    for (int i = 0; i < 4; i++)
+      reader.read(null, in);
+    Assert.assertEquals(30, metrics.getDatumBytesRead());
+    in = DecoderFactory.get()
+      .directBinaryDecoder(new ByteArrayInputStream(bytes), null);
+    reader.read(null, in);                        // not counted
+    Assert.assertEquals(9, metrics.getDatumsRead());
+    Assert.assertEquals(30, metrics.getDatumBytesRead());
+  }
+
+  @Test
+  public void testThreadSafe() throws Exception {
+    Schema schema = Schema.create(Schema.Type.STRING);
+    ThreadSafeDatumWriter<Object> writer =
+      new ThreadSafeDatumWriter<Object>(schema, GenericData.get());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+    writer.write("abc", encoder);
+    encoder.flush();
+    Assert.assertEquals(1, metrics.getDatumsWritten());
+    Assert.assertEquals(4, metrics.getDatumBytesWritten());
+
+    ThreadSafeDatumReader<Object> reader =
+      new ThreadSafeDatumReader<Object>(schema, GenericData.get());
+    reader.read(null, DecoderFactory.get()
+                .binaryDecoder(out.toByteArray(), null));
+    Assert.assertEquals(1, metrics.getDatumsRead());
+    Assert.assertEquals(4, metrics.getDatumBytesRead());
+  }
+
+  @Test
+  public void testLoad() {
+    Assert.assertTrue(Instrumentation.load(InMemoryInstrumentation.class
+                                           .getName())
+                      instanceof InMemoryInstrumentation);
+    Assert.assertNull(Instrumentation.load("no.such.Instrumentation"));
+    Assert.assertNull(Instrumentation.load(String.class.getName()));
+  }
+}
@@ -27,8 +27,10 @@ import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.LinkedHashMap;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -109,6 +111,7 @@ public class SpecificCompiler {
   private boolean createAllArgsConstructor = true;
   private String outputCharacterEncoding;
   private boolean enableDecimalLogicalType = false;
+  private boolean createCustomCoders = false;
 
   /*
    * Used in the record.vm template.
@@ -219,6 +222,25 @@ public class SpecificCompiler {
     this.enableDecimalLogicalType = enableDecimalLogicalType;
   }
 
+  public boolean isCreateCustomCoders() {
+    return this.createCustomCoders;
+  }
+
+  /**
+   * Set to true to generate customEncode and customDecode methods in record
+   * classes.  These are used by {@link
+   * org.apache.avro.specific.SpecificDatumWriter} and {@link
+   * org.apache.avro.specific.SpecificDatumReader} in place of the generic
+   * schema walk when reader's and writer's schemas are the same.  Records
+   * with "java-class" properties, converted logical types not based on int,
+   * long or bytes, or unions whose branches share a Java class are always
+   * generated without them.  Nested records
+   * must be generated with this option too.
+   */
+  public void setCreateCustomCoders(boolean createCustomCoders) {
+    this.createCustomCoders = createCustomCoders;
+  }
+
   private static String logChuteName = null;
 
   private void initializeVelocity() {
@@ -671,6 +693,449 @@ public class SpecificCompiler {
     return "null";
   }
 
+  /** Utility for template use.  Returns true if customEncode and
+   * customDecode methods should be generated for a record schema. */
+  public boolean isCustomCodable(Schema schema) {
+    if (!createCustomCoders || schema.isError())
+      return false;
+    return isCustomCodable(schema,
+        Collections.newSetFromMap(new IdentityHashMap<Schema, Boolean>()));
+  }
+
+  private boolean isCustomCodable(Schema schema, Set<Schema> seen) {
+    String conversion = customConversion(schema);
+    if (conversion != null) {                     // converted logical type
+      switch (schema.getType()) {
+      case INT: case LONG: case BYTES:
+        return !"null".equals(conversion);
+      default:
+        return false;
+      }
+    }
+    switch (schema.getType()) {
+    case RECORD:
+      if (schema.isError())
+        return false;
+      if (!seen.add(schema))
+        return true;                              // recursive reference
+      for (Field f : schema.getFields())
+        if (!isCustomCodable(f.schema(), seen))
+          return false;
+      return true;
+    case ARRAY:
+      return schema.getProp(SpecificData.ELEMENT_PROP) == null
+        && isCustomCodable(schema.getElementType(), seen);
+    case MAP:
+      return schema.getProp(SpecificData.KEY_CLASS_PROP) == null
+        && isCustomCodable(schema.getValueType(), seen);
+    case UNION:
+      if (getNullableIndex(schema) >= 0)
+        return isCustomCodable(schema.getTypes().get(getNullableIndex(schema)),
+                               seen);
+      Set<String> classes = new HashSet<String>();
+      for (Schema branch : schema.getTypes()) {
+        if (!isCustomCodable(branch, seen)
+            || !classes.add(String.valueOf(unionBranchClass(branch))))
+          return false;                           // not told apart by class
+      }
+      return true;
+    case STRING:
+      return schema.getProp(SpecificData.CLASS_PROP) == null;
+    default:
+      return true;
+    }
+  }
+
+  /** Utility for template use.  Returns true if the custom coders of a
+   * record schema use conversion constants for values other than those of
+   * its fields. */
+  public boolean hasCustomConversions(Schema schema) {
+    if (!isCustomCodable(schema))
+      return false;
+    for (Field f : schema.getFields())
+      if (hasCustomConversions(f.schema(), true))
+        return true;
+    return false;
+  }
+
+  private boolean hasCustomConversions(Schema schema, boolean field) {
+    switch (schema.getType()) {
+    case ARRAY: return hasCustomConversions(schema.getElementType(), false);
+    case MAP:   return hasCustomConversions(schema.getValueType(), false);
+    case UNION:
+      for (Schema branch : schema.getTypes())
+        if (hasCustomConversions(branch, false))
+          return true;
+      return false;
+    default:
+      return !field && customConversion(schema) != null;
+    }
+  }
+
+  /** Returns the name of the conversion constant used for a schema's
+   * logical type by generated code, "null" if its type is converted but
+   * generated code has no such constant, or null if its value is not
+   * converted. */
+  private String customConversion(Schema schema) {
+    if (getConvertedLogicalType(schema) == null)
+      return null;
+    return conversionInstance(schema);
+  }
+
+  /** Returns the class tested with instanceof to select a branch of a union
+   * in generated code, or null for the null branch. */
+  private String unionBranchClass(Schema branch) {
+    if (customConversion(branch) != null)
+      return javaType(branch);
+    switch (branch.getType()) {
+    case NULL:   return null;
+    case ARRAY:  return "java.util.List";
+    case MAP:    return "java.util.Map";
+    case STRING: return "java.lang.CharSequence";
+    default:     return javaType(branch);
+    }
+  }
+
+  /** Returns the index of the non-null branch of a [null, T] union, or -1 if
+   * the union has any other shape. */
+  private static int getNullableIndex(Schema union) {
+    List<Schema> types = union.getTypes();
+    if (types.size() != 2 || !types.contains(NULL_SCHEMA))
+      return -1;
+    return types.get(0).equals(NULL_SCHEMA) ? 1 : 0;
+  }
+
+  /** Utility for template use.  Returns statements that write the value of
+   * a field with an Encoder named "out". */
+  public String customEncode(Field field, String var) {
+    StringBuilder b = new StringBuilder();
+    customEncode(b, field.schema(), var,
+                 "SCHEMA$.getFields().get(" + field.pos() + ").schema()",
+                 "    ", 0);
+    return b.toString();
+  }
+
+  private void customEncode(StringBuilder b, Schema schema, String var,
+                            String schemaExpr, String indent, int depth) {
+    String conversion = customConversion(schema);
+    if (conversion != null) {
+      String args = "(" + var + ", " + schemaExpr + ", " + schemaExpr
+        + ".getLogicalType())";
+      switch (schema.getType()) {
+      case INT:
+        line(b, indent, "out.writeInt(" + conversion + ".toInt" + args + ");");
+        break;
+      case LONG:
+        line(b, indent, "out.writeLong(" + conversion + ".toLong" + args + ");");
+        break;
+      case BYTES:
+        line(b, indent, "out.writeBytes(" + conversion + ".toBytes" + args
+             + ");");
+        break;
+      default: throw new RuntimeException("Unconvertible type: "+schema);
+      }
+      return;
+    }
+    switch (schema.getType()) {
+    case RECORD:
+      line(b, indent, var + ".customEncode(out);");
+      break;
+    case ENUM:
+      line(b, indent, "out.writeEnum(" + var + ".ordinal());");
+      break;
+    case ARRAY:
+    case MAP:
+      boolean isMap = schema.getType() == Schema.Type.MAP;
+      String size = "size" + depth;
+      String actualSize = "actualSize" + depth;
+      String e = "e" + depth;
+      String inner = indent + "  ";
+      line(b, indent, "{");
+      line(b, inner, "long " + size + " = " + var + ".size();");
+      line(b, inner, "long " + actualSize + " = 0;");
+      line(b, inner, isMap ? "out.writeMapStart();" : "out.writeArrayStart();");
+      line(b, inner, "out.setItemCount(" + size + ");");
+      if (isMap) {
+        line(b, inner, "for (java.util.Map.Entry<" + mapKeyType(schema) + ", "
+             + javaType(schema.getValueType()) + "> " + e + " : " + var
+             + ".entrySet()) {");
+      } else {
+        line(b, inner, "for (" + javaType(schema.getElementType()) + " " + e
+             + " : " + var + ") {");
+      }
+      line(b, inner + "  ", actualSize + "++;");
+      line(b, inner + "  ", "out.startItem();");
+      if (isMap) {
+        String v = "v" + depth;
+        line(b, inner + "  ", "out.writeString(" + e + ".getKey());");
+        line(b, inner + "  ", javaType(schema.getValueType()) + " " + v + " = "
+             + e + ".getValue();");
+        customEncode(b, schema.getValueType(), v,
+                     schemaExpr + ".getValueType()", inner + "  ", depth + 1);
+      } else {
+        customEncode(b, schema.getElementType(), e,
+                     schemaExpr + ".getElementType()", inner + "  ",
+                     depth + 1);
+      }
+      line(b, inner, "}");
+      line(b, inner, isMap ? "out.writeMapEnd();" : "out.writeArrayEnd();");
+      line(b, inner, "if (" + actualSize + " != " + size + ")");
+      line(b, inner + "  ", "throw new java.util.ConcurrentModificationException("
+           + "\"Size written was \" + " + size
+           + " + \", but number of elements written was \" + "
+           + actualSize + " + \".\");");
+      line(b, indent, "}");
+      break;
+    case UNION:
+      int index = getNullableIndex(schema);
+      if (index >= 0) {
+        line(b, indent, "if (" + var + " == null) {");
+        line(b, indent + "  ", "out.writeIndex(" + (1 - index) + ");");
+        line(b, indent + "  ", "out.writeNull();");
+        line(b, indent, "} else {");
+        line(b, indent + "  ", "out.writeIndex(" + index + ");");
+        customEncode(b, schema.getTypes().get(index), var,
+                     schemaExpr + ".getTypes().get(" + index + ")",
+                     indent + "  ", depth);
+        line(b, indent, "}");
+        break;
+      }
+      String u = "u" + depth;
+      String test = "if";
+      for (int i = 0; i < schema.getTypes().size(); i++) {
+        Schema branch = schema.getTypes().get(i);
+        String branchClass = unionBranchClass(branch);
+        line(b, indent, test + " (" + var + (branchClass == null
+             ? " == null" : " instanceof " + branchClass) + ") {");
+        line(b, indent + "  ", "out.writeIndex(" + i + ");");
+        if (branchClass == null) {
+          line(b, indent + "  ", "out.writeNull();");
+        } else {
+          String type = branch.getType() == Schema.Type.STRING
+            ? branchClass : javaType(branch);     // any CharSequence is written
+          line(b, indent + "  ", type + " " + u + " = (" + type + ")" + var
+               + ";");
+          customEncode(b, branch, u,
+                       schemaExpr + ".getTypes().get(" + i + ")",
+                       indent + "  ", depth + 1);
+        }
+        test = "} else if";
+      }
+      line(b, indent, "} else {");
+      line(b, indent + "  ", "throw new org.apache.avro.UnresolvedUnionException("
+           + schemaExpr + ", " + var + ");");
+      line(b, indent, "}");
+      break;
+    case FIXED:
+      line(b, indent, "out.writeFixed(" + var + ".bytes(), 0, "
+           + schema.getFixedSize() + ");");
+      break;
+    case STRING:  line(b, indent, "out.writeString(" + var + ");");  break;
+    case BYTES:   line(b, indent, "out.writeBytes(" + var + ");");   break;
+    case INT:     line(b, indent, "out.writeInt(" + var + ");");     break;
+    case LONG:    line(b, indent, "out.writeLong(" + var + ");");    break;
+    case FLOAT:   line(b, indent, "out.writeFloat(" + var + ");");   break;
+    case DOUBLE:  line(b, indent, "out.writeDouble(" + var + ");");  break;
+    case BOOLEAN: line(b, indent, "out.writeBoolean(" + var + ");"); break;
+    case NULL:    line(b, indent, "out.writeNull();");               break;
+    default: throw new RuntimeException("Unknown type: "+schema);
+    }
+  }
+
+  /** Utility for template use.  Returns statements that read the value of a
+   * field from a ResolvingDecoder named "in". */
+  public String customDecode(Field field, String var) {
+    StringBuilder b = new StringBuilder();
+    customDecode(b, field.schema(), var,
+                 "SCHEMA$.getFields().get(" + field.pos() + ").schema()",
+                 "    ", 0);
+    return b.toString();
+  }
+
+  private void customDecode(StringBuilder b, Schema schema, String var,
+                            String schemaExpr, String indent, int depth) {
+    String conversion = customConversion(schema);
+    if (conversion != null) {
+      String args = ", " + schemaExpr + ", " + schemaExpr
+        + ".getLogicalType());";
+      switch (schema.getType()) {
+      case INT:
+        line(b, indent, var + " = " + conversion + ".fromInt(in.readInt()"
+             + args);
+        break;
+      case LONG:
+        line(b, indent, var + " = " + conversion + ".fromLong(in.readLong()"
+             + args);
+        break;
+      case BYTES:
+        line(b, indent, var + " = " + conversion
+             + ".fromBytes(in.readBytes(null)" + args);
+        break;
+      default: throw new RuntimeException("Unconvertible type: "+schema);
+      }
+      return;
+    }
+    switch (schema.getType()) {
+    case RECORD:
+    case FIXED:
+      line(b, indent, "if (" + var + " == null) {");
+      line(b, indent + "  ", var + " = new " + javaType(schema) + "();");
+      line(b, indent, "}");
+      if (schema.getType() == Schema.Type.RECORD)
+        line(b, indent, var + ".customDecode(in);");
+      else
+        line(b, indent, "in.readFixed(" + var + ".bytes(), 0, "
+             + schema.getFixedSize() + ");");
+      break;
+    case ENUM:
+      line(b, indent, var + " = " + javaType(schema)
+           + ".values()[in.readEnum()];");
+      break;
+    case ARRAY:
+      String elementType = javaType(schema.getElementType());
+      String arrayType = "org.apache.avro.generic.GenericData.Array<"
+        + elementType + ">";
+      String size = "size" + depth;
+      String a = "a" + depth;
+      String ga = "ga" + depth;
+      String e = "e" + depth;
+      String inner = indent + "  ";
+      line(b, indent, "{");
+      line(b, inner, "long " + size + " = in.readArrayStart();");
+      line(b, inner, javaType(schema) + " " + a + " = " + var + ";");
+      line(b, inner, "if (" + a + " == null) {");
+      line(b, inner + "  ", a + " = new " + arrayType + "((int)" + size + ", "
+           + schemaExpr + ");");
+      line(b, inner + "  ", var + " = " + a + ";");
+      line(b, inner, "} else {");
+      line(b, inner + "  ", a + ".clear();");
+      line(b, inner, "}");
+      line(b, inner, arrayType + " " + ga + " = (" + a + " instanceof "
+           + "org.apache.avro.generic.GenericData.Array ? (" + arrayType + ")"
+           + a + " : null);");
+      line(b, inner, "for ( ; 0 < " + size + "; " + size + " = in.arrayNext()) {");
+      line(b, inner + "  ", "for ( ; " + size + " != 0; " + size + "--) {");
+      line(b, inner + "    ", elementType + " " + e + " = (" + ga
+           + " != null ? " + ga + ".peek() : null);");
+      customDecode(b, schema.getElementType(), e,
+                   schemaExpr + ".getElementType()", inner + "    ", depth + 1);
+      line(b, inner + "    ", a + ".add(" + e + ");");
+      line(b, inner + "  ", "}");
+      line(b, inner, "}");
+      line(b, indent, "}");
+      break;
+    case MAP:
+      String keyType = mapKeyType(schema);
+      String valueType = javaType(schema.getValueType());
+      String mapSize = "size" + depth;
+      String m = "m" + depth;
+      String k = "k" + depth;
+      String v = "v" + depth;
+      String mapInner = indent + "  ";
+      line(b, indent, "{");
+      line(b, mapInner, "long " + mapSize + " = in.readMapStart();");
+      line(b, mapInner, javaType(schema) + " " + m + " = " + var + ";");
+      line(b, mapInner, "if (" + m + " == null) {");
+      line(b, mapInner + "  ", m + " = new java.util.HashMap<" + keyType + ", "
+           + valueType + ">((int)" + mapSize + ");");
+      line(b, mapInner + "  ", var + " = " + m + ";");
+      line(b, mapInner, "} else {");
+      line(b, mapInner + "  ", m + ".clear();");
+      line(b, mapInner, "}");
+      line(b, mapInner, "for ( ; 0 < " + mapSize + "; " + mapSize
+           + " = in.mapNext()) {");
+      line(b, mapInner + "  ", "for ( ; " + mapSize + " != 0; " + mapSize
+           + "--) {");
+      line(b, mapInner + "    ", keyType + " " + k + " = "
+           + ("java.lang.String".equals(keyType)
+              ? "in.readString();" : "in.readString(null);"));
+      line(b, mapInner + "    ", valueType + " " + v + " = null;");
+      customDecode(b, schema.getValueType(), v,
+                   schemaExpr + ".getValueType()", mapInner + "    ",
+                   depth + 1);
+      line(b, mapInner + "    ", m + ".put(" + k + ", " + v + ");");
+      line(b, mapInner + "  ", "}");
+      line(b, mapInner, "}");
+      line(b, indent, "}");
+      break;
+    case UNION:
+      int index = getNullableIndex(schema);
+      if (index < 0) {
+        customDecodeUnion(b, schema, var, schemaExpr, indent, depth);
+        break;
+      }
+      line(b, indent, "if (in.readIndex() != " + index + ") {");
+      line(b, indent + "  ", "in.readNull();");
+      line(b, indent + "  ", var + " = null;");
+      line(b, indent, "} else {");
+      customDecode(b, schema.getTypes().get(index), var,
+                   schemaExpr + ".getTypes().get(" + index + ")",
+                   indent + "  ", depth);
+      line(b, indent, "}");
+      break;
+    case STRING:
+      if ("java.lang.String".equals(javaType(schema)))
+        line(b, indent, var + " = in.readString();");
+      else
+        line(b, indent, var + " = in.readString(" + var + " instanceof "
+             + "org.apache.avro.util.Utf8 ? (org.apache.avro.util.Utf8)" + var
+             + " : null);");
+      break;
+    case BYTES:   line(b, indent, var + " = in.readBytes(" + var + ");"); break;
+    case INT:     line(b, indent, var + " = in.readInt();");              break;
+    case LONG:    line(b, indent, var + " = in.readLong();");             break;
+    case FLOAT:   line(b, indent, var + " = in.readFloat();");            break;
+    case DOUBLE:  line(b, indent, var + " = in.readDouble();");           break;
+    case BOOLEAN: line(b, indent, var + " = in.readBoolean();");          break;
+    case NULL:
+      line(b, indent, "in.readNull();");
+      line(b, indent, var + " = null;");
+      break;
+    default: throw new RuntimeException("Unknown type: "+schema);
+    }
+  }
+
+  private void customDecodeUnion(StringBuilder b, Schema schema, String var,
+                                 String schemaExpr, String indent,
+                                 int depth) {
+    String u = "u" + depth;
+    String inner = indent + "  ";
+    line(b, indent, "switch (in.readIndex()) {");
+    for (int i = 0; i < schema.getTypes().size(); i++) {
+      Schema branch = schema.getTypes().get(i);
+      String branchClass = unionBranchClass(branch);
+      line(b, indent, "case " + i + ":");
+      if (branchClass == null) {
+        line(b, inner, "in.readNull();");
+        line(b, inner, var + " = null;");
+      } else {
+        String type = javaType(branch);
+        String reuse = branch.getType() == Schema.Type.STRING
+          ? type : branchClass;
+        line(b, inner, "{");
+        line(b, inner + "  ", type + " " + u + " = (" + var + " instanceof "
+             + reuse + " ? (" + type + ")" + var + " : null);");
+        customDecode(b, branch, u, schemaExpr + ".getTypes().get(" + i + ")",
+                     inner + "  ", depth + 1);
+        line(b, inner + "  ", var + " = " + u + ";");
+        line(b, inner, "}");
+      }
+      line(b, inner, "break;");
+    }
+    line(b, indent, "default:");
+    line(b, inner, "throw new org.apache.avro.AvroRuntimeException("
+         + "\"Illegal union index\");");
+    line(b, indent, "}");
+  }
+
+  private String mapKeyType(Schema schema) {
+    return getStringType(schema.getJsonProp(SpecificData.KEY_CLASS_PROP));
+  }
+
+  private static void line(StringBuilder b, String indent, String code) {
+    b.append(indent).append(code).append('\n');
+  }
+
   /** Utility for template use.  Returns the java annotations for a schema. */
   public String[] javaAnnotations(JsonProperties props) {
     JsonNode value = props.getJsonProp("javaAnnotation");
@@ -17,6 +17,7 @@
  */
 package org.apache.avro.compiler.specific;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -25,14 +26,20 @@ import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.equalTo;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.avro.AvroTestUtil;
@@ -40,6 +47,20 @@ import org.apache.avro.LogicalTypes;
 import org.apache.avro.Schema;
 import org.apache.avro.SchemaBuilder;
 import org.apache.avro.generic.GenericData.StringType;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+import org.apache.avro.util.Utf8;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -74,11 +95,12 @@ public class TestSpecificCompiler {
     }
   }
 
-  /** Uses the system's java compiler to actually compile the generated code. */
-  static void assertCompilesWithJavaCompiler(Collection<SpecificCompiler.OutputFile> outputs)
+  /** Uses the system's java compiler to actually compile the generated code.
+   * Returns the directory holding the compiled classes. */
+  static File assertCompilesWithJavaCompiler(Collection<SpecificCompiler.OutputFile> outputs)
           throws IOException {
     if (outputs.isEmpty())
-      return;               // Nothing to compile!
+      return null;          // Nothing to compile!
 
     JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
     StandardJavaFileManager fileManager =
@@ -95,6 +117,7 @@ public class TestSpecificCompiler {
                     javaFiles.toArray(new File[javaFiles.size()])));
     boolean compilesWithoutError = cTask.call();
     assertTrue(compilesWithoutError);
+    return dstDir;
   }
 
   private static Schema createSampleRecordSchema(int numStringFields, int numDoubleFields) {
@@ -276,6 +299,141 @@ public class TestSpecificCompiler {
     }
   }
 
+  @Test
+  public void testCustomCoders() throws IOException {
+    Schema s = Schema.parse
+      ("{\"name\":\"Outer\",\"type\":\"record\",\"fields\":["
+       +"{\"name\":\"b\",\"type\":\"boolean\"},"
+       +"{\"name\":\"l\",\"type\":\"long\"},"
+       +"{\"name\":\"d\",\"type\":\"double\"},"
+       +"{\"name\":\"s\",\"type\":\"string\"},"
+       +"{\"name\":\"y\",\"type\":\"bytes\"},"
+       +"{\"name\":\"e\",\"type\":"
+       +"{\"name\":\"E\",\"type\":\"enum\",\"symbols\":[\"A\",\"B\"]}},"
+       +"{\"name\":\"f\",\"type\":"
+       +"{\"name\":\"F\",\"type\":\"fixed\",\"size\":4}},"
+       +"{\"name\":\"a\",\"type\":"
+       +"{\"type\":\"array\",\"items\":[\"null\",\"string\"]}},"
+       +"{\"name\":\"m\",\"type\":"
+       +"{\"type\":\"map\",\"values\":{\"type\":\"array\",\"items\":\"int\"}}},"
+       +"{\"name\":\"i\",\"type\":[\"null\","
+       +"{\"name\":\"Inner\",\"type\":\"record\",\"fields\":["
+       +"{\"name\":\"x\",\"type\":\"int\"}]}]}]}");
+    SpecificCompiler compiler = new SpecificCompiler(s);
+    assertFalse(compiler.isCustomCodable(s));
+    compiler.setCreateCustomCoders(true);
+    assertTrue(compiler.isCustomCodable(s));
+    Collection<SpecificCompiler.OutputFile> outputs = compiler.compile();
+    for (SpecificCompiler.OutputFile o : outputs)
+      if (o.path.endsWith("Outer.java"))
+        assertTrue(o.contents.contains("customDecode"));
+    assertCompilesWithJavaCompiler(outputs);
+
+    compiler.setStringType(StringType.String);
+    assertCompilesWithJavaCompiler(compiler.compile());
+
+    Schema union = Schema.parse
+      ("{\"name\":\"U\",\"type\":\"record\",\"fields\":["
+       +"{\"name\":\"u\",\"type\":[\"int\",\"string\"]}]}");
+    assertTrue(compiler.isCustomCodable(union));
+    Schema javaClass = Schema.parse
+      ("{\"name\":\"J\",\"type\":\"record\",\"fields\":["
+       +"{\"name\":\"j\",\"type\":[\"int\",{\"type\":\"string\","
+       +"\"java-class\":\"java.math.BigInteger\"}]}]}");
+    assertFalse(compiler.isCustomCodable(javaClass));
+  }
+
+  @Test
+  public void testCustomCodersRoundTrip() throws Exception {
+    String date = "{\"type\":\"int\",\"logicalType\":\"date\"}";
+    Schema s = Schema.parse
+      ("{\"name\":\"Coded\",\"namespace\":\"custom\",\"type\":\"record\","
+       +"\"fields\":["
+       +"{\"name\":\"n\",\"type\":\"int\"},"
+       +"{\"name\":\"s\",\"type\":\"string\"},"
+       +"{\"name\":\"inner\",\"type\":"
+       +"{\"name\":\"Inner\",\"type\":\"record\",\"fields\":["
+       +"{\"name\":\"x\",\"type\":\"long\"},"
+       +"{\"name\":\"tags\",\"type\":{\"type\":\"array\",\"items\":\"string\"}}]}},"
+       +"{\"name\":\"inners\",\"type\":{\"type\":\"array\",\"items\":\"Inner\"}},"
+       +"{\"name\":\"m\",\"type\":{\"type\":\"map\","
+       +"\"values\":{\"type\":\"array\",\"items\":[\"null\",\"double\"]}}},"
+       +"{\"name\":\"opt\",\"type\":[\"null\",\"Inner\"]},"
+       +"{\"name\":\"u\",\"type\":[\"null\",\"long\",\"string\",\"Inner\","+date+"]},"
+       +"{\"name\":\"date\",\"type\":"+date+"},"
+       +"{\"name\":\"ts\",\"type\":"
+       +"{\"type\":\"long\",\"logicalType\":\"timestamp-millis\"}},"
+       +"{\"name\":\"dec\",\"type\":{\"type\":\"bytes\","
+       +"\"logicalType\":\"decimal\",\"precision\":9,\"scale\":2}},"
+       +"{\"name\":\"dates\",\"type\":{\"type\":\"array\",\"items\":"+date+"}}]}");
+    SpecificCompiler compiler = new SpecificCompiler(s);
+    compiler.setStringType(StringType.String);
+    compiler.setEnableDecimalLogicalType(true);
+    compiler.setCreateCustomCoders(true);
+    assertTrue(compiler.isCustomCodable(s));
+    Collection<SpecificCompiler.OutputFile> outputs = compiler.compile();
+    for (SpecificCompiler.OutputFile o : outputs)
+      if (o.path.endsWith("Coded.java") || o.path.endsWith("Inner.java"))
+        assertTrue(o.contents.contains("customDecode"));
+    File classes = assertCompilesWithJavaCompiler(outputs);
+
+    ClassLoader loader = new URLClassLoader(new URL[] { classes.toURI().toURL() },
+                                            getClass().getClassLoader());
+    SpecificData data = new SpecificData(loader);
+    Class<?> codedClass = loader.loadClass("custom.Coded");
+    Class<?> innerClass = loader.loadClass("custom.Inner");
+    Schema schema = data.getSchema(codedClass);     // with string properties
+
+    SpecificRecord inner = (SpecificRecord) innerClass.newInstance();
+    inner.put(0, 5L);
+    inner.put(1, Arrays.asList("a", "b"));
+    SpecificRecord other = (SpecificRecord) innerClass.newInstance();
+    other.put(0, 6L);
+    other.put(1, new ArrayList<String>());
+    LocalDate day = new LocalDate(2017, 3, 4);
+
+    for (Object u : new Object[] { null, 3L, "three", new Utf8("utf"),
+                                   inner, day }) {
+      SpecificRecord coded = (SpecificRecord) codedClass.newInstance();
+      coded.put(0, 7);
+      coded.put(1, "seven");
+      coded.put(2, inner);
+      coded.put(3, Arrays.asList(inner, other));
+      coded.put(4, Collections.singletonMap("k", Arrays.asList(null, 1.5)));
+      coded.put(5, u == null ? other : null);
+      coded.put(6, u);
+      coded.put(7, day);
+      coded.put(8, new DateTime(1234567890123L, DateTimeZone.UTC));
+      coded.put(9, new BigDecimal("1234.56"));
+      coded.put(10, Arrays.asList(day, day.plusDays(1)));
+
+      byte[] bytes = write(new SpecificDatumWriter<Object>(schema, data), coded);
+      SpecificRecord decoded = (SpecificRecord)
+        new SpecificDatumReader<Object>(schema, schema, data)
+        .read(null, DecoderFactory.get().binaryDecoder(bytes, null));
+      for (Schema.Field f : s.getFields())
+        assertEquals(f.name(), String.valueOf(coded.get(f.pos())),
+                     String.valueOf(decoded.get(f.pos())));
+      assertArrayEquals(bytes,
+                        write(new SpecificDatumWriter<Object>(schema, data), decoded));
+
+      // the custom encoding is also read by the generic implementation
+      Object generic = new GenericDatumReader<Object>(schema)
+        .read(null, DecoderFactory.get().binaryDecoder(bytes, null));
+      assertArrayEquals(bytes,
+                        write(new GenericDatumWriter<Object>(schema), generic));
+    }
+  }
+
+  private static byte[] write(DatumWriter<Object> writer, Object datum)
+    throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Encoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+    writer.write(datum, encoder);
+    encoder.flush();
+    return out.toByteArray();
+  }
+
   @Test
   public void testSettingOutputCharacterEncoding() throws Exception {
     SpecificCompiler compiler = createCompiler();
@@ -18,6 +18,7 @@
 
 package org.apache.avro.ipc;
 
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -32,6 +33,8 @@ public class CallFuture<T> implements Future<T>, Callback<T> {
   private final Callback<T> chainedCallback;
   private T result = null;
   private Throwable error = null;
+  private volatile boolean cancelled;
+  private volatile Runnable canceller;          // notified on cancellation
 
   /**
    * Creates a CallFuture.
@@ -56,8 +59,11 @@ public class CallFuture<T> implements Future<T>, Callback<T> {
    */
   @Override
   public void handleResult(T result) {
-    this.result = result;
-    latch.countDown();
+    synchronized (latch) {
+      if (cancelled) return;
+      this.result = result;
+      latch.countDown();
+    }
     if (chainedCallback != null) {
       chainedCallback.handleResult(result);
     }
@@ -70,8 +76,11 @@ public class CallFuture<T> implements Future<T>, Callback<T> {
    */
   @Override
   public void handleError(Throwable error) {
-    this.error = error;
-    latch.countDown();
+    synchronized (latch) {
+      if (cancelled) return;
+      this.error = error;
+      latch.countDown();
+    }
     if (chainedCallback != null) {
       chainedCallback.handleError(error);
     }
@@ -100,20 +109,53 @@ public class CallFuture<T> implements Future<T>, Callback<T> {
     return error;
   }
 
+  /** Called by {@link Requestor} with the action that abandons the call
+   * this awaits. */
+  void setCanceller(Runnable canceller) {
+    this.canceller = canceller;
+  }
+
+  /**
+   * Abandons the RPC if it has not yet completed.  Its transceiver stops
+   * waiting for the response and, where the transport permits, asks the
+   * server to drop the call, so that it no longer counts against {@link
+   * NettyTransceiver#setMaxInFlight(int, long)}.  Threads waiting on {@link
+   * #get()} are unblocked with a CancellationException, and the chained
+   * Callback, if any, is passed one as an error.
+   * @param mayInterruptIfRunning ignored, as no thread runs the RPC.
+   * @return false if the RPC had already completed.
+   */
   @Override
   public boolean cancel(boolean mayInterruptIfRunning) {
-    return false;
+    CancellationException e = new CancellationException("Call cancelled");
+    synchronized (latch) {
+      if (isDone()) return false;
+      cancelled = true;
+      error = e;
+      latch.countDown();
+    }
+    Runnable canceller = this.canceller;
+    if (canceller != null) {
+      canceller.run();
+    }
+    if (chainedCallback != null) {
+      chainedCallback.handleError(e);
+    }
+    return true;
   }
 
   @Override
   public boolean isCancelled() {
-    return false;
+    return cancelled;
   }
 
   @Override
   public T get() throws InterruptedException,
       ExecutionException {
     latch.await();
+    if (cancelled) {
+      throw (CancellationException) error;
+    }
     if (error != null) {
       throw new ExecutionException(error);
     }
@@ -124,6 +166,9 @@ public class CallFuture<T> implements Future<T>, Callback<T> {
   public T get(long timeout, TimeUnit unit)
       throws InterruptedException, ExecutionException, TimeoutException {
     if (latch.await(timeout, unit)) {
+      if (cancelled) {
+        throw (CancellationException) error;
+      }
       if (error != null) {
         throw new ExecutionException(error);
       }
@@ -29,7 +29,12 @@ import java.util.List;
 import java.net.URL;
 import java.net.HttpURLConnection;
 
-/** An HTTP-based {@link Transceiver} implementation. */
+/** An HTTP-based {@link Transceiver} implementation.
+ *
+ * <p>Each two-way call is made on its own request, so that calls from
+ * different threads proceed concurrently.  Connections are kept alive and
+ * reused between requests by the platform's HTTP client, and request bodies
+ * are streamed to the connection rather than buffered in memory. */
 public class HttpTransceiver extends Transceiver {
   static final String CONTENT_TYPE = "avro/binary";
 
@@ -50,17 +55,29 @@ public class HttpTransceiver extends Transceiver {
 
   public String getRemoteName() { return this.url.toString(); }
 
+  @Override boolean isStateless() { return true; }
+
+  /** Makes a call on a connection of its own, so is not synchronized with
+   * other calls. */
+  @Override
+  public List<ByteBuffer> transceive(List<ByteBuffer> request)
+    throws IOException {
+    return readBuffers(post(request));
+  }
+
   public synchronized List<ByteBuffer> readBuffers() throws IOException {
-    InputStream in = connection.getInputStream();
-    try {
-      return readBuffers(in);
-    } finally {
-      in.close();
-    }
+    return readBuffers(connection);
   }
 
   public synchronized void writeBuffers(List<ByteBuffer> buffers)
     throws IOException {
+    connection = post(buffers);
+  }
+
+  /** Opens a connection and writes a request to it. */
+  private HttpURLConnection post(List<ByteBuffer> buffers)
+    throws IOException {
+    HttpURLConnection connection;
     if (proxy == null)
       connection = (HttpURLConnection)url.openConnection();
     else
@@ -68,8 +85,7 @@ public class HttpTransceiver extends Transceiver {
 
     connection.setRequestMethod("POST");
     connection.setRequestProperty("Content-Type", CONTENT_TYPE);
-    connection.setRequestProperty("Content-Length",
-                                  Integer.toString(getLength(buffers)));
+    connection.setFixedLengthStreamingMode(getLength(buffers));
     connection.setDoOutput(true);
     connection.setReadTimeout(timeout);
     connection.setConnectTimeout(timeout);
@@ -80,6 +96,33 @@ public class HttpTransceiver extends Transceiver {
     } finally {
       out.close();
     }
+    return connection;
+  }
+
+  /** Reads a response from a connection.  The connection's streams are
+   * fully read and closed, so that it may be reused for later requests. */
+  private static List<ByteBuffer> readBuffers(HttpURLConnection connection)
+    throws IOException {
+    InputStream in;
+    try {
+      in = connection.getInputStream();
+    } catch (IOException e) {
+      InputStream error = connection.getErrorStream();
+      if (error != null) {
+        try {
+          byte[] discard = new byte[1024];
+          while (error.read(discard) >= 0) {}
+        } finally {
+          error.close();
+        }
+      }
+      throw e;
+    }
+    try {
+      return readBuffers(in);
+    } finally {
+      in.close();
+    }
   }
 
   static int getLength(List<ByteBuffer> buffers) {
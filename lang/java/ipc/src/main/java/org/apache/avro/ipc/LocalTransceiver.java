@@ -19,14 +19,62 @@ package org.apache.avro.ipc;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 
-/** Implementation of IPC that remains in process. */
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Protocol.Message;
+import org.apache.avro.Schema;
+import org.apache.avro.UnresolvedUnionException;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.ipc.generic.GenericRequestor;
+import org.apache.avro.ipc.generic.GenericResponder;
+import org.apache.avro.ipc.specific.SpecificRequestor;
+import org.apache.avro.util.ByteBufferInputStream;
+import org.apache.avro.util.ByteBufferOutputStream;
+import org.apache.avro.util.Utf8;
+
+/** Implementation of IPC that remains in process.
+ *
+ * <p>By default requests and responses are serialized, as by other
+ * transports.  A transceiver may instead pass them directly between
+ * requestor and responder, so that a call costs little more than a method
+ * call.  Calls are passed directly when the requestor is a generic,
+ * specific or reflect requestor, the responder a generic, specific or
+ * reflect responder, and both use the same protocol and the same kind of
+ * data model, loading classes from the same class loader.  Other calls are
+ * serialized.  Plugins are run for direct calls, but see no payloads or
+ * handshakes.  Errors are serialized, so that they reach the caller as they
+ * would through other transports. */
 public class LocalTransceiver extends Transceiver {
   private Responder responder;
+  private final boolean direct;
+  private final boolean copy;
 
   public LocalTransceiver(Responder responder) {
+    this(responder, false, false);
+  }
+
+  /** Construct a transceiver that passes requests and responses directly
+   * between requestor and responder, when it can, rather than serializing
+   * them.
+   * @param copy if true, requests and responses are deep copied, so that
+   * neither side sees changes the other later makes to them.  Otherwise the
+   * objects themselves are passed.
+   */
+  public LocalTransceiver(Responder responder, boolean copy) {
+    this(responder, true, copy);
+  }
+
+  private LocalTransceiver(Responder responder, boolean direct, boolean copy) {
     this.responder = responder;
+    this.direct = direct;
+    this.copy = copy;
   }
 
   @Override
@@ -49,4 +97,94 @@ public class LocalTransceiver extends Transceiver {
   public void writeBuffers(List<ByteBuffer> buffers) throws IOException {
     throw new UnsupportedOperationException();
   }
+
+  /** True if calls from a requestor may be passed directly. */
+  boolean isDirect(Requestor requestor) {
+    if (!direct)
+      return false;
+    GenericData local = getData(requestor);
+    GenericData remote = getData(responder);
+    return local != null && remote != null
+      && local.getClass() == remote.getClass()
+      && local.getClassLoader() == remote.getClassLoader()
+      && Arrays.equals(requestor.getLocal().getMD5(),
+                       responder.getLocal().getMD5());
+  }
+
+  private static GenericData getData(Requestor requestor) {
+    if (requestor instanceof SpecificRequestor)
+      return ((SpecificRequestor)requestor).getSpecificData();
+    if (requestor instanceof GenericRequestor)
+      return ((GenericRequestor)requestor).getGenericData();
+    return null;
+  }
+
+  private static GenericData getData(Responder responder) {
+    if (responder instanceof GenericResponder)
+      return ((GenericResponder)responder).getGenericData();
+    return null;
+  }
+
+  /** Passes a request from a requestor for which {@link
+   * #isDirect(Requestor)} to the responder, and its response or error to
+   * the callback. */
+  void respond(final Requestor requestor, final Message message,
+               Object request, RPCContext context,
+               final Callback<Object> callback) {
+    final GenericData data = getData(responder);
+    if (requestor instanceof SpecificRequestor)   // parameters to a record
+      request = toRecord(message.getRequest(), (Object[])request);
+    if (copy)
+      request = data.deepCopy(message.getRequest(), request);
+
+    RPCContext server = new RPCContext();
+    server.setRequestCallMeta(
+        new HashMap<String,ByteBuffer>(context.requestCallMeta()));
+    context.setResponseCallMeta(server.responseCallMeta());
+
+    responder.respond(message, request, server, new Callback<Object>() {
+      @Override public void handleResult(Object response) {
+        if (copy)
+          response = data.deepCopy(message.getResponse(), response);
+        callback.handleResult(response);
+      }
+      @Override public void handleError(Throwable error) {
+        callback.handleError(serialize(requestor, message, error));
+      }
+    });
+  }
+
+  private static GenericRecord toRecord(Schema schema, Object[] params) {
+    GenericRecord record = new GenericData.Record(schema);
+    for (Schema.Field param : schema.getFields())
+      record.put(param.pos(), params[param.pos()]);
+    return record;
+  }
+
+  /** Passes an error through the responder's and requestor's
+   * serialization, so that it is reported as by other transports. */
+  private Exception serialize(Requestor requestor, Message message,
+                              Throwable error) {
+    try {
+      Object value = error;
+      if (!(error instanceof Exception))
+        value = new Utf8(new AvroRuntimeException(error).toString());
+      ByteBufferOutputStream bbo = new ByteBufferOutputStream();
+      BinaryEncoder out = EncoderFactory.get().binaryEncoder(bbo, null);
+      try {
+        responder.writeError(message.getErrors(), value, out);
+      } catch (UnresolvedUnionException e) {      // unexpected error
+        bbo = new ByteBufferOutputStream();
+        out = EncoderFactory.get().binaryEncoder(bbo, null);
+        responder.writeError(message.getErrors(),
+                             new Utf8(error.toString()), out);
+      }
+      out.flush();
+      return requestor.readError(message.getErrors(), message.getErrors(),
+          DecoderFactory.get().binaryDecoder(
+              new ByteBufferInputStream(bbo.getBufferList()), null));
+    } catch (IOException e) {
+      return e;
+    }
+  }
 }
@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.ipc;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.avro.Protocol;
+import org.apache.avro.ipc.NettyTransportCodec.NettyDataPack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** A socket-based server for {@link MultiplexedSocketTransceiver}s.  Each
+ * request is passed to the responder by an executor as soon as it is read,
+ * and each response is written when ready, tagged with the serial number of
+ * its request, so that calls sharing a connection proceed concurrently. */
+public class MultiplexedSocketServer extends Thread implements Server {
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MultiplexedSocketServer.class);
+
+  private final Responder responder;
+  private final ServerSocketChannel channel;
+  private final ThreadGroup group;
+  private final Executor executor;
+  private final ExecutorService ownExecutor;
+
+  /** Construct a server whose responder is run by a cached thread pool. */
+  public MultiplexedSocketServer(Responder responder, SocketAddress addr)
+    throws IOException {
+    this(responder, addr, null);
+  }
+
+  /** Construct a server whose responder is run by an executor, or by a
+   * cached thread pool if the executor is null. */
+  public MultiplexedSocketServer(Responder responder, SocketAddress addr,
+                                 Executor executor) throws IOException {
+    String name = "MultiplexedSocketServer on "+addr;
+    this.responder = responder;
+    this.group = new ThreadGroup(name);
+    if (executor == null) {
+      this.ownExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override public Thread newThread(Runnable r) {
+          Thread thread = new Thread(group, r);
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      this.executor = ownExecutor;
+    } else {
+      this.ownExecutor = null;
+      this.executor = executor;
+    }
+    this.channel = ServerSocketChannel.open();
+    channel.socket().bind(addr);
+    setName(name);
+    setDaemon(true);
+  }
+
+  @Override
+  public int getPort() { return channel.socket().getLocalPort(); }
+
+  @Override
+  public void run() {
+    LOG.info("starting "+channel.socket().getInetAddress());
+    try {
+      while (true) {
+        try {
+          new Connection(channel.accept());
+        } catch (ClosedChannelException e) {
+          return;
+        } catch (IOException e) {
+          LOG.warn("unexpected error", e);
+          throw new RuntimeException(e);
+        }
+      }
+    } finally {
+      LOG.info("stopping "+channel.socket().getInetAddress());
+      try {
+        channel.close();
+      } catch (IOException e) {
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    this.interrupt();
+    group.interrupt();
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOG.debug("Error closing server channel", e);
+    }
+    if (ownExecutor != null)
+      ownExecutor.shutdownNow();
+  }
+
+  /** Tracks the handshake state of a connection. */
+  private static class ConnectionState extends Transceiver {
+    private final String name;
+    private volatile Protocol remote;
+    ConnectionState(String name) { this.name = name; }
+    @Override public String getRemoteName() { return name; }
+    @Override public List<ByteBuffer> readBuffers() {
+      throw new UnsupportedOperationException();
+    }
+    @Override public void writeBuffers(List<ByteBuffer> buffers) {
+      throw new UnsupportedOperationException();
+    }
+    @Override public boolean isConnected() { return remote != null; }
+    @Override public void setRemote(Protocol remote) { this.remote = remote; }
+    @Override public Protocol getRemote() { return remote; }
+  }
+
+  private class Connection implements Runnable {
+    private final SocketChannel channel;
+    private final ConnectionState state;
+
+    public Connection(SocketChannel channel) throws IOException {
+      this.channel = channel;
+      channel.socket().setTcpNoDelay(true);
+      this.state = new ConnectionState(
+          channel.socket().getRemoteSocketAddress().toString());
+      Thread thread = new Thread(group, this);
+      thread.setName("Connection to "+state.getRemoteName());
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          final NettyDataPack request =
+            MultiplexedSocketTransceiver.readFrame(channel);
+          executor.execute(new Runnable() {
+            @Override public void run() { respond(request); }
+          });
+        }
+      } catch (ClosedChannelException e) {
+        // connection closed
+      } catch (Exception e) {
+        LOG.warn("unexpected error", e);
+      } finally {
+        try {
+          channel.close();
+        } catch (IOException e) {
+          LOG.debug("Error closing connection", e);
+        }
+      }
+    }
+
+    private void respond(final NettyDataPack request) {
+      responder.respond(request.getDatas(), state,
+                        new Callback<List<ByteBuffer>>() {
+        @Override public void handleResult(List<ByteBuffer> response) {
+          if (response == null)                   // one-way
+            return;
+          try {
+            synchronized (channel) {
+              MultiplexedSocketTransceiver.writeFrame(
+                  channel, request.getSerial(), response);
+            }
+          } catch (IOException e) {
+            LOG.warn("Error writing response to "+state.getRemoteName(), e);
+          }
+        }
+        @Override public void handleError(Throwable error) {
+          LOG.warn("unexpected error", error);
+        }
+      });
+    }
+  }
+}
@@ -0,0 +1,287 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.ipc;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Protocol;
+import org.apache.avro.ipc.NettyTransportCodec.NettyDataPack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A socket-based {@link Transceiver} that carries any number of concurrent
+ * calls over a single connection.
+ *
+ * <p>Each request is sent in a frame tagged with a serial number, using the
+ * same framing as {@link NettyTransceiver}, and a reader thread passes each
+ * response to the callback waiting on its serial number.  Responses may
+ * therefore arrive in any order, and a slow call does not delay others.
+ * Servers must be {@link MultiplexedSocketServer} or {@link NettyServer}.
+ */
+public class MultiplexedSocketTransceiver extends Transceiver {
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MultiplexedSocketTransceiver.class);
+
+  /** Largest number of buffers accepted in a frame. */
+  static final int MAX_FRAME_BUFFERS = 1 << 16;
+
+  /** Largest number of bytes accepted in a frame, over all its buffers. */
+  static final int MAX_FRAME_BYTES = 64 << 20;
+
+  private final SocketChannel channel;
+  private final Object writeLock = new Object();
+  private final AtomicInteger serials = new AtomicInteger();
+  private final Map<Integer, Callback<List<ByteBuffer>>> requests =
+    new ConcurrentHashMap<Integer, Callback<List<ByteBuffer>>>();
+  /** The serial of each pending request, so that it may be cancelled
+   * without searching {@link #requests}. */
+  private final Map<Callback<List<ByteBuffer>>, Integer> pending =
+    new ConcurrentHashMap<Callback<List<ByteBuffer>>, Integer>();
+  private final Thread reader;
+  private volatile IOException closed;
+  private volatile Protocol remote;
+
+  public MultiplexedSocketTransceiver(SocketAddress address)
+    throws IOException {
+    this(SocketChannel.open(address));
+  }
+
+  public MultiplexedSocketTransceiver(SocketChannel channel)
+    throws IOException {
+    this.channel = channel;
+    this.channel.socket().setTcpNoDelay(true);
+    this.reader = new Thread(new Runnable() {
+      @Override public void run() { readResponses(); }
+    }, "Multiplexed reader for " + getRemoteName());
+    reader.setDaemon(true);
+    reader.start();
+    LOG.info("open to "+getRemoteName());
+  }
+
+  @Override
+  public String getRemoteName() {
+    return channel.socket().getRemoteSocketAddress().toString();
+  }
+
+  @Override
+  public List<ByteBuffer> transceive(List<ByteBuffer> request)
+    throws IOException {
+    CallFuture<List<ByteBuffer>> future = new CallFuture<List<ByteBuffer>>();
+    transceive(request, future);
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while awaiting response", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException)
+        throw (IOException) e.getCause();
+      throw new IOException(e.getCause());
+    }
+  }
+
+  @Override
+  public void transceive(List<ByteBuffer> request,
+                         Callback<List<ByteBuffer>> callback)
+    throws IOException {
+    int serial = serials.incrementAndGet();
+    requests.put(serial, callback);
+    pending.put(callback, serial);
+    try {
+      checkOpen();
+      writeFrame(serial, request);
+    } catch (IOException e) {
+      remove(serial);
+      throw e;
+    }
+    if (closed != null && remove(serial) != null)
+      callback.handleError(closed);                // reader exited meanwhile
+  }
+
+  /** Stops awaiting the response to a call.  The server is not told, and
+   * its response is ignored when it arrives. */
+  @Override
+  void cancel(Callback<List<ByteBuffer>> callback) {
+    Integer serial = pending.get(callback);
+    if (serial != null && requests.get(serial) == callback)
+      remove(serial);
+  }
+
+  /** Removes a pending request, returning its callback, or null if it was
+   * already removed. */
+  private Callback<List<ByteBuffer>> remove(int serial) {
+    Callback<List<ByteBuffer>> callback = requests.remove(serial);
+    if (callback != null)
+      pending.remove(callback, serial);
+    return callback;
+  }
+
+  /** Responses are routed to callbacks by the reader thread, so may not be
+   * read directly. */
+  @Override
+  public List<ByteBuffer> readBuffers() throws IOException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void writeBuffers(List<ByteBuffer> buffers) throws IOException {
+    if (buffers == null) return;                  // no data to write
+    checkOpen();
+    writeFrame(serials.incrementAndGet(), buffers);
+  }
+
+  private void checkOpen() throws IOException {
+    if (closed != null)
+      throw closed;
+  }
+
+  private void writeFrame(int serial, List<ByteBuffer> buffers)
+    throws IOException {
+    synchronized (writeLock) {
+      writeFrame(channel, serial, buffers);
+    }
+  }
+
+  private void readResponses() {
+    IOException error;
+    try {
+      while (true) {
+        NettyDataPack pack = readFrame(channel);
+        Callback<List<ByteBuffer>> callback = remove(pack.getSerial());
+        if (callback == null) {                   // timed out or cancelled
+          LOG.debug("Ignoring response to abandoned call "+pack.getSerial());
+          continue;
+        }
+        try {
+          callback.handleResult(pack.getDatas());
+        } catch (RuntimeException e) {
+          LOG.warn("Error in response callback", e);
+        }
+      }
+    } catch (IOException e) {
+      error = channel.isOpen() ? e : new ClosedChannelException();
+    } catch (RuntimeException e) {
+      error = new IOException(e);
+    }
+    closed = error;
+    for (Integer serial : requests.keySet()) {
+      Callback<List<ByteBuffer>> callback = remove(serial);
+      if (callback != null)
+        callback.handleError(error);
+    }
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOG.debug("Error closing channel", e);
+    }
+  }
+
+  @Override public boolean isConnected() { return remote != null; }
+
+  @Override public void setRemote(Protocol remote) {
+    this.remote = remote;
+  }
+
+  @Override public Protocol getRemote() {
+    return remote;
+  }
+
+  /** Closes the connection and waits for the reader thread to exit, unless
+   * called from a response callback on that thread. */
+  @Override public void close() throws IOException {
+    if (channel.isOpen()) {
+      LOG.info("closing to "+getRemoteName());
+      channel.close();
+    }
+    if (Thread.currentThread() == reader)
+      return;                                     // exits once this returns
+    try {
+      reader.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Writes a frame: its serial number, the number of buffers, then each
+   * buffer prefixed by its length. */
+  static void writeFrame(SocketChannel channel, int serial,
+                         List<ByteBuffer> buffers) throws IOException {
+    ByteBuffer[] frame = new ByteBuffer[buffers.size() * 2 + 1];
+    ByteBuffer header = ByteBuffer.allocate(8);
+    header.putInt(serial).putInt(buffers.size()).flip();
+    frame[0] = header;
+    int i = 1;
+    long remaining = header.remaining();
+    for (ByteBuffer buffer : buffers) {
+      ByteBuffer data = buffer.duplicate();
+      ByteBuffer length = ByteBuffer.allocate(4);
+      length.putInt(data.remaining()).flip();
+      frame[i++] = length;
+      frame[i++] = data;
+      remaining += 4 + data.remaining();
+    }
+    while (remaining > 0)
+      remaining -= channel.write(frame);
+  }
+
+  /** Reads a frame written by {@link #writeFrame}. */
+  static NettyDataPack readFrame(SocketChannel channel) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(8);
+    readFully(channel, header);
+    int serial = header.getInt();
+    int count = header.getInt();
+    if (count < 0 || count > MAX_FRAME_BUFFERS)
+      throw new AvroRuntimeException("Invalid frame buffer count: " + count);
+    List<ByteBuffer> buffers = new ArrayList<ByteBuffer>(count);
+    ByteBuffer length = ByteBuffer.allocate(4);
+    long remaining = MAX_FRAME_BYTES;
+    for (int i = 0; i < count; i++) {
+      length.clear();
+      readFully(channel, length);
+      int size = length.getInt();
+      if (size < 0 || size > remaining)
+        throw new AvroRuntimeException("Invalid frame buffer length: " + size);
+      remaining -= size;
+      ByteBuffer buffer = ByteBuffer.allocate(size);
+      readFully(channel, buffer);
+      buffers.add(buffer);
+    }
+    return new NettyDataPack(serial, buffers);
+  }
+
+  private static void readFully(SocketChannel channel, ByteBuffer buffer)
+    throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0)
+        throw new ClosedChannelException();
+    }
+    buffer.flip();
+  }
+}
@@ -18,11 +18,13 @@
 
 package org.apache.avro.ipc;
 
-import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
 import org.apache.avro.ipc.NettyTransportCodec.NettyDataPack;
@@ -63,6 +65,7 @@ public class NettyServer implements Server {
   private final ChannelFactory channelFactory;
   private final CountDownLatch closed = new CountDownLatch(1);
   private final ExecutionHandler executionHandler;
+  private final Executor responderExecutor;
 
   public NettyServer(Responder responder, InetSocketAddress addr) {
     this(responder, addr, new NioServerSocketChannelFactory
@@ -86,9 +89,35 @@ public class NettyServer implements Server {
                      ChannelFactory channelFactory,
                      final ChannelPipelineFactory pipelineFactory,
                      final ExecutionHandler executionHandler) {
+    this(responder, addr, channelFactory, pipelineFactory, executionHandler,
+         null);
+  }
+
+  /**
+   * @param executionHandler if not null, will be inserted into the Netty
+   *                         pipeline. Use this when your responder does
+   *                         long, non-cpu bound processing (see Netty's
+   *                         ExecutionHandler javadoc).
+   * @param pipelineFactory  Avro-related handlers will be added on top of
+   *                         what this factory creates
+   * @param responderExecutor if not null, requests are passed to the
+   *                         responder by this executor rather than by
+   *                         Netty's I/O threads.  Responses are written
+   *                         when the responder completes them, which may
+   *                         be later, from any thread; see {@link
+   *                         Responder#respondAsync}.  Calls whose clients
+   *                         cancel them, or whose timeouts pass, while
+   *                         queued are dropped.
+   */
+  public NettyServer(Responder responder, InetSocketAddress addr,
+                     ChannelFactory channelFactory,
+                     final ChannelPipelineFactory pipelineFactory,
+                     final ExecutionHandler executionHandler,
+                     Executor responderExecutor) {
     this.responder = responder;
     this.channelFactory = channelFactory;
     this.executionHandler = executionHandler;
+    this.responderExecutor = responderExecutor;
     ServerBootstrap bootstrap = new ServerBootstrap(channelFactory);
     bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
       @Override
@@ -164,6 +193,11 @@ public class NettyServer implements Server {
 
     private NettyTransceiver connectionMetadata = new NettyTransceiver();
 
+    /** The serial numbers of calls being responded to, mapped to whether
+     * their clients have since cancelled them. */
+    private final ConcurrentMap<Integer, Boolean> calls =
+      new ConcurrentHashMap<Integer, Boolean>();
+
     @Override
     public void handleUpstream(ChannelHandlerContext ctx, ChannelEvent e)
         throws Exception {
@@ -182,20 +216,54 @@ public class NettyServer implements Server {
 
     @Override
     public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
-      try {
-        NettyDataPack dataPack = (NettyDataPack) e.getMessage();
-        List<ByteBuffer> req = dataPack.getDatas();
-        List<ByteBuffer> res = responder.respond(req, connectionMetadata);
-        // response will be null for oneway messages.
-        if(res != null) {
-          dataPack.setDatas(res);
-          e.getChannel().write(dataPack);
-        }
-      } catch (IOException ex) {
-        LOG.warn("unexpect error");
+      final NettyDataPack dataPack = (NettyDataPack) e.getMessage();
+      final Channel channel = e.getChannel();
+      List<ByteBuffer> req = dataPack.getDatas();
+      if (req.size() == 1
+          && req.get(0).equals(NettyTransceiver.CANCEL_FRAME)) {
+        // don't start the call if still queued, nor send its response
+        calls.replace(dataPack.getSerial(), Boolean.FALSE, Boolean.TRUE);
+        return;
+      }
+      final long received = System.nanoTime();
+      calls.put(dataPack.getSerial(), Boolean.FALSE);
+      if (responderExecutor == null) {
+        respond(dataPack, channel, received);
+      } else {
+        responderExecutor.execute(new Runnable() {
+          @Override public void run() { respond(dataPack, channel, received); }
+        });
       }
     }
 
+    private void respond(final NettyDataPack dataPack, final Channel channel,
+                         long received) {
+      final int serial = dataPack.getSerial();
+      if (Boolean.TRUE.equals(calls.get(serial))) {
+        calls.remove(serial);                     // cancelled while queued
+        return;
+      }
+      List<ByteBuffer> req = dataPack.getDatas();
+      responder.respond(req, connectionMetadata, received,
+                        new Callback<List<ByteBuffer>>() {
+        @Override
+        public void handleResult(List<ByteBuffer> res) {
+          if (Boolean.TRUE.equals(calls.remove(serial)))
+            return;                               // cancelled meanwhile
+          // response will be null for oneway messages.
+          if(res != null) {
+            dataPack.setDatas(res);
+            channel.write(dataPack);
+          }
+        }
+        @Override
+        public void handleError(Throwable error) {
+          calls.remove(serial);
+          LOG.warn("unexpect error", error);
+        }
+      });
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
       LOG.warn("Unexpected exception from downstream.", e.getCause());
@@ -21,20 +21,26 @@ package org.apache.avro.ipc;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.avro.Protocol;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
 import org.apache.avro.ipc.NettyTransportCodec.NettyDataPack;
 import org.apache.avro.ipc.NettyTransportCodec.NettyFrameDecoder;
 import org.apache.avro.ipc.NettyTransportCodec.NettyFrameEncoder;
+import org.apache.avro.util.ByteBufferOutputStream;
 import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelEvent;
@@ -70,9 +76,30 @@ public class NettyTransceiver extends Transceiver {
   private static final Logger LOG = LoggerFactory.getLogger(NettyTransceiver.class
       .getName());
 
+  /** The body of a frame that abandons the call with its serial number. */
+  static final ByteBuffer CANCEL_FRAME;
+  static {
+    ByteBufferOutputStream bbo = new ByteBufferOutputStream();
+    Encoder out = EncoderFactory.get().directBinaryEncoder(bbo, null);
+    try {
+      out.writeMapStart();                        // empty metadata
+      out.writeMapEnd();
+      out.writeString(Requestor.CANCEL_MESSAGE);
+    } catch (IOException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+    CANCEL_FRAME = bbo.getBufferList().get(0).asReadOnlyBuffer();
+  }
+
   private final AtomicInteger serialGenerator = new AtomicInteger(0);
   private final Map<Integer, Callback<List<ByteBuffer>>> requests =
     new ConcurrentHashMap<Integer, Callback<List<ByteBuffer>>>();
+  /** The serial of each pending request, so that it may be cancelled
+   * without searching {@link #requests}. */
+  private final Map<Callback<List<ByteBuffer>>, Integer> serials =
+    new ConcurrentHashMap<Callback<List<ByteBuffer>>, Integer>();
+  private volatile Semaphore slots;               // null when unlimited
+  private volatile long slotWaitMillis;
 
   private final ChannelFactory channelFactory;
   private final long connectTimeoutMillis;
@@ -247,6 +274,31 @@ public class NettyTransceiver extends Transceiver {
     return options;
   }
 
+  /**
+   * Limits the number of calls awaiting responses, so that a slow server
+   * cannot cause them to accumulate without bound.  A call made while the
+   * limit is reached waits for another to complete, and fails with an
+   * IOException if none does within <code>maxWaitMillis</code>.  Calls
+   * complete when answered, when the connection is lost, or when they time
+   * out or are cancelled (see {@link Requestor#setTimeout(long)} and
+   * {@link CallFuture#cancel(boolean)}).  Must not be called while calls are
+   * in flight.
+   * @param maxCalls the most calls in flight, or zero for no limit.
+   * @param maxWaitMillis the longest a call waits to be sent, or zero to
+   *        fail calls at once when the limit is reached.
+   */
+  public void setMaxInFlight(int maxCalls, long maxWaitMillis) {
+    if (!requests.isEmpty())
+      throw new IllegalStateException("Calls are in flight");
+    this.slotWaitMillis = maxWaitMillis;
+    this.slots = maxCalls > 0 ? new Semaphore(maxCalls, true) : null;
+  }
+
+  /** Returns the number of calls awaiting responses. */
+  public int getNumPendingCalls() {
+    return requests.size();
+  }
+
   /**
    * Tests whether the given channel is ready for writing.
    * @return true if the channel is open and ready; false otherwise.
@@ -357,8 +409,12 @@ public class NettyTransceiver extends Transceiver {
           // Remove all pending requests (will be canceled after relinquishing
           // write lock).
           requestsToCancel =
-            new ConcurrentHashMap<Integer, Callback<List<ByteBuffer>>>(requests);
-          requests.clear();
+            new ConcurrentHashMap<Integer, Callback<List<ByteBuffer>>>();
+          for (Integer serial : requests.keySet()) {
+            Callback<List<ByteBuffer>> request = removeRequest(serial);
+            if (request != null)
+              requestsToCancel.put(serial, request);
+          }
         }
       }
     } finally {
@@ -468,12 +524,75 @@ public class NettyTransceiver extends Transceiver {
   @Override
   public void transceive(List<ByteBuffer> request,
       Callback<List<ByteBuffer>> callback) throws IOException {
+    acquireSlot();
     stateLock.readLock().lock();
     try {
       int serial = serialGenerator.incrementAndGet();
       NettyDataPack dataPack = new NettyDataPack(serial, request);
       requests.put(serial, callback);
-      writeDataPack(dataPack);
+      serials.put(callback, serial);
+      try {
+        writeDataPack(dataPack);
+      } catch (IOException e) {
+        removeRequest(serial);
+        throw e;
+      } catch (RuntimeException e) {
+        removeRequest(serial);
+        throw e;
+      }
+    } finally {
+      stateLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Waits for a call slot if {@link #setMaxInFlight(int, long)} was called.
+   * The slot is released when its call is removed from the pending requests.
+   * @throws IOException if no slot became free in time.
+   */
+  private void acquireSlot() throws IOException {
+    Semaphore slots = this.slots;
+    if (slots == null) return;
+    try {
+      if (!slots.tryAcquire(slotWaitMillis, TimeUnit.MILLISECONDS))
+        throw new IOException("Too many calls in flight to " + remoteAddr);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();         // Reset interrupt flag
+      throw new IOException("Interrupted while awaiting a call slot", e);
+    }
+  }
+
+  /**
+   * Removes a pending request, releasing its call slot.
+   * @return the request's callback, or null if it was already removed.
+   */
+  private Callback<List<ByteBuffer>> removeRequest(int serial) {
+    Callback<List<ByteBuffer>> callback = requests.remove(serial);
+    if (callback == null)
+      return null;
+    serials.remove(callback, serial);
+    Semaphore slots = this.slots;
+    if (slots != null)
+      slots.release();
+    return callback;
+  }
+
+  /**
+   * Stops awaiting the response to a call, and asks the server to drop it.
+   * Servers that do not recognise the request reply with an error, which is
+   * ignored like any response to an abandoned call.
+   */
+  @Override
+  void cancel(Callback<List<ByteBuffer>> callback) {
+    Integer serial = serials.get(callback);
+    if (serial == null || requests.get(serial) != callback
+        || removeRequest(serial) == null)
+      return;
+    stateLock.readLock().lock();
+    try {
+      if (remote != null && isChannelReady(channel))
+        channel.write(new NettyDataPack(serial,
+            Collections.singletonList(CANCEL_FRAME.duplicate())));
     } finally {
       stateLock.readLock().unlock();
     }
@@ -605,15 +724,13 @@ public class NettyTransceiver extends Transceiver {
     @Override
     public void messageReceived(ChannelHandlerContext ctx, final MessageEvent e) {
       NettyDataPack dataPack = (NettyDataPack)e.getMessage();
-      Callback<List<ByteBuffer>> callback = requests.get(dataPack.getSerial());
-      if (callback==null) {
-        throw new RuntimeException("Missing previous call info");
-      }
-      try {
-        callback.handleResult(dataPack.getDatas());
-      } finally {
-        requests.remove(dataPack.getSerial());
+      Callback<List<ByteBuffer>> callback = removeRequest(dataPack.getSerial());
+      if (callback==null) {                       // timed out or cancelled
+        LOG.debug("Ignoring response to abandoned call "
+                  + dataPack.getSerial());
+        return;
       }
+      callback.handleResult(dataPack.getDatas());
     }
 
     @Override
@@ -0,0 +1,536 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.avro.ipc;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.avro.Protocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link Transceiver} that spreads calls over a pool of connections to one
+ * or more endpoints.
+ *
+ * <p>Each call is sent over the connection with the fewest outstanding
+ * calls.  A connection that fails {@link #setMaxFailures(int) repeatedly} is
+ * ejected, and its endpoint is avoided for the {@link #setEjectionTime(long)
+ * ejection time}.  Ejected connections are replaced from a set of warm
+ * standby connections, which are opened and handshaken in the background.
+ *
+ * <p>The {@link Requestor} handshakes once, over whichever connection it is
+ * given first.  Every other connection is then handshaken by the pool, in the
+ * background, with the protocols already agreed, so that calls never wait
+ * for a connection's handshake.  These handshakes still negotiate
+ * compression and call the requestor's {@link RPCPlugin}s.  All endpoints
+ * must serve the same protocol; a connection whose server does not is
+ * ejected.
+ *
+ * <p>The underlying connections must accept concurrent calls, as {@link
+ * NettyTransceiver} and {@link MultiplexedSocketTransceiver} do.
+ */
+public class PooledTransceiver extends Transceiver {
+  private static final Logger LOG =
+    LoggerFactory.getLogger(PooledTransceiver.class);
+
+  /** Opens connections for a pool. */
+  public interface Factory {
+    /** Opens a connection to an endpoint. */
+    Transceiver open(InetSocketAddress address) throws IOException;
+  }
+
+  /** A factory that opens {@link NettyTransceiver} connections. */
+  public static final Factory NETTY = new Factory() {
+    @Override
+    public Transceiver open(InetSocketAddress address) throws IOException {
+      return new NettyTransceiver(address);
+    }
+  };
+
+  public static final int DEFAULT_CONNECTIONS_PER_ENDPOINT = 2;
+  public static final int DEFAULT_STANDBY_CONNECTIONS = 1;
+  public static final int DEFAULT_MAX_FAILURES = 3;
+  public static final long DEFAULT_EJECTION_TIME = 30 * 1000;
+
+  private final List<Endpoint> endpoints = new ArrayList<Endpoint>();
+  private final Factory factory;
+  private final int poolSize;
+  private final int standbySize;
+  private final String remoteName;
+  private final List<Connection> active = new CopyOnWriteArrayList<Connection>();
+  private final Queue<Connection> standby =
+    new ConcurrentLinkedQueue<Connection>();
+  private final Queue<Connection> ejected =
+    new ConcurrentLinkedQueue<Connection>();
+  private final Object lock = new Object();     // orders ejection and close
+  private final AtomicInteger next = new AtomicInteger();
+  private final AtomicBoolean retryScheduled = new AtomicBoolean();
+  private final ScheduledExecutorService maintainer;
+  private final Runnable replace = new Runnable() {
+    @Override public void run() {
+      for (Connection c = ejected.poll(); c != null; c = ejected.poll())
+        c.close();
+      fill();
+    }
+  };
+
+  private volatile int maxFailures = DEFAULT_MAX_FAILURES;
+  private volatile long ejectionTime = DEFAULT_EJECTION_TIME;
+  private volatile Requestor requestor;
+  private volatile Protocol remote;
+  private volatile Connection handshaking;
+  private volatile boolean closed;
+
+  /** Creates a pool of {@link NettyTransceiver} connections with the default
+   * sizes. */
+  public PooledTransceiver(List<InetSocketAddress> addresses)
+    throws IOException {
+    this(addresses, NETTY, DEFAULT_CONNECTIONS_PER_ENDPOINT,
+         DEFAULT_STANDBY_CONNECTIONS);
+  }
+
+  /**
+   * Creates a pool, opening its connections.
+   * @param addresses the endpoints to connect to.
+   * @param factory opens each connection.
+   * @param connectionsPerEndpoint the number of connections that carry calls
+   *        for each endpoint.
+   * @param standbyConnections the number of idle connections to keep ready
+   *        to replace ejected ones.
+   * @throws IOException if no connection could be opened.
+   */
+  public PooledTransceiver(List<InetSocketAddress> addresses, Factory factory,
+                           int connectionsPerEndpoint, int standbyConnections)
+    throws IOException {
+    if (addresses.isEmpty())
+      throw new IllegalArgumentException("No endpoints");
+    if (connectionsPerEndpoint < 1)
+      throw new IllegalArgumentException("Connections per endpoint: "
+                                         + connectionsPerEndpoint);
+    for (InetSocketAddress address : addresses)
+      endpoints.add(new Endpoint(address));
+    this.factory = factory;
+    this.poolSize = addresses.size() * connectionsPerEndpoint;
+    this.standbySize = standbyConnections;
+    this.remoteName = addresses.toString();
+    this.maintainer = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactory() {
+          @Override public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "PooledTransceiver " + remoteName);
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+
+    IOException failure = null;
+    for (int i = 0; i < poolSize; i++) {
+      Endpoint endpoint = endpoints.get(i % endpoints.size());
+      if (endpoint.isEjected()) continue;
+      try {
+        active.add(new Connection(endpoint, factory.open(endpoint.address)));
+      } catch (IOException e) {
+        LOG.warn("Could not connect to " + endpoint, e);
+        endpoint.eject(ejectionTime);
+        failure = e;
+      }
+    }
+    if (active.isEmpty()) {
+      maintainer.shutdownNow();
+      throw failure;
+    }
+    if (active.size() < poolSize)
+      scheduleRetry();
+  }
+
+  /** Sets the number of consecutive transport failures after which a
+   * connection is ejected.  Defaults to {@value #DEFAULT_MAX_FAILURES}. */
+  public void setMaxFailures(int maxFailures) {
+    this.maxFailures = maxFailures;
+  }
+
+  /** Sets how long, in milliseconds, an endpoint is avoided after one of its
+   * connections fails.  Defaults to {@value #DEFAULT_EJECTION_TIME}. */
+  public void setEjectionTime(long millis) {
+    this.ejectionTime = millis;
+  }
+
+  /** Returns the number of connections currently carrying calls. */
+  public int getActiveCount() { return active.size(); }
+
+  /** Returns the number of standby connections ready to replace ejected
+   * ones. */
+  public int getStandbyCount() { return standby.size(); }
+
+  @Override
+  public String getRemoteName() { return remoteName; }
+
+  @Override
+  public List<ByteBuffer> transceive(List<ByteBuffer> request)
+    throws IOException {
+    CallFuture<List<ByteBuffer>> future = new CallFuture<List<ByteBuffer>>();
+    transceive(request, future);
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while awaiting response", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException)
+        throw (IOException) e.getCause();
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /** Sends the request over the least busy connection.  If it cannot be
+   * sent, it is retried over each other connection in turn. */
+  @Override
+  public void transceive(List<ByteBuffer> request,
+                         final Callback<List<ByteBuffer>> callback)
+    throws IOException {
+    List<Connection> tried = new ArrayList<Connection>(1);
+    while (true) {
+      final Connection c = choose(tried);
+      if (remote == null)
+        handshaking = c;
+      c.outstanding.incrementAndGet();
+      try {
+        c.transceiver.transceive(duplicate(request),
+                                 new Callback<List<ByteBuffer>>() {
+          @Override public void handleResult(List<ByteBuffer> result) {
+            c.succeeded();
+            callback.handleResult(result);
+          }
+          @Override public void handleError(Throwable error) {
+            c.failed(error);
+            callback.handleError(error);
+          }
+        });
+        return;
+      } catch (IOException e) {
+        c.failed(e);                              // may eject c
+        tried.add(c);
+        if (tried.containsAll(active))
+          throw e;
+      }
+    }
+  }
+
+  /** Writes a one-way message over the least busy connection. */
+  @Override
+  public void writeBuffers(List<ByteBuffer> buffers) throws IOException {
+    Connection c = choose(Collections.<Connection>emptyList());
+    c.outstanding.incrementAndGet();
+    c.transceiver.lockChannel();
+    try {
+      c.transceiver.writeBuffers(buffers);
+      c.succeeded();
+    } catch (IOException e) {
+      c.failed(e);
+      throw e;
+    } finally {
+      c.transceiver.unlockChannel();
+    }
+  }
+
+  /** Responses are routed to callbacks by the pooled connections, so may not
+   * be read directly. */
+  @Override
+  public List<ByteBuffer> readBuffers() throws IOException {
+    throw new UnsupportedOperationException();
+  }
+
+  /** Does nothing: each pooled connection is locked separately. */
+  @Override
+  public void lockChannel() {}
+
+  /** Does nothing: each pooled connection is locked separately. */
+  @Override
+  public void unlockChannel() {}
+
+  @Override
+  void setRequestor(Requestor requestor) {
+    this.requestor = requestor;
+  }
+
+  @Override
+  public boolean isConnected() { return remote != null; }
+
+  /** Marks the connection the {@link Requestor} handshook over as ready, and
+   * handshakes the others in the background. */
+  @Override
+  public void setRemote(Protocol protocol) {
+    this.remote = protocol;
+    Connection c = handshaking;
+    if (c != null) {
+      c.transceiver.setRemote(protocol);
+      c.ready = true;
+    }
+    if (!closed)
+      maintainer.execute(new Runnable() {
+        @Override public void run() {
+          for (Connection pending : active)
+            if (!pending.ready && !handshake(pending))
+              eject(pending, null);
+          fill();
+        }
+      });
+  }
+
+  @Override
+  public Protocol getRemote() {
+    if (remote == null)
+      throw new IllegalStateException("Not connected.");
+    return remote;
+  }
+
+  @Override
+  public void close() throws IOException {
+    List<Connection> all;
+    synchronized (lock) {
+      closed = true;
+      all = new ArrayList<Connection>(active);
+      all.addAll(standby);
+      active.clear();
+      standby.clear();
+    }
+    maintainer.shutdownNow();
+    for (Connection c = ejected.poll(); c != null; c = ejected.poll())
+      all.add(c);
+    for (Connection c : all)
+      c.close();
+  }
+
+  /** Returns the usable connection with the fewest outstanding calls,
+   * starting at a rotating position so that idle connections share load. */
+  private Connection choose(List<Connection> exclude) throws IOException {
+    if (closed)
+      throw new IOException("Transceiver is closed");
+    boolean connected = remote != null;
+    Object[] connections = active.toArray();
+    int start = next.getAndIncrement() & Integer.MAX_VALUE;
+    Connection best = null;
+    for (int i = 0; i < connections.length; i++) {
+      Connection c = (Connection) connections[(start + i) % connections.length];
+      if ((connected && !c.ready) || exclude.contains(c))
+        continue;
+      if (best == null || c.outstanding.get() < best.outstanding.get())
+        best = c;
+    }
+    if (best == null)
+      throw new IOException("No connection available to " + remoteName);
+    return best;
+  }
+
+  /** Removes a failed connection from the pool, avoids its endpoint for a
+   * while and replaces it.  Connections usually fail on their own I/O
+   * threads, where they may not be closed, so it is closed by the
+   * maintenance thread. */
+  private void eject(Connection c, Throwable cause) {
+    synchronized (lock) {
+      if (closed || (!active.remove(c) && !standby.remove(c)))
+        return;                                   // already gone
+      c.endpoint.eject(ejectionTime);
+      Connection spare = standby.poll();
+      if (spare != null)
+        active.add(spare);
+      ejected.add(c);
+      maintainer.execute(replace);
+    }
+    LOG.warn("Ejecting connection to " + c.endpoint, cause);
+  }
+
+  /** Brings the pool back to size, first from standby connections, then by
+   * opening connections to the endpoints with the fewest.  Runs on the
+   * maintenance thread. */
+  private void fill() {
+    synchronized (lock) {
+      if (closed) return;
+      while (active.size() < poolSize && !standby.isEmpty())
+        active.add(standby.poll());
+    }
+    boolean connected = remote != null;
+    int wanted = poolSize - active.size()
+      + (connected ? standbySize - standby.size() : 0);
+    for (int i = 0; i < wanted && !closed; i++) {
+      Endpoint endpoint = leastConnected();
+      if (endpoint == null)
+        break;
+      Connection c;
+      try {
+        c = new Connection(endpoint, factory.open(endpoint.address));
+      } catch (IOException e) {
+        LOG.warn("Could not connect to " + endpoint, e);
+        endpoint.eject(ejectionTime);
+        continue;
+      }
+      if (connected && !handshake(c)) {
+        c.endpoint.eject(ejectionTime);
+        c.close();
+        continue;
+      }
+      if (!add(c)) {                              // closed meanwhile
+        c.close();
+        return;
+      }
+    }
+    if (active.size() < poolSize
+        || (connected && standby.size() < standbySize))
+      scheduleRetry();
+  }
+
+  /** Adds a new connection to the pool, unless it has been closed, in
+   * which case the caller must close the connection. */
+  private boolean add(Connection c) {
+    synchronized (lock) {
+      if (closed)
+        return false;
+      if (active.size() < poolSize)
+        active.add(c);
+      else
+        standby.add(c);
+      return true;
+    }
+  }
+
+  private void scheduleRetry() {
+    if (!closed && retryScheduled.compareAndSet(false, true))
+      maintainer.schedule(new Runnable() {
+        @Override public void run() {
+          retryScheduled.set(false);
+          fill();
+        }
+      }, ejectionTime, TimeUnit.MILLISECONDS);
+  }
+
+  /** Returns the endpoint not currently ejected with the fewest
+   * connections, or null if all are ejected. */
+  private Endpoint leastConnected() {
+    Endpoint best = null;
+    int bestCount = 0;
+    for (Endpoint endpoint : endpoints) {
+      if (endpoint.isEjected()) continue;
+      int count = 0;
+      for (Connection c : active)
+        if (c.endpoint == endpoint) count++;
+      for (Connection c : standby)
+        if (c.endpoint == endpoint) count++;
+      if (best == null || count < bestCount) {
+        best = endpoint;
+        bestCount = count;
+      }
+    }
+    return best;
+  }
+
+  /** Handshakes a new connection through the {@link Requestor}, with the
+   * protocols it has already agreed, so that codecs are negotiated and
+   * plugins called for each connection. */
+  private boolean handshake(Connection c) {
+    Requestor requestor = this.requestor;
+    try {
+      if (requestor == null)
+        throw new IOException("No requestor");
+      if (!requestor.handshake(c.transceiver, remote))
+        throw new IOException("Endpoint does not serve " + remote.getName());
+    } catch (IOException e) {
+      LOG.warn("Handshake failed with " + c.endpoint, e);
+      return false;
+    } catch (RuntimeException e) {                // e.g. thrown by a plugin
+      LOG.warn("Handshake failed with " + c.endpoint, e);
+      return false;
+    }
+    c.ready = true;
+    return true;
+  }
+
+  private static List<ByteBuffer> duplicate(List<ByteBuffer> buffers) {
+    List<ByteBuffer> result = new ArrayList<ByteBuffer>(buffers.size());
+    for (ByteBuffer buffer : buffers)
+      result.add(buffer.duplicate());
+    return result;
+  }
+
+  /** An address connections may be opened to. */
+  private static class Endpoint {
+    final InetSocketAddress address;
+    volatile long ejectedUntil;
+
+    Endpoint(InetSocketAddress address) { this.address = address; }
+
+    boolean isEjected() {
+      return System.currentTimeMillis() < ejectedUntil;
+    }
+
+    void eject(long millis) {
+      ejectedUntil = System.currentTimeMillis() + millis;
+    }
+
+    @Override public String toString() { return address.toString(); }
+  }
+
+  /** A pooled connection and its load and health. */
+  private class Connection {
+    final Endpoint endpoint;
+    final Transceiver transceiver;
+    final AtomicInteger outstanding = new AtomicInteger();
+    final AtomicInteger failures = new AtomicInteger();
+    volatile boolean ready;
+
+    Connection(Endpoint endpoint, Transceiver transceiver) {
+      this.endpoint = endpoint;
+      this.transceiver = transceiver;
+    }
+
+    void succeeded() {
+      outstanding.decrementAndGet();
+      failures.set(0);
+    }
+
+    void failed(Throwable cause) {
+      outstanding.decrementAndGet();
+      if (failures.incrementAndGet() >= maxFailures)
+        eject(this, cause);
+    }
+
+    void close() {
+      try {
+        transceiver.close();
+      } catch (IOException e) {
+        LOG.debug("Error closing connection to " + endpoint, e);
+      } catch (RuntimeException e) {
+        LOG.warn("Error closing connection to " + endpoint, e);
+      }
+    }
+  }
+}
@@ -43,6 +43,7 @@ public class RPCContext {
   protected Object response;
   protected Exception error;
   private Message message;
+  private long timeoutMillis;
   List<ByteBuffer> requestPayload;
   List<ByteBuffer> responsePayload;
 
@@ -183,6 +184,21 @@ public class RPCContext {
    */
   public Message getMessage() { return message; }
 
+  /** Sets the time in milliseconds within which this RPC must complete, or
+   * zero for no limit.  Clients may set this from {@link
+   * RPCPlugin#clientSendRequest(RPCContext)} to override {@link
+   * Requestor#setTimeout(long)} for a call. */
+  public void setTimeout(long timeoutMillis) {
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /** Returns the time in milliseconds within which this RPC must complete,
+   * or zero if it has no limit.  At the server, this is the time the client
+   * allowed from when it sent the request, so includes time in transit.
+   *
+   * @return this RPC's timeout in milliseconds. */
+  public long getTimeout() { return timeoutMillis; }
+
   /** Sets the serialized payload of the request in this RPC. Will
    * not include handshake or meta-data. */
   public void setRequestPayload(List<ByteBuffer> payload) {
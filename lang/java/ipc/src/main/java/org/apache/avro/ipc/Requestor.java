@@ -20,10 +20,20 @@ package org.apache.avro.ipc;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +43,8 @@ import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.Protocol;
 import org.apache.avro.Schema;
 import org.apache.avro.Protocol.Message;
+import org.apache.avro.file.Codec;
+import org.apache.avro.file.CodecFactory;
 import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.io.DecoderFactory;
@@ -64,6 +76,12 @@ public abstract class Requestor {
   private volatile boolean sendLocalText;
   private final Transceiver transceiver;
   private final ReentrantLock handshakeLock = new ReentrantLock();
+  private final Object batchLock = new Object();
+  private volatile int batchSize;
+  private volatile long batchDelay;
+  private volatile RpcCompression compression;
+  private volatile long timeout;
+  private Batch batch;                            // guarded by batchLock
 
   protected final List<RPCPlugin> rpcMetaPlugins;
 
@@ -76,6 +94,7 @@ public abstract class Requestor {
     this.transceiver = transceiver;
     this.rpcMetaPlugins =
       new CopyOnWriteArrayList<RPCPlugin>();
+    this.transceiver.setRequestor(this);
   }
 
   /**
@@ -87,6 +106,64 @@ public abstract class Requestor {
     rpcMetaPlugins.add(plugin);
   }
 
+  /**
+   * Offers to compress calls.  The codecs are offered to the server in the
+   * handshake, and if the server accepts one, it is used to compress
+   * requests larger than the threshold, and by the server to compress its
+   * responses.  Takes effect at the next handshake.
+   * @param threshold the size in bytes above which requests are compressed.
+   * @param codecs the codecs that may be used, most preferred first.
+   */
+  public void setCompression(int threshold, CodecFactory... codecs) {
+    this.compression = new RpcCompression(threshold, codecs);
+  }
+
+  /**
+   * Enables batching of one-way messages.  Once a connection's handshake has
+   * completed, one-way messages are queued rather than sent, and queued
+   * messages are sent together, as a single frame, when
+   * <code>maxMessages</code> have been queued or <code>maxDelayMicros</code>
+   * after the first was queued, whichever comes first.  Queued messages are
+   * also sent before any two-way message, so that calls arrive in order.
+   * The callback of a queued message is called once its batch is sent.
+   * Servers must be running a version of {@link Responder} that accepts
+   * batches.
+   * @param maxMessages the most messages sent in one frame, or one or fewer
+   *        to disable batching.
+   * @param maxDelayMicros the longest a message is queued, or zero to send
+   *        only full batches and those passed to {@link #flush()}.
+   */
+  public void setBatching(int maxMessages, long maxDelayMicros) {
+    flush();
+    this.batchDelay = maxDelayMicros;
+    this.batchSize = maxMessages;
+  }
+
+  /**
+   * Limits the time two-way calls may take.  A call not answered within the
+   * timeout fails with a {@link TimeoutException}, and is abandoned as if
+   * {@link CallFuture#cancel(boolean)} had been called.  The timeout is also
+   * sent to the server in each call's metadata, and servers drop calls that
+   * reach them after it has passed.  Plugins may change a call's timeout
+   * with {@link RPCContext#setTimeout(long)}.  Timeouts only unblock callers
+   * of asynchronous transports such as {@link NettyTransceiver}.
+   * @param timeoutMillis the timeout in milliseconds, or zero for none.
+   */
+  public void setTimeout(long timeoutMillis) {
+    this.timeout = timeoutMillis;
+  }
+
+  /** Sends any queued one-way messages now.  Call before closing the
+   * transceiver when batching is enabled. */
+  public void flush() {
+    synchronized (batchLock) {
+      Batch pending = batch;
+      batch = null;
+      if (pending != null)
+        pending.send();
+    }
+  }
+
   private static final EncoderFactory ENCODER_FACTORY = new EncoderFactory();
 
   /** Writes a request message and reads a response or error message. */
@@ -133,10 +210,17 @@ public abstract class Requestor {
   <T> void request(Request request, Callback<T> callback)
     throws Exception {
     Transceiver t = getTransceiver();
+    if (t instanceof LocalTransceiver
+        && ((LocalTransceiver)t).isDirect(this)) {
+      requestDirect((LocalTransceiver)t, request, callback);
+      return;
+    }
     if (!t.isConnected()) {
       // Acquire handshake lock so that only one thread is performing the
-      // handshake and other threads block until the handshake is completed
-      handshakeLock.lock();
+      // handshake and other threads block until the handshake is completed.
+      // Stateless transports handshake in every request, so need not wait.
+      if (!t.isStateless())
+        handshakeLock.lock();
       try {
         if (t.isConnected()) {
           // Another thread already completed the handshake; no need to hold
@@ -144,8 +228,7 @@ public abstract class Requestor {
           handshakeLock.unlock();
         } else {
           CallFuture<T> callFuture = new CallFuture<T>(callback);
-          t.transceive(request.getBytes(),
-                       new TransceiverCallback<T>(request, callFuture));
+          transceive(t, request, callFuture, callback);
           // Block until handshake complete
           callFuture.await();
           if (request.getMessage().isOneWay()) {
@@ -167,6 +250,14 @@ public abstract class Requestor {
       }
     }
 
+    if (batchSize > 1) {
+      if (request.getMessage().isOneWay()) {
+        batch(request, callback);
+        return;
+      }
+      flush();                                    // preserve call order
+    }
+
     if (request.getMessage().isOneWay()) {
       t.lockChannel();
       try {
@@ -178,10 +269,258 @@ public abstract class Requestor {
         t.unlockChannel();
       }
     } else {
-      t.transceive(request.getBytes(),
-                   new TransceiverCallback<T>(request, callback));
+      transceive(t, request, callback, callback);
+    }
+
+  }
+
+  /** Sends a two-way request, failing it if not answered in time and
+   * abandoning it if the caller's future is cancelled. */
+  private <T> void transceive(Transceiver t, Request request,
+                              Callback<T> callback, Callback<T> caller)
+    throws Exception {
+    List<ByteBuffer> bytes = request.getBytes();
+    PendingCall call = new PendingCall(t, request.getMessageName(),
+                                       request.getContext().getTimeout(),
+                                       new TransceiverCallback<T>(request,
+                                                                  callback));
+    if (caller instanceof CallFuture)
+      ((CallFuture<T>)caller).setCanceller(call);
+    call.start(bytes);
+  }
+
+  /** Queues a one-way message, sending its batch if this fills it. */
+  private <T> void batch(Request request, Callback<T> callback)
+    throws Exception {
+    List<ByteBuffer> bytes = request.getBytes();
+    synchronized (batchLock) {
+      if (batch == null) {
+        final Batch b = batch = new Batch();
+        if (batchDelay > 0)
+          RequestTimer.TIMER.schedule(new Runnable() {
+            @Override public void run() {
+              synchronized (batchLock) {
+                if (batch == b) {
+                  batch = null;
+                  b.send();
+                }
+              }
+            }
+          }, batchDelay, TimeUnit.MICROSECONDS);
+      }
+      batch.add(bytes, callback);
+      if (batch.count >= batchSize) {
+        Batch full = batch;
+        batch = null;
+        full.send();
+      }
+    }
+  }
+
+  /** The name given to frames that carry a batch of one-way messages.  As it
+   * is not a valid message name, it cannot be confused with one. */
+  static final String BATCH_MESSAGE = "#batch";
+
+  /** The name given to frames that abandon a call, sent with empty metadata
+   * and the serial number of the call by transports that tag calls so. */
+  static final String CANCEL_MESSAGE = "#cancel";
+
+  /** The call metadata key under which a call's timeout is sent, as an
+   * eight-byte count of milliseconds. */
+  static final String TIMEOUT_KEY = "avro.timeout";
+
+  /** Returns the timeout sent in call metadata, or zero if none was. */
+  static long getTimeout(Map<String,ByteBuffer> meta) {
+    ByteBuffer timeout = RpcCompression.get(meta, TIMEOUT_KEY);
+    if (timeout == null || timeout.remaining() != 8)
+      return 0;
+    return timeout.getLong(timeout.position());
+  }
+
+  /** Sends batches that are not filled in time and fails calls that are not
+   * answered in time. */
+  private static class RequestTimer {
+    /** The number of cancelled timeouts after which they are purged. */
+    static final int PURGE_INTERVAL = 1024;
+
+    static final ScheduledThreadPoolExecutor TIMER =
+      new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "Requestor timer");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+    private static final AtomicInteger CANCELLED = new AtomicInteger();
+    private static final Runnable PURGE = new Runnable() {
+        @Override public void run() { TIMER.purge(); }
+      };
+
+    /** Cancels a timeout.  Cancelled tasks stay queued until they are due,
+     * so when calls are answered well within long timeouts they are purged
+     * from time to time, by the timer thread. */
+    static void cancel(ScheduledFuture<?> timer) {
+      if (timer.cancel(false)
+          && CANCELLED.incrementAndGet() % PURGE_INTERVAL == 0)
+        TIMER.execute(PURGE);
+    }
+  }
+
+  /** A two-way call awaiting its response.  Whichever of the response, its
+   * timeout or its cancellation comes first completes it, and the others are
+   * ignored. */
+  private class PendingCall implements Callback<List<ByteBuffer>>, Runnable {
+    private final Transceiver t;
+    private final String messageName;
+    private final long timeout;
+    private final AtomicBoolean done = new AtomicBoolean();
+    private volatile Callback<List<ByteBuffer>> callback;
+    private volatile ScheduledFuture<?> timer;
+
+    PendingCall(Transceiver t, String messageName, long timeout,
+                Callback<List<ByteBuffer>> callback) {
+      this.t = t;
+      this.messageName = messageName;
+      this.timeout = timeout;
+      this.callback = callback;
+    }
+
+    void start(List<ByteBuffer> bytes) throws IOException {
+      if (done.get()) return;                     // cancelled already
+      if (timeout > 0)
+        timer = RequestTimer.TIMER.schedule(new Runnable() {
+            @Override public void run() {
+              abandon(new TimeoutException("No response to " + messageName
+                                           + " within " + timeout + "ms"));
+            }
+          }, timeout, TimeUnit.MILLISECONDS);
+      try {
+        t.transceive(bytes, this);
+      } catch (IOException e) {
+        complete();                               // the caller is told
+        throw e;
+      } catch (RuntimeException e) {
+        complete();
+        throw e;
+      }
+    }
+
+    /** Cancels the call, on behalf of its {@link CallFuture}. */
+    @Override
+    public void run() {
+      abandon(new CancellationException("Call cancelled"));
+    }
+
+    private void abandon(Exception error) {
+      Callback<List<ByteBuffer>> callback = complete();
+      if (callback == null) return;
+      t.cancel(this);
+      callback.handleError(error);
+    }
+
+    @Override
+    public void handleResult(List<ByteBuffer> result) {
+      Callback<List<ByteBuffer>> callback = complete();
+      if (callback != null)
+        callback.handleResult(result);
     }
 
+    @Override
+    public void handleError(Throwable error) {
+      Callback<List<ByteBuffer>> callback = complete();
+      if (callback != null)
+        callback.handleError(error);
+    }
+
+    /** Returns the callback if this is the first to complete the call, or
+     * null.  Releases it, so that a pending timer does not retain it. */
+    private Callback<List<ByteBuffer>> complete() {
+      if (!done.compareAndSet(false, true))
+        return null;
+      Callback<List<ByteBuffer>> callback = this.callback;
+      this.callback = null;
+      ScheduledFuture<?> timer = this.timer;
+      if (timer != null)
+        RequestTimer.cancel(timer);
+      return callback;
+    }
+  }
+
+  /** Passes a request to an in-process responder without serializing it.
+   * Plugins are run as for other calls, but without payloads. */
+  private <T> void requestDirect(LocalTransceiver t, Request request,
+                                 final Callback<T> callback) {
+    final RPCContext context = request.getContext();
+    Message m = request.getMessage();
+    context.setMessage(m);
+    for (RPCPlugin plugin : rpcMetaPlugins) {
+      plugin.clientSendRequest(context);
+    }
+    t.respond(this, m, request.request, context, new Callback<Object>() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public void handleResult(Object response) {
+        context.setResponse(response);
+        for (RPCPlugin plugin : rpcMetaPlugins) {
+          plugin.clientReceiveResponse(context);
+        }
+        if (callback != null)
+          callback.handleResult((T)response);
+      }
+      @Override
+      public void handleError(Throwable error) {
+        if (error instanceof Exception)
+          context.setError((Exception)error);
+        for (RPCPlugin plugin : rpcMetaPlugins) {
+          plugin.clientReceiveResponse(context);
+        }
+        if (callback != null)
+          callback.handleError(error);
+      }
+    });
+  }
+
+  /** One-way messages queued to be sent as a single frame: empty metadata,
+   * the batch name and the number of messages, followed by each message as
+   * it would otherwise have been sent. */
+  private class Batch {
+    private final List<ByteBuffer> messages = new ArrayList<ByteBuffer>();
+    private final List<Callback<?>> callbacks = new ArrayList<Callback<?>>();
+    private int count;
+
+    void add(List<ByteBuffer> bytes, Callback<?> callback) {
+      messages.addAll(bytes);
+      if (callback != null)
+        callbacks.add(callback);
+      count++;
+    }
+
+    void send() {
+      Transceiver t = getTransceiver();
+      Exception error = null;
+      t.lockChannel();
+      try {
+        ByteBufferOutputStream bbo = new ByteBufferOutputStream();
+        Encoder out = ENCODER_FACTORY.directBinaryEncoder(bbo, null);
+        META_WRITER.write(Collections.<String,ByteBuffer>emptyMap(), out);
+        out.writeString(BATCH_MESSAGE);
+        out.writeLong(count);
+        bbo.append(messages);
+        t.writeBuffers(bbo.getBufferList());
+      } catch (Exception e) {
+        LOG.warn("Failed to send " + count + " one-way messages", e);
+        error = e;
+      } finally {
+        t.unlockChannel();
+      }
+      for (Callback<?> callback : callbacks) {
+        if (error == null)
+          callback.handleResult(null);
+        else
+          callback.handleError(error);
+      }
+    }
   }
 
   private static final ConcurrentMap<String,MD5> REMOTE_HASHES =
@@ -212,15 +551,22 @@ public abstract class Requestor {
     handshake.serverHash = remoteHash;
     if (sendLocalText)
       handshake.clientProtocol = local.toString();
+    startConnect(handshake);
+    HANDSHAKE_WRITER.write(handshake, out);
+  }
 
+  /** Adds the offered codecs and plugin metadata to a handshake request. */
+  private void startConnect(HandshakeRequest handshake) {
     RPCContext context = new RPCContext();
     context.setHandshakeRequest(handshake);
+    RpcCompression compression = this.compression;
+    if (compression != null)
+      context.requestHandshakeMeta().put(RpcCompression.CODECS_KEY,
+                                         compression.names());
     for (RPCPlugin plugin : rpcMetaPlugins) {
       plugin.clientStartConnect(context);
     }
     handshake.meta = context.requestHandshakeMeta();
-
-    HANDSHAKE_WRITER.write(handshake, out);
   }
 
   private boolean readHandshake(Decoder in) throws IOException {
@@ -247,14 +593,60 @@ public abstract class Requestor {
       throw new AvroRuntimeException("Unexpected match: "+handshake.match);
     }
 
+    finishConnect(handshake, getTransceiver(), established ? remote : null);
+    return established;
+  }
+
+  /** Passes a handshake response to plugins and, if the connection was
+   * established with a remote protocol, sets the connection's codec and
+   * remote protocol. */
+  private void finishConnect(HandshakeResponse handshake,
+                             Transceiver connection, Protocol remote) {
     RPCContext context = new RPCContext();
     context.setHandshakeResponse(handshake);
     for (RPCPlugin plugin : rpcMetaPlugins) {
       plugin.clientFinishConnect(context);
     }
-    if (established)
-      getTransceiver().setRemote(remote);
-    return established;
+    if (remote != null) {
+      RpcCompression compression = this.compression;
+      ByteBuffer codecName =
+        RpcCompression.get(handshake.meta, RpcCompression.CODEC_KEY);
+      connection.setCodec(compression == null || codecName == null
+                          ? null
+                          : compression.get(codecName));
+      connection.setRemote(remote);
+    }
+  }
+
+  /** Handshakes another connection to a server whose protocol is already
+   * known, as {@link PooledTransceiver} does for each of its connections.
+   * The local protocol is sent, so that servers which have not seen it yet
+   * still match in a single round trip.  Codecs are negotiated and plugins
+   * called as for this requestor's own handshake.
+   * @return true if the server matched both protocols */
+  boolean handshake(Transceiver connection, Protocol remote)
+    throws IOException {
+    HandshakeRequest request = new HandshakeRequest();
+    request.clientHash = new MD5();
+    request.clientHash.bytes(local.getMD5());
+    request.clientProtocol = local.toString();
+    request.serverHash = new MD5();
+    request.serverHash.bytes(remote.getMD5());
+    startConnect(request);
+    ByteBufferOutputStream bbo = new ByteBufferOutputStream();
+    Encoder out = ENCODER_FACTORY.directBinaryEncoder(bbo, null);
+    HANDSHAKE_WRITER.write(request, out);
+    out.writeInt(0);                              // empty metadata
+    out.writeString("");                          // handshake-only ping
+    List<ByteBuffer> response = connection.transceive(bbo.getBufferList());
+    if (response == null)
+      throw new IOException("No handshake response");
+    HandshakeResponse handshake = HANDSHAKE_READER.read(null,
+        DecoderFactory.get().binaryDecoder(
+            new ByteBufferInputStream(response), null));
+    boolean matched = handshake.match == HandshakeMatch.BOTH;
+    finishConnect(handshake, connection, matched ? remote : null);
+    return matched;
   }
 
   private void setRemote(HandshakeResponse handshake) throws IOException {
@@ -478,9 +870,22 @@ public abstract class Requestor {
         writeHandshake(out);                     // prepend handshake if needed
 
         context.setRequestPayload(payload);
+        if (context.getTimeout() == 0)
+          context.setTimeout(timeout);
         for (RPCPlugin plugin : rpcMetaPlugins) {
           plugin.clientSendRequest(context);      // get meta-data from plugins
         }
+        if (!m.isOneWay() && context.getTimeout() > 0)
+          context.requestCallMeta().put(TIMEOUT_KEY, (ByteBuffer)
+              ByteBuffer.allocate(8).putLong(context.getTimeout()).flip());
+        Codec codec = getTransceiver().getCodec();
+        RpcCompression compression = Requestor.this.compression;
+        if (codec != null && compression != null
+            && compression.shouldCompress(payload)) {
+          payload = RpcCompression.compress(codec, payload);
+          context.requestCallMeta().put(RpcCompression.CODEC_KEY,
+                                        RpcCompression.name(codec));
+        }
         META_WRITER.write(context.requestCallMeta(), out);
 
         out.writeString(m.getName());             // write message name
@@ -540,7 +945,13 @@ public abstract class Requestor {
       if (lm.isOneWay() && t.isConnected()) return null; // one-way w/ handshake
 
       RPCContext context = request.getContext();
-      context.setResponseCallMeta(META_READER.read(null, in));
+      context.setResponseCallMeta(META_READER.read(null, this.in));
+      Decoder in = this.in;
+      ByteBuffer codecName = RpcCompression.get(context.responseCallMeta(),
+                                                RpcCompression.CODEC_KEY);
+      if (codecName != null)
+        in = RpcCompression.decompress(
+            RpcCompression.forName(codecName, t.getCodec(), compression), in);
 
       if (!in.readBoolean()) {                      // no error
         Object response = readResponse(rm.getResponse(), lm.getResponse(), in);
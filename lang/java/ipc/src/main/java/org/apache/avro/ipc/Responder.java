@@ -19,10 +19,15 @@
 package org.apache.avro.ipc;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 
+import java.util.HashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.List;
 import java.util.Map;
 
@@ -34,6 +39,8 @@ import org.apache.avro.UnresolvedUnionException;
 import org.apache.avro.Protocol;
 import org.apache.avro.Schema;
 import org.apache.avro.Protocol.Message;
+import org.apache.avro.file.Codec;
+import org.apache.avro.file.CodecFactory;
 import org.apache.avro.util.ByteBufferInputStream;
 import org.apache.avro.util.ByteBufferOutputStream;
 import org.apache.avro.util.Utf8;
@@ -65,6 +72,7 @@ public abstract class Responder {
     = new ConcurrentHashMap<MD5,Protocol>();
 
   private final Protocol local;
+  private volatile RpcCompression compression;
   private final MD5 localHash;
   protected final List<RPCPlugin> rpcMetaPlugins;
 
@@ -78,7 +86,8 @@ public abstract class Responder {
   }
 
   /** Return the remote protocol.  Accesses a {@link ThreadLocal} that's set
-   * around calls to {@link #respond(Protocol.Message, Object)}. */
+   * around calls to {@link #respond(Protocol.Message, Object)} and {@link
+   * #respondAsync(Protocol.Message, Object, Callback)}. */
   public static Protocol getRemote() { return REMOTE.get(); }
 
   /** Return the local protocol. */
@@ -93,6 +102,20 @@ public abstract class Responder {
     rpcMetaPlugins.add(plugin);
   }
 
+  /**
+   * Enables compression of responses for clients that request it.  The
+   * first codec listed by a client's {@link Requestor#setCompression(int,
+   * CodecFactory...)} that is also listed here is used to compress
+   * responses larger than the threshold, for as long as its connection
+   * lasts.  Compressed requests are accepted only with the codec so chosen
+   * or one listed here, so none are accepted unless this is called.
+   * @param threshold the size in bytes above which responses are compressed.
+   * @param codecs the codecs that may be used.
+   */
+  public void setCompression(int threshold, CodecFactory... codecs) {
+    this.compression = new RpcCompression(threshold, codecs);
+  }
+
   /** Called by a server to deserialize a request, compute and serialize
    * a response or error. */
   public List<ByteBuffer> respond(List<ByteBuffer> buffers) throws IOException {
@@ -104,36 +127,206 @@ public abstract class Responder {
    * track handshake status of connection. */
   public List<ByteBuffer> respond(List<ByteBuffer> buffers,
                                   Transceiver connection) throws IOException {
-    Decoder in = DecoderFactory.get().binaryDecoder(
-        new ByteBufferInputStream(buffers), null);
-    ByteBufferOutputStream bbo = new ByteBufferOutputStream();
-    BinaryEncoder out = EncoderFactory.get().binaryEncoder(bbo, null);
-    Exception error = null;
-    RPCContext context = new RPCContext();
-    List<ByteBuffer> payload = null;
-    List<ByteBuffer> handshake = null;
-    boolean wasConnected = connection != null && connection.isConnected();
+    CallFuture<List<ByteBuffer>> future = new CallFuture<List<ByteBuffer>>();
+    respond(buffers, connection, future);
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException)
+        throw (IOException) cause;
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      throw new AvroRuntimeException(cause);
+    }
+  }
+
+  /** Called by a server to deserialize a request, then compute and
+   * serialize a response or error without blocking.  The serialized
+   * response is passed to the callback once {@link
+   * #respondAsync(Protocol.Message, Object, Callback)} completes, or null
+   * for one-way messages.  Transciever is used by connection-based servers
+   * to track handshake status of connection. */
+  public void respond(List<ByteBuffer> buffers, Transceiver connection,
+                      Callback<List<ByteBuffer>> callback) {
+    respond(buffers, connection, System.nanoTime(), callback);
+  }
+
+  /** Called by servers that queue requests, with the {@link
+   * System#nanoTime()} at which a request was received, so that calls whose
+   * timeout passes while queued are dropped rather than computed. */
+  void respond(List<ByteBuffer> buffers, Transceiver connection,
+               long receivedNanos, Callback<List<ByteBuffer>> callback) {
+    new Call(connection, callback, receivedNanos).start(buffers);
+  }
+
+  /** Called by {@link LocalTransceiver} to pass a request from an
+   * in-process requestor that uses this responder's protocol and data
+   * model, without serializing it.  Plugins are run as for other calls,
+   * but without payloads. */
+  void respond(Message message, Object request, final RPCContext context,
+               final Callback<Object> callback) {
+    context.setMessage(message);
+    for (RPCPlugin plugin : rpcMetaPlugins) {
+      plugin.serverReceiveRequest(context);
+    }
+    final Message m = message;
+    RespondOnce finish = new RespondOnce() {
+      @Override public void handleResult(Object response) {
+        if (!respond(m))
+          return;
+        context.setResponse(response);
+        for (RPCPlugin plugin : rpcMetaPlugins) {
+          plugin.serverSendResponse(context);
+        }
+        callback.handleResult(response);
+      }
+      @Override public void handleError(Throwable error) {
+        if (!respond(m))
+          return;
+        if (error instanceof Exception)
+          context.setError((Exception) error);
+        LOG.warn("user error", error);
+        for (RPCPlugin plugin : rpcMetaPlugins) {
+          plugin.serverSendResponse(context);
+        }
+        callback.handleError(error);
+      }
+    };
     try {
-      Protocol remote = handshake(in, out, connection);
-      out.flush();
-      if (remote == null)                        // handshake failed
-        return bbo.getBufferList();
-      handshake = bbo.getBufferList();
-
-      // read request using remote protocol specification
-      context.setRequestCallMeta(META_READER.read(null, in));
-      String messageName = in.readString(null).toString();
-      if (messageName.equals(""))                 // a handshake ping
-        return handshake;
+      REMOTE.set(local);
+      respondAsync(message, request, finish);
+    } catch (RuntimeException e) {
+      if (finish.hasResponded())                  // thrown by our callback
+        throw e;
+      finish.handleError(e);
+    } finally {
+      REMOTE.set(null);
+    }
+  }
+
+  /** Receives the outcome of each message of a batch, which has no
+   * response. */
+  private static final Callback<List<ByteBuffer>> BATCHED =
+    new Callback<List<ByteBuffer>>() {
+      @Override public void handleResult(List<ByteBuffer> result) {}
+      @Override public void handleError(Throwable error) {
+        LOG.warn("Error handling batched message", error);
+      }
+    };
+
+  /** A callback that sends only the first result or error passed to it. */
+  private abstract static class RespondOnce implements Callback<Object> {
+    private final AtomicBoolean responded = new AtomicBoolean();
+
+    /** Returns true the first time it is called, after which any further
+     * result or error is logged and ignored. */
+    boolean respond(Message message) {
+      if (responded.compareAndSet(false, true))
+        return true;
+      LOG.warn("Ignoring repeated response to " + message.getName());
+      return false;
+    }
+
+    boolean hasResponded() { return responded.get(); }
+  }
+
+  /** The state of a call while its response is computed. */
+  private class Call extends RespondOnce {
+    private final Transceiver connection;
+    private final Callback<List<ByteBuffer>> callback;
+    private final boolean wasConnected;
+    private final long received;
+    private final RPCContext context = new RPCContext();
+    private List<ByteBuffer> handshake;
+    private Codec codec;
+    private Message message;
+    Call(Transceiver connection, Callback<List<ByteBuffer>> callback,
+         long received) {
+      this(connection, callback,
+           connection != null && connection.isConnected(), received);
+    }
+
+    private Call(Transceiver connection, Callback<List<ByteBuffer>> callback,
+                 boolean wasConnected, long received) {
+      this.connection = connection;
+      this.callback = callback;
+      this.wasConnected = wasConnected;
+      this.received = received;
+    }
+
+    /** Reads the request and passes it to the responder. */
+    void start(List<ByteBuffer> buffers) {
+      List<ByteBuffer> reply = null;
+      Protocol remote;
+      Object request = null;
+      try {
+        Decoder in = DecoderFactory.get().binaryDecoder(
+            new ByteBufferInputStream(buffers), null);
+        ByteBufferOutputStream bbo = new ByteBufferOutputStream();
+        BinaryEncoder out = EncoderFactory.get().binaryEncoder(bbo, null);
+        remote = handshake(in, out, this);
+        out.flush();
+        if (remote == null) {                     // handshake failed
+          reply = bbo.getBufferList();
+        } else {
+          handshake = bbo.getBufferList();
+
+          // read request using remote protocol specification
+          context.setRequestCallMeta(META_READER.read(null, in));
+          String messageName = in.readString(null).toString();
+          if (messageName.equals("")) {           // a handshake ping
+            reply = handshake;
+          } else if (messageName.equals(Requestor.BATCH_MESSAGE)) {
+            dispatchBatch(in, remote);
+            reply = wasConnected ? null : handshake;
+          } else if (messageName.equals(Requestor.CANCEL_MESSAGE)) {
+            reply = null;                         // nothing left to cancel
+          } else {
+            request = readRequest(messageName, remote, in);
+          }
+        }
+      } catch (Exception e) {
+        systemError(e);
+        return;
+      }
+      if (message == null) {
+        callback.handleResult(reply);
+        return;
+      }
+      dispatch(remote, request);
+    }
+
+    /** Reads a request for the named message. */
+    private Object readRequest(String messageName, Protocol remote, Decoder in)
+      throws Exception {
       Message rm = remote.getMessages().get(messageName);
       if (rm == null)
-        throw new AvroRuntimeException("No such remote message: "+messageName);
+        throw new AvroRuntimeException("No such remote message: "
+                                       + messageName);
       Message m = getLocal().getMessages().get(messageName);
       if (m == null)
         throw new AvroRuntimeException("No message named "+messageName
                                        +" in "+getLocal());
 
-      Object request = readRequest(rm.getRequest(), m.getRequest(), in);
+      long timeout = Requestor.getTimeout(context.requestCallMeta());
+      if (timeout > 0 && System.nanoTime() - received
+          > TimeUnit.MILLISECONDS.toNanos(timeout))
+        throw new AvroRuntimeException("Timeout of " + timeout
+                                       + "ms passed before " + messageName
+                                       + " was started");
+      context.setTimeout(timeout);
+
+      ByteBuffer codecName = RpcCompression.get(context.requestCallMeta(),
+                                                RpcCompression.CODEC_KEY);
+      if (codecName != null)
+        in = RpcCompression.decompress(
+            RpcCompression.forName(codecName, codec, compression), in);
+      Object request = Responder.this.readRequest(rm.getRequest(),
+                                                  m.getRequest(), in);
 
       context.setMessage(rm);
       for (RPCPlugin plugin : rpcMetaPlugins) {
@@ -142,60 +335,134 @@ public abstract class Responder {
 
       // create response using local protocol specification
       if ((m.isOneWay() != rm.isOneWay()) && wasConnected)
-        throw new AvroRuntimeException("Not both one-way: "+messageName);
+        throw new AvroRuntimeException("Not both one-way: " + messageName);
+      message = m;
+      return request;
+    }
 
-      Object response = null;
+    /** Reads each one-way message of a batch sent by {@link
+     * Requestor#setBatching(int, long)} and passes it to the responder. */
+    private void dispatchBatch(Decoder in, Protocol remote) throws Exception {
+      for (long count = in.readLong(); count > 0; count--) {
+        Call call = new Call(connection, BATCHED, true, received);
+        call.context.setRequestCallMeta(META_READER.read(null, in));
+        String messageName = in.readString(null).toString();
+        Object request = call.readRequest(messageName, remote, in);
+        if (!call.message.isOneWay())
+          throw new AvroRuntimeException("Not one-way: " + messageName);
+        call.dispatch(remote, request);
+      }
+    }
 
+    /** Passes a request to the responder. */
+    private void dispatch(Protocol remote, Object request) {
       try {
         REMOTE.set(remote);
-        response = respond(m, request);
-        context.setResponse(response);
-      } catch (Exception e) {
-        error = e;
-        context.setError(error);
-        LOG.warn("user error", e);
+        respondAsync(message, request, this);
+      } catch (RuntimeException e) {
+        if (hasResponded())                       // thrown by our callback
+          throw e;
+        handleError(e);
       } finally {
         REMOTE.set(null);
       }
+    }
 
-      if (m.isOneWay() && wasConnected)           // no response data
-        return null;
-
-      out.writeBoolean(error != null);
-      if (error == null)
-        writeResponse(m.getResponse(), response, out);
-      else
-        try {
-          writeError(m.getErrors(), error, out);
-        } catch (UnresolvedUnionException e) {    // unexpected error
-          throw error;
-        }
-    } catch (Exception e) {                       // system error
+    @Override
+    public void handleResult(Object response) {
+      if (!respond(message))
+        return;
+      context.setResponse(response);
+      finish(response, null);
+    }
+
+    @Override
+    public void handleError(Throwable error) {
+      if (!respond(message))
+        return;
+      if (!(error instanceof Exception)) {
+        systemError(new AvroRuntimeException(error));
+        return;
+      }
+      context.setError((Exception) error);
+      LOG.warn("user error", error);
+      finish(null, (Exception) error);
+    }
+
+    /** Serializes a response or user error. */
+    private void finish(Object response, Exception error) {
+      if (message.isOneWay() && wasConnected) {   // no response data
+        callback.handleResult(null);
+        return;
+      }
+      ByteBufferOutputStream bbo = new ByteBufferOutputStream();
+      BinaryEncoder out = EncoderFactory.get().binaryEncoder(bbo, null);
+      try {
+        out.writeBoolean(error != null);
+        if (error == null)
+          writeResponse(message.getResponse(), response, out);
+        else
+          try {
+            writeError(message.getErrors(), error, out);
+          } catch (UnresolvedUnionException e) {  // unexpected error
+            throw error;
+          }
+      } catch (Exception e) {
+        systemError(e);
+        return;
+      }
+      complete(bbo, out);
+    }
+
+    private void systemError(Exception e) {
       LOG.warn("system error", e);
       context.setError(e);
-      bbo = new ByteBufferOutputStream();
-      out = EncoderFactory.get().binaryEncoder(bbo, null);
-      out.writeBoolean(true);
-      writeError(Protocol.SYSTEM_ERRORS, new Utf8(e.toString()), out);
+      ByteBufferOutputStream bbo = new ByteBufferOutputStream();
+      BinaryEncoder out = EncoderFactory.get().binaryEncoder(bbo, null);
+      try {
+        out.writeBoolean(true);
+        writeError(Protocol.SYSTEM_ERRORS, new Utf8(e.toString()), out);
+      } catch (IOException ioe) {
+        callback.handleError(ioe);
+        return;
+      }
       if (null == handshake) {
         handshake = new ByteBufferOutputStream().getBufferList();
       }
+      complete(bbo, out);
     }
-    out.flush();
-    payload = bbo.getBufferList();
 
-    // Grab meta-data from plugins
-    context.setResponsePayload(payload);
-    for (RPCPlugin plugin : rpcMetaPlugins) {
-      plugin.serverSendResponse(context);
-    }
-    META_WRITER.write(context.responseCallMeta(), out);
-    out.flush();
-    // Prepend handshake and append payload
-    bbo.prepend(handshake);
-    bbo.append(payload);
+    /** Adds metadata from plugins, then the handshake, and replies. */
+    private void complete(ByteBufferOutputStream bbo, BinaryEncoder out) {
+      List<ByteBuffer> reply;
+      try {
+        out.flush();
+        List<ByteBuffer> payload = bbo.getBufferList();
 
-    return bbo.getBufferList();
+        // Grab meta-data from plugins
+        context.setResponsePayload(payload);
+        for (RPCPlugin plugin : rpcMetaPlugins) {
+          plugin.serverSendResponse(context);
+        }
+        RpcCompression compression = Responder.this.compression;
+        if (codec != null && compression != null
+            && compression.shouldCompress(payload)) {
+          payload = RpcCompression.compress(codec, payload);
+          context.responseCallMeta().put(RpcCompression.CODEC_KEY,
+                                         RpcCompression.name(codec));
+        }
+        META_WRITER.write(context.responseCallMeta(), out);
+        out.flush();
+        // Prepend handshake and append payload
+        bbo.prepend(handshake);
+        bbo.append(payload);
+        reply = bbo.getBufferList();
+      } catch (Exception e) {
+        callback.handleError(e);
+        return;
+      }
+      callback.handleResult(reply);
+    }
   }
 
   private SpecificDatumWriter<HandshakeResponse> handshakeWriter =
@@ -203,10 +470,13 @@ public abstract class Responder {
   private SpecificDatumReader<HandshakeRequest> handshakeReader =
     new SpecificDatumReader<HandshakeRequest>(HandshakeRequest.class);
 
-  private Protocol handshake(Decoder in, Encoder out, Transceiver connection)
+  private Protocol handshake(Decoder in, Encoder out, Call call)
     throws IOException {
-    if (connection != null && connection.isConnected())
+    Transceiver connection = call.connection;
+    if (connection != null && connection.isConnected()) {
+      call.codec = connection.getCodec();
       return connection.getRemote();
+    }
     HandshakeRequest request = (HandshakeRequest)handshakeReader.read(null, in);
     Protocol remote = protocols.get(request.clientHash);
     if (remote == null && request.clientProtocol != null) {
@@ -226,6 +496,18 @@ public abstract class Responder {
       response.serverHash = localHash;
     }
 
+    RpcCompression compression = this.compression;
+    if (compression != null && remote != null) {
+      call.codec = compression.choose(
+          RpcCompression.get(request.meta, RpcCompression.CODECS_KEY));
+      if (call.codec != null) {
+        if (response.meta == null)
+          response.meta = new HashMap<String,ByteBuffer>();
+        response.meta.put(RpcCompression.CODEC_KEY,
+                          RpcCompression.name(call.codec));
+      }
+    }
+
     RPCContext context = new RPCContext();
     context.setHandshakeRequest(request);
     context.setHandshakeResponse(response);
@@ -234,8 +516,10 @@ public abstract class Responder {
     }
     handshakeWriter.write(response, out);
 
-    if (connection != null && response.match != HandshakeMatch.NONE)
+    if (connection != null && response.match != HandshakeMatch.NONE) {
+      connection.setCodec(call.codec);
       connection.setRemote(remote);
+    }
 
     return remote;
   }
@@ -244,6 +528,23 @@ public abstract class Responder {
   public abstract Object respond(Message message, Object request)
     throws Exception;
 
+  /** Computes the response for a message without blocking, passing it or
+   * an error to a callback, which may be called from any thread.  {@link
+   * #getRemote()} is only set for the duration of this call.  The default
+   * implementation calls {@link #respond(Protocol.Message, Object)}, and so
+   * completes before returning. */
+  public void respondAsync(Message message, Object request,
+                           Callback<Object> callback) {
+    Object response;
+    try {
+      response = respond(message, request);
+    } catch (Exception e) {
+      callback.handleError(e);
+      return;
+    }
+    callback.handleResult(response);
+  }
+
   /** Reads a request message. */
   public abstract Object readRequest(Schema actual, Schema expected, Decoder in)
     throws IOException;
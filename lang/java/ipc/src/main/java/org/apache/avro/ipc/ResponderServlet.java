@@ -28,29 +28,99 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.avro.AvroRuntimeException;
+import org.mortbay.util.ajax.Continuation;
+import org.mortbay.util.ajax.ContinuationSupport;
+import org.mortbay.util.ajax.WaitingContinuation;
 
-/** An {@link HttpServlet} that responds to Avro RPC requests. */
+/** An {@link HttpServlet} that responds to Avro RPC requests.
+ *
+ * <p>When run by a Jetty connector that supports continuations, such as the
+ * <code>SelectChannelConnector</code> used by {@link HttpServer}, a request
+ * whose response is computed asynchronously does not hold a server thread
+ * while it waits: the request is suspended and resumed when the response is
+ * ready.  Other containers wait for each response in the request's thread. */
 public class ResponderServlet extends HttpServlet {
+  private static final String CALL = ResponderServlet.class.getName()+".call";
+
   private Responder responder;
+  private long timeout = Integer.MAX_VALUE;
 
   public ResponderServlet(Responder responder) throws IOException {
     this.responder = responder;
   }
 
+  /** Set the longest time, in milliseconds, that a request is suspended
+   * awaiting its response.  By default, requests wait indefinitely. */
+  public void setTimeout(long timeout) { this.timeout = timeout; }
+
   @Override
   protected void doPost(HttpServletRequest request,
                         HttpServletResponse response)
     throws IOException, ServletException {
+    Continuation continuation =
+      ContinuationSupport.getContinuation(request, null);
+    Call call = (Call)request.getAttribute(CALL);
+    if (call == null) {                           // first dispatch
+      List<ByteBuffer> requestBufs =
+        HttpTransceiver.readBuffers(request.getInputStream());
+      if (continuation instanceof WaitingContinuation) {
+        try {
+          write(responder.respond(requestBufs), response);
+        } catch (AvroRuntimeException e) {
+          throw new ServletException(e);
+        }
+        return;
+      }
+      call = new Call(continuation);
+      request.setAttribute(CALL, call);
+      responder.respond(requestBufs, null, call);
+      synchronized (call) {
+        if (!call.done)
+          continuation.suspend(timeout);          // throws to suspend
+      }
+    }
+    synchronized (call) {
+      if (!call.done)
+        throw new ServletException("Timed out awaiting response");
+      if (call.error instanceof IOException)
+        throw (IOException)call.error;
+      if (call.error != null)
+        throw new ServletException(call.error);
+      write(call.result, response);
+    }
+  }
+
+  private static void write(List<ByteBuffer> responseBufs,
+                            HttpServletResponse response) throws IOException {
     response.setContentType(HttpTransceiver.CONTENT_TYPE);
-    List<ByteBuffer> requestBufs =
-      HttpTransceiver.readBuffers(request.getInputStream());
-    try {
-      List<ByteBuffer> responseBufs = responder.respond(requestBufs);
-      response.setContentLength(HttpTransceiver.getLength(responseBufs));
-      HttpTransceiver.writeBuffers(responseBufs, response.getOutputStream());
-    } catch (AvroRuntimeException e) {
-      throw new ServletException(e);
+    response.setContentLength(HttpTransceiver.getLength(responseBufs));
+    HttpTransceiver.writeBuffers(responseBufs, response.getOutputStream());
+  }
+
+  /** Receives a response, resuming its request if suspended. */
+  private static class Call implements Callback<List<ByteBuffer>> {
+    private final Continuation continuation;
+    private boolean done;
+    private List<ByteBuffer> result;
+    private Throwable error;
+
+    Call(Continuation continuation) { this.continuation = continuation; }
+
+    @Override public void handleResult(List<ByteBuffer> result) {
+      complete(result, null);
+    }
+
+    @Override public void handleError(Throwable error) {
+      complete(null, error);
+    }
+
+    private void complete(List<ByteBuffer> result, Throwable error) {
+      synchronized (this) {
+        this.result = result;
+        this.error = error;
+        this.done = true;
+      }
+      continuation.resume();
     }
   }
 }
-
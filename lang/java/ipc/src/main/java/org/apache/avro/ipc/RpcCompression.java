@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.avro.ipc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.file.Codec;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.util.ByteBufferOutputStream;
+import org.apache.avro.util.Utf8;
+
+/**
+ * Compression of RPC payloads with a codec negotiated in the handshake.
+ *
+ * <p>The client lists the codecs it accepts, most preferred first, under
+ * {@link #CODECS_KEY} in its handshake metadata.  The server picks the first
+ * it also accepts and names it under {@link #CODEC_KEY} in its handshake
+ * metadata.  Thereafter either side may compress a request's parameters or a
+ * response, which is then written as a single bytes value and named under
+ * {@link #CODEC_KEY} in the call metadata.  Codecs are named by {@link
+ * Codec#getName()}.
+ *
+ * <p>Only the negotiated codec, or one configured locally, is used to
+ * decompress, and never to more than {@link #MAX_DECOMPRESSED} bytes, so
+ * that a peer cannot pick a codec or send a payload that exhausts memory.
+ */
+class RpcCompression {
+  static final String CODECS_KEY = "avro.codecs";
+  static final String CODEC_KEY = "avro.codec";
+
+  /** Largest payload accepted after decompression. */
+  static final int MAX_DECOMPRESSED = 64 << 20;
+
+  private final int threshold;
+  private final Map<String,CodecFactory> codecs =
+    new LinkedHashMap<String,CodecFactory>();
+  private final ByteBuffer names;
+
+  RpcCompression(int threshold, CodecFactory... codecs) {
+    this.threshold = threshold;
+    StringBuilder names = new StringBuilder();
+    for (CodecFactory codec : codecs) {
+      String name = codec.createCodec().getName();
+      this.codecs.put(name, codec);
+      if (names.length() > 0)
+        names.append(',');
+      names.append(name);
+    }
+    this.names = ByteBuffer.wrap(Utf8.getBytesFor(names.toString()));
+  }
+
+  /** Returns the names of the codecs accepted, most preferred first. */
+  ByteBuffer names() { return names.duplicate(); }
+
+  /** Returns a codec for the first of the named codecs that is accepted, or
+   * null if there is none. */
+  Codec choose(ByteBuffer offered) {
+    if (offered == null)
+      return null;
+    for (String name : toString(offered).split(",")) {
+      CodecFactory codec = codecs.get(name);
+      if (codec != null)
+        return codec.createCodec();
+    }
+    return null;
+  }
+
+  /** True if a payload is large enough to compress. */
+  boolean shouldCompress(List<ByteBuffer> payload) {
+    long size = 0;
+    for (ByteBuffer buffer : payload)
+      size += buffer.remaining();
+    return size > threshold;
+  }
+
+  /** Returns the value of a metadata entry.  Decoded call metadata has
+   * {@link Utf8} keys, while handshake metadata has string keys. */
+  static ByteBuffer get(Map<String,ByteBuffer> meta, String key) {
+    if (meta == null)
+      return null;
+    ByteBuffer value = meta.get(key);
+    return value != null ? value : meta.get(new Utf8(key));
+  }
+
+  /** Returns the name to record in metadata for a codec. */
+  static ByteBuffer name(Codec codec) {
+    return ByteBuffer.wrap(Utf8.getBytesFor(codec.getName()));
+  }
+
+  /** Returns a new instance of the named codec if it is configured here,
+   * else null. */
+  Codec get(ByteBuffer name) {
+    CodecFactory codec = codecs.get(toString(name));
+    return codec != null ? codec.createCodec() : null;
+  }
+
+  /** Returns the negotiated codec if it has the name given, else a new
+   * instance of the named codec if it is configured locally.
+   * @param configured the local configuration, or null if none
+   * @throws AvroRuntimeException if the codec is not accepted */
+  static Codec forName(ByteBuffer name, Codec negotiated,
+                       RpcCompression configured) {
+    String s = toString(name);
+    if (negotiated != null && negotiated.getName().equals(s))
+      return negotiated;
+    Codec codec = configured != null ? configured.get(name) : null;
+    if (codec == null)
+      throw new AvroRuntimeException("Codec not accepted: " + s);
+    return codec;
+  }
+
+  /** Compresses a payload into a single bytes value. */
+  static List<ByteBuffer> compress(Codec codec, List<ByteBuffer> payload)
+    throws IOException {
+    int size = 0;
+    for (ByteBuffer buffer : payload)
+      size += buffer.remaining();
+    ByteBuffer data = ByteBuffer.allocate(size);
+    for (ByteBuffer buffer : payload)
+      data.put(buffer.duplicate());
+    data.flip();
+    ByteBufferOutputStream bbo = new ByteBufferOutputStream();
+    Encoder out = EncoderFactory.get().directBinaryEncoder(bbo, null);
+    synchronized (codec) {                        // codecs reuse buffers
+      out.writeBytes(codec.compress(data));
+    }
+    out.flush();
+    return bbo.getBufferList();
+  }
+
+  /** Reads a bytes value written by {@link #compress(Codec, List)} and
+   * returns a decoder for the payload it holds.
+   * @throws IOException if the payload is longer than {@link
+   * #MAX_DECOMPRESSED} */
+  static Decoder decompress(Codec codec, Decoder in) throws IOException {
+    ByteBuffer compressed = in.readBytes(null);
+    byte[] data;
+    synchronized (codec) {                        // codecs reuse buffers
+      ByteBuffer payload = codec.decompress(compressed, MAX_DECOMPRESSED);
+      data = new byte[payload.remaining()];
+      payload.get(data);
+    }
+    return DecoderFactory.get().binaryDecoder(data, null);
+  }
+
+  private static String toString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return new Utf8(bytes).toString();
+  }
+}
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.util.Map;
 import java.net.SocketAddress;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
 import javax.security.sasl.Sasl;
 import javax.security.sasl.SaslServer;
 import javax.security.sasl.SaslException;
@@ -45,10 +46,19 @@ public class SaslSocketServer extends SocketServer {
    * href="http://www.ietf.org/rfc/rfc2245.txt">RFC 2245) mechanism. */
   public SaslSocketServer(Responder responder, SocketAddress addr)
     throws IOException {
+    this(responder, addr, null, 0, 0);
+  }
+
+  /** Create using SASL's anonymous mechanism, with connections served as
+   * described in {@link SocketServer#SocketServer(Responder, SocketAddress,
+   * Executor, int, int)}. */
+  public SaslSocketServer(Responder responder, SocketAddress addr,
+                          Executor executor, int backlog, int maxConnections)
+    throws IOException {
     this(responder, addr,
          new SaslServerFactory() {
            public SaslServer getServer() { return new AnonymousServer(); }
-         });
+         }, executor, backlog, maxConnections);
   }
 
   /** Create using the specified {@link SaslServer} parameters. */
@@ -56,18 +66,32 @@ public class SaslSocketServer extends SocketServer {
                           final String mechanism, final String protocol,
                           final String serverName, final Map<String,?> props,
                           final CallbackHandler cbh) throws IOException {
+    this(responder, addr, mechanism, protocol, serverName, props, cbh,
+         null, 0, 0);
+  }
+
+  /** Create using the specified {@link SaslServer} parameters, with
+   * connections served as described in {@link
+   * SocketServer#SocketServer(Responder, SocketAddress, Executor, int, int)}.
+   */
+  public SaslSocketServer(Responder responder, SocketAddress addr,
+                          final String mechanism, final String protocol,
+                          final String serverName, final Map<String,?> props,
+                          final CallbackHandler cbh, Executor executor,
+                          int backlog, int maxConnections) throws IOException {
     this(responder, addr,
          new SaslServerFactory() {
            public SaslServer getServer() throws SaslException {
              return Sasl.createSaslServer(mechanism, protocol, serverName,
                                           props, cbh);
            }
-         });
+         }, executor, backlog, maxConnections);
   }
 
   private SaslSocketServer(Responder responder, SocketAddress addr,
-                           SaslServerFactory factory) throws IOException {
-    super(responder, addr);
+                           SaslServerFactory factory, Executor executor,
+                           int backlog, int maxConnections) throws IOException {
+    super(responder, addr, executor, backlog, maxConnections);
     this.factory = factory;
   }
 
@@ -27,6 +27,7 @@ import java.nio.channels.SocketChannel;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.security.sasl.Sasl;
 import javax.security.sasl.SaslException;
@@ -59,6 +60,9 @@ public class SaslSocketTransceiver extends Transceiver {
   private ByteBuffer readHeader = ByteBuffer.allocate(4);
   private ByteBuffer writeHeader = ByteBuffer.allocate(4);
   private ByteBuffer zeroHeader = ByteBuffer.allocate(4).putInt(0);
+  /** Guards the channel and SASL state.  A lock rather than a monitor, so
+   * that a virtual thread blocked reading does not pin its carrier. */
+  private final ReentrantLock ioLock = new ReentrantLock();
 
   /** Create using SASL's anonymous (<a
    * href="http://www.ietf.org/rfc/rfc2245.txt">RFC 2245) mechanism. */
@@ -99,22 +103,27 @@ public class SaslSocketTransceiver extends Transceiver {
   }
 
   @Override
-  public synchronized List<ByteBuffer> transceive(List<ByteBuffer> request)
+  public List<ByteBuffer> transceive(List<ByteBuffer> request)
     throws IOException {
-    if (saslResponsePiggybacked) {                // still need to read response
-      saslResponsePiggybacked = false;
-      Status status  = readStatus();
-      ByteBuffer frame = readFrame();
-      switch (status) {
-      case COMPLETE:
-        break;
-      case FAIL:
-        throw new SaslException("Fail: "+toString(frame));
-      default:
-        throw new IOException("Unexpected SASL status: "+status);
+    ioLock.lock();
+    try {
+      if (saslResponsePiggybacked) {              // still need to read response
+        saslResponsePiggybacked = false;
+        Status status  = readStatus();
+        ByteBuffer frame = readFrame();
+        switch (status) {
+        case COMPLETE:
+          break;
+        case FAIL:
+          throw new SaslException("Fail: "+toString(frame));
+        default:
+          throw new IOException("Unexpected SASL status: "+status);
+        }
       }
+      return super.transceive(request);
+    } finally {
+      ioLock.unlock();
     }
-    return super.transceive(request);
   }
 
   private void open(boolean isClient) throws IOException {
@@ -177,14 +186,19 @@ public class SaslSocketTransceiver extends Transceiver {
     }
   }
 
-  @Override public synchronized List<ByteBuffer> readBuffers()
+  @Override public List<ByteBuffer> readBuffers()
     throws IOException {
-    List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
-    while (true) {
-      ByteBuffer buffer = readFrameAndUnwrap();
-      if (buffer.remaining() == 0)
-        return buffers;
-      buffers.add(buffer);
+    ioLock.lock();
+    try {
+      List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+      while (true) {
+        ByteBuffer buffer = readFrameAndUnwrap();
+        if (buffer.remaining() == 0)
+          return buffers;
+        buffers.add(buffer);
+      }
+    } finally {
+      ioLock.unlock();
     }
   }
 
@@ -222,41 +236,46 @@ public class SaslSocketTransceiver extends Transceiver {
     buffer.flip();
   }
 
-  @Override public synchronized void writeBuffers(List<ByteBuffer> buffers)
+  @Override public void writeBuffers(List<ByteBuffer> buffers)
     throws IOException {
-    if (buffers == null) return;                  // no data to write
-    List<ByteBuffer> writes = new ArrayList<ByteBuffer>(buffers.size()*2+1);
-    int currentLength = 0;
-    ByteBuffer currentHeader = writeHeader;
-    for (ByteBuffer buffer : buffers) {           // gather writes
-      if (buffer.remaining() == 0) continue;      // ignore empties
-      if (dataIsWrapped) {
-        LOG.debug("wrapping data of length: {}", buffer.remaining());
-        buffer = ByteBuffer.wrap(sasl.wrap(buffer.array(), buffer.position(),
-                                           buffer.remaining()));
-      }
-      int length = buffer.remaining();
-      if (!dataIsWrapped                          // can append buffers on wire
-          && (currentLength + length) <= ByteBufferOutputStream.BUFFER_SIZE) {
-        if (currentLength == 0)
+    ioLock.lock();
+    try {
+      if (buffers == null) return;                // no data to write
+      List<ByteBuffer> writes = new ArrayList<ByteBuffer>(buffers.size()*2+1);
+      int currentLength = 0;
+      ByteBuffer currentHeader = writeHeader;
+      for (ByteBuffer buffer : buffers) {         // gather writes
+        if (buffer.remaining() == 0) continue;    // ignore empties
+        if (dataIsWrapped) {
+          LOG.debug("wrapping data of length: {}", buffer.remaining());
+          buffer = ByteBuffer.wrap(sasl.wrap(buffer.array(), buffer.position(),
+                                             buffer.remaining()));
+        }
+        int length = buffer.remaining();
+        if (!dataIsWrapped                        // can append buffers on wire
+            && (currentLength + length) <= ByteBufferOutputStream.BUFFER_SIZE) {
+          if (currentLength == 0)
+            writes.add(currentHeader);
+          currentLength += length;
+          currentHeader.clear();
+          currentHeader.putInt(currentLength);
+          LOG.debug("adding {} to write, total now {}", length, currentLength);
+        } else {
+          currentLength = length;
+          currentHeader = ByteBuffer.allocate(4).putInt(length);
           writes.add(currentHeader);
-        currentLength += length;
-        currentHeader.clear();
-        currentHeader.putInt(currentLength);
-        LOG.debug("adding {} to write, total now {}", length, currentLength);
-      } else {
-        currentLength = length;
-        currentHeader = ByteBuffer.allocate(4).putInt(length);
-        writes.add(currentHeader);
-        LOG.debug("planning write of {}", length);
+          LOG.debug("planning write of {}", length);
+        }
+        currentHeader.flip();
+        writes.add(buffer);
       }
-      currentHeader.flip();
-      writes.add(buffer);
-    }
-    zeroHeader.flip();                            // zero-terminate
-    writes.add(zeroHeader);
+      zeroHeader.flip();                          // zero-terminate
+      writes.add(zeroHeader);
 
-    writeFully(writes.toArray(new ByteBuffer[writes.size()]));
+      writeFully(writes.toArray(new ByteBuffer[writes.size()]));
+    } finally {
+      ioLock.unlock();
+    }
   }
 
   private void write(Status status, String prefix, ByteBuffer response)
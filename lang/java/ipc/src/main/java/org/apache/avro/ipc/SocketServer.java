@@ -20,11 +20,19 @@ package org.apache.avro.ipc;
 
 import java.io.IOException;
 import java.io.EOFException;
+import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +43,13 @@ import org.apache.avro.ipc.generic.GenericResponder;
 
 /** A socket-based server implementation. This uses a simple, non-standard wire
  * protocol and is not intended for production services.
+ *
+ * <p>Each connection is served by a task that blocks reading its requests.
+ * By default each task runs in its own thread, using virtual threads when the
+ * runtime supports them, so that many mostly idle connections are cheap.
+ * Connections may instead be served by a provided {@link Executor}, and their
+ * number may be limited, in which case further clients wait in the accept
+ * queue until a connection closes.
  * @deprecated use {@link SaslSocketServer} instead.
  */
 public class SocketServer extends Thread implements Server {
@@ -43,16 +58,38 @@ public class SocketServer extends Thread implements Server {
   private Responder responder;
   private ServerSocketChannel channel;
   private ThreadGroup group;
+  private final Executor executor;
+  private final Semaphore permits;
+  private final Map<SocketChannel, Boolean> connections =
+    new ConcurrentHashMap<SocketChannel, Boolean>();
 
   public SocketServer(Responder responder, SocketAddress addr)
     throws IOException {
+    this(responder, addr, null, 0, 0);
+  }
+
+  /** Construct a server.
+   * @param executor runs a task per connection, or null to start a thread per
+   * connection
+   * @param backlog the largest number of connections waiting to be accepted,
+   * or zero for the platform default
+   * @param maxConnections the largest number of connections served at once,
+   * or zero for no limit
+   */
+  public SocketServer(Responder responder, SocketAddress addr,
+                      Executor executor, int backlog, int maxConnections)
+    throws IOException {
     String name = "SocketServer on "+addr;
 
     this.responder = responder;
     this.group = new ThreadGroup(name);
+    this.executor = executor != null
+      ? executor
+      : new ThreadPerTaskExecutor(connectionThreadFactory(group));
+    this.permits = maxConnections > 0 ? new Semaphore(maxConnections) : null;
     this.channel = ServerSocketChannel.open();
 
-    channel.socket().bind(addr);
+    channel.socket().bind(addr, backlog);
 
     setName(name);
     setDaemon(true);
@@ -65,7 +102,11 @@ public class SocketServer extends Thread implements Server {
     try {
       while (true) {
         try {
-          new Connection(channel.accept());
+          if (permits != null)
+            permits.acquire();
+          accept();
+        } catch (InterruptedException e) {
+          return;
         } catch (ClosedChannelException e) {
           return;
         } catch (IOException e) {
@@ -82,9 +123,53 @@ public class SocketServer extends Thread implements Server {
     }
   }
 
+  private void accept() throws IOException {
+    SocketChannel connection = null;
+    try {
+      connection = channel.accept();
+      connections.put(connection, Boolean.TRUE);
+      executor.execute(new Connection(connection));
+    } catch (RejectedExecutionException e) {
+      LOG.warn("No executor capacity for connection; closing", e);
+      closed(connection);
+    } catch (IOException e) {
+      closed(connection);
+      throw e;
+    }
+  }
+
+  /** Closes a connection and makes room for another. */
+  private void closed(SocketChannel connection) {
+    if (connection != null) {
+      connections.remove(connection);
+      try {
+        connection.close();
+      } catch (IOException e) {
+        LOG.debug("Error closing connection", e);
+      }
+    }
+    if (permits != null)
+      permits.release();
+  }
+
+  /** Returns the number of connections being served. */
+  public int getNumActiveConnections() { return connections.size(); }
+
   public void close() {
     this.interrupt();
     group.interrupt();
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOG.debug("Error closing server channel", e);
+    }
+    for (SocketChannel connection : connections.keySet()) {
+      try {
+        connection.close();
+      } catch (IOException e) {
+        LOG.debug("Error closing connection", e);
+      }
+    }
   }
 
   /** Creates an appropriate {@link Transceiver} for this server.
@@ -99,16 +184,14 @@ public class SocketServer extends Thread implements Server {
     SocketChannel channel;
     Transceiver xc;
 
-    public Connection(SocketChannel channel) throws IOException {
+    public Connection(SocketChannel channel) {
       this.channel = channel;
-
-      Thread thread = new Thread(group, this);
-      thread.setName("Connection to "+channel.socket().getRemoteSocketAddress());
-      thread.setDaemon(true);
-      thread.start();
     }
 
     public void run() {
+      Thread thread = Thread.currentThread();
+      String name = thread.getName();
+      thread.setName("Connection to "+channel.socket().getRemoteSocketAddress());
       try {
         try {
           this.xc = getTransceiver(channel);
@@ -120,15 +203,51 @@ public class SocketServer extends Thread implements Server {
         } catch (ClosedChannelException e) {
           return;
         } finally {
-          xc.close();
+          if (xc != null)
+            xc.close();
         }
       } catch (IOException e) {
         LOG.warn("unexpected error", e);
+      } finally {
+        closed(channel);
+        thread.setName(name);
       }
     }
 
   }
 
+  /** Runs each task in a new thread. */
+  private static class ThreadPerTaskExecutor implements Executor {
+    private final ThreadFactory factory;
+    ThreadPerTaskExecutor(ThreadFactory factory) { this.factory = factory; }
+    @Override public void execute(Runnable task) {
+      factory.newThread(task).start();
+    }
+  }
+
+  /** Returns a factory for connection threads.  This creates virtual threads
+   * when the runtime supports them, and otherwise daemon threads in the
+   * given group. */
+  static ThreadFactory connectionThreadFactory(final ThreadGroup group) {
+    try {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Method factory =
+        Class.forName("java.lang.Thread$Builder").getMethod("factory");
+      return (ThreadFactory) factory.invoke(builder);
+    } catch (Exception e) {
+      // virtual threads are not available
+    }
+    final AtomicInteger count = new AtomicInteger();
+    return new ThreadFactory() {
+      @Override public Thread newThread(Runnable r) {
+        Thread thread =
+          new Thread(group, r, group.getName()+" "+count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+  }
+
   public static void main(String[] arg) throws Exception {
     Responder responder =
       new GenericResponder(Protocol.parse("{\"protocol\": \"X\"}")) {
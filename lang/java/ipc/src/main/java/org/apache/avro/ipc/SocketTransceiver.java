@@ -25,6 +25,7 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,6 +42,9 @@ public class SocketTransceiver extends Transceiver {
 
   private SocketChannel channel;
   private ByteBuffer header = ByteBuffer.allocate(4);
+  /** Guards the channel and header.  A lock rather than a monitor, so that
+   * a virtual thread blocked reading does not pin its carrier thread. */
+  private final ReentrantLock ioLock = new ReentrantLock();
 
   private Protocol remote;
 
@@ -58,38 +62,48 @@ public class SocketTransceiver extends Transceiver {
     return channel.socket().getRemoteSocketAddress().toString();
   }
 
-  public synchronized List<ByteBuffer> readBuffers() throws IOException {
-    List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
-    while (true) {
-      header.clear();
-      while (header.hasRemaining()) {
-        if (channel.read(header) < 0)
-          throw new ClosedChannelException();
+  public List<ByteBuffer> readBuffers() throws IOException {
+    ioLock.lock();
+    try {
+      List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+      while (true) {
+        header.clear();
+        while (header.hasRemaining()) {
+          if (channel.read(header) < 0)
+            throw new ClosedChannelException();
+        }
+        header.flip();
+        int length = header.getInt();
+        if (length == 0) {                     // end of buffers
+          return buffers;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+          if (channel.read(buffer) < 0)
+            throw new ClosedChannelException();
+        }
+        buffer.flip();
+        buffers.add(buffer);
       }
-      header.flip();
-      int length = header.getInt();
-      if (length == 0) {                       // end of buffers
-        return buffers;
-      }
-      ByteBuffer buffer = ByteBuffer.allocate(length);
-      while (buffer.hasRemaining()) {
-        if (channel.read(buffer) < 0)
-          throw new ClosedChannelException();
-      }
-      buffer.flip();
-      buffers.add(buffer);
+    } finally {
+      ioLock.unlock();
     }
   }
 
-  public synchronized void writeBuffers(List<ByteBuffer> buffers)
+  public void writeBuffers(List<ByteBuffer> buffers)
     throws IOException {
-    if (buffers == null) return;                  // no data to write
-    for (ByteBuffer buffer : buffers) {
-      if (buffer.limit() == 0) continue;
-      writeLength(buffer.limit());                // length-prefix
-      channel.write(buffer);
+    ioLock.lock();
+    try {
+      if (buffers == null) return;                // no data to write
+      for (ByteBuffer buffer : buffers) {
+        if (buffer.limit() == 0) continue;
+        writeLength(buffer.limit());              // length-prefix
+        channel.write(buffer);
+      }
+      writeLength(0);                             // null-terminate
+    } finally {
+      ioLock.unlock();
     }
-    writeLength(0);                               // null-terminate
   }
 
   private void writeLength(int length) throws IOException {
@@ -25,10 +25,12 @@ import java.util.List;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.avro.Protocol;
+import org.apache.avro.file.Codec;
 
 /** Base transport class used by {@link Requestor}. */
 public abstract class Transceiver implements Closeable {
   private final ReentrantLock channelLock = new ReentrantLock();
+  private volatile Codec codec;
 
   public abstract String getRemoteName() throws IOException;
 
@@ -98,6 +100,30 @@ public abstract class Transceiver implements Closeable {
    * protocol.  Does nothing by default. */
   public void setRemote(Protocol protocol) {}
 
+  /** Called by {@link Requestor} with itself when it is constructed.
+   * Transports that handshake on their own behalf, such as {@link
+   * PooledTransceiver}, need this.  Does nothing by default. */
+  void setRequestor(Requestor requestor) {}
+
+  /** True if each request is carried independently and prefixed by a
+   * handshake, so that no connection is ever established, as with HTTP.
+   * Calls need then not wait for one another's handshakes.  Returns false by
+   * default. */
+  boolean isStateless() { return false; }
+
+  /** Called by {@link Requestor} when a call passed to {@link
+   * #transceive(List, Callback)} times out or is cancelled, so that the
+   * transceiver may stop awaiting its response and free what it holds for
+   * it.  The callback need not then be called.  Does nothing by default. */
+  void cancel(Callback<List<ByteBuffer>> callback) {}
+
+  /** Returns the codec negotiated in this connection's handshake to
+   * compress RPC payloads, or null if none was. */
+  Codec getCodec() { return codec; }
+
+  /** Called with the codec negotiated in this connection's handshake. */
+  void setCodec(Codec codec) { this.codec = codec; }
+
   /** Returns the protocol passed to {@link #setRemote(Protocol)}.  Throws
    * IllegalStateException by default. */
   public Protocol getRemote() {
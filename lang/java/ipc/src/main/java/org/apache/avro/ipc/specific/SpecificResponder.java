@@ -21,6 +21,8 @@ package org.apache.avro.ipc.specific;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.avro.Schema;
 import org.apache.avro.Protocol;
@@ -33,12 +35,23 @@ import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.specific.SpecificData;
 import org.apache.avro.specific.SpecificDatumReader;
 import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.ipc.Callback;
 import org.apache.avro.ipc.generic.GenericResponder;
 
 /** {@link org.apache.avro.ipc.Responder Responder} for generated interfaces.*/
 public class SpecificResponder extends GenericResponder {
   private Object impl;
 
+  /** The implementation's methods for a message, found once. */
+  private static class Methods {
+    Method sync;                                  // null if none
+    NoSuchMethodException missing;                // why sync is null
+    Method async;                                 // null if none
+  }
+
+  private final Map<Message,Methods> methods =
+    new ConcurrentHashMap<Message,Methods>();
+
   public SpecificResponder(Class iface, Object impl) {
     this(iface, impl, new SpecificData(impl.getClass().getClassLoader()));
   }
@@ -74,33 +87,91 @@ public class SpecificResponder extends GenericResponder {
     getDatumWriter(schema).write(error, out);
   }
 
+  /** Returns the implementation's methods for a message, looking them up
+   * the first time it is called. */
+  private Methods getMethods(Message message) {
+    Methods found = methods.get(message);
+    if (found == null) {
+      found = new Methods();
+      int numParams = message.getRequest().getFields().size();
+      Class[] paramTypes = new Class[numParams + 1];
+      int i = 0;
+      for (Schema.Field param: message.getRequest().getFields())
+        paramTypes[i++] = getSpecificData().getClass(param.schema());
+      paramTypes[i] = Callback.class;
+      String name = message.getName();
+      try {
+        found.async = impl.getClass().getMethod(name, paramTypes);
+        found.async.setAccessible(true);
+      } catch (NoSuchMethodException e) {
+        // respond synchronously
+      }
+      Class[] syncTypes = new Class[numParams];
+      System.arraycopy(paramTypes, 0, syncTypes, 0, numParams);
+      try {
+        found.sync = impl.getClass().getMethod(name, syncTypes);
+        found.sync.setAccessible(true);
+      } catch (NoSuchMethodException e) {
+        found.missing = e;
+      }
+      methods.put(message, found);
+    }
+    return found;
+  }
+
+  private static Object[] getParams(Message message, Object request,
+                                    int extra) {
+    Object[] params =
+      new Object[message.getRequest().getFields().size() + extra];
+    int i = 0;
+    for (Schema.Field param: message.getRequest().getFields())
+      params[i++] = ((GenericRecord)request).get(param.name());
+    return params;
+  }
+
   @Override
   public Object respond(Message message, Object request) throws Exception {
-    int numParams = message.getRequest().getFields().size();
-    Object[] params = new Object[numParams];
-    Class[] paramTypes = new Class[numParams];
-    int i = 0;
+    Methods found = getMethods(message);
+    if (found.sync == null)
+      throw new AvroRuntimeException(found.missing);
     try {
-      for (Schema.Field param: message.getRequest().getFields()) {
-        params[i] = ((GenericRecord)request).get(param.name());
-        paramTypes[i] = getSpecificData().getClass(param.schema());
-        i++;
-      }
-      Method method = impl.getClass().getMethod(message.getName(), paramTypes);
-      method.setAccessible(true);
-      return method.invoke(impl, params);
+      return found.sync.invoke(impl, getParams(message, request, 0));
     } catch (InvocationTargetException e) {
       if (e.getTargetException() instanceof Exception) {
         throw (Exception) e.getTargetException();
       } else {
         throw new Exception(e.getTargetException());
       }
-    } catch (NoSuchMethodException e) {
-      throw new AvroRuntimeException(e);
     } catch (IllegalAccessException e) {
       throw new AvroRuntimeException(e);
     }
   }
 
-}
+  /** If the implementation has a method for the message that takes a
+   * trailing {@link Callback}, as declared by a generated protocol's
+   * <code>Callback</code> interface, calls it so that it may respond
+   * asynchronously.  Otherwise calls {@link #respond(Message, Object)}. */
+  @Override
+  public void respondAsync(Message message, Object request,
+                           Callback<Object> callback) {
+    if (message.isOneWay()) {
+      super.respondAsync(message, request, callback);
+      return;
+    }
+    Method method = getMethods(message).async;
+    if (method == null) {
+      super.respondAsync(message, request, callback);
+      return;
+    }
+    Object[] params = getParams(message, request, 1);
+    params[params.length - 1] = callback;
+    try {
+      method.invoke(impl, params);
+    } catch (InvocationTargetException e) {
+      callback.handleError(e.getTargetException());
+    } catch (IllegalAccessException e) {
+      callback.handleError(new AvroRuntimeException(e));
+    }
+  }
 
+}
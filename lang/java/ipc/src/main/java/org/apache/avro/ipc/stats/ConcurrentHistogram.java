@@ -0,0 +1,209 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.avro.ipc.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative long values that may be added to by many
+ * threads without locking.
+ *
+ * <p>Values are counted in buckets whose width grows with the value, as in
+ * an HDR histogram: values below 32 are counted exactly, and larger values
+ * within about 3% of their magnitude.  Memory is therefore fixed by the
+ * highest value tracked, not by the number of values added.  Values above
+ * that are counted in the last bucket, although the sum and maximum remain
+ * exact.
+ *
+ * <p>Counts are spread over a few stripes, chosen by thread, so that
+ * threads seldom update the same memory.  A {@link Snapshot} merges the
+ * stripes to compute summaries such as percentiles.
+ */
+class ConcurrentHistogram {
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int STRIPES = Integer.highestOneBit(
+      Math.min(Runtime.getRuntime().availableProcessors(), 4));
+
+  private final int buckets;
+  private final int countIndex;                   // slots after the buckets
+  private final int sumIndex;
+  private final int recentIndex;
+  private final int recentStart;
+  private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+  private final AtomicLong max = new AtomicLong();
+
+  /** Creates a histogram that distinguishes values up to
+   * <code>highestValue</code>. */
+  public ConcurrentHistogram(long highestValue) {
+    this.buckets = bucket(highestValue) + 1;
+    this.countIndex = buckets;
+    this.sumIndex = buckets + 1;
+    this.recentIndex = buckets + 2;
+    this.recentStart = buckets + 3;
+    for (int i = 0; i < STRIPES; i++)
+      stripes[i] = new AtomicLongArray(recentStart + recentSize());
+  }
+
+  /** Values recently added are kept in each stripe. */
+  private static int recentSize() {
+    return Math.max(1, Histogram.MAX_HISTORY_SIZE / STRIPES);
+  }
+
+  /** Adds a value. */
+  public void add(long value) {
+    if (value < 0)
+      throw new IllegalArgumentException("Negative value: " + value);
+    AtomicLongArray stripe =
+      stripes[(int) Thread.currentThread().getId() & (STRIPES - 1)];
+    stripe.incrementAndGet(Math.min(bucket(value), buckets - 1));
+    stripe.incrementAndGet(countIndex);
+    stripe.addAndGet(sumIndex, value);
+    long recent = stripe.getAndIncrement(recentIndex);
+    stripe.set(recentStart + (int) (recent % recentSize()), value);
+    for (long m = max.get(); value > m; m = max.get())
+      if (max.compareAndSet(m, value))
+        break;
+  }
+
+  /** Returns the number of values added. */
+  public long getCount() {
+    long count = 0;
+    for (AtomicLongArray stripe : stripes)
+      count += stripe.get(countIndex);
+    return count;
+  }
+
+  /** Returns a copy of the histogram's current state.  Values added while
+   * the copy is made may or may not be included. */
+  public Snapshot snapshot() {
+    long[] counts = new long[buckets];
+    long count = 0;
+    long sum = 0;
+    List<Long> recent = new ArrayList<Long>(Histogram.MAX_HISTORY_SIZE);
+    for (AtomicLongArray stripe : stripes) {
+      for (int i = 0; i < buckets; i++)
+        counts[i] += stripe.get(i);
+      count += stripe.get(countIndex);
+      sum += stripe.get(sumIndex);
+      int n = (int) Math.min(stripe.get(recentIndex), recentSize());
+      for (int i = 0; i < n; i++)
+        recent.add(stripe.get(recentStart + i));
+    }
+    return new Snapshot(counts, count, sum, max.get(), recent);
+  }
+
+  /** Returns the bucket a value is counted in. */
+  static int bucket(long value) {
+    if (value < SUB_BUCKETS)
+      return (int) value;
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int shift = exponent - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+    return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+  }
+
+  /** Returns the lowest value counted in a bucket. */
+  static long lowestValue(int bucket) {
+    if (bucket < SUB_BUCKETS)
+      return bucket;
+    int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+    long subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+    return (SUB_BUCKETS + subBucket) << shift;
+  }
+
+  /** Returns the highest value counted in a bucket. */
+  static long highestValue(int bucket) {
+    return lowestValue(bucket + 1) - 1;
+  }
+
+  /** An immutable copy of a histogram's state. */
+  static class Snapshot {
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+    private final List<Long> recent;
+
+    Snapshot(long[] counts, long count, long sum, long max, List<Long> recent) {
+      this.counts = counts;
+      this.count = count;
+      this.sum = sum;
+      this.max = max;
+      this.recent = recent;
+    }
+
+    /** Returns the count in each bucket. */
+    public long[] getCounts() { return counts; }
+
+    /** Returns the number of values added. */
+    public long getCount() { return count; }
+
+    /** Returns the exact sum of the values added. */
+    public long getSum() { return sum; }
+
+    /** Returns the exact largest value added. */
+    public long getMax() { return max; }
+
+    /** Returns some of the values added most recently. */
+    public List<Long> getRecent() { return recent; }
+
+    /** Returns the exact mean, or NaN if no values were added. */
+    public double getMean() {
+      return count == 0 ? Double.NaN : (double) sum / count;
+    }
+
+    /** Returns the standard deviation, estimated from the buckets, or NaN
+     * if fewer than two values were added. */
+    public double getUnbiasedStdDev() {
+      if (count <= 1)
+        return Double.NaN;
+      double mean = getMean();
+      double squares = 0;
+      for (int i = 0; i < counts.length; i++) {
+        if (counts[i] == 0) continue;
+        double d = midpoint(i) - mean;
+        squares += counts[i] * d * d;
+      }
+      return Math.sqrt(squares / (count - 1));
+    }
+
+    /** Returns the value that the given percentage of values are at or
+     * below, to within the bucket's precision, or zero if no values were
+     * added. */
+    public long getValueAtPercentile(double percentile) {
+      long rank = (long) Math.ceil(percentile / 100 * count);
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank && seen > 0)
+          return Math.min(highestValue(i), max);
+      }
+      return max;
+    }
+
+    /** Returns the value that represents a bucket. */
+    double midpoint(int bucket) {
+      return (lowestValue(bucket) + Math.min(highestValue(bucket), max)) / 2.0;
+    }
+  }
+}
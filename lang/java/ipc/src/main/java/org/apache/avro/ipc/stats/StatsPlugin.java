@@ -20,9 +20,7 @@ package org.apache.avro.ipc.stats;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -38,8 +36,9 @@ import org.apache.avro.ipc.stats.Stopwatch.Ticks;
  * data for every method. Can be added to a Requestor (client)
  * or Responder (server).
  *
- * This uses milliseconds as the standard unit of measure
- * throughout the class, stored in floats.
+ * Latencies are recorded in nanoseconds, in histograms that calls update
+ * without locking, and are displayed in milliseconds.  Memory used is
+ * fixed for each message, however many calls are made.
  */
 public class StatsPlugin extends RPCPlugin {
   /** Static declaration of histogram buckets. */
@@ -79,16 +78,23 @@ public class StatsPlugin extends RPCPlugin {
         50000,
        100000)));
 
-  /** Per-method histograms.
-   * Must be accessed while holding a lock. */
-  Map<Message, FloatHistogram<?>> methodTimings =
-    new HashMap<Message, FloatHistogram<?>>();
+  /** Latencies are distinguished up to about an hour, in nanoseconds. */
+  static final long HIGHEST_LATENCY = 1L << 42;
 
-  Map<Message, IntegerHistogram<?>> sendPayloads =
-    new HashMap<Message, IntegerHistogram<?>>();
+  /** Payload sizes are distinguished up to 2GB. */
+  static final long HIGHEST_PAYLOAD = 1L << 31;
 
-  Map<Message, IntegerHistogram<?>> receivePayloads =
-    new HashMap<Message, IntegerHistogram<?>>();
+  /** Per-method histograms of latency in nanoseconds and of payload sizes in
+   * bytes, created on first use.  Histograms may be added to and read
+   * without locking. */
+  final ConcurrentMap<Message, ConcurrentHistogram> methodTimings =
+    new ConcurrentHashMap<Message, ConcurrentHistogram>();
+
+  final ConcurrentMap<Message, ConcurrentHistogram> sendPayloads =
+    new ConcurrentHashMap<Message, ConcurrentHistogram>();
+
+  final ConcurrentMap<Message, ConcurrentHistogram> receivePayloads =
+    new ConcurrentHashMap<Message, ConcurrentHistogram>();
 
   /** RPCs in flight. */
   ConcurrentMap<RPCContext, Stopwatch> activeRpcs =
@@ -98,8 +104,9 @@ public class StatsPlugin extends RPCPlugin {
   /** How long I've been alive */
   public Date startupTime = new Date();
 
-  private Segmenter<?, Float> floatSegmenter;
-  private Segmenter<?, Integer> integerSegmenter;
+  /** Segments used to chart latencies in milliseconds and payload sizes. */
+  final Segmenter<?, Float> floatSegmenter;
+  final Segmenter<?, Integer> integerSegmenter;
 
   /** Construct a plugin with custom Ticks and Segmenter implementations. */
   StatsPlugin(Ticks ticks, Segmenter<?, Float> floatSegmenter,
@@ -137,14 +144,8 @@ public class StatsPlugin extends RPCPlugin {
     t.start();
     this.activeRpcs.put(context, t);
 
-    synchronized(receivePayloads) {
-      IntegerHistogram<?> h = receivePayloads.get(context.getMessage());
-      if (h == null) {
-        h = createNewIntegerHistogram();
-        receivePayloads.put(context.getMessage(), h);
-      }
-      h.add(getPayloadSize(context.getRequestPayload()));
-    }
+    histogram(receivePayloads, context.getMessage(), HIGHEST_PAYLOAD)
+      .add(getPayloadSize(context.getRequestPayload()));
   }
 
   @Override
@@ -153,14 +154,8 @@ public class StatsPlugin extends RPCPlugin {
     t.stop();
     publish(context, t);
 
-    synchronized(sendPayloads) {
-      IntegerHistogram<?> h = sendPayloads.get(context.getMessage());
-      if (h == null) {
-        h = createNewIntegerHistogram();
-        sendPayloads.put(context.getMessage(), h);
-      }
-      h.add(getPayloadSize(context.getResponsePayload()));
-    }
+    histogram(sendPayloads, context.getMessage(), HIGHEST_PAYLOAD)
+      .add(getPayloadSize(context.getResponsePayload()));
   }
 
   @Override
@@ -169,14 +164,8 @@ public class StatsPlugin extends RPCPlugin {
     t.start();
     this.activeRpcs.put(context, t);
 
-    synchronized(sendPayloads) {
-      IntegerHistogram<?> h = sendPayloads.get(context.getMessage());
-      if (h == null) {
-        h = createNewIntegerHistogram();
-       sendPayloads.put(context.getMessage(), h);
-      }
-      h.add(getPayloadSize(context.getRequestPayload()));
-    }
+    histogram(sendPayloads, context.getMessage(), HIGHEST_PAYLOAD)
+      .add(getPayloadSize(context.getRequestPayload()));
   }
 
   @Override
@@ -185,38 +174,29 @@ public class StatsPlugin extends RPCPlugin {
     t.stop();
     publish(context, t);
 
-    synchronized(receivePayloads) {
-      IntegerHistogram<?> h = receivePayloads.get(context.getMessage());
-      if (h == null) {
-        h = createNewIntegerHistogram();
-        receivePayloads.put(context.getMessage(), h);
-      }
-      h.add(getPayloadSize(context.getRequestPayload()));
-    }
+    histogram(receivePayloads, context.getMessage(), HIGHEST_PAYLOAD)
+      .add(getPayloadSize(context.getRequestPayload()));
   }
 
   /** Adds timing to the histograms. */
   private void publish(RPCContext context, Stopwatch t) {
     Message message = context.getMessage();
     if (message == null) throw new IllegalArgumentException();
-    synchronized(methodTimings) {
-      FloatHistogram<?> h = methodTimings.get(context.getMessage());
-      if (h == null) {
-        h = createNewFloatHistogram();
-        methodTimings.put(context.getMessage(), h);
-      }
-      h.add(nanosToMillis(t.elapsedNanos()));
-    }
+    histogram(methodTimings, message, HIGHEST_LATENCY).add(t.elapsedNanos());
   }
 
-  @SuppressWarnings("unchecked")
-  private FloatHistogram<?> createNewFloatHistogram() {
-    return new FloatHistogram(floatSegmenter);
-  }
-
-  @SuppressWarnings("unchecked")
-  private IntegerHistogram<?> createNewIntegerHistogram() {
-    return new IntegerHistogram(integerSegmenter);
+  /** Returns the histogram for a message, creating it if needed. */
+  private static ConcurrentHistogram histogram(
+      ConcurrentMap<Message, ConcurrentHistogram> histograms, Message message,
+      long highestValue) {
+    ConcurrentHistogram h = histograms.get(message);
+    if (h == null) {
+      h = new ConcurrentHistogram(highestValue);
+      ConcurrentHistogram existing = histograms.putIfAbsent(message, h);
+      if (existing != null)
+        h = existing;
+    }
+    return h;
   }
 
   /** Converts nanoseconds to milliseconds. */
@@ -27,6 +27,8 @@ import org.mortbay.jetty.servlet.ServletHolder;
  *    requestor.addPlugin(plugin);
  *    StatsServer server = new StatsServer(plugin, 8080);
  *
+ *  Charts are served at "/", and plain-text metrics at "/metrics".
+ *
  *  */
 public class StatsServer {
   Server httpServer;
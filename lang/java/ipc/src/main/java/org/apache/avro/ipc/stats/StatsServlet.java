@@ -25,7 +25,6 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
 import java.util.Map.Entry;
 
 import javax.servlet.ServletException;
@@ -41,14 +40,17 @@ import org.apache.velocity.exception.ResourceNotFoundException;
 
 import org.apache.avro.Protocol.Message;
 import org.apache.avro.ipc.RPCContext;
+import org.apache.avro.ipc.stats.ConcurrentHistogram.Snapshot;
+import org.apache.avro.ipc.stats.Histogram.Segmenter;
 
 /**
  * Exposes information provided by a StatsPlugin as
  * a web page.
  *
- * This class follows the same synchronization conventions
- * as StatsPlugin, to avoid requiring StatsPlugin to serve
- * a copy of the data.
+ * Requests for a path ending in <code>/metrics</code> are instead answered
+ * with plain text, one sample per line, in the exposition format read by
+ * common metrics scrapers.  Each message's latency and payload sizes are
+ * summarized by count, sum and the 50th, 99th and 99.9th percentiles.
  */
 public class StatsServlet extends HttpServlet {
   private final StatsPlugin statsPlugin;
@@ -113,6 +115,11 @@ public class StatsServlet extends HttpServlet {
   @Override
   protected void doGet(HttpServletRequest req, HttpServletResponse resp)
       throws ServletException, IOException {
+    if (req.getRequestURI().endsWith("/metrics")) {
+      resp.setContentType("text/plain; version=0.0.4");
+      writeMetrics(resp.getWriter());
+      return;
+    }
     resp.setContentType("text/html");
     String url = req.getRequestURL().toString();
     String[] parts = url.split("//")[1].split("/");
@@ -140,13 +147,8 @@ public class StatsServlet extends HttpServlet {
     }
 
     // Get set of all seen messages
-    Set<Message> keys = null;
-    synchronized(this.statsPlugin.methodTimings) {
-       keys = this.statsPlugin.methodTimings.keySet();
-
-      for (Message m: keys) {
-        messages.add(renderMethod(m));
-      }
+    for (Message m: this.statsPlugin.methodTimings.keySet()) {
+      messages.add(renderMethod(m));
     }
 
     context.put("inFlightRpcs", rpcs);
@@ -181,87 +183,141 @@ public class StatsServlet extends HttpServlet {
   private RenderableMessage renderMethod(Message message) {
     RenderableMessage out = new RenderableMessage(message.getName());
 
-    synchronized(this.statsPlugin.methodTimings) {
-      FloatHistogram<?> hist = this.statsPlugin.methodTimings.get(message);
-      out.numCalls = hist.getCount();
-
-      HashMap<String, String> latencyBar = new HashMap<String, String>();
-      // Fill in chart attributes for velocity
-      latencyBar.put("type", "bar");
-      latencyBar.put("title", "All-Time Latency");
-      latencyBar.put("units", "ms");
-      latencyBar.put("numCalls", Integer.toString(hist.getCount()));
-      latencyBar.put("avg", Float.toString(hist.getMean()));
-      latencyBar.put("stdDev", Float.toString(hist.getUnbiasedStdDev()));
-      latencyBar.put("labelStr",
-          Arrays.toString(hist.getSegmenter().getBoundaryLabels().toArray()));
-      latencyBar.put("boundaryStr",
-          Arrays.toString(escapeStringArray(hist.getSegmenter().
-              getBucketLabels()).toArray()));
-      latencyBar.put("dataStr", Arrays.toString(hist.getHistogram()));
-      out.charts.add(latencyBar);
-
-      HashMap<String, String> latencyDot = new HashMap<String, String>();
-      latencyDot.put("title", "Latency");
-      latencyDot.put("type", "dot");
-      latencyDot.put("dataStr",
-          Arrays.toString(hist.getRecentAdditions().toArray()));
-      out.charts.add(latencyDot);
-    }
+    Snapshot timings = this.statsPlugin.methodTimings.get(message).snapshot();
+    out.numCalls = (int) timings.getCount();
+
+    HashMap<String, String> latencyBar = renderBar("All-Time Latency", "ms",
+        timings, 1e6,
+        latencySegments(timings, this.statsPlugin.floatSegmenter),
+        this.statsPlugin.floatSegmenter);
+    out.charts.add(latencyBar);
+
+    List<Float> recent = new ArrayList<Float>();
+    for (long nanos : timings.getRecent())
+      recent.add(StatsPlugin.nanosToMillis(nanos));
+    HashMap<String, String> latencyDot = new HashMap<String, String>();
+    latencyDot.put("title", "Latency");
+    latencyDot.put("type", "dot");
+    latencyDot.put("dataStr", Arrays.toString(recent.toArray()));
+    out.charts.add(latencyDot);
+
+    renderPayload(out, "All-Time Send Payload", "Send Payload",
+                  this.statsPlugin.sendPayloads.get(message));
+    renderPayload(out, "All-Time Receive Payload", "Recv Payload",
+                  this.statsPlugin.receivePayloads.get(message));
+    return out;
+  }
 
-    synchronized(this.statsPlugin.sendPayloads) {
-      IntegerHistogram<?> hist = this.statsPlugin.sendPayloads.get(message);
-      HashMap<String, String> latencyBar = new HashMap<String, String>();
-      // Fill in chart attributes for velocity
-      latencyBar.put("type", "bar");
-      latencyBar.put("title", "All-Time Send Payload");
-      latencyBar.put("units", "ms");
-      latencyBar.put("numCalls", Integer.toString(hist.getCount()));
-      latencyBar.put("avg", Float.toString(hist.getMean()));
-      latencyBar.put("stdDev", Float.toString(hist.getUnbiasedStdDev()));
-      latencyBar.put("labelStr",
-          Arrays.toString(hist.getSegmenter().getBoundaryLabels().toArray()));
-      latencyBar.put("boundaryStr",
-          Arrays.toString(escapeStringArray(hist.getSegmenter().
-              getBucketLabels()).toArray()));
-      latencyBar.put("dataStr", Arrays.toString(hist.getHistogram()));
-      out.charts.add(latencyBar);
-
-      HashMap<String, String> latencyDot = new HashMap<String, String>();
-      latencyDot.put("title", "Send Payload");
-      latencyDot.put("type", "dot");
-      latencyDot.put("dataStr",
-          Arrays.toString(hist.getRecentAdditions().toArray()));
-      out.charts.add(latencyDot);
-    }
+  private void renderPayload(RenderableMessage out, String barTitle,
+                             String dotTitle, ConcurrentHistogram histogram) {
+    if (histogram == null)
+      return;
+    Snapshot sizes = histogram.snapshot();
+    out.charts.add(renderBar(barTitle, "B", sizes, 1,
+        payloadSegments(sizes, this.statsPlugin.integerSegmenter),
+        this.statsPlugin.integerSegmenter));
+
+    HashMap<String, String> payloadDot = new HashMap<String, String>();
+    payloadDot.put("title", dotTitle);
+    payloadDot.put("type", "dot");
+    payloadDot.put("dataStr", Arrays.toString(sizes.getRecent().toArray()));
+    out.charts.add(payloadDot);
+  }
 
-    synchronized(this.statsPlugin.receivePayloads) {
-      IntegerHistogram<?> hist = this.statsPlugin.receivePayloads.get(message);
-      HashMap<String, String> latencyBar = new HashMap<String, String>();
-      // Fill in chart attributes for velocity
-      latencyBar.put("type", "bar");
-      latencyBar.put("title", "All-Time Receive Payload");
-      latencyBar.put("units", "ms");
-      latencyBar.put("numCalls", Integer.toString(hist.getCount()));
-      latencyBar.put("avg", Float.toString(hist.getMean()));
-      latencyBar.put("stdDev", Float.toString(hist.getUnbiasedStdDev()));
-      latencyBar.put("labelStr",
-          Arrays.toString(hist.getSegmenter().getBoundaryLabels().toArray()));
-      latencyBar.put("boundaryStr",
-          Arrays.toString(escapeStringArray(hist.getSegmenter().
-              getBucketLabels()).toArray()));
-      latencyBar.put("dataStr", Arrays.toString(hist.getHistogram()));
-      out.charts.add(latencyBar);
-
-      HashMap<String, String> latencyDot = new HashMap<String, String>();
-      latencyDot.put("title", "Recv Payload");
-      latencyDot.put("type", "dot");
-      latencyDot.put("dataStr",
-          Arrays.toString(hist.getRecentAdditions().toArray()));
-      out.charts.add(latencyDot);
-    }
+  /** Fills in bar chart attributes for velocity.  Values are divided by
+   * <code>unit</code> to convert them to the units displayed. */
+  private static HashMap<String, String> renderBar(String title, String units,
+      Snapshot snapshot, double unit, int[] segments,
+      Segmenter<?, ?> segmenter) {
+    HashMap<String, String> bar = new HashMap<String, String>();
+    bar.put("type", "bar");
+    bar.put("title", title);
+    bar.put("units", units);
+    bar.put("numCalls", Long.toString(snapshot.getCount()));
+    bar.put("avg", format(snapshot.getMean() / unit));
+    bar.put("stdDev", format(snapshot.getUnbiasedStdDev() / unit));
+    bar.put("p50", format(snapshot.getValueAtPercentile(50) / unit));
+    bar.put("p99", format(snapshot.getValueAtPercentile(99) / unit));
+    bar.put("p999", format(snapshot.getValueAtPercentile(99.9) / unit));
+    bar.put("labelStr",
+        Arrays.toString(segmenter.getBoundaryLabels().toArray()));
+    bar.put("boundaryStr",
+        Arrays.toString(escapeStringArray(segmenter.getBucketLabels())
+                        .toArray()));
+    bar.put("dataStr", Arrays.toString(segments));
+    return bar;
+  }
 
-    return out;
+  private static String format(double value) {
+    return Float.toString((float) value);
+  }
+
+  /** Counts latencies in each of a segmenter's segments. */
+  private static int[] latencySegments(Snapshot snapshot,
+                                       Segmenter<?, Float> segmenter) {
+    int[] segments = new int[segmenter.size()];
+    long[] counts = snapshot.getCounts();
+    for (int i = 0; i < counts.length; i++)
+      if (counts[i] != 0)
+        segments[segmenter.segment(StatsPlugin.nanosToMillis(
+            (long) snapshot.midpoint(i)))] += counts[i];
+    return segments;
+  }
+
+  /** Counts payload sizes in each of a segmenter's segments. */
+  private static int[] payloadSegments(Snapshot snapshot,
+                                       Segmenter<?, Integer> segmenter) {
+    int[] segments = new int[segmenter.size()];
+    long[] counts = snapshot.getCounts();
+    for (int i = 0; i < counts.length; i++)
+      if (counts[i] != 0)
+        segments[segmenter.segment((int) snapshot.midpoint(i))] += counts[i];
+    return segments;
+  }
+
+  /** Writes metrics as plain text, one sample per line. */
+  void writeMetrics(Writer w) throws IOException {
+    line(w, "# HELP avro_rpc_latency_seconds Latency of completed calls.");
+    line(w, "# TYPE avro_rpc_latency_seconds summary");
+    for (Entry<Message, ConcurrentHistogram> e :
+         this.statsPlugin.methodTimings.entrySet())
+      writeSummary(w, "avro_rpc_latency_seconds", e.getKey(),
+                   e.getValue().snapshot(), 1e9);
+    line(w, "# HELP avro_rpc_send_payload_bytes Size of payloads sent.");
+    line(w, "# TYPE avro_rpc_send_payload_bytes summary");
+    for (Entry<Message, ConcurrentHistogram> e :
+         this.statsPlugin.sendPayloads.entrySet())
+      writeSummary(w, "avro_rpc_send_payload_bytes", e.getKey(),
+                   e.getValue().snapshot(), 1);
+    line(w, "# HELP avro_rpc_receive_payload_bytes"
+         + " Size of payloads received.");
+    line(w, "# TYPE avro_rpc_receive_payload_bytes summary");
+    for (Entry<Message, ConcurrentHistogram> e :
+         this.statsPlugin.receivePayloads.entrySet())
+      writeSummary(w, "avro_rpc_receive_payload_bytes", e.getKey(),
+                   e.getValue().snapshot(), 1);
+    line(w, "# HELP avro_rpc_in_flight Calls in progress.");
+    line(w, "# TYPE avro_rpc_in_flight gauge");
+    line(w, "avro_rpc_in_flight " + this.statsPlugin.activeRpcs.size());
+    w.flush();
+  }
+
+  private static void line(Writer w, String line) throws IOException {
+    w.write(line);
+    w.write('\n');
+  }
+
+  private static final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+
+  private static void writeSummary(Writer w, String name, Message message,
+                                   Snapshot snapshot, double unit)
+    throws IOException {
+    String label = "message=\"" + message.getName() + "\"";
+    for (double q : QUANTILES)
+      line(w, name + "{" + label + ",quantile=\"" + q + "\"} "
+           + snapshot.getValueAtPercentile(q * 100) / unit);
+    line(w, name + "_sum{" + label + "} " + snapshot.getSum() / unit);
+    line(w, name + "_count{" + label + "} " + snapshot.getCount());
   }
 
   private CharSequence formatMillis(float millis) {
@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.ipc;
+
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.AvroRemoteException;
+import org.apache.avro.ipc.specific.SpecificRequestor;
+import org.apache.avro.ipc.specific.SpecificResponder;
+import org.apache.avro.test.Simple;
+import org.apache.avro.test.TestError;
+import org.apache.avro.test.TestRecord;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mortbay.jetty.nio.SelectChannelConnector;
+import org.mortbay.thread.QueuedThreadPool;
+
+/**
+ * Tests concurrent calls over HTTP to responders that complete calls
+ * asynchronously.
+ */
+public class TestHttpAsyncResponder {
+  private static final long DELAY_MILLIS = 200;
+  private static final int CALLS = 10;
+
+  private static ScheduledExecutorService timer;
+  private static ExecutorService callers;
+  private static Server server;
+  private static Transceiver transceiver;
+  private static Simple client;
+
+  /** Responds to hello and error after a delay, without blocking. */
+  public static class DelayedImpl implements Simple {
+    public void hello(final String greeting,
+                      final org.apache.avro.ipc.Callback<String> callback) {
+      timer.schedule(new Runnable() {
+        @Override public void run() {
+          callback.handleResult("Hello, " + greeting);
+        }
+      }, DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public void error(final org.apache.avro.ipc.Callback<Void> callback) {
+      timer.schedule(new Runnable() {
+        @Override public void run() {
+          callback.handleError(
+              TestError.newBuilder().setMessage$("Delayed").build());
+        }
+      }, DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override public String hello(String greeting) {
+      throw new UnsupportedOperationException();
+    }
+    @Override public TestRecord echo(TestRecord record) { return record; }
+    @Override public int add(int arg1, int arg2) { return arg1 + arg2; }
+    @Override public ByteBuffer echoBytes(ByteBuffer data) { return data; }
+    @Override public Void error() throws AvroRemoteException, TestError {
+      throw new UnsupportedOperationException();
+    }
+    @Override public void ack() {}
+  }
+
+  @BeforeClass
+  public static void initializeConnections() throws Exception {
+    timer = Executors.newSingleThreadScheduledExecutor();
+    callers = Executors.newCachedThreadPool();
+    // too few threads to serve every call at once
+    SelectChannelConnector connector = new SelectChannelConnector();
+    connector.setThreadPool(new QueuedThreadPool(4));
+    server = new HttpServer(new SpecificResponder(Simple.class,
+                                                  new DelayedImpl()),
+                            connector);
+    server.start();
+    transceiver = new HttpTransceiver(
+        new URL("http://127.0.0.1:"+server.getPort()+"/"));
+    client = SpecificRequestor.getClient(Simple.class, transceiver);
+  }
+
+  @AfterClass
+  public static void tearDownConnections() throws Exception {
+    if (transceiver != null)
+      transceiver.close();
+    if (server != null)
+      server.close();
+    timer.shutdownNow();
+    callers.shutdownNow();
+  }
+
+  @Test
+  public void testConcurrentDelayedResponses() throws Exception {
+    Assert.assertEquals(3, client.add(1, 2));
+    long start = System.currentTimeMillis();
+    List<Future<String>> futures = new ArrayList<Future<String>>();
+    for (int i = 0; i < CALLS; i++) {
+      final String greeting = "call " + i;
+      futures.add(callers.submit(new Callable<String>() {
+        @Override public String call() throws Exception {
+          return client.hello(greeting).toString();
+        }
+      }));
+    }
+    for (int i = 0; i < CALLS; i++)
+      Assert.assertEquals("Hello, call " + i,
+                          futures.get(i).get(5, TimeUnit.SECONDS));
+    long elapsed = System.currentTimeMillis() - start;
+    Assert.assertTrue("Responses were not concurrent: " + elapsed + "ms",
+                      elapsed < CALLS * DELAY_MILLIS / 2);
+  }
+
+  @Test
+  public void testDelayedError() throws Exception {
+    try {
+      client.error();
+      Assert.fail("Expected TestError");
+    } catch (TestError e) {
+      Assert.assertEquals("Delayed", e.getMessage$().toString());
+    }
+  }
+}
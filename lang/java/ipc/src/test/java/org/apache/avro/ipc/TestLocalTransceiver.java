@@ -18,16 +18,28 @@
 package org.apache.avro.ipc;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.avro.AvroRemoteException;
+import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.Protocol;
 import org.apache.avro.Protocol.Message;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.ipc.generic.GenericRequestor;
 import org.apache.avro.ipc.generic.GenericResponder;
+import org.apache.avro.ipc.specific.SpecificRequestor;
+import org.apache.avro.ipc.specific.SpecificResponder;
+import org.apache.avro.test.Simple;
+import org.apache.avro.test.TestError;
+import org.apache.avro.test.TestRecord;
 import org.apache.avro.util.Utf8;
 import org.junit.Test;
 
@@ -64,4 +76,185 @@ public class TestLocalTransceiver {
       assertEquals(new Utf8("there"), r.request("m", params));
   }
 
+  /** Remembers the last request it was passed. */
+  static class RecordingResponder extends GenericResponder {
+    Object request;
+    public RecordingResponder(Protocol local) {
+      super(local);
+    }
+
+    @Override
+    public Object respond(Message message, Object request) {
+      this.request = request;
+      return ((GenericRecord) request).get("x");
+    }
+  }
+
+  @Test
+  public void testDirect() throws Exception {
+    RecordingResponder responder = new RecordingResponder(protocol);
+    GenericRequestor r =
+      new GenericRequestor(protocol, new LocalTransceiver(responder, false));
+    GenericRecord params = new GenericData.Record(protocol.getMessages().get(
+        "m").getRequest());
+    Utf8 hello = new Utf8("hello");
+    params.put("x", hello);
+    assertSame(hello, r.request("m", params));
+    assertSame(params, responder.request);
+  }
+
+  @Test
+  public void testDirectCopy() throws Exception {
+    RecordingResponder responder = new RecordingResponder(protocol);
+    GenericRequestor r =
+      new GenericRequestor(protocol, new LocalTransceiver(responder, true));
+    GenericRecord params = new GenericData.Record(protocol.getMessages().get(
+        "m").getRequest());
+    Utf8 hello = new Utf8("hello");
+    params.put("x", hello);
+    Object response = r.request("m", params);
+    assertEquals(hello, response);
+    assertNotSame(hello, response);
+    assertEquals(params, responder.request);
+    assertNotSame(params, responder.request);
+  }
+
+  @Test
+  public void testDifferentProtocolIsSerialized() throws Exception {
+    Protocol other = Protocol.parse(protocol.toString().replace("Minimal",
+                                                                "Other"));
+    RecordingResponder responder = new RecordingResponder(other);
+    GenericRequestor r =
+      new GenericRequestor(protocol, new LocalTransceiver(responder, false));
+    GenericRecord params = new GenericData.Record(protocol.getMessages().get(
+        "m").getRequest());
+    params.put("x", new Utf8("hello"));
+    assertEquals(new Utf8("hello"), r.request("m", params));
+    assertNotSame(params, responder.request);
+  }
+
+  static class SimpleImpl implements Simple {
+    public String hello(String greeting) { return "Hello, " + greeting; }
+    public TestRecord echo(TestRecord record) { return record; }
+    public int add(int arg1, int arg2) { return arg1 + arg2; }
+    public ByteBuffer echoBytes(ByteBuffer data) {
+      throw new IllegalStateException("Not echoing");
+    }
+    public Void error() throws AvroRemoteException, TestError {
+      throw TestError.newBuilder().setMessage$("Test Message").build();
+    }
+    public void ack() {}
+  }
+
+  /** Checks that calls made serialized and directly behave alike. */
+  @Test
+  public void testSpecific() throws Exception {
+    checkSpecific(new LocalTransceiver(
+        new SpecificResponder(Simple.class, new SimpleImpl())));
+    checkSpecific(new LocalTransceiver(
+        new SpecificResponder(Simple.class, new SimpleImpl()), false));
+    checkSpecific(new LocalTransceiver(
+        new SpecificResponder(Simple.class, new SimpleImpl()), true));
+  }
+
+  private void checkSpecific(Transceiver t) throws Exception {
+    Simple client = SpecificRequestor.getClient(Simple.class, t);
+    assertEquals("Hello, world", client.hello("world").toString());
+    assertEquals(3, client.add(1, 2));
+    TestRecord record = TestRecord.newBuilder().setName("n").setKind(
+        org.apache.avro.test.Kind.FOO).setHash(
+        new org.apache.avro.test.MD5(new byte[16])).build();
+    assertEquals(record, client.echo(record));
+    client.ack();
+    try {
+      client.error();
+      fail("Expected TestError");
+    } catch (TestError e) {
+      assertEquals("Test Message", e.getMessage$().toString());
+    }
+    try {
+      client.echoBytes(ByteBuffer.allocate(1));
+      fail("Expected AvroRuntimeException");
+    } catch (AvroRuntimeException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("Not echoing"));
+    }
+  }
+
+  /** Counts plugin calls and passes metadata from client to server and
+   * back. */
+  static class MetaPlugin extends RPCPlugin {
+    int calls;
+    @Override public void clientSendRequest(RPCContext context) {
+      calls++;
+      assertNull(context.getRequestPayload());    // not serialized
+      context.requestCallMeta().put("k", ByteBuffer.wrap(new byte[] { 1 }));
+    }
+    @Override public void serverReceiveRequest(RPCContext context) {
+      calls++;
+      assertEquals(ByteBuffer.wrap(new byte[] { 1 }),
+                   context.requestCallMeta().get("k"));
+    }
+    @Override public void serverSendResponse(RPCContext context) {
+      calls++;
+      assertEquals("Hello, world", context.response().toString());
+      context.responseCallMeta().put("k", ByteBuffer.wrap(new byte[] { 2 }));
+    }
+    @Override public void clientReceiveResponse(RPCContext context) {
+      calls++;
+      assertEquals(ByteBuffer.wrap(new byte[] { 2 }),
+                   context.responseCallMeta().get("k"));
+    }
+  }
+
+  @Test
+  public void testDirectPlugins() throws Exception {
+    MetaPlugin clientPlugin = new MetaPlugin();
+    MetaPlugin serverPlugin = new MetaPlugin();
+    Responder responder = new SpecificResponder(Simple.class, new SimpleImpl());
+    responder.addRPCPlugin(serverPlugin);
+    SpecificRequestor requestor = new SpecificRequestor(Simple.class,
+        new LocalTransceiver(responder, false));
+    requestor.addRPCPlugin(clientPlugin);
+    Simple client = SpecificRequestor.getClient(Simple.class, requestor);
+    assertEquals("Hello, world", client.hello("world"));
+    assertEquals(2, clientPlugin.calls);
+    assertEquals(2, serverPlugin.calls);
+  }
+
+  /** Passes two results to the callback for each call. */
+  static class TwiceResponder extends GenericResponder {
+    public TwiceResponder(Protocol local) {
+      super(local);
+    }
+
+    @Override
+    public Object respond(Message message, Object request) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void respondAsync(Message message, Object request,
+                             Callback<Object> callback) {
+      callback.handleResult(new Utf8("first"));
+      callback.handleResult(new Utf8("second"));
+    }
+  }
+
+  @Test
+  public void testDirectRespondOnce() throws Exception {
+    Responder responder = new TwiceResponder(protocol);
+    final int[] sent = new int[1];
+    responder.addRPCPlugin(new RPCPlugin() {
+        @Override public void serverSendResponse(RPCContext context) {
+          sent[0]++;
+        }
+      });
+    GenericRequestor r =
+      new GenericRequestor(protocol, new LocalTransceiver(responder, false));
+    GenericRecord params = new GenericData.Record(protocol.getMessages().get(
+        "m").getRequest());
+    params.put("x", new Utf8("hello"));
+    assertEquals(new Utf8("first"), r.request("m", params));
+    assertEquals(1, sent[0]);
+  }
 }
@@ -0,0 +1,211 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.ipc;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.AvroRemoteException;
+import org.apache.avro.ipc.specific.SpecificRequestor;
+import org.apache.avro.ipc.specific.SpecificResponder;
+import org.apache.avro.test.Simple;
+import org.apache.avro.test.TestError;
+import org.apache.avro.test.TestRecord;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests concurrent calls over a single multiplexed socket connection.
+ */
+public class TestMultiplexedSocketTransceiver {
+
+  /** hello() does not return until add() has been called. */
+  private static class BlockingImpl implements Simple {
+    final CountDownLatch added = new CountDownLatch(1);
+    @Override public String hello(String greeting) throws AvroRemoteException {
+      try {
+        if (!added.await(5, TimeUnit.SECONDS))
+          throw new AvroRemoteException("add() was not called");
+      } catch (InterruptedException e) {
+        throw new AvroRemoteException(e);
+      }
+      return "Hello, " + greeting;
+    }
+    @Override public int add(int arg1, int arg2) {
+      added.countDown();
+      return arg1 + arg2;
+    }
+    @Override public TestRecord echo(TestRecord record) { return record; }
+    @Override public ByteBuffer echoBytes(ByteBuffer data) { return data; }
+    @Override public Void error() throws AvroRemoteException, TestError {
+      throw TestError.newBuilder().setMessage$("Test Message").build();
+    }
+    @Override public void ack() {}
+  }
+
+  private static void checkNoHeadOfLineBlocking(Server server)
+    throws Exception {
+    server.start();
+    Transceiver transceiver = new MultiplexedSocketTransceiver(
+        new InetSocketAddress(server.getPort()));
+    try {
+      Simple.Callback client =
+        SpecificRequestor.getClient(Simple.Callback.class, transceiver);
+      ByteBuffer data = ByteBuffer.wrap(new byte[] { 1 });
+      Assert.assertEquals(data, client.echoBytes(data));  // handshake
+      CallFuture<String> hello = new CallFuture<String>();
+      client.hello("world", hello);
+      Assert.assertFalse(hello.isDone());
+      Assert.assertEquals(3, client.add(1, 2));    // while hello is pending
+      Assert.assertEquals("Hello, world", hello.get(5, TimeUnit.SECONDS));
+      try {
+        client.error();
+        Assert.fail("Expected TestError");
+      } catch (TestError e) {
+        Assert.assertEquals("Test Message", e.getMessage$());
+      }
+    } finally {
+      transceiver.close();
+      server.close();
+    }
+  }
+
+  @Test
+  public void testMultiplexedSocketServer() throws Exception {
+    checkNoHeadOfLineBlocking(new MultiplexedSocketServer(
+        new SpecificResponder(Simple.class, new BlockingImpl()),
+        new InetSocketAddress(0)));
+  }
+
+  @Test
+  public void testNettyServer() throws Exception {
+    checkNoHeadOfLineBlocking(new NettyServer(
+        new SpecificResponder(Simple.class, new BlockingImpl()),
+        new InetSocketAddress(0),
+        new NioServerSocketChannelFactory(Executors.newCachedThreadPool(),
+                                          Executors.newCachedThreadPool()),
+        new ChannelPipelineFactory() {
+          @Override public ChannelPipeline getPipeline() {
+            return Channels.pipeline();
+          }
+        }, null, Executors.newCachedThreadPool()));
+  }
+
+  @Test
+  public void testClosedConnectionFailsCalls() throws Exception {
+    MultiplexedSocketServer server = new MultiplexedSocketServer(
+        new SpecificResponder(Simple.class, new BlockingImpl()),
+        new InetSocketAddress(0));
+    server.start();
+    Transceiver transceiver = new MultiplexedSocketTransceiver(
+        new InetSocketAddress(server.getPort()));
+    Simple.Callback client =
+      SpecificRequestor.getClient(Simple.Callback.class, transceiver);
+    ByteBuffer data = ByteBuffer.allocate(1);
+    Assert.assertEquals(data, client.echoBytes(data)); // handshake, not add()
+    CallFuture<String> hello = new CallFuture<String>();
+    client.hello("world", hello);                 // blocks server-side
+    transceiver.close();
+    try {
+      hello.get(5, TimeUnit.SECONDS);
+      Assert.fail("Expected failure");
+    } catch (ExecutionException e) {
+      // expected
+    }
+    server.close();
+  }
+
+  @Test
+  public void testCloseFromCallback() throws Exception {
+    MultiplexedSocketServer server = new MultiplexedSocketServer(
+        new SpecificResponder(Simple.class, new BlockingImpl()),
+        new InetSocketAddress(0));
+    server.start();
+    final Transceiver transceiver = new MultiplexedSocketTransceiver(
+        new InetSocketAddress(server.getPort()));
+    try {
+      Simple.Callback client =
+        SpecificRequestor.getClient(Simple.Callback.class, transceiver);
+      Assert.assertEquals(3, client.add(1, 2));   // handshake
+      final CountDownLatch closed = new CountDownLatch(1);
+      client.add(1, 2, new Callback<Integer>() {
+        @Override public void handleResult(Integer result) {
+          try {
+            transceiver.close();                  // on the reader thread
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+          closed.countDown();
+        }
+        @Override public void handleError(Throwable error) {}
+      });
+      Assert.assertTrue("close() did not return",
+                        closed.await(5, TimeUnit.SECONDS));
+    } finally {
+      transceiver.close();
+      server.close();
+    }
+  }
+
+  @Test
+  public void testInvalidFrameLengthsCloseConnection() throws Exception {
+    MultiplexedSocketServer server = new MultiplexedSocketServer(
+        new SpecificResponder(Simple.class, new BlockingImpl()),
+        new InetSocketAddress(0));
+    server.start();
+    try {
+      for (int length : new int[] { -1, Integer.MAX_VALUE,
+                                    MultiplexedSocketTransceiver.MAX_FRAME_BYTES + 1 }) {
+        SocketChannel channel =
+          SocketChannel.open(new InetSocketAddress(server.getPort()));
+        try {
+          ByteBuffer frame = ByteBuffer.allocate(12);
+          frame.putInt(1).putInt(1).putInt(length).flip();
+          while (frame.hasRemaining())
+            channel.write(frame);
+          channel.socket().setSoTimeout(5000);
+          Assert.assertEquals("Connection should have been closed", -1,
+                              channel.socket().getInputStream().read());
+        } finally {
+          channel.close();
+        }
+      }
+      // the server still accepts valid calls
+      Transceiver transceiver = new MultiplexedSocketTransceiver(
+          new InetSocketAddress(server.getPort()));
+      try {
+        Simple client = SpecificRequestor.getClient(Simple.class, transceiver);
+        Assert.assertEquals(3, client.add(1, 2));
+      } finally {
+        transceiver.close();
+      }
+    } finally {
+      server.close();
+    }
+  }
+}
@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.ipc;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.AvroRemoteException;
+import org.apache.avro.ipc.specific.SpecificRequestor;
+import org.apache.avro.ipc.specific.SpecificResponder;
+import org.apache.avro.test.Simple;
+import org.apache.avro.test.TestError;
+import org.apache.avro.test.TestRecord;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests responders that complete calls asynchronously with Netty.
+ */
+public class TestNettyServerAsyncResponder {
+  private static final long DELAY_MILLIS = 200;
+  private static final int CALLS = 10;
+
+  private static ScheduledExecutorService timer;
+  private static Server server;
+  private static Transceiver transceiver;
+  private static Simple.Callback client;
+
+  /** Responds to hello and error after a delay, without blocking. */
+  public static class DelayedImpl implements Simple {
+    public void hello(final String greeting,
+                      final org.apache.avro.ipc.Callback<String> callback) {
+      timer.schedule(new Runnable() {
+        @Override public void run() {
+          callback.handleResult("Hello, " + greeting);
+        }
+      }, DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public void error(final org.apache.avro.ipc.Callback<Void> callback) {
+      timer.schedule(new Runnable() {
+        @Override public void run() {
+          callback.handleError(
+              TestError.newBuilder().setMessage$("Delayed").build());
+        }
+      }, DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /** Responds twice: only the first response should be sent. */
+    public void echo(TestRecord record,
+                     org.apache.avro.ipc.Callback<TestRecord> callback) {
+      callback.handleResult(record);
+      callback.handleError(
+          TestError.newBuilder().setMessage$("Repeated").build());
+    }
+
+    @Override public String hello(String greeting) {
+      throw new UnsupportedOperationException();
+    }
+    @Override public TestRecord echo(TestRecord record) { return record; }
+    @Override public int add(int arg1, int arg2) { return arg1 + arg2; }
+    @Override public ByteBuffer echoBytes(ByteBuffer data) { return data; }
+    @Override public Void error() throws AvroRemoteException, TestError {
+      throw new UnsupportedOperationException();
+    }
+    @Override public void ack() {}
+  }
+
+  @BeforeClass
+  public static void initializeConnections() throws Exception {
+    timer = Executors.newSingleThreadScheduledExecutor();
+    Responder responder = new SpecificResponder(Simple.class,
+                                                new DelayedImpl());
+    server = new NettyServer(responder, new InetSocketAddress(0),
+        new NioServerSocketChannelFactory(Executors.newCachedThreadPool(),
+                                          Executors.newCachedThreadPool(), 1),
+        new ChannelPipelineFactory() {
+          @Override public ChannelPipeline getPipeline() {
+            return Channels.pipeline();
+          }
+        }, null, Executors.newSingleThreadExecutor());
+    server.start();
+    transceiver = new NettyTransceiver(new InetSocketAddress(
+        server.getPort()), TestNettyServer.CONNECT_TIMEOUT_MILLIS);
+    client = SpecificRequestor.getClient(Simple.Callback.class, transceiver);
+  }
+
+  @AfterClass
+  public static void tearDownConnections() throws Exception {
+    if (transceiver != null)
+      transceiver.close();
+    if (server != null)
+      server.close();
+    timer.shutdownNow();
+  }
+
+  @Test
+  public void testConcurrentDelayedResponses() throws Exception {
+    Assert.assertEquals(3, client.add(1, 2));    // handshake, synchronous
+    long start = System.currentTimeMillis();
+    List<CallFuture<String>> futures = new ArrayList<CallFuture<String>>();
+    for (int i = 0; i < CALLS; i++) {
+      CallFuture<String> future = new CallFuture<String>();
+      client.hello("call " + i, future);
+      futures.add(future);
+    }
+    for (int i = 0; i < CALLS; i++)
+      Assert.assertEquals("Hello, call " + i,
+                          futures.get(i).get(5, TimeUnit.SECONDS));
+    long elapsed = System.currentTimeMillis() - start;
+    Assert.assertTrue("Responses were not concurrent: " + elapsed + "ms",
+                      elapsed < CALLS * DELAY_MILLIS / 2);
+  }
+
+  @Test
+  public void testRespondOnce() throws Exception {
+    TestRecord record = TestRecord.newBuilder()
+      .setName("foo").setKind(org.apache.avro.test.Kind.FOO)
+      .setHash(new org.apache.avro.test.MD5(new byte[16])).build();
+    for (int i = 0; i < 3; i++)
+      Assert.assertEquals(record, client.echo(record));
+    Assert.assertEquals(3, client.add(1, 2));
+  }
+
+  @Test
+  public void testDelayedError() throws Exception {
+    CallFuture<Void> future = new CallFuture<Void>();
+    client.error(future);
+    try {
+      future.get(5, TimeUnit.SECONDS);
+      Assert.fail("Expected TestError");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof TestError);
+      Assert.assertEquals("Delayed", ((TestError) e.getCause()).getMessage$());
+    }
+  }
+}
@@ -0,0 +1,352 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.ipc;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.avro.AvroRemoteException;
+import org.apache.avro.ipc.specific.SpecificRequestor;
+import org.apache.avro.ipc.specific.SpecificResponder;
+import org.apache.avro.test.Simple;
+import org.apache.avro.test.TestError;
+import org.apache.avro.test.TestRecord;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests timeouts, cancellation and limits on calls in flight with Netty.
+ */
+public class TestNettyTransceiverDeadlines {
+  private static final long TIMEOUT_MILLIS = 200;
+
+  private static final BlockingQueue<Callback<String>> held =
+    new LinkedBlockingQueue<Callback<String>>();
+  private static final AtomicInteger helloStarts = new AtomicInteger();
+  private static volatile CountDownLatch gate;
+
+  private static Responder responder;
+  private static Server server;
+  private NettyTransceiver transceiver;
+  private SpecificRequestor requestor;
+  private Simple.Callback client;
+
+  /** Holds hello calls until released, and blocks add calls on the gate,
+   * if any, so that calls queue behind them. */
+  public static class HoldingImpl implements Simple {
+    public void hello(String greeting,
+                      org.apache.avro.ipc.Callback<String> callback) {
+      helloStarts.incrementAndGet();
+      held.add(callback);
+    }
+
+    @Override public int add(int arg1, int arg2) {
+      CountDownLatch gate = TestNettyTransceiverDeadlines.gate;
+      if (gate != null) {
+        try {
+          gate.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      return arg1 + arg2;
+    }
+
+    @Override public String hello(String greeting) {
+      throw new UnsupportedOperationException();
+    }
+    @Override public TestRecord echo(TestRecord record) { return record; }
+    @Override public ByteBuffer echoBytes(ByteBuffer data) { return data; }
+    @Override public Void error() throws AvroRemoteException, TestError {
+      throw new UnsupportedOperationException();
+    }
+    @Override public void ack() {}
+  }
+
+  @BeforeClass
+  public static void startServer() throws Exception {
+    responder = new SpecificResponder(Simple.class, new HoldingImpl());
+    server = new NettyServer(responder, new InetSocketAddress(0),
+        new NioServerSocketChannelFactory(Executors.newCachedThreadPool(),
+                                          Executors.newCachedThreadPool(), 1),
+        new ChannelPipelineFactory() {
+          @Override public ChannelPipeline getPipeline() {
+            return Channels.pipeline();
+          }
+        }, null, Executors.newSingleThreadExecutor());
+    server.start();
+  }
+
+  @AfterClass
+  public static void stopServer() throws Exception {
+    server.close();
+  }
+
+  @Before
+  public void connect() throws Exception {
+    gate = null;
+    held.clear();
+    helloStarts.set(0);
+    transceiver = new NettyTransceiver(new InetSocketAddress(
+        server.getPort()), TestNettyServer.CONNECT_TIMEOUT_MILLIS);
+    requestor = new SpecificRequestor(Simple.Callback.class, transceiver);
+    client = SpecificRequestor.getClient(Simple.Callback.class, requestor);
+    Assert.assertEquals(3, client.add(1, 2));    // handshake
+  }
+
+  @After
+  public void disconnect() throws Exception {
+    CountDownLatch gate = TestNettyTransceiverDeadlines.gate;
+    if (gate != null)
+      gate.countDown();
+    releaseAll();
+    transceiver.close();
+  }
+
+  private static void releaseAll() {
+    for (Callback<String> callback = held.poll(); callback != null;
+         callback = held.poll())
+      callback.handleResult("released");
+  }
+
+  private static void awaitHelloStarts(int count) throws InterruptedException {
+    long end = System.currentTimeMillis() + 5000;
+    while (helloStarts.get() < count && System.currentTimeMillis() < end)
+      Thread.sleep(10);
+    Assert.assertEquals(count, helloStarts.get());
+  }
+
+  @Test
+  public void testTimeout() throws Exception {
+    requestor.setTimeout(TIMEOUT_MILLIS);
+    CallFuture<String> future = new CallFuture<String>();
+    long start = System.currentTimeMillis();
+    client.hello("late", future);
+    try {
+      future.get(5, TimeUnit.SECONDS);
+      Assert.fail("Expected TimeoutException");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof TimeoutException);
+    }
+    Assert.assertTrue(System.currentTimeMillis() - start >= TIMEOUT_MILLIS);
+    Assert.assertEquals(0, transceiver.getNumPendingCalls());
+
+    releaseAll();                                 // late response is ignored
+    Assert.assertEquals(7, client.add(3, 4));
+  }
+
+  @Test
+  public void testSynchronousTimeout() throws Exception {
+    requestor.setTimeout(TIMEOUT_MILLIS);
+    Simple proxy = SpecificRequestor.getClient(Simple.class, requestor);
+    try {
+      proxy.hello("late");
+      Assert.fail("Expected timeout");
+    } catch (AvroRemoteException e) {
+      Assert.assertTrue(e.getCause() instanceof TimeoutException);
+    }
+    Assert.assertEquals(0, transceiver.getNumPendingCalls());
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+    CallFuture<String> future = new CallFuture<String>();
+    client.hello("cancelled", future);
+    awaitHelloStarts(1);
+    Assert.assertEquals(1, transceiver.getNumPendingCalls());
+
+    Assert.assertTrue(future.cancel(true));
+    Assert.assertTrue(future.isCancelled());
+    Assert.assertTrue(future.isDone());
+    Assert.assertFalse(future.cancel(true));
+    try {
+      future.get();
+      Assert.fail("Expected CancellationException");
+    } catch (CancellationException e) {
+      // expected
+    }
+    Assert.assertEquals(0, transceiver.getNumPendingCalls());
+
+    releaseAll();                                 // response is dropped
+    Assert.assertEquals(7, client.add(3, 4));
+  }
+
+  @Test
+  public void testCancelCompleted() throws Exception {
+    CallFuture<Integer> future = new CallFuture<Integer>();
+    client.add(1, 1, future);
+    Assert.assertEquals(2, (int) future.get(5, TimeUnit.SECONDS));
+    Assert.assertFalse(future.cancel(true));
+    Assert.assertFalse(future.isCancelled());
+  }
+
+  @Test
+  public void testQueuedCallsDropped() throws Exception {
+    gate = new CountDownLatch(1);
+    CallFuture<Integer> blocker = new CallFuture<Integer>();
+    client.add(1, 2, blocker);                    // occupies the executor
+
+    CallFuture<String> cancelled = new CallFuture<String>();
+    client.hello("cancelled", cancelled);
+    requestor.setTimeout(TIMEOUT_MILLIS);
+    CallFuture<String> expired = new CallFuture<String>();
+    client.hello("expired", expired);
+    cancelled.cancel(true);
+    try {
+      expired.get(5, TimeUnit.SECONDS);
+      Assert.fail("Expected TimeoutException");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof TimeoutException);
+    }
+    Thread.sleep(TIMEOUT_MILLIS);                 // server's deadline passes
+
+    gate.countDown();
+    Assert.assertEquals(3, (int) blocker.get(5, TimeUnit.SECONDS));
+    Assert.assertEquals(7, client.add(3, 4));     // queued after both
+    Assert.assertEquals(0, helloStarts.get());
+  }
+
+  @Test
+  public void testMaxInFlightFailFast() throws Exception {
+    transceiver.setMaxInFlight(2, 0);
+    CallFuture<String> one = new CallFuture<String>();
+    CallFuture<String> two = new CallFuture<String>();
+    client.hello("one", one);
+    client.hello("two", two);
+    awaitHelloStarts(2);
+    try {
+      client.hello("three", new CallFuture<String>());
+      Assert.fail("Expected IOException");
+    } catch (IOException e) {
+      // expected
+    }
+    Assert.assertEquals(2, transceiver.getNumPendingCalls());
+
+    releaseAll();
+    Assert.assertEquals("released", one.get(5, TimeUnit.SECONDS));
+    Assert.assertEquals("released", two.get(5, TimeUnit.SECONDS));
+    Assert.assertEquals(7, client.add(3, 4));     // slots freed
+    Assert.assertEquals(0, transceiver.getNumPendingCalls());
+  }
+
+  @Test
+  public void testMaxInFlightWaits() throws Exception {
+    transceiver.setMaxInFlight(1, 5000);
+    CallFuture<String> first = new CallFuture<String>();
+    client.hello("first", first);
+    awaitHelloStarts(1);
+
+    final CallFuture<Integer> second = new CallFuture<Integer>();
+    Thread caller = new Thread(new Runnable() {
+      @Override public void run() {
+        try {
+          client.add(3, 4, second);
+        } catch (IOException e) {
+          second.handleError(e);
+        }
+      }
+    });
+    caller.start();
+    Thread.sleep(TIMEOUT_MILLIS);
+    Assert.assertFalse(second.isDone());          // waiting for a slot
+    Assert.assertEquals(1, transceiver.getNumPendingCalls());
+
+    releaseAll();
+    Assert.assertEquals("released", first.get(5, TimeUnit.SECONDS));
+    Assert.assertEquals(7, (int) second.get(5, TimeUnit.SECONDS));
+    caller.join();
+  }
+
+  @Test
+  public void testCancelFreesSlot() throws Exception {
+    transceiver.setMaxInFlight(1, 0);
+    CallFuture<String> future = new CallFuture<String>();
+    client.hello("cancelled", future);
+    awaitHelloStarts(1);
+    future.cancel(true);
+    Assert.assertEquals(7, client.add(3, 4));
+  }
+
+  /** Captures requests rather than sending them. */
+  private static class CapturingTransceiver extends Transceiver {
+    private List<ByteBuffer> request;
+    @Override public String getRemoteName() { return "capture"; }
+    @Override public void transceive(List<ByteBuffer> request,
+                                     Callback<List<ByteBuffer>> callback) {
+      this.request = request;
+    }
+    List<ByteBuffer> duplicate() {
+      List<ByteBuffer> copy = new ArrayList<ByteBuffer>();
+      for (ByteBuffer buffer : request)
+        copy.add(buffer.duplicate());
+      return copy;
+    }
+    @Override public List<ByteBuffer> readBuffers() {
+      throw new UnsupportedOperationException();
+    }
+    @Override public void writeBuffers(List<ByteBuffer> buffers) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  @Test
+  public void testResponderDropsExpiredCall() throws Exception {
+    CapturingTransceiver capture = new CapturingTransceiver();
+    SpecificRequestor captor = new SpecificRequestor(Simple.class, capture);
+    captor.setTimeout(TIMEOUT_MILLIS);
+    CallFuture<String> future = new CallFuture<String>();
+    captor.request("hello", new Object[] { "expired" }, future);
+    try {
+      future.get(5, TimeUnit.SECONDS);            // never answered
+      Assert.fail("Expected TimeoutException");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof TimeoutException);
+    }
+
+    CallFuture<List<ByteBuffer>> response = new CallFuture<List<ByteBuffer>>();
+    responder.respond(capture.duplicate(), null,
+                      System.nanoTime() - TimeUnit.SECONDS.toNanos(1),
+                      response);
+    Assert.assertNotNull(response.get(5, TimeUnit.SECONDS));
+    Assert.assertEquals(0, helloStarts.get());
+
+    responder.respond(capture.duplicate(), null, System.nanoTime(),
+                      new CallFuture<List<ByteBuffer>>());
+    Assert.assertEquals(1, helloStarts.get());
+  }
+}
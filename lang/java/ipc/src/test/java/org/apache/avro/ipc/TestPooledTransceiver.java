@@ -0,0 +1,299 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.avro.ipc;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.avro.AvroRemoteException;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.ipc.specific.SpecificRequestor;
+import org.apache.avro.ipc.specific.SpecificResponder;
+import org.apache.avro.test.Simple;
+import org.apache.avro.test.TestError;
+import org.apache.avro.test.TestRecord;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests balancing, shared handshakes and ejection in {@link
+ * PooledTransceiver}.
+ */
+public class TestPooledTransceiver {
+
+  /** Counts calls and the handshakes that each match. */
+  private static class Endpoint extends RPCPlugin implements Simple {
+    final AtomicInteger calls = new AtomicInteger();
+    final AtomicInteger matched = new AtomicInteger();
+    final AtomicInteger unmatched = new AtomicInteger();
+    final AtomicInteger compressed = new AtomicInteger();
+    final AtomicInteger held = new AtomicInteger();
+    final Server server;
+    volatile CountDownLatch hold;                 // if set, hello awaits it
+    volatile String heldGreeting;
+
+    Endpoint() {
+      SpecificResponder responder = new SpecificResponder(Simple.class, this);
+      responder.addRPCPlugin(this);
+      responder.setCompression(0, CodecFactory.deflateCodec(1));
+      server = new NettyServer(responder, new InetSocketAddress(0),
+          new NioServerSocketChannelFactory(Executors.newCachedThreadPool(),
+                                            Executors.newCachedThreadPool()),
+          new ChannelPipelineFactory() {
+            @Override public ChannelPipeline getPipeline() {
+              return Channels.pipeline();
+            }
+          }, null, Executors.newCachedThreadPool());
+    }
+
+    InetSocketAddress address() {
+      return new InetSocketAddress("localhost", server.getPort());
+    }
+
+    @Override public void serverConnecting(RPCContext context) {
+      if (context.getHandshakeResponse().match == HandshakeMatch.NONE)
+        unmatched.incrementAndGet();
+      else
+        matched.incrementAndGet();
+      Map<String, ByteBuffer> meta = context.getHandshakeResponse().meta;
+      if (meta != null && meta.containsKey(RpcCompression.CODEC_KEY))
+        compressed.incrementAndGet();
+    }
+
+    @Override public String hello(String greeting) {
+      CountDownLatch hold = this.hold;
+      if (hold != null) {
+        heldGreeting = greeting;
+        held.incrementAndGet();
+        try {
+          hold.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      return greeting;
+    }
+    @Override public int add(int arg1, int arg2) {
+      calls.incrementAndGet();
+      return arg1 + arg2;
+    }
+    @Override public TestRecord echo(TestRecord record) { return record; }
+    @Override public ByteBuffer echoBytes(ByteBuffer data) { return data; }
+    @Override public Void error() throws AvroRemoteException, TestError {
+      throw TestError.newBuilder().setMessage$("Test Message").build();
+    }
+    @Override public void ack() {}
+  }
+
+  /** Records how each connection it opens is closed. */
+  private static class Tracker implements PooledTransceiver.Factory {
+    final List<Tracked> opened = new CopyOnWriteArrayList<Tracked>();
+    @Override
+    public Transceiver open(InetSocketAddress address) throws IOException {
+      Tracked t = new Tracked(address);
+      opened.add(t);
+      return t;
+    }
+  }
+
+  private static class Tracked extends NettyTransceiver {
+    final InetSocketAddress address;
+    volatile boolean closed;
+    volatile RuntimeException error;
+    Tracked(InetSocketAddress address) throws IOException {
+      super(address);
+      this.address = address;
+    }
+    @Override public void close() {
+      try {
+        super.close();
+        closed = true;
+      } catch (RuntimeException e) {
+        error = e;
+        throw e;
+      }
+    }
+  }
+
+  private Endpoint a;
+  private Endpoint b;
+
+  @Before
+  public void startServers() {
+    a = new Endpoint();
+    b = new Endpoint();
+  }
+
+  @After
+  public void stopServers() {
+    a.server.close();
+    b.server.close();
+  }
+
+  private static void awaitStandby(PooledTransceiver pool, int count)
+    throws InterruptedException {
+    for (int i = 0; i < 500 && pool.getStandbyCount() < count; i++)
+      Thread.sleep(10);
+    Assert.assertEquals(count, pool.getStandbyCount());
+  }
+
+  @Test
+  public void testBalancingAndSharedHandshake() throws Exception {
+    PooledTransceiver pool = new PooledTransceiver(
+        Arrays.asList(a.address(), b.address()));
+    try {
+      Simple client = SpecificRequestor.getClient(Simple.class, pool);
+      Assert.assertEquals(2, client.add(1, 1));
+      awaitStandby(pool, PooledTransceiver.DEFAULT_STANDBY_CONNECTIONS);
+      Assert.assertEquals(2 * PooledTransceiver.DEFAULT_CONNECTIONS_PER_ENDPOINT,
+                          pool.getActiveCount());
+
+      for (int i = 0; i < 20; i++)
+        Assert.assertEquals(i + 1, client.add(i, 1));
+      Assert.assertEquals(21, a.calls.get() + b.calls.get());
+      Assert.assertTrue(a.calls.get() > 0);
+      Assert.assertTrue(b.calls.get() > 0);
+
+      // each connection, standby included, handshakes exactly once
+      Assert.assertEquals(0, a.unmatched.get() + b.unmatched.get());
+      Assert.assertEquals(pool.getActiveCount() + pool.getStandbyCount(),
+                          a.matched.get() + b.matched.get());
+    } finally {
+      pool.close();
+    }
+  }
+
+  /** Counts the handshakes a requestor starts and finishes. */
+  private static class Connects extends RPCPlugin {
+    final AtomicInteger started = new AtomicInteger();
+    final AtomicInteger finished = new AtomicInteger();
+    @Override public void clientStartConnect(RPCContext context) {
+      started.incrementAndGet();
+    }
+    @Override public void clientFinishConnect(RPCContext context) {
+      finished.incrementAndGet();
+    }
+  }
+
+  @Test
+  public void testPooledHandshakesNegotiate() throws Exception {
+    PooledTransceiver pool = new PooledTransceiver(
+        Arrays.asList(a.address(), b.address()));
+    try {
+      SpecificRequestor requestor = new SpecificRequestor(Simple.class, pool);
+      requestor.setCompression(0, CodecFactory.deflateCodec(1));
+      Connects connects = new Connects();
+      requestor.addRPCPlugin(connects);
+      Simple client = SpecificRequestor.getClient(Simple.class, requestor);
+      Assert.assertEquals(2, client.add(1, 1));
+      awaitStandby(pool, PooledTransceiver.DEFAULT_STANDBY_CONNECTIONS);
+      for (int i = 0; i < 20; i++)
+        Assert.assertEquals(i + 1, client.add(i, 1));
+
+      // every connection negotiates a codec and calls the plugins
+      int connections = pool.getActiveCount() + pool.getStandbyCount();
+      Assert.assertEquals(connections,
+                          a.compressed.get() + b.compressed.get());
+      Assert.assertEquals(connections, connects.started.get());
+      Assert.assertEquals(connections, connects.finished.get());
+    } finally {
+      pool.close();
+    }
+  }
+
+  @Test
+  public void testEjection() throws Exception {
+    Tracker tracker = new Tracker();
+    PooledTransceiver pool = new PooledTransceiver(
+        Arrays.asList(a.address(), b.address()), tracker, 1, 1);
+    pool.setMaxFailures(1);
+    pool.setEjectionTime(60 * 1000);
+    try {
+      Simple.Callback client =
+        SpecificRequestor.getClient(Simple.Callback.class, pool);
+      Assert.assertEquals(2, client.add(1, 1));
+      awaitStandby(pool, 1);
+
+      // hold a call on each endpoint, then fail the one held by a, so that
+      // its connection fails on its own I/O thread
+      CountDownLatch hold = new CountDownLatch(1);
+      a.hold = hold;
+      b.hold = hold;
+      CallFuture<String> first = new CallFuture<String>();
+      CallFuture<String> second = new CallFuture<String>();
+      client.hello("first", first);
+      client.hello("second", second);
+      for (int i = 0; i < 500 && a.held.get() + b.held.get() < 2; i++)
+        Thread.sleep(10);
+      Assert.assertEquals(1, a.held.get());
+      Assert.assertEquals(1, b.held.get());
+      CallFuture<String> onA = "first".equals(a.heldGreeting) ? first : second;
+      CallFuture<String> onB = onA == first ? second : first;
+
+      a.server.close();
+      try {
+        onA.get(5, TimeUnit.SECONDS);
+        Assert.fail("Call on a closed server succeeded");
+      } catch (ExecutionException e) {
+        Assert.assertTrue(String.valueOf(e.getCause()),
+                          e.getCause() instanceof IOException);
+      }
+      hold.countDown();
+      Assert.assertEquals(b.heldGreeting, onB.get(5, TimeUnit.SECONDS));
+
+      int served = b.calls.get();
+      for (int i = 0; i < 10; i++)
+        Assert.assertEquals(i + 1, client.add(i, 1));
+      Assert.assertEquals(served + 10, b.calls.get());
+      Assert.assertEquals(2, pool.getActiveCount());
+
+      // connections to the failed endpoint are closed, and cleanly
+      for (Tracked t : tracker.opened) {
+        if (!t.address.equals(a.address()))
+          continue;
+        for (int i = 0; i < 500 && !t.closed && t.error == null; i++)
+          Thread.sleep(10);
+        Assert.assertNull(t.error);
+        Assert.assertTrue(t.closed);
+      }
+    } finally {
+      pool.close();
+    }
+    for (Tracked t : tracker.opened) {
+      Assert.assertNull(t.error);
+      Assert.assertTrue(t.closed);
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.avro.ipc;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.avro.AvroRemoteException;
+import org.apache.avro.ipc.specific.SpecificRequestor;
+import org.apache.avro.ipc.specific.SpecificResponder;
+import org.apache.avro.test.Simple;
+import org.apache.avro.test.TestError;
+import org.apache.avro.test.TestRecord;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests sending one-way messages in batches.
+ */
+public class TestRequestorBatching {
+
+  /** Counts acks, and records how many preceded each add. */
+  private static class Impl implements Simple {
+    final AtomicInteger acks = new AtomicInteger();
+    volatile CountDownLatch acked = new CountDownLatch(0);
+    @Override public String hello(String greeting) { return greeting; }
+    @Override public int add(int arg1, int arg2) { return acks.get(); }
+    @Override public TestRecord echo(TestRecord record) { return record; }
+    @Override public ByteBuffer echoBytes(ByteBuffer data) { return data; }
+    @Override public Void error() throws AvroRemoteException, TestError {
+      throw TestError.newBuilder().setMessage$("Test Message").build();
+    }
+    @Override public void ack() {
+      acks.incrementAndGet();
+      acked.countDown();
+    }
+  }
+
+  /** Counts the frames written for one-way messages. */
+  private static class CountingTransceiver extends NettyTransceiver {
+    final AtomicInteger frames = new AtomicInteger();
+    CountingTransceiver(InetSocketAddress address) throws IOException {
+      super(address);
+    }
+    @Override
+    public void writeBuffers(List<ByteBuffer> buffers) throws IOException {
+      frames.incrementAndGet();
+      super.writeBuffers(buffers);
+    }
+  }
+
+  private Impl impl;
+  private Server server;
+  private CountingTransceiver transceiver;
+  private SpecificRequestor requestor;
+  private Simple client;
+
+  @Before
+  public void start() throws Exception {
+    impl = new Impl();
+    server = new NettyServer(new SpecificResponder(Simple.class, impl),
+                             new InetSocketAddress(0));
+    transceiver = new CountingTransceiver(
+        new InetSocketAddress(server.getPort()));
+    requestor = new SpecificRequestor(Simple.class, transceiver);
+    client = SpecificRequestor.getClient(Simple.class, requestor);
+    Assert.assertEquals(0, client.add(0, 0));     // handshake
+  }
+
+  @After
+  public void stop() throws Exception {
+    transceiver.close();
+    server.close();
+  }
+
+  @Test
+  public void testFullBatches() throws Exception {
+    requestor.setBatching(10, 0);
+    impl.acked = new CountDownLatch(20);
+    for (int i = 0; i < 25; i++)
+      client.ack();
+    Assert.assertTrue(impl.acked.await(5, TimeUnit.SECONDS));
+    Assert.assertEquals(2, transceiver.frames.get());
+    Assert.assertEquals(20, impl.acks.get());
+
+    requestor.flush();
+    Assert.assertEquals(3, transceiver.frames.get());
+    // a two-way call is not batched, and follows the messages before it
+    Assert.assertEquals(25, client.add(0, 0));
+    Assert.assertEquals(3, transceiver.frames.get());
+  }
+
+  @Test
+  public void testDelay() throws Exception {
+    requestor.setBatching(1000, 20 * 1000);
+    impl.acked = new CountDownLatch(5);
+    for (int i = 0; i < 5; i++)
+      client.ack();
+    Assert.assertTrue(impl.acked.await(5, TimeUnit.SECONDS));
+    Assert.assertEquals(1, transceiver.frames.get());
+  }
+
+  @Test
+  public void testOrderBeforeTwoWay() throws Exception {
+    requestor.setBatching(1000, 0);
+    for (int i = 0; i < 5; i++)
+      client.ack();
+    Assert.assertEquals(0, transceiver.frames.get());
+    Assert.assertEquals(5, client.add(0, 0));
+    Assert.assertEquals(1, transceiver.frames.get());
+  }
+
+  @Test
+  public void testCallbacks() throws Exception {
+    requestor.setBatching(2, 0);
+    final CountDownLatch sent = new CountDownLatch(2);
+    org.apache.avro.ipc.Callback<Void> callback =
+      new org.apache.avro.ipc.Callback<Void>() {
+        @Override public void handleResult(Void result) { sent.countDown(); }
+        @Override public void handleError(Throwable error) {}
+      };
+    requestor.request("ack", new Object[0], callback);
+    Assert.assertEquals(2, sent.getCount());
+    requestor.request("ack", new Object[0], callback);
+    Assert.assertEquals(0, sent.getCount());
+    Assert.assertEquals(2, client.add(0, 0));
+  }
+}
@@ -0,0 +1,184 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.avro.ipc;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.avro.AvroRemoteException;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.ipc.specific.SpecificRequestor;
+import org.apache.avro.ipc.specific.SpecificResponder;
+import org.apache.avro.test.Simple;
+import org.apache.avro.test.TestError;
+import org.apache.avro.test.TestRecord;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests compression of RPC payloads with a codec negotiated in the
+ * handshake.
+ */
+public class TestRpcCompression {
+  private static final int SIZE = 64 * 1024;
+
+  private static class Impl implements Simple {
+    @Override public String hello(String greeting) { return greeting; }
+    @Override public int add(int arg1, int arg2) { return arg1 + arg2; }
+    @Override public TestRecord echo(TestRecord record) { return record; }
+    @Override public ByteBuffer echoBytes(ByteBuffer data) { return data; }
+    @Override public Void error() throws AvroRemoteException, TestError {
+      throw TestError.newBuilder().setMessage$("Test Message").build();
+    }
+    @Override public void ack() {}
+  }
+
+  /** Records the size of the last request and response. */
+  private static class MeasuringTransceiver extends LocalTransceiver {
+    long requestSize;
+    long responseSize;
+    MeasuringTransceiver(Responder responder) { super(responder); }
+    @Override
+    public List<ByteBuffer> transceive(List<ByteBuffer> request)
+      throws IOException {
+      requestSize = size(request);
+      List<ByteBuffer> response = super.transceive(request);
+      responseSize = size(response);
+      return response;
+    }
+  }
+
+  private static long size(List<ByteBuffer> buffers) {
+    long size = 0;
+    for (ByteBuffer buffer : buffers)
+      size += buffer.remaining();
+    return size;
+  }
+
+  private static void checkEcho(Simple client) throws Exception {
+    ByteBuffer data = ByteBuffer.allocate(SIZE);
+    Assert.assertEquals(data, client.echoBytes(data));
+    Assert.assertEquals(3, client.add(1, 2));     // below the threshold
+    try {
+      client.error();
+      Assert.fail("Expected TestError");
+    } catch (TestError e) {
+      Assert.assertEquals("Test Message", e.getMessage$());
+    }
+  }
+
+  @Test
+  public void testNegotiated() throws Exception {
+    Responder responder = new SpecificResponder(Simple.class, new Impl());
+    responder.setCompression(1024, CodecFactory.deflateCodec(1));
+    MeasuringTransceiver t = new MeasuringTransceiver(responder);
+    SpecificRequestor requestor = new SpecificRequestor(Simple.class, t);
+    requestor.setCompression(1024, CodecFactory.snappyCodec(),
+                             CodecFactory.deflateCodec(1));
+    Simple client = SpecificRequestor.getClient(Simple.class, requestor);
+
+    checkEcho(client);                            // negotiates deflate
+    Assert.assertEquals("deflate", t.getCodec().getName());
+    checkEcho(client);
+    ByteBuffer data = ByteBuffer.allocate(SIZE);
+    client.echoBytes(data);
+    Assert.assertTrue(t.requestSize < SIZE / 10);
+    Assert.assertTrue(t.responseSize < SIZE / 10);
+  }
+
+  @Test
+  public void testNotAccepted() throws Exception {
+    Responder responder = new SpecificResponder(Simple.class, new Impl());
+    MeasuringTransceiver t = new MeasuringTransceiver(responder);
+    SpecificRequestor requestor = new SpecificRequestor(Simple.class, t);
+    requestor.setCompression(1024, CodecFactory.deflateCodec(1));
+    Simple client = SpecificRequestor.getClient(Simple.class, requestor);
+
+    checkEcho(client);
+    Assert.assertNull(t.getCodec());
+    client.echoBytes(ByteBuffer.allocate(SIZE));
+    Assert.assertTrue(t.requestSize > SIZE);
+    Assert.assertTrue(t.responseSize > SIZE);
+  }
+
+  @Test
+  public void testLevelsDiffer() throws Exception {
+    Responder responder = new SpecificResponder(Simple.class, new Impl());
+    responder.setCompression(1024, CodecFactory.deflateCodec(9));
+    MeasuringTransceiver t = new MeasuringTransceiver(responder);
+    SpecificRequestor requestor = new SpecificRequestor(Simple.class, t);
+    requestor.setCompression(1024, CodecFactory.deflateCodec(1));
+    Simple client = SpecificRequestor.getClient(Simple.class, requestor);
+
+    checkEcho(client);                            // matched by codec name
+    Assert.assertEquals("deflate", t.getCodec().getName());
+    client.echoBytes(ByteBuffer.allocate(SIZE));
+    Assert.assertTrue(t.requestSize < SIZE / 10);
+  }
+
+  @Test
+  public void testUnnegotiatedRejected() throws Exception {
+    Responder responder = new SpecificResponder(Simple.class, new Impl());
+    Server server = new NettyServer(responder, new InetSocketAddress(0));
+    Transceiver t = new NettyTransceiver(
+        new InetSocketAddress(server.getPort()));
+    try {
+      SpecificRequestor requestor = new SpecificRequestor(Simple.class, t);
+      requestor.setCompression(1024, CodecFactory.deflateCodec(1));
+      Simple client = SpecificRequestor.getClient(Simple.class, requestor);
+      checkEcho(client);
+      Assert.assertNull(t.getCodec());
+      // compress as if the server had accepted deflate
+      t.setCodec(CodecFactory.deflateCodec(1).createCodec());
+      try {
+        client.echoBytes(ByteBuffer.allocate(SIZE));
+        Assert.fail("Server decompressed with a codec it did not accept");
+      } catch (AvroRuntimeException e) {
+        Assert.assertTrue(e.getMessage(),
+                          e.getMessage().contains("Codec not accepted"));
+      }
+    } finally {
+      t.close();
+      server.close();
+    }
+  }
+
+  @Test
+  public void testNettyConnection() throws Exception {
+    Responder responder = new SpecificResponder(Simple.class, new Impl());
+    responder.setCompression(1024, CodecFactory.deflateCodec(1));
+    Server server = new NettyServer(responder, new InetSocketAddress(0));
+    Transceiver t = new NettyTransceiver(
+        new InetSocketAddress(server.getPort()));
+    try {
+      SpecificRequestor requestor = new SpecificRequestor(Simple.class, t);
+      requestor.setCompression(1024, CodecFactory.deflateCodec(1));
+      Simple client = SpecificRequestor.getClient(Simple.class, requestor);
+      checkEcho(client);
+      Assert.assertEquals("deflate", t.getCodec().getName());
+      checkEcho(client);
+    } finally {
+      t.close();
+      server.close();
+    }
+  }
+}
@@ -21,6 +21,11 @@ package org.apache.avro.ipc;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.avro.ipc.generic.GenericRequestor;
 import org.apache.avro.TestProtocolGeneric;
@@ -30,6 +35,10 @@ import org.apache.avro.ipc.reflect.ReflectResponder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -73,4 +82,42 @@ public class TestSaslAnonymous extends TestProtocolGeneric {
     s.close();
   }
 
+  @Test
+  public void testMaxConnections() throws Exception {
+    ExecutorService executor = Executors.newCachedThreadPool();
+    final SaslSocketServer s = new SaslSocketServer
+      (new ReflectResponder(ProtoInterface.class, new ProtoInterface() {
+        public byte[] test(byte[] b) { return b; }
+      }), new InetSocketAddress(0), executor, 10, 1);
+    s.start();
+    try {
+      SaslSocketTransceiver client1 =
+        new SaslSocketTransceiver(new InetSocketAddress(s.getPort()));
+      ProtoInterface proxy1 = (ProtoInterface)
+        ReflectRequestor.getClient(ProtoInterface.class, client1);
+      assertArrayEquals(new byte[1], proxy1.test(new byte[1]));
+      assertEquals(1, s.getNumActiveConnections());
+
+      // a second client waits in the accept queue
+      SaslSocketTransceiver client2 =
+        new SaslSocketTransceiver(new InetSocketAddress(s.getPort()));
+      final ProtoInterface proxy2 = (ProtoInterface)
+        ReflectRequestor.getClient(ProtoInterface.class, client2);
+      Future<byte[]> response = executor.submit(new Callable<byte[]>() {
+          public byte[] call() { return proxy2.test(new byte[2]); }
+        });
+      Thread.sleep(200);
+      assertFalse(response.isDone());
+
+      // until the first closes
+      client1.close();
+      assertArrayEquals(new byte[2], response.get(5, TimeUnit.SECONDS));
+      assertEquals(1, s.getNumActiveConnections());
+      client2.close();
+    } finally {
+      s.close();
+      executor.shutdownNow();
+    }
+  }
+
 }
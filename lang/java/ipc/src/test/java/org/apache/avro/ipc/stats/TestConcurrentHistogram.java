@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.avro.ipc.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestConcurrentHistogram {
+
+  @Test
+  public void testBuckets() {
+    // small values are counted exactly
+    for (long v = 0; v < 64; v++) {
+      int b = ConcurrentHistogram.bucket(v);
+      assertEquals(v, ConcurrentHistogram.lowestValue(b));
+      assertEquals(v, ConcurrentHistogram.highestValue(b));
+    }
+    // larger values fall in buckets spanning a small fraction of the value
+    for (long v = 64; v < (1L << 40); v = v * 3 + 7) {
+      int b = ConcurrentHistogram.bucket(v);
+      long low = ConcurrentHistogram.lowestValue(b);
+      long high = ConcurrentHistogram.highestValue(b);
+      assertTrue(low <= v && v <= high);
+      assertTrue((high - low) <= v / 16);
+      assertEquals(b + 1, ConcurrentHistogram.bucket(high + 1));
+    }
+  }
+
+  @Test
+  public void testPercentiles() {
+    ConcurrentHistogram h = new ConcurrentHistogram(1L << 20);
+    for (int i = 1; i <= 1000; i++)
+      h.add(i);
+    ConcurrentHistogram.Snapshot s = h.snapshot();
+    assertEquals(1000, s.getCount());
+    assertEquals(500500, s.getSum());
+    assertEquals(1000, s.getMax());
+    assertEquals(500.5, s.getMean(), 0.0);
+    assertEquals(288.8, s.getUnbiasedStdDev(), 288.8 / 32);
+    assertNear(500, s.getValueAtPercentile(50));
+    assertNear(990, s.getValueAtPercentile(99));
+    assertNear(999, s.getValueAtPercentile(99.9));
+    assertEquals(1000, s.getValueAtPercentile(100));
+  }
+
+  private static void assertNear(long expected, long actual) {
+    assertTrue(actual + " not near " + expected,
+               actual >= expected && actual <= expected + expected / 32);
+  }
+
+  @Test
+  public void testEmpty() {
+    ConcurrentHistogram.Snapshot s = new ConcurrentHistogram(100).snapshot();
+    assertEquals(0, s.getCount());
+    assertEquals(0, s.getValueAtPercentile(99));
+    assertTrue(Double.isNaN(s.getMean()));
+    assertTrue(s.getRecent().isEmpty());
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testNegative() {
+    new ConcurrentHistogram(1000).add(-5);
+  }
+
+  @Test
+  public void testAboveHighest() {
+    ConcurrentHistogram h = new ConcurrentHistogram(1000);
+    h.add(5);
+    h.add(1000000);
+    ConcurrentHistogram.Snapshot s = h.snapshot();
+    assertEquals(2, s.getCount());
+    assertEquals(1000000, s.getMax());
+    assertEquals(5, s.getValueAtPercentile(50));
+    long top = s.getValueAtPercentile(100);
+    assertTrue(top >= 1000 && top < 1000000);
+  }
+
+  @Test
+  public void testConcurrentAdds() throws Exception {
+    final ConcurrentHistogram h = new ConcurrentHistogram(1L << 20);
+    final int threads = 8, adds = 10000;
+    List<Thread> workers = new ArrayList<Thread>();
+    for (int t = 0; t < threads; t++) {
+      Thread worker = new Thread() {
+        @Override public void run() {
+          for (int i = 0; i < adds; i++)
+            h.add(i % 100);
+        }
+      };
+      workers.add(worker);
+      worker.start();
+    }
+    for (Thread worker : workers)
+      worker.join();
+
+    ConcurrentHistogram.Snapshot s = h.snapshot();
+    assertEquals(threads * adds, s.getCount());
+    assertEquals(threads * (adds / 100) * 4950L, s.getSum());
+    assertEquals(99, s.getMax());
+    assertEquals(threads * adds / 100,
+                 s.getCounts()[ConcurrentHistogram.bucket(42)]);
+  }
+}
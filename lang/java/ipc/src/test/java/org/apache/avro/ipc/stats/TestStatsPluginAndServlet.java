@@ -131,6 +131,29 @@ public class TestStatsPluginAndServlet {
     assertTrue(r.contains("Average: 500.0ms"));
   }
 
+  @Test
+  public void testMetrics() throws Exception {
+    FakeTicks t = new FakeTicks();
+    StatsPlugin statsPlugin = new StatsPlugin(t, StatsPlugin.LATENCY_SEGMENTER,
+        StatsPlugin.PAYLOAD_SEGMENTER);
+    RPCContext context1 = makeContext();
+    RPCContext context2 = makeContext();
+    statsPlugin.serverReceiveRequest(context1);
+    statsPlugin.serverReceiveRequest(context2);
+    t.passTime(900*MS);
+    statsPlugin.serverSendResponse(context1);
+
+    StringWriter w = new StringWriter();
+    new StatsServlet(statsPlugin).writeMetrics(w);
+    String r = w.toString();
+    assertTrue(r.contains("# TYPE avro_rpc_latency_seconds summary\n"));
+    assertTrue(r.contains(
+        "avro_rpc_latency_seconds{message=\"m\",quantile=\"0.99\"} 0.9\n"));
+    assertTrue(r.contains("avro_rpc_latency_seconds_sum{message=\"m\"} 0.9\n"));
+    assertTrue(r.contains("avro_rpc_latency_seconds_count{message=\"m\"} 1\n"));
+    assertTrue(r.contains("avro_rpc_in_flight 1\n"));
+  }
+
   @Test
   public void testPayloadSize() throws IOException {
     Responder r = new TestResponder(protocol);
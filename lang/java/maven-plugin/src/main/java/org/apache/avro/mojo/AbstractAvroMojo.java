@@ -122,6 +122,14 @@ public abstract class AbstractAvroMojo extends AbstractMojo {
    */
   protected boolean createSetters;
 
+  /**
+   * Determines whether or not to generate custom encode and decode methods
+   * for records whose schemas allow it. The default is not to generate them.
+   *
+   * @parameter default-value="false"
+   */
+  protected boolean createCustomCoders;
+
   /**
    * Determines whether or not to use Java classes for decimal types
    *
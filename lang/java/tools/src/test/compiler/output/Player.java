@@ -14,6 +14,12 @@ public class Player extends org.apache.avro.specific.SpecificRecordBase implemen
   private static final long serialVersionUID = 3865593031278745715L;
   public static final org.apache.avro.Schema SCHEMA$ = new org.apache.avro.Schema.Parser().parse("{\"type\":\"record\",\"name\":\"Player\",\"namespace\":\"avro.examples.baseball\",\"doc\":\"選手 is Japanese for player.\",\"fields\":[{\"name\":\"number\",\"type\":\"int\",\"doc\":\"The number of the player\"},{\"name\":\"first_name\",\"type\":\"string\"},{\"name\":\"last_name\",\"type\":\"string\"},{\"name\":\"position\",\"type\":{\"type\":\"array\",\"items\":{\"type\":\"enum\",\"name\":\"Position\",\"symbols\":[\"P\",\"C\",\"B1\",\"B2\",\"B3\",\"SS\",\"LF\",\"CF\",\"RF\",\"DH\"]}}}]}");
   public static org.apache.avro.Schema getClassSchema() { return SCHEMA$; }
+  static {
+    SpecificData.registerFactory(Player.class,
+      new SpecificData.InstanceFactory<Player>() {
+        public Player newInstance(org.apache.avro.Schema s) { return new Player(); }
+      });
+  }
   /** The number of the player */
   @Deprecated public int number;
   @Deprecated public java.lang.CharSequence first_name;